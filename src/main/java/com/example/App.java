@@ -1,63 +1,162 @@
 package com.example;
 
 import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.css.CssParser;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
 import javafx.scene.Parent;
-import javafx.scene.control.Alert;
-import javafx.scene.layout.StackPane;
 import javafx.stage.Stage;
+import com.example.db.DbExecutor;
+import com.example.repository.ReceiptSpooler;
+import com.example.repository.SalesJournal;
 import com.example.util.AppConfig;
+import com.example.util.StartupMetrics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class App extends Application {
+    private static final String[] STYLESHEETS = {"styles.css", "styles-modern.css", "theme.css"};
+    private static final AtomicInteger STARTUP_SEQ = new AtomicInteger();
+    // FXML/CSS preloading (DB bootstrap runs on DbExecutor)
+    private static final ExecutorService STARTUP = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "startup-" + STARTUP_SEQ.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
     private static Scene primaryScene;
+    private static volatile CompletableFuture<Parent> preloadedMain;
+
     @Override
     public void start(Stage stage) throws Exception {
-        Scene scene = new Scene(new StackPane(), 1200, 800);
-        scene.getStylesheets().add(App.class.getResource("styles.css").toExternalForm());
-        scene.getStylesheets().add(App.class.getResource("styles-modern.css").toExternalForm());
-        scene.getStylesheets().add(App.class.getResource("theme.css").toExternalForm());
-        primaryScene = scene;
-        // Apply stored theme to initial root
-        Parent initialRoot = scene.getRoot();
-        if ("dark".equalsIgnoreCase(AppConfig.get().getThemeMode())) {
-            if (!initialRoot.getStyleClass().contains("dark")) {
-                initialRoot.getStyleClass().add("dark");
+        // Splash first, then DB bootstrap, login FXML and CSS in parallel behind it
+        SplashScreen splash = new SplashScreen(AppConfig.get().getAppTitle());
+        splash.show(() -> StartupMetrics.mark(StartupMetrics.FIRST_PIXEL));
+
+        CompletableFuture<Parent> login = CompletableFuture.supplyAsync(() -> loadFxml("login-view.fxml"), STARTUP);
+        CompletableFuture<List<String>> css = CompletableFuture.supplyAsync(App::preloadStylesheets, STARTUP);
+        CompletableFuture.allOf(login, css).whenComplete((v, err) -> StartupMetrics.mark(StartupMetrics.VIEWS_LOADED));
+        bootstrap(stage, splash, login, css);
+    }
+
+    private void bootstrap(Stage stage, SplashScreen splash, CompletableFuture<Parent> login, CompletableFuture<List<String>> css) {
+        CompletableFuture<Void> db = DbExecutor.run(Database::bootstrap);
+        splash.setStatus("Connecting to database...", progress(db, login, css));
+        login.thenRun(() -> Platform.runLater(() -> {
+            if (!db.isDone()) splash.setStatus("Views loaded; waiting for database...", progress(db, login, css));
+        }));
+        CompletableFuture.allOf(db, login, css).whenComplete((v, err) -> Platform.runLater(() -> {
+            if (login.isCompletedExceptionally() || css.isCompletedExceptionally()) {
+                Throwable cause = DbExecutor.rootCause(err);
+                splash.showError("Failed to load the user interface: " + cause.getMessage(), null, null);
+                return;
             }
-        }
+            if (db.isCompletedExceptionally()) {
+                Throwable cause = DbExecutor.rootCause(err);
+                splash.showError("Database unavailable: " + cause.getMessage(),
+                    () -> bootstrap(stage, splash, login, css),
+                    () -> showLogin(stage, splash, login.join(), css.join()));
+                return;
+            }
+            StartupMetrics.mark(StartupMetrics.BOOTSTRAP_DONE);
+            showLogin(stage, splash, login.join(), css.join());
+            // Parse the main view while the user signs in
+            preloadedMain = CompletableFuture.supplyAsync(() -> loadFxml("main-view.fxml"), STARTUP);
+        }));
+    }
 
-        try {
-            Database.bootstrap();
-        } catch (Exception ex) {
-            Alert alert = new Alert(Alert.AlertType.ERROR);
-            alert.setTitle("Database Error");
-            alert.setHeaderText("Failed to connect to MySQL");
-            alert.setContentText(ex.getMessage());
-            alert.showAndWait();
-        }
+    private void showLogin(Stage stage, SplashScreen splash, Parent loginRoot, List<String> stylesheets) {
+        // After the bootstrap attempt (it may create the database): sales journaled while the
+        // database was down are saved once it is reachable
+        SalesJournal.shared().start();
+        Scene scene = new Scene(loginRoot, 1200, 800);
+        scene.getStylesheets().addAll(stylesheets);
+        primaryScene = scene;
+        setRoot(loginRoot);
 
-        // Load login first
-        loadLogin();
+        Runnable[] ready = new Runnable[1];
+        ready[0] = () -> {
+            scene.removePostLayoutPulseListener(ready[0]);
+            StartupMetrics.mark(StartupMetrics.LOGIN_READY);
+        };
+        scene.addPostLayoutPulseListener(ready[0]);
 
         stage.setTitle(AppConfig.get().getAppTitle());
         stage.setScene(scene);
         stage.show();
+        splash.close();
     }
 
-    public static Scene getPrimaryScene() { 
-        return primaryScene; 
+    private static double progress(CompletableFuture<?>... steps) {
+        long done = Arrays.stream(steps).filter(CompletableFuture::isDone).count();
+        return (double) done / steps.length;
+    }
+
+    @Override
+    public void stop() {
+        ReceiptSpooler.shared().close(2_000);
+        SalesJournal.shared().close();
+        Database.shutdown();
+    }
+
+    public static Scene getPrimaryScene() {
+        return primaryScene;
     }
 
     public static void loadLogin() throws Exception {
-        FXMLLoader loader = new FXMLLoader(App.class.getResource("login-view.fxml"));
-        Parent root = loader.load();
-        setRoot(root);
+        setRoot(loadFxml("login-view.fxml"));
     }
 
     public static void loadMain() throws Exception {
-        FXMLLoader loader = new FXMLLoader(App.class.getResource("main-view.fxml"));
-        Parent root = loader.load();
-        setRoot(root);
+        // Use the view parsed during startup if it is ready; it can be used only once
+        CompletableFuture<Parent> pre = preloadedMain;
+        preloadedMain = null;
+        Parent root = null;
+        if (pre != null && pre.isDone() && !pre.isCompletedExceptionally()) {
+            root = pre.join();
+        }
+        setRoot(root != null ? root : loadFxml("main-view.fxml"));
+    }
+
+    /** Load an FXML view; safe off the FX thread as long as the result is not yet in a live scene. */
+    private static Parent loadFxml(String name) {
+        FXMLLoader loader = new FXMLLoader(App.class.getResource(name));
+        loader.setClassLoader(App.class.getClassLoader());
+        try {
+            return loader.load();
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Failed to load " + name, ex);
+        }
+    }
+
+    /**
+     * Resolve the stylesheets and parse them once off the FX thread. This surfaces missing files
+     * before the UI is shown and warms the CSS parser; JavaFX still applies them on the FX thread.
+     */
+    private static List<String> preloadStylesheets() {
+        List<String> urls = new ArrayList<>();
+        CssParser parser = new CssParser();
+        for (String name : STYLESHEETS) {
+            URL url = App.class.getResource(name);
+            if (url == null) throw new IllegalStateException("Missing stylesheet " + name);
+            try {
+                parser.parse(url);
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Failed to read stylesheet " + name, ex);
+            }
+            urls.add(url.toExternalForm());
+        }
+        return urls;
     }
 
     private static void setRoot(Parent root) {
@@ -1,5 +1,8 @@
 package com.example;
 
+import com.example.db.SqlDialect;
+
+import javafx.beans.binding.Bindings;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
@@ -36,11 +39,13 @@ import javafx.geometry.Point3D;
 import java.sql.*;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 
-public class DashboardController {
+public class DashboardController implements ViewLifecycle {
 
     // KPIs
     @FXML private Label metricSalesToday;
@@ -68,6 +73,10 @@ public class DashboardController {
     @FXML private TableColumn<TopItemRow, Integer> colTopItemQty;
     @FXML private TableColumn<TopItemRow, String> colTopItemRevenue;
 
+    // Background loading (no JDBC on the FX thread)
+    private final ViewTasks tasks = new ViewTasks();
+    private boolean staleOnShow;
+
     @FXML
     private void initialize() {
         loadMetrics();
@@ -77,39 +86,56 @@ public class DashboardController {
         setupTopItems();
     }
 
+    @Override
+    public void onViewHidden() {
+        // Anything still loading is dropped; reload when the user comes back
+        staleOnShow = tasks.isLoading();
+        tasks.cancelAll();
+    }
+
+    @Override
+    public void onViewShown() {
+        if (staleOnShow) {
+            staleOnShow = false;
+            onRefresh();
+        }
+    }
+
     private void setupCharts() {
+        tasks.load("charts", this::fetchChartData, this::applyChartData, err -> {});
+    }
+
+    private record ChartData(Map<LocalDate, Double> weekTotals, List<PieChart.Data> stockByCategory) {}
+
+    private ChartData fetchChartData() {
         // Weekly sales from DB (last 7 days)
         LocalDate today = LocalDate.now();
         LocalDate start = today.minusDays(6);
         Map<LocalDate, Double> totals = new HashMap<>();
-        DateTimeFormatter dayFmt = DateTimeFormatter.ofPattern("EEE", Locale.US);
         for (int i = 0; i < 7; i++) {
             totals.put(start.plusDays(i), 0.0);
         }
-        String sql = "SELECT DATE(sale_date) d, SUM(grand_total) t FROM sales " +
-                     "WHERE sale_date >= DATE_SUB(CURDATE(), INTERVAL 6 DAY) " +
-                     "GROUP BY DATE(sale_date)";
-        try (Connection c = Database.getConnection();
-             PreparedStatement ps = c.prepareStatement(sql);
-             ResultSet rs = ps.executeQuery()) {
-            while (rs.next()) {
-                LocalDate d = rs.getDate("d").toLocalDate();
-                double t = rs.getDouble("t");
-                if (totals.containsKey(d)) totals.put(d, t);
+        SqlDialect dialect = Database.dialect();
+        String day = dialect.dateOf("sale_date");
+        String sql = "SELECT " + day + " d, SUM(grand_total) t FROM sales " +
+                     "WHERE " + dialect.range("sale_date") + " " +
+                     "GROUP BY " + day;
+        try (Connection c = Database.getReadConnection();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            dialect.bindTimestampRange(ps, 1, start, today.plusDays(1));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    LocalDate d = rs.getDate("d").toLocalDate();
+                    double t = rs.getDouble("t");
+                    if (totals.containsKey(d)) totals.put(d, t);
+                }
             }
         } catch (Exception ignore) {}
-        XYChart.Series<String, Number> series = new XYChart.Series<>();
-        for (int i = 0; i < 7; i++) {
-            LocalDate d = start.plusDays(i);
-            series.getData().add(new XYChart.Data<>(d.format(dayFmt), totals.getOrDefault(d, 0.0)));
-        }
-        salesLineChart.getData().setAll(series);
-        fadeIn(salesLineChart);
 
         // Stock by category from DB
-        ObservableList<PieChart.Data> pieData = FXCollections.observableArrayList();
+        List<PieChart.Data> pieData = new ArrayList<>();
         String sqlPie = "SELECT COALESCE(category,'Uncategorized') AS cat, SUM(quantity) AS qty FROM inventory_items GROUP BY COALESCE(category,'Uncategorized')";
-        try (Connection c = Database.getConnection();
+        try (Connection c = Database.getReadConnection();
              PreparedStatement ps = c.prepareStatement(sqlPie);
              ResultSet rs = ps.executeQuery()) {
             while (rs.next()) {
@@ -118,7 +144,21 @@ public class DashboardController {
                 if (qty > 0) pieData.add(new PieChart.Data(cat, qty));
             }
         } catch (Exception ignore) {}
-        stockPieChart.setData(pieData);
+        return new ChartData(totals, pieData);
+    }
+
+    private void applyChartData(ChartData data) {
+        LocalDate start = LocalDate.now().minusDays(6);
+        DateTimeFormatter dayFmt = DateTimeFormatter.ofPattern("EEE", Locale.US);
+        XYChart.Series<String, Number> series = new XYChart.Series<>();
+        for (int i = 0; i < 7; i++) {
+            LocalDate d = start.plusDays(i);
+            series.getData().add(new XYChart.Data<>(d.format(dayFmt), data.weekTotals().getOrDefault(d, 0.0)));
+        }
+        salesLineChart.getData().setAll(series);
+        fadeIn(salesLineChart);
+
+        stockPieChart.setData(FXCollections.observableArrayList(data.stockByCategory()));
         fadeIn(stockPieChart);
     }
 
@@ -129,23 +169,35 @@ public class DashboardController {
         colSaleTotal.setCellValueFactory(new PropertyValueFactory<>("total"));
         colSaleDate.setCellValueFactory(new PropertyValueFactory<>("date"));
 
-        recentSalesTable.setItems(sampleSales());
+        recentSalesTable.placeholderProperty().bind(Bindings.when(tasks.loadingProperty())
+            .then(new Label("Loading...")).otherwise(new Label("No sales yet.")));
+        loadRecentSales();
+    }
+
+    private void loadRecentSales() {
+        tasks.load("recentSales", this::sampleSales, recentSalesTable::setItems, err -> {});
     }
 
     private void setupTopItems() {
         if (colTopItemName != null) colTopItemName.setCellValueFactory(new PropertyValueFactory<>("name"));
         if (colTopItemQty != null) colTopItemQty.setCellValueFactory(new PropertyValueFactory<>("qty"));
         if (colTopItemRevenue != null) colTopItemRevenue.setCellValueFactory(new PropertyValueFactory<>("revenue"));
-        if (topItemsTable != null) {
-            topItemsTable.setItems(loadTopItems());
-        }
+        loadTopItemsAsync();
+    }
+
+    private void loadTopItemsAsync() {
+        if (topItemsTable == null) return;
+        tasks.load("topItems", this::loadTopItems, topItemsTable::setItems, err -> {});
     }
 
     private ObservableList<TopItemRow> loadTopItems() {
         ObservableList<TopItemRow> rows = FXCollections.observableArrayList();
-        String sql = "SELECT item_name, SUM(qty) AS total_qty, SUM(line_total) AS revenue " +
-                     "FROM sale_items GROUP BY item_name ORDER BY total_qty DESC LIMIT 10";
-        try (Connection c = Database.getConnection();
+        // Grouped on the integer item key; the name is joined in for the top rows only
+        String sql = "SELECT i.name AS item_name, t.total_qty, t.revenue FROM (" +
+                     "SELECT item_id, SUM(qty) AS total_qty, SUM(line_total) AS revenue FROM sale_items " +
+                     "WHERE item_id IS NOT NULL GROUP BY item_id ORDER BY total_qty DESC LIMIT 10) t " +
+                     "JOIN items i ON i.id = t.item_id ORDER BY t.total_qty DESC";
+        try (Connection c = Database.getReadConnection();
              PreparedStatement ps = c.prepareStatement(sql);
              ResultSet rs = ps.executeQuery()) {
             while (rs.next()) {
@@ -223,6 +275,8 @@ public class DashboardController {
     private Group spinner;
     private double anchorX, anchorY;
     private double pulsePhase = 0;
+    private double spinSpeed = 0.18;
+    private double pulseStep = 0.12;
 
     private void setup3D() {
         if (threeDPane == null) return;
@@ -256,31 +310,15 @@ public class DashboardController {
 
         threeDPane.getChildren().setAll(sub);
 
-        // Idle rotation + data-driven pulse (based on alerts)
-        int low = 0;
-        int exp = 0;
-        try (Connection c = Database.getConnection()) {
-            try (PreparedStatement ps = c.prepareStatement(
-                    "SELECT COUNT(*) FROM inventory_items WHERE reorder_level > 0 AND quantity <= reorder_level");
-                 ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) low = rs.getInt(1);
-            }
-            try (PreparedStatement ps = c.prepareStatement(
-                    "SELECT COUNT(*) FROM item_batches WHERE expiry_date IS NOT NULL AND expiry_date BETWEEN CURDATE() AND DATE_ADD(CURDATE(), INTERVAL 30 DAY)");
-                 ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) exp = rs.getInt(1);
-            }
-        } catch (Exception ignore) {}
-
-        final int alertsTotal = low + exp;
-        final double speed = 0.18 + Math.min(0.5, 0.02 * alertsTotal);
-        Color lightColor = alertsTotal > 0 ? Color.web("#f43f5e") : Color.WHITE;
-        key.setColor(lightColor);
-
-        final double pulseStep = 0.12 + 0.02 * alertsTotal;
+        // Idle rotation + data-driven pulse (based on alerts, loaded in the background)
+        tasks.load("spinnerAlerts", this::countAlerts, alertsTotal -> {
+            spinSpeed = 0.18 + Math.min(0.5, 0.02 * alertsTotal);
+            pulseStep = 0.12 + 0.02 * alertsTotal;
+            key.setColor(alertsTotal > 0 ? Color.web("#f43f5e") : Color.WHITE);
+        }, err -> {});
 
         Timeline tl = new Timeline(new KeyFrame(Duration.millis(16), ev -> {
-            rotateY.setAngle(rotateY.getAngle() + speed);
+            rotateY.setAngle(rotateY.getAngle() + spinSpeed);
             pulsePhase += pulseStep;
             double s = 1.0 + 0.04 * Math.sin(pulsePhase);
             spinner.setScaleX(s);
@@ -302,6 +340,26 @@ public class DashboardController {
         });
     }
 
+    private int countAlerts() {
+        int low = 0;
+        int exp = 0;
+        try (Connection c = Database.getReadConnection()) {
+            try (PreparedStatement ps = c.prepareStatement(
+                    "SELECT COUNT(*) FROM inventory_items WHERE reorder_level > 0 AND quantity <= reorder_level");
+                 ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) low = rs.getInt(1);
+            }
+            try (PreparedStatement ps = c.prepareStatement(
+                    "SELECT COUNT(*) FROM item_batches WHERE expiry_date IS NOT NULL AND " + Database.dialect().range("expiry_date"))) {
+                Database.dialect().bindDateRange(ps, 1, LocalDate.now(), LocalDate.now().plusDays(31));
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) exp = rs.getInt(1);
+                }
+            }
+        } catch (Exception ignore) {}
+        return low + exp;
+    }
+
     private Group buildSpinner() {
         Group g = new Group();
 
@@ -405,7 +463,7 @@ public class DashboardController {
         String sql = "SELECT s.id AS sale_id, si.item_name, si.qty, si.line_total, s.sale_date " +
                      "FROM sale_items si JOIN sales s ON si.sale_id = s.id " +
                      "ORDER BY s.sale_date DESC, si.id DESC LIMIT 10";
-        try (Connection c = Database.getConnection();
+        try (Connection c = Database.getReadConnection();
              PreparedStatement ps = c.prepareStatement(sql);
              ResultSet rs = ps.executeQuery()) {
             DateTimeFormatter fmt = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
@@ -464,35 +522,43 @@ public class DashboardController {
     private void onRefresh() {
         loadMetrics();
         setupCharts();
-        recentSalesTable.setItems(sampleSales());
-        if (topItemsTable != null) {
-            topItemsTable.setItems(loadTopItems());
-        }
+        loadRecentSales();
+        loadTopItemsAsync();
     }
+
+    private record Metrics(double today, double yesterday, int inStock, int lowStock, int expiring) {}
+
     private void loadMetrics() {
+        tasks.load("metrics", this::fetchMetrics, this::applyMetrics, err -> {});
+    }
+
+    private Metrics fetchMetrics() {
         // Today's sales and delta vs yesterday
         double today = 0.0;
         double yesterday = 0.0;
-        try (Connection c = Database.getConnection()) {
-            try (PreparedStatement ps = c.prepareStatement("SELECT COALESCE(SUM(grand_total),0) FROM sales WHERE DATE(sale_date)=CURDATE()");
-                 ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) today = rs.getDouble(1);
+        SqlDialect dialect = Database.dialect();
+        LocalDate now = LocalDate.now();
+        String sumSql = "SELECT COALESCE(SUM(grand_total),0) FROM sales WHERE " + dialect.range("sale_date");
+        try (Connection c = Database.getReadConnection()) {
+            try (PreparedStatement ps = c.prepareStatement(sumSql)) {
+                dialect.bindTimestampRange(ps, 1, now, now.plusDays(1));
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) today = rs.getDouble(1);
+                }
             }
-            try (PreparedStatement ps = c.prepareStatement("SELECT COALESCE(SUM(grand_total),0) FROM sales WHERE DATE(sale_date)=DATE_SUB(CURDATE(), INTERVAL 1 DAY)");
-                 ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) yesterday = rs.getDouble(1);
+            try (PreparedStatement ps = c.prepareStatement(sumSql)) {
+                dialect.bindTimestampRange(ps, 1, now.minusDays(1), now);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) yesterday = rs.getDouble(1);
+                }
             }
         } catch (Exception ignore) {}
-        animateMoney(metricSalesToday, today);
-        double deltaPct = (yesterday <= 0.0) ? (today > 0 ? 100.0 : 0.0) : ((today - yesterday) / yesterday) * 100.0;
-        String arrow = deltaPct >= 0 ? "+" : "";
-        metricSalesDelta.setText(String.format(Locale.US, "%s%.1f%% from yesterday", arrow, deltaPct));
 
         // Inventory KPIs
         int inStock = 0;
         int lowStock = 0;
         int expiring = 0;
-        try (Connection c = Database.getConnection()) {
+        try (Connection c = Database.getReadConnection()) {
             try (PreparedStatement ps = c.prepareStatement("SELECT COALESCE(SUM(quantity),0) FROM inventory_items");
                  ResultSet rs = ps.executeQuery()) {
                 if (rs.next()) inStock = rs.getInt(1);
@@ -504,22 +570,34 @@ public class DashboardController {
             // Prefer batches-based expiry if available; fallback to legacy per-item expiry
             Integer batchesCount = null;
             try (PreparedStatement ps = c.prepareStatement(
-                    "SELECT COUNT(*) FROM item_batches WHERE expiry_date IS NOT NULL AND expiry_date BETWEEN CURDATE() AND DATE_ADD(CURDATE(), INTERVAL 30 DAY)");
-                 ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) batchesCount = rs.getInt(1);
+                    "SELECT COUNT(*) FROM item_batches WHERE expiry_date IS NOT NULL AND " + Database.dialect().range("expiry_date"))) {
+                Database.dialect().bindDateRange(ps, 1, LocalDate.now(), LocalDate.now().plusDays(31));
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) batchesCount = rs.getInt(1);
+                }
             } catch (Exception ignore) { /* item_batches may not exist in older DBs */ }
             if (batchesCount != null) {
                 expiring = batchesCount;
             } else {
                 try (PreparedStatement ps = c.prepareStatement(
-                        "SELECT COUNT(*) FROM inventory_items WHERE expiry IS NOT NULL AND expiry BETWEEN CURDATE() AND DATE_ADD(CURDATE(), INTERVAL 30 DAY)");
-                     ResultSet rs = ps.executeQuery()) {
-                    if (rs.next()) expiring = rs.getInt(1);
+                        "SELECT COUNT(*) FROM inventory_items WHERE expiry IS NOT NULL AND " + Database.dialect().range("expiry"))) {
+                    Database.dialect().bindDateRange(ps, 1, LocalDate.now(), LocalDate.now().plusDays(31));
+                    try (ResultSet rs = ps.executeQuery()) {
+                        if (rs.next()) expiring = rs.getInt(1);
+                    }
                 }
             }
         } catch (Exception ignore) {}
-        animateInt(metricInStock, inStock);
-        animateInt(metricLowStock, lowStock);
-        animateInt(metricExpiring, expiring);
+        return new Metrics(today, yesterday, inStock, lowStock, expiring);
+    }
+
+    private void applyMetrics(Metrics m) {
+        animateMoney(metricSalesToday, m.today());
+        double deltaPct = (m.yesterday() <= 0.0) ? (m.today() > 0 ? 100.0 : 0.0) : ((m.today() - m.yesterday()) / m.yesterday()) * 100.0;
+        String arrow = deltaPct >= 0 ? "+" : "";
+        metricSalesDelta.setText(String.format(Locale.US, "%s%.1f%% from yesterday", arrow, deltaPct));
+        animateInt(metricInStock, m.inStock());
+        animateInt(metricLowStock, m.lowStock());
+        animateInt(metricExpiring, m.expiring());
     }
 }
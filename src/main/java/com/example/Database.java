@@ -1,37 +1,221 @@
 package com.example;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.sql.Statement;
 import java.sql.Date;
 import java.time.LocalDate;
+import java.util.List;
+import com.example.db.ConnectionPool;
+import com.example.db.DbHealthMonitor;
+import com.example.db.Migrator;
+import com.example.db.Migrator.Migration;
+import com.example.db.QueryTracer;
+import com.example.db.ReplicaRouter;
+import com.example.db.Schema;
+import com.example.db.SqlDialect;
+import com.example.repository.CatalogCache;
+import com.example.repository.HeldSaleRepository;
+import com.example.repository.IdAllocator;
+import com.example.repository.ItemNameIndex;
 import com.example.util.PasswordUtil;
 import com.example.util.AppConfig;
 
 public final class Database {
+    private static final System.Logger LOG = System.getLogger(Database.class.getName());
     private static final AppConfig CFG = AppConfig.get();
+    private static final Object POOL_LOCK = new Object();
+    private static volatile ConnectionPool pool;
+    private static volatile ReplicaRouter replica;
+    private static volatile boolean replicaResolved;
+    private static final QueryTracer TRACER =
+        new QueryTracer(CFG.getSlowQueryMs(), CFG.getSlowQueryLog(), CFG.getTraceMaxStatements());
+    private static final DbHealthMonitor HEALTH = new DbHealthMonitor(() -> pool().getConnection(), healthSettings());
 
     private Database() {}
 
     public static void bootstrap() throws SQLException {
+        // Fail on an unsupported db.type before touching any database
+        dialect();
         ensureDatabase();
         migrate();
-        seedDemoData();
         test();
     }
 
+    /**
+     * Borrow a pooled connection. Callers must close it (try-with-resources) to return it to the pool.
+     * While the database is known to be down this fails immediately (see {@link #health()}).
+     */
     public static Connection getConnection() throws SQLException {
-        if (CFG.isSqlite()) {
-            return DriverManager.getConnection(CFG.getJdbcUrl());
+        HEALTH.ensureAvailable();
+        try {
+            Connection c = pool().getConnection();
+            HEALTH.recordSuccess();
+            return c;
+        } catch (SQLException ex) {
+            HEALTH.recordFailure(ex);
+            throw ex;
         }
-        return DriverManager.getConnection(CFG.getJdbcUrl(), CFG.getDbUser(), CFG.getDbPass());
+    }
+
+    /** Database reachability (heartbeat + circuit breaker); listeners are notified on state changes. */
+    public static DbHealthMonitor health() {
+        HEALTH.start();
+        return HEALTH;
+    }
+
+    /**
+     * Borrow a connection for read-only queries that tolerate slightly stale data (dashboard,
+     * alerts, reports). Served by the read replica when one is configured and within
+     * db.replica.maxStalenessMs of the primary, otherwise by the primary. Never write through it.
+     */
+    public static Connection getReadConnection() throws SQLException {
+        ReplicaRouter r = replica();
+        return r == null ? getConnection() : r.getConnection();
+    }
+
+    /** Close the current pools so the next getConnection() picks up changed db.* settings. */
+    public static void reconfigure() {
+        ConnectionPool old;
+        ReplicaRouter oldReplica;
+        synchronized (POOL_LOCK) {
+            old = pool;
+            oldReplica = replica;
+            pool = null;
+            replica = null;
+            replicaResolved = false;
+        }
+        TRACER.configure(CFG.getSlowQueryMs(), CFG.getSlowQueryLog(), CFG.getTraceMaxStatements());
+        HEALTH.reset(healthSettings());
+        CatalogCache.shared().clear();
+        ItemNameIndex.shared().clear();
+        HeldSaleRepository.shared().clear();
+        IdAllocator.shared().clear();
+        if (oldReplica != null) oldReplica.close();
+        if (old != null) old.close();
+    }
+
+    public static void shutdown() {
+        HEALTH.close();
+        reconfigure();
+    }
+
+    public static ConnectionPool.Stats poolStats() {
+        ConnectionPool p = pool;
+        return p == null ? null : p.stats();
+    }
+
+    /**
+     * Per-query statistics (latency percentiles, rows, errors) across the primary and replica
+     * pools; see {@link QueryTracer}. Empty when db.trace.enabled=false.
+     */
+    public static QueryTracer queryTracer() {
+        return TRACER;
+    }
+
+    /** Replica routing state, or null when no replica is configured (or not used yet). */
+    public static ReplicaRouter.Status replicaStatus() {
+        ReplicaRouter r = replica;
+        return r == null ? null : r.status();
+    }
+
+    private static ConnectionPool pool() {
+        ConnectionPool p = pool;
+        if (p != null) return p;
+        synchronized (POOL_LOCK) {
+            if (pool == null) {
+                ConnectionPool.Settings s = poolSettings(CFG.getJdbcUrl(), CFG.getDbUser(), CFG.getDbPass());
+                s.minIdle = CFG.getPoolMinIdle();
+                s.maxSize = CFG.getPoolMaxSize();
+                pool = new ConnectionPool(s);
+                HEALTH.start();
+            }
+            return pool;
+        }
+    }
+
+    private static ReplicaRouter replica() {
+        if (replicaResolved) return replica;
+        synchronized (POOL_LOCK) {
+            if (!replicaResolved) {
+                String url = CFG.getReplicaJdbcUrl();
+                if (url != null) {
+                    ConnectionPool.Settings s = poolSettings(url, CFG.getReplicaUser(), CFG.getReplicaPass());
+                    s.minIdle = 0;
+                    s.maxSize = CFG.getReplicaPoolMaxSize();
+                    replica = new ReplicaRouter(s, Database::getConnection,
+                        CFG.getReplicaMaxStalenessMs(), CFG.getReplicaCheckIntervalMs());
+                }
+                replicaResolved = true;
+            }
+            return replica;
+        }
+    }
+
+    private static DbHealthMonitor.Settings healthSettings() {
+        DbHealthMonitor.Settings s = new DbHealthMonitor.Settings();
+        s.intervalMs = CFG.getHealthIntervalMs();
+        s.failureThreshold = CFG.getHealthFailureThreshold();
+        s.probeInitialMs = CFG.getHealthProbeInitialMs();
+        s.probeMaxMs = CFG.getHealthProbeMaxMs();
+        s.validationTimeoutSec = CFG.getPoolValidationTimeoutSec();
+        return s;
+    }
+
+    private static ConnectionPool.Settings poolSettings(String url, String user, String pass) {
+        ConnectionPool.Settings s = new ConnectionPool.Settings();
+        s.url = url;
+        s.user = user;
+        s.password = pass;
+        s.idleTimeoutMs = CFG.getPoolIdleTimeoutMs();
+        s.maxLifetimeMs = CFG.getPoolMaxLifetimeMs();
+        s.connectionTimeoutMs = CFG.getPoolConnectionTimeoutMs();
+        s.validationTimeoutSec = CFG.getPoolValidationTimeoutSec();
+        s.leakDetectionMs = CFG.getPoolLeakDetectionMs();
+        s.statementCacheSize = CFG.getStatementCacheSize();
+        s.tracer = CFG.isQueryTraceEnabled() ? TRACER : null;
+        // Bound the driver's connect time (by default it can wait for the OS TCP timeout)
+        if (!url.contains("connectTimeout")) {
+            if (CFG.isMySql()) {
+                s.driverProperties.setProperty("connectTimeout", String.valueOf(s.connectionTimeoutMs));
+            } else if (CFG.isPostgres()) {
+                s.driverProperties.setProperty("connectTimeout", String.valueOf(Math.max(1, s.connectionTimeoutMs / 1000)));
+            }
+        }
+        // Send JDBC batches as multi-row statements (one round trip per batch)
+        if (CFG.isMySql() && !url.contains("rewriteBatchedStatements")) {
+            s.driverProperties.setProperty("rewriteBatchedStatements", "true");
+        } else if (CFG.isPostgres() && !url.contains("reWriteBatchedInserts")) {
+            s.driverProperties.setProperty("reWriteBatchedInserts", "true");
+        }
+        if (CFG.isServerPrepareEnabled() && s.statementCacheSize > 0) {
+            if (CFG.isMySql()) {
+                // Parse/plan once on the server; our cache keeps the handles open
+                s.driverProperties.setProperty("useServerPrepStmts", "true");
+            } else if (CFG.isPostgres()) {
+                s.driverProperties.setProperty("prepareThreshold", "1");
+            }
+        }
+        return s;
     }
 
     private static void ensureDatabase() throws SQLException {
-        if (CFG.isSqlite()) {
-            // No separate database to create for SQLite
+        if (CFG.isH2()) {
+            // Embedded: H2 creates the database file on first connect, but not its directory
+            Path file = CFG.getH2File();
+            if (file != null && file.getParent() != null) {
+                try {
+                    Files.createDirectories(file.getParent());
+                } catch (IOException ex) {
+                    throw new SQLException("Cannot create embedded database directory " + file.getParent(), ex);
+                }
+            }
             return;
         }
         if (CFG.isMySql()) {
@@ -43,261 +227,304 @@ public final class Database {
             return;
         }
         if (CFG.isPostgres()) {
-            // Attempt to create DB (ignore errors if already exists or insufficient permission)
+            // No CREATE DATABASE IF NOT EXISTS in Postgres: check pg_database first
             String serverUrl = CFG.getJdbcServerUrl();
-            try (Connection conn = DriverManager.getConnection(serverUrl + "postgres", CFG.getDbUser(), CFG.getDbPass());
-                 Statement st = conn.createStatement()) {
-                st.executeUpdate("CREATE DATABASE " + CFG.getDbName());
+            try (Connection conn = DriverManager.getConnection(serverUrl, CFG.getDbUser(), CFG.getDbPass())) {
+                boolean exists;
+                try (PreparedStatement ps = conn.prepareStatement("SELECT 1 FROM pg_database WHERE datname = ?")) {
+                    ps.setString(1, CFG.getDbName());
+                    try (java.sql.ResultSet rs = ps.executeQuery()) {
+                        exists = rs.next();
+                    }
+                }
+                if (!exists) {
+                    try (Statement st = conn.createStatement()) {
+                        st.executeUpdate("CREATE DATABASE " + CFG.getDbName());
+                    }
+                }
             } catch (SQLException ignore) {
-                // proceed; likely exists or user lacks createdb
+                // proceed; the user may lack CREATEDB or access to the maintenance DB
             }
         }
     }
 
+    public static SqlDialect dialect() {
+        return SqlDialect.forConfig(CFG);
+    }
+
+    /**
+     * Apply pending schema migrations (see {@link Migrator}). Applied versions are recorded in
+     * schema_version, so on an up-to-date database this is a single query.
+     */
     public static void migrate() throws SQLException {
-        try (Connection conn = getConnection(); Statement st = conn.createStatement()) {
-            // Inventory items table (legacy flat items for current UI)
-            st.execute("""
-                CREATE TABLE IF NOT EXISTS inventory_items (
-                  id INT AUTO_INCREMENT PRIMARY KEY,
-                  name VARCHAR(255) NOT NULL UNIQUE,
-                  category VARCHAR(100),
-                  batch VARCHAR(100),
-                  quantity INT NOT NULL DEFAULT 0,
-                  price DECIMAL(10,2) NOT NULL DEFAULT 0.00,
-                  expiry DATE NULL,
-                  supplier VARCHAR(255),
-                  reorder_level INT NOT NULL DEFAULT 0,
-                  created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
-                )
-                """);
-
-            // Core Phase 1 schema
-
-            // Suppliers
-            st.execute("""
-                CREATE TABLE IF NOT EXISTS suppliers (
-                  id INT AUTO_INCREMENT PRIMARY KEY,
-                  name VARCHAR(255) NOT NULL,
-                  phone VARCHAR(50),
-                  email VARCHAR(255),
-                  address VARCHAR(500),
-                  created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
-                )
-                """);
-
-            // Items master (normalized). If not present, derive from inventory_items when we migrate data later.
-            st.execute("""
-                CREATE TABLE IF NOT EXISTS items (
-                  id INT AUTO_INCREMENT PRIMARY KEY,
-                  name VARCHAR(255) NOT NULL,
-                  generic_name VARCHAR(255),
-                  category_id INT NULL,
-                  barcode VARCHAR(100),
-                  dosage_form VARCHAR(100),
-                  strength VARCHAR(100),
-                  tax_rate_id INT NULL,
-                  reorder_level INT NOT NULL DEFAULT 0,
-                  created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
-                )
-                """);
-
-            // Item batches
-            st.execute("""
-                CREATE TABLE IF NOT EXISTS item_batches (
-                  id INT AUTO_INCREMENT PRIMARY KEY,
-                  item_id INT NOT NULL,
-                  batch_no VARCHAR(100),
-                  expiry_date DATE NULL,
-                  qty_on_hand INT NOT NULL DEFAULT 0,
-                  purchase_price DECIMAL(10,2) NOT NULL DEFAULT 0.00,
-                  sell_price DECIMAL(10,2) NOT NULL DEFAULT 0.00,
-                  location VARCHAR(100),
-                  created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                  CONSTRAINT fk_item_batches_item FOREIGN KEY (item_id) REFERENCES items(id) ON DELETE CASCADE,
-                  INDEX idx_item_batches_item_exp (item_id, expiry_date),
-                  INDEX idx_item_batches_batch (batch_no)
-                )
-                """);
-
-            // Purchase orders
-            st.execute("""
-                CREATE TABLE IF NOT EXISTS purchase_orders (
-                  id INT AUTO_INCREMENT PRIMARY KEY,
-                  supplier_id INT NOT NULL,
-                  status VARCHAR(30) NOT NULL DEFAULT 'DRAFT',
-                  ordered_at DATETIME NULL,
-                  expected_at DATETIME NULL,
-                  created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                  CONSTRAINT fk_po_supplier FOREIGN KEY (supplier_id) REFERENCES suppliers(id)
-                )
-                """);
-
-            st.execute("""
-                CREATE TABLE IF NOT EXISTS purchase_order_items (
-                  id INT AUTO_INCREMENT PRIMARY KEY,
-                  po_id INT NOT NULL,
-                  item_id INT NOT NULL,
-                  qty INT NOT NULL,
-                  price DECIMAL(10,2) NOT NULL DEFAULT 0.00,
-                  CONSTRAINT fk_poi_po FOREIGN KEY (po_id) REFERENCES purchase_orders(id) ON DELETE CASCADE,
-                  CONSTRAINT fk_poi_item FOREIGN KEY (item_id) REFERENCES items(id) ON DELETE RESTRICT
-                )
-                """);
-
-            // Goods receipts
-            st.execute("""
-                CREATE TABLE IF NOT EXISTS goods_receipts (
-                  id INT AUTO_INCREMENT PRIMARY KEY,
-                  po_id INT NOT NULL,
-                  received_at DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
-                  user_id INT NULL,
-                  CONSTRAINT fk_grn_po FOREIGN KEY (po_id) REFERENCES purchase_orders(id) ON DELETE CASCADE
-                )
-                """);
-
-            // Inventory movements (audit-friendly)
-            st.execute("""
-                CREATE TABLE IF NOT EXISTS inventory_movements (
-                  id INT AUTO_INCREMENT PRIMARY KEY,
-                  item_batch_id INT NOT NULL,
-                  qty INT NOT NULL,
-                  movement_type VARCHAR(20) NOT NULL, -- SALE, GRN, ADJUST, RETURN
-                  ref_type VARCHAR(50),
-                  ref_id INT NULL,
-                  created_at DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
-                  user_id INT NULL,
-                  CONSTRAINT fk_inv_mov_batch FOREIGN KEY (item_batch_id) REFERENCES item_batches(id) ON DELETE RESTRICT,
-                  INDEX idx_inv_mov_batch (item_batch_id),
-                  INDEX idx_inv_mov_type (movement_type, created_at)
-                )
-                """);
-
-            // RBAC, Customers, Settings
-            st.execute("""
-                CREATE TABLE IF NOT EXISTS users (
-                  id INT AUTO_INCREMENT PRIMARY KEY,
-                  username VARCHAR(100) NOT NULL UNIQUE,
-                  password_hash VARCHAR(255) NOT NULL,
-                  display_name VARCHAR(255),
-                  active TINYINT(1) NOT NULL DEFAULT 1,
-                  created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
-                )
-                """);
-            st.execute("""
-                CREATE TABLE IF NOT EXISTS roles (
-                  id INT AUTO_INCREMENT PRIMARY KEY,
-                  name VARCHAR(100) NOT NULL UNIQUE
-                )
-                """);
-            st.execute("""
-                CREATE TABLE IF NOT EXISTS user_roles (
-                  user_id INT NOT NULL,
-                  role_id INT NOT NULL,
-                  PRIMARY KEY (user_id, role_id),
-                  CONSTRAINT fk_user_roles_user FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE,
-                  CONSTRAINT fk_user_roles_role FOREIGN KEY (role_id) REFERENCES roles(id) ON DELETE CASCADE
-                )
-                """);
-            st.execute("""
-                CREATE TABLE IF NOT EXISTS permissions (
-                  id INT AUTO_INCREMENT PRIMARY KEY,
-                  name VARCHAR(150) NOT NULL UNIQUE
-                )
-                """);
-            st.execute("""
-                CREATE TABLE IF NOT EXISTS audit_logs (
-                  id INT AUTO_INCREMENT PRIMARY KEY,
-                  user_id INT NULL,
-                  action VARCHAR(50) NOT NULL,
-                  entity VARCHAR(100) NOT NULL,
-                  entity_id VARCHAR(100) NULL,
-                  details TEXT,
-                  created_at DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
-                  CONSTRAINT fk_audit_user FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE SET NULL
-                )
-                """);
-            st.execute("""
-                CREATE TABLE IF NOT EXISTS customers (
-                  id INT AUTO_INCREMENT PRIMARY KEY,
-                  name VARCHAR(255) NOT NULL,
-                  phone VARCHAR(50),
-                  dob DATE NULL,
-                  address VARCHAR(500),
-                  created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
-                )
-                """);
-            st.execute("""
-                CREATE TABLE IF NOT EXISTS settings (
-                  id INT AUTO_INCREMENT PRIMARY KEY,
-                  k VARCHAR(100) NOT NULL UNIQUE,
-                  v VARCHAR(1000)
-                )
-                """);
-
-            // Sales (existing minimal POS schema)
-            st.execute("""
-                CREATE TABLE IF NOT EXISTS sales (
-                  id INT AUTO_INCREMENT PRIMARY KEY,
-                  customer VARCHAR(255),
-                  sale_date DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
-                  subtotal DECIMAL(10,2) NOT NULL DEFAULT 0.00,
-                  discount_pct DECIMAL(5,2) NOT NULL DEFAULT 0.00,
-                  tax_pct DECIMAL(5,2) NOT NULL DEFAULT 0.00,
-                  grand_total DECIMAL(10,2) NOT NULL DEFAULT 0.00
-                )
-                """);
-
-            st.execute("""
-                CREATE TABLE IF NOT EXISTS sale_items (
-                  id INT AUTO_INCREMENT PRIMARY KEY,
-                  sale_id INT NOT NULL,
-                  item_name VARCHAR(255) NOT NULL,
-                  qty INT NOT NULL DEFAULT 1,
-                  unit_price DECIMAL(10,2) NOT NULL DEFAULT 0.00,
-                  line_total DECIMAL(10,2) NOT NULL DEFAULT 0.00,
-                  CONSTRAINT fk_sale_items_sales FOREIGN KEY (sale_id) REFERENCES sales(id) ON DELETE CASCADE
-                )
-                """);
-
-            // Seed normalized items from legacy inventory_items (idempotent)
-            st.execute("""
-                INSERT INTO items (name, reorder_level)
-                SELECT ii.name, MAX(ii.reorder_level)
-                FROM inventory_items ii
-                LEFT JOIN items i ON i.name = ii.name
-                WHERE i.id IS NULL
-                  AND ii.name IS NOT NULL AND ii.name <> ''
-                GROUP BY ii.name
-                """);
-
-            // Seed item_batches from legacy inventory rows where missing (idempotent)
-            st.execute("""
-                INSERT INTO item_batches (item_id, batch_no, expiry_date, qty_on_hand, purchase_price, sell_price, location)
-                SELECT i.id,
-                       NULLIF(ii.batch, ''),
-                       ii.expiry,
-                       ii.quantity,
-                       0.00,
-                       ii.price,
-                       NULL
-                FROM inventory_items ii
-                JOIN items i ON i.name = ii.name
-                LEFT JOIN item_batches b
-                  ON b.item_id = i.id
-                 AND (
-                      (b.batch_no IS NULL AND (ii.batch IS NULL OR ii.batch = ''))
-                      OR b.batch_no = ii.batch
-                 )
-                WHERE b.id IS NULL
-                  AND ii.quantity > 0
-                """);
+        Migrator migrator = new Migrator()
+            .add(Migration.code(1, "baseline schema", Schema.baselineChecksumSource(), Schema::create))
+            .add(Migration.sql(2, "seed items and batches from inventory_items",
+                legacyItemsSql(""), legacyBatchesSql("")))
+            .add(Migration.code(3, "default roles and admin user", "roles ADMIN,PHARMACIST,ACCOUNTANT; user admin",
+                (c, dialect) -> seedAdminUser(c)))
+            .add(Migration.sql(4, "replica heartbeat",
+                "CREATE TABLE IF NOT EXISTS replica_heartbeat (id INT NOT NULL PRIMARY KEY, beat_ms BIGINT NOT NULL)"))
+            .add(Migration.code(5, "held sales", HELD_SALES_DDL + HELD_SALES_INDEX,
+                (c, dialect) -> {
+                    try (Statement st = c.createStatement()) {
+                        st.execute(dialect.ddl(HELD_SALES_DDL));
+                    }
+                    Schema.createIndex(c, dialect, HELD_SALES_INDEX);
+                }))
+            .add(Migration.sql(6, "sales client reference",
+                "ALTER TABLE sales ADD COLUMN client_ref VARCHAR(64) NULL",
+                "CREATE UNIQUE INDEX uq_sales_client_ref ON sales (client_ref)"))
+            .add(Migration.sql(7, "id sequences",
+                "CREATE TABLE IF NOT EXISTS id_sequences (name VARCHAR(64) NOT NULL PRIMARY KEY, next_id BIGINT NOT NULL)",
+                "INSERT INTO id_sequences (name, next_id) SELECT 'sales', COALESCE(MAX(id), 0) + 1 FROM sales",
+                "INSERT INTO id_sequences (name, next_id) SELECT 'sale_items', COALESCE(MAX(id), 0) + 1 FROM sale_items"))
+            .add(Migration.code(8, "sale line item keys and normalized names",
+                NAME_NORM_COLUMN + ITEM_KEY_INDEXES + BACKFILL_ITEM_SQL + BACKFILL_BATCH_SQL, Database::migrateItemKeys))
+            .add(Migration.code(9, "inventory sort indexes", INVENTORY_SORT_INDEXES + "; desc " + INVENTORY_SORT_INDEXES_DESC,
+                (c, dialect) -> {
+                    for (Schema.Index idx : INVENTORY_SORT_INDEXES) Schema.createIndex(c, dialect, idx);
+                    if (dialect.scansIndexBackward()) return;
+                    for (Schema.Index idx : INVENTORY_SORT_INDEXES_DESC) Schema.createIndex(c, dialect, idx);
+                }))
+            .add(Migration.code(10, "inventory text search", SEARCH_INDEXES.toString(), Database::createSearchIndexes))
+            .add(Migration.code(11, "catalog version row", "settings catalog.version",
+                (c, dialect) -> CatalogCache.createVersionRow(c)))
+            .add(Migration.sql(12, "stock shortfalls", STOCK_SHORTFALLS_DDL))
+            .add(Migration.sql(13, "stock changes without movements", STOCK_CHANGES_DDL))
+            .addIf(CFG.isDemoSeedEnabled(), Migration.code(1000, "demo data", "5 inventory items, 1 sale",
+                (c, dialect) -> seedDemoData(c)));
+        try (Connection conn = getConnection()) {
+            migrator.migrate(conn, dialect());
         }
     }
 
-    private static void seedDemoData() throws SQLException {
-        try (Connection c = getConnection();
-             Statement st = c.createStatement()) {
+    /**
+     * Mirror one legacy inventory_items row into items/item_batches when its name or batch is new.
+     * Inventory edits call this so the normalized tables stay in step without re-running the
+     * full legacy seed on every start.
+     */
+    public static void syncLegacyItem(Connection c, int inventoryItemId) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(legacyItemsSql(" AND ii.id = ?"))) {
+            ps.setInt(1, inventoryItemId);
+            ps.executeUpdate();
+        }
+        try (PreparedStatement ps = c.prepareStatement(legacyBatchesSql(" AND ii.id = ?"))) {
+            ps.setInt(1, inventoryItemId);
+            ps.executeUpdate();
+        }
+    }
+
+    // Parked POS carts, one row per basket; lines_data holds the lines (see HeldSaleRepository)
+    private static final String HELD_SALES_DDL = """
+        CREATE TABLE IF NOT EXISTS held_sales (
+          id ${pk},
+          terminal VARCHAR(100) NOT NULL,
+          customer VARCHAR(255),
+          discount_pct DECIMAL(5,2) NOT NULL DEFAULT 0.00,
+          tax_pct DECIMAL(5,2) NOT NULL DEFAULT 0.00,
+          item_count INT NOT NULL DEFAULT 0,
+          subtotal DECIMAL(10,2) NOT NULL DEFAULT 0.00,
+          lines_data TEXT NOT NULL,
+          held_by VARCHAR(100),
+          held_at ${datetime} NOT NULL,
+          expires_at ${datetime} NOT NULL
+        )
+        """;
+    private static final Schema.Index HELD_SALES_INDEX =
+        new Schema.Index("idx_held_sales_terminal", "held_sales", "terminal, expires_at");
+
+    // Items whose stock changed without a movement (no batches), for catalog refresh (see CatalogCache)
+    private static final String STOCK_CHANGES_DDL = """
+        CREATE TABLE IF NOT EXISTS stock_changes (
+          id ${pk},
+          name_norm VARCHAR(255) NOT NULL,
+          created_at ${datetime} NOT NULL DEFAULT CURRENT_TIMESTAMP
+        )
+        """;
+
+    // Units a replayed offline sale could not take from stock (see SaleRepository#replay)
+    private static final String STOCK_SHORTFALLS_DDL = """
+        CREATE TABLE IF NOT EXISTS stock_shortfalls (
+          id ${pk},
+          sale_id INT NOT NULL,
+          item_name VARCHAR(255) NOT NULL,
+          qty INT NOT NULL,
+          created_at ${datetime} NOT NULL DEFAULT CURRENT_TIMESTAMP
+        )
+        """;
+
+    // Lookup key for item names, generated so that no writer has to maintain it
+    private static final String NAME_NORM_COLUMN = "name_norm VARCHAR(255) GENERATED ALWAYS AS (LOWER(TRIM(name)))${stored}";
+    private static final List<Schema.Index> ITEM_KEY_INDEXES = List.of(
+        new Schema.Index("idx_items_name_norm", "items", "name_norm"),
+        new Schema.Index("idx_inventory_items_name_norm", "inventory_items", "name_norm"),
+        new Schema.Index("idx_sale_items_item", "sale_items", "item_id, sale_id"),
+        new Schema.Index("idx_sale_items_batch", "sale_items", "item_batch_id"),
+        new Schema.Index("idx_inv_mov_ref", "inventory_movements", "ref_type, ref_id"));
+    // Existing sale lines: the item by name; the batch only when the sale took that item from one
+    private static final String BACKFILL_ITEM_SQL =
+        "UPDATE sale_items SET item_id = (SELECT MIN(i.id) FROM items i WHERE i.name_norm = LOWER(TRIM(sale_items.item_name))) "
+            + "WHERE item_id IS NULL AND id >= ? AND id < ?";
+    private static final String BACKFILL_BATCH_SQL =
+        "UPDATE sale_items SET item_batch_id = (SELECT MIN(m.item_batch_id) FROM inventory_movements m "
+            + "JOIN item_batches b ON b.id = m.item_batch_id "
+            + "WHERE m.ref_type = 'SALE' AND m.ref_id = sale_items.sale_id AND b.item_id = sale_items.item_id "
+            + "HAVING COUNT(DISTINCT m.item_batch_id) = 1) "
+            + "WHERE item_batch_id IS NULL AND item_id IS NOT NULL AND id >= ? AND id < ?";
+    private static final int BACKFILL_CHUNK = 5_000;
+
+    // One per sortable inventory column: keyset pages seek on (column, id) (see InventoryPageQuery)
+    private static final List<Schema.Index> INVENTORY_SORT_INDEXES = List.of(
+        new Schema.Index("idx_inventory_items_category", "inventory_items", "category, id"),
+        new Schema.Index("idx_inventory_items_quantity", "inventory_items", "quantity, id"),
+        new Schema.Index("idx_inventory_items_price", "inventory_items", "price, id"),
+        new Schema.Index("idx_inventory_items_expiry", "inventory_items", "expiry, id"),
+        new Schema.Index("idx_inventory_items_supplier", "inventory_items", "supplier, id"));
+    // The same read descending, for databases that cannot scan the ones above backwards (H2)
+    private static final List<Schema.Index> INVENTORY_SORT_INDEXES_DESC = List.of(
+        new Schema.Index("idx_inventory_items_id_desc", "inventory_items", "id DESC"),
+        new Schema.Index("idx_inventory_items_name_desc", "inventory_items", "name DESC"),
+        new Schema.Index("idx_inventory_items_category_desc", "inventory_items", "category DESC, id DESC"),
+        new Schema.Index("idx_inventory_items_quantity_desc", "inventory_items", "quantity DESC, id DESC"),
+        new Schema.Index("idx_inventory_items_price_desc", "inventory_items", "price DESC, id DESC"),
+        new Schema.Index("idx_inventory_items_expiry_desc", "inventory_items", "expiry DESC, id DESC"),
+        new Schema.Index("idx_inventory_items_supplier_desc", "inventory_items", "supplier DESC, id DESC"));
+
+    // Text searched by InventorySearch: a FULLTEXT column list on MySQL, a pg_trgm expression on Postgres
+    private record SearchIndex(String name, String table, String fullText, String trigram) {}
+    private static final List<SearchIndex> SEARCH_INDEXES = List.of(
+        new SearchIndex(InventorySearch.INVENTORY_INDEX, "inventory_items",
+            InventorySearch.INVENTORY_FULLTEXT, InventorySearch.INVENTORY_TRIGRAM),
+        new SearchIndex(InventorySearch.ITEMS_INDEX, "items", InventorySearch.ITEMS_FULLTEXT, InventorySearch.ITEMS_TRIGRAM),
+        new SearchIndex(InventorySearch.BATCHES_INDEX, "item_batches",
+            InventorySearch.BATCHES_FULLTEXT, InventorySearch.BATCHES_TRIGRAM));
+
+    /**
+     * Text indexes for inventory search. H2 has none and searches with LIKE. On Postgres they
+     * need the pg_trgm extension; when it cannot be installed (no privilege, not available) the
+     * indexes are skipped with a warning and search falls back to LIKE as well.
+     */
+    private static void createSearchIndexes(Connection c, SqlDialect dialect) throws SQLException {
+        if (dialect == SqlDialect.H2) return;
+        if (dialect == SqlDialect.POSTGRES) {
+            Savepoint sp = c.setSavepoint();
+            try (Statement st = c.createStatement()) {
+                st.execute("CREATE EXTENSION IF NOT EXISTS pg_trgm");
+            } catch (SQLException ex) {
+                c.rollback(sp);
+                LOG.log(System.Logger.Level.WARNING, "pg_trgm is not available (" + ex.getMessage()
+                    + "); inventory search will not use an index");
+                return;
+            }
+        }
+        try (Statement st = c.createStatement()) {
+            for (SearchIndex idx : SEARCH_INDEXES) {
+                if (dialect == SqlDialect.MYSQL) {
+                    if (!Schema.indexExists(c, idx.table(), idx.name())) {
+                        st.execute("CREATE FULLTEXT INDEX " + idx.name() + " ON " + idx.table() + " (" + idx.fullText() + ")");
+                    }
+                } else {
+                    st.execute("CREATE INDEX IF NOT EXISTS " + idx.name() + " ON " + idx.table()
+                        + " USING gin ((" + idx.trigram() + ") gin_trgm_ops)");
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds {@code name_norm} to items and inventory_items, and item_id / item_batch_id to
+     * sale_items, then backfills the existing lines in chunks of ids, one transaction each, so
+     * a long sales history never holds locks for the whole run. Safe to re-run after a failure:
+     * existing columns are kept and finished rows are skipped.
+     */
+    private static void migrateItemKeys(Connection c, SqlDialect dialect) throws SQLException {
+        try (Statement st = c.createStatement()) {
+            for (String table : List.of("items", "inventory_items")) {
+                if (!Schema.columnExists(c, table, "name_norm")) {
+                    st.execute(dialect.ddl("ALTER TABLE " + table + " ADD COLUMN " + NAME_NORM_COLUMN));
+                }
+            }
+            if (!Schema.columnExists(c, "sale_items", "item_id")) {
+                st.execute("ALTER TABLE sale_items ADD COLUMN item_id INT NULL");
+            }
+            if (!Schema.columnExists(c, "sale_items", "item_batch_id")) {
+                st.execute("ALTER TABLE sale_items ADD COLUMN item_batch_id INT NULL");
+            }
+            // Sale history outlives catalog clean-ups: the line keeps its name
+            if (!Schema.foreignKeyExists(c, "sale_items", "fk_sale_items_item")) {
+                st.execute("ALTER TABLE sale_items ADD CONSTRAINT fk_sale_items_item "
+                    + "FOREIGN KEY (item_id) REFERENCES items(id) ON DELETE SET NULL");
+            }
+            if (!Schema.foreignKeyExists(c, "sale_items", "fk_sale_items_batch")) {
+                st.execute("ALTER TABLE sale_items ADD CONSTRAINT fk_sale_items_batch "
+                    + "FOREIGN KEY (item_batch_id) REFERENCES item_batches(id) ON DELETE SET NULL");
+            }
+        }
+        for (Schema.Index idx : ITEM_KEY_INDEXES) Schema.createIndex(c, dialect, idx);
+        c.commit();
+
+        long from;
+        long to;
+        try (Statement st = c.createStatement();
+             java.sql.ResultSet rs = st.executeQuery("SELECT MIN(id), MAX(id) FROM sale_items WHERE item_id IS NULL")) {
+            rs.next();
+            from = rs.getLong(1);
+            to = rs.getLong(2);
+            if (rs.wasNull()) return;
+        }
+        try (PreparedStatement items = c.prepareStatement(BACKFILL_ITEM_SQL);
+             PreparedStatement batches = c.prepareStatement(BACKFILL_BATCH_SQL)) {
+            for (long lo = from; lo <= to; lo += BACKFILL_CHUNK) {
+                for (PreparedStatement ps : List.of(items, batches)) {
+                    ps.setLong(1, lo);
+                    ps.setLong(2, lo + BACKFILL_CHUNK);
+                    ps.executeUpdate();
+                }
+                c.commit();
+            }
+        }
+    }
+
+    // Seed normalized items from legacy inventory_items (anti-join, so idempotent)
+    private static String legacyItemsSql(String filter) {
+        return """
+            INSERT INTO items (name, reorder_level)
+            SELECT ii.name, MAX(ii.reorder_level)
+            FROM inventory_items ii
+            LEFT JOIN items i ON i.name = ii.name
+            WHERE i.id IS NULL
+              AND ii.name IS NOT NULL AND ii.name <> ''%s
+            GROUP BY ii.name
+            """.formatted(filter);
+    }
+
+    // Seed item_batches from legacy inventory rows where missing (anti-join, so idempotent)
+    private static String legacyBatchesSql(String filter) {
+        return """
+            INSERT INTO item_batches (item_id, batch_no, expiry_date, qty_on_hand, purchase_price, sell_price, location)
+            SELECT i.id,
+                   NULLIF(ii.batch, ''),
+                   ii.expiry,
+                   ii.quantity,
+                   0.00,
+                   ii.price,
+                   NULL
+            FROM inventory_items ii
+            JOIN items i ON i.name = ii.name
+            LEFT JOIN item_batches b
+              ON b.item_id = i.id
+             AND (
+                  (b.batch_no IS NULL AND (ii.batch IS NULL OR ii.batch = ''))
+                  OR b.batch_no = ii.batch
+             )
+            WHERE b.id IS NULL
+              AND ii.quantity > 0%s
+            """.formatted(filter);
+    }
+
+    private static void seedDemoData(Connection c) throws SQLException {
+        try (Statement st = c.createStatement()) {
             boolean hasData = false;
             try (PreparedStatement ps = c.prepareStatement("SELECT COUNT(*) FROM inventory_items");
                  java.sql.ResultSet rs = ps.executeQuery()) {
@@ -365,37 +592,60 @@ public final class Database {
                 }
 
                 // After inserting into legacy table, seed normalized items and batches (idempotent)
-                st.execute("""
-                    INSERT INTO items (name, reorder_level)
-                    SELECT ii.name, MAX(ii.reorder_level)
-                    FROM inventory_items ii
-                    LEFT JOIN items i ON i.name = ii.name
-                    WHERE i.id IS NULL
-                      AND ii.name IS NOT NULL AND ii.name <> ''
-                    GROUP BY ii.name
-                    """);
-                st.execute("""
-                    INSERT INTO item_batches (item_id, batch_no, expiry_date, qty_on_hand, purchase_price, sell_price, location)
-                    SELECT i.id,
-                           NULLIF(ii.batch, ''),
-                           ii.expiry,
-                           ii.quantity,
-                           0.00,
-                           ii.price,
-                           NULL
-                    FROM inventory_items ii
-                    JOIN items i ON i.name = ii.name
-                    LEFT JOIN item_batches b
-                      ON b.item_id = i.id
-                     AND (
-                          (b.batch_no IS NULL AND (ii.batch IS NULL OR ii.batch = ''))
-                          OR b.batch_no = ii.batch
-                     )
-                    WHERE b.id IS NULL
-                      AND ii.quantity > 0
-                    """);
+                st.execute(legacyItemsSql(""));
+                st.execute(legacyBatchesSql(""));
             }
 
+            // Seed a sample sale if none exists
+            boolean hasSales = false;
+            try (PreparedStatement ps = c.prepareStatement("SELECT COUNT(*) FROM sales");
+                 java.sql.ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) hasSales = rs.getInt(1) > 0;
+            }
+            if (!hasSales) {
+                // Ids from id_sequences, like POS sales (see IdAllocator)
+                int saleId = Math.toIntExact(IdAllocator.reserve(c, IdAllocator.SALES, 1));
+                int lineId = Math.toIntExact(IdAllocator.reserve(c, IdAllocator.SALE_ITEMS, 2));
+                try (PreparedStatement ps = c.prepareStatement(
+                        "INSERT INTO sales (id, customer, subtotal, discount_pct, tax_pct, grand_total) VALUES (?,?,?,?,?,?)")) {
+                    double sub = 3 * 1.50 + 2 * 1.30;
+                    ps.setInt(1, saleId);
+                    ps.setString(2, "Walk-in");
+                    ps.setDouble(3, sub);
+                    ps.setDouble(4, 0.0);
+                    ps.setDouble(5, 0.0);
+                    ps.setDouble(6, sub);
+                    ps.executeUpdate();
+                }
+                try (PreparedStatement ps = c.prepareStatement(
+                        "INSERT INTO sale_items (id, sale_id, item_name, qty, unit_price, line_total, item_id) "
+                            + "VALUES (?,?,?,?,?,?,(SELECT MIN(id) FROM items WHERE name_norm = LOWER(?)))")) {
+                    ps.setInt(1, lineId);
+                    ps.setInt(2, saleId);
+                    ps.setString(3, "Paracetamol 500mg");
+                    ps.setInt(4, 3);
+                    ps.setDouble(5, 1.50);
+                    ps.setDouble(6, 4.50);
+                    ps.setString(7, "Paracetamol 500mg");
+                    ps.addBatch();
+
+                    ps.setInt(1, lineId + 1);
+                    ps.setInt(2, saleId);
+                    ps.setString(3, "Cetirizine 10mg");
+                    ps.setInt(4, 2);
+                    ps.setDouble(5, 1.30);
+                    ps.setDouble(6, 2.60);
+                    ps.setString(7, "Cetirizine 10mg");
+                    ps.addBatch();
+
+                    ps.executeBatch();
+                }
+            }
+        }
+    }
+
+    private static void seedAdminUser(Connection c) throws SQLException {
+        try (Statement st = c.createStatement()) {
             // Seed RBAC admin user/roles if none exist
             boolean hasUsers = false;
             try (PreparedStatement ps = c.prepareStatement("SELECT COUNT(*) FROM users");
@@ -433,50 +683,6 @@ public final class Database {
                     }
                 }
             }
-
-            // Seed a sample sale if none exists
-            boolean hasSales = false;
-            try (PreparedStatement ps = c.prepareStatement("SELECT COUNT(*) FROM sales");
-                 java.sql.ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) hasSales = rs.getInt(1) > 0;
-            }
-            if (!hasSales) {
-                int saleId = 0;
-                try (PreparedStatement ps = c.prepareStatement(
-                        "INSERT INTO sales (customer, subtotal, discount_pct, tax_pct, grand_total) VALUES (?,?,?,?,?)",
-                        Statement.RETURN_GENERATED_KEYS)) {
-                    double sub = 3 * 1.50 + 2 * 1.30;
-                    ps.setString(1, "Walk-in");
-                    ps.setDouble(2, sub);
-                    ps.setDouble(3, 0.0);
-                    ps.setDouble(4, 0.0);
-                    ps.setDouble(5, sub);
-                    ps.executeUpdate();
-                    try (java.sql.ResultSet keys = ps.getGeneratedKeys()) {
-                        if (keys.next()) saleId = keys.getInt(1);
-                    }
-                }
-                if (saleId > 0) {
-                    try (PreparedStatement ps = c.prepareStatement(
-                            "INSERT INTO sale_items (sale_id, item_name, qty, unit_price, line_total) VALUES (?,?,?,?,?)")) {
-                        ps.setInt(1, saleId);
-                        ps.setString(2, "Paracetamol 500mg");
-                        ps.setInt(3, 3);
-                        ps.setDouble(4, 1.50);
-                        ps.setDouble(5, 4.50);
-                        ps.addBatch();
-
-                        ps.setInt(1, saleId);
-                        ps.setString(2, "Cetirizine 10mg");
-                        ps.setInt(3, 2);
-                        ps.setDouble(4, 1.30);
-                        ps.setDouble(5, 2.60);
-                        ps.addBatch();
-
-                        ps.executeBatch();
-                    }
-                }
-            }
         }
     }
 
@@ -1,10 +1,12 @@
 package com.example;
 
+import javafx.animation.Animation;
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
 import javafx.beans.binding.Bindings;
 import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
-import javafx.collections.transformation.FilteredList;
-import javafx.collections.transformation.SortedList;
 import javafx.fxml.FXML;
 import javafx.scene.control.ComboBox;
 import javafx.scene.control.DatePicker;
@@ -21,15 +23,26 @@ import javafx.scene.control.ButtonBar;
 import javafx.scene.control.ButtonType;
 import javafx.scene.control.Dialog;
 import javafx.scene.control.DialogPane;
+import javafx.scene.control.IndexedCell;
+import javafx.scene.control.skin.VirtualFlow;
+import javafx.util.Duration;
+
+import com.example.repository.CatalogCache;
+import com.example.repository.ItemNameIndex;
+import com.example.util.AppConfig;
 
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.function.Predicate;
 
-public class InventoryController {
+public class InventoryController implements ViewLifecycle {
 
     // Top Bar
     @FXML private TextField filterField;
@@ -67,13 +80,26 @@ public class InventoryController {
 
     @FXML private Label totalItems;
 
-    private final ObservableList<InventoryItem> masterData = FXCollections.observableArrayList();
     private final ObservableList<InventoryBatchRow> batchData = FXCollections.observableArrayList();
-    private FilteredList<InventoryItem> filtered;
-    private SortedList<InventoryItem> sorted;
 
     private final AtomicInteger idSequence = new AtomicInteger(1000);
 
+    // Background DB work: reads are cancelled when navigating away, writes always complete
+    private final ViewTasks tasks = new ViewTasks();
+    private final ViewTasks writes = new ViewTasks();
+    private boolean staleOnShow;
+
+    // Rows are paged in from the database as the table scrolls; sort and search are part of the query
+    private final PagedList<InventoryItem> pages = new PagedList<>(tasks, "inventory",
+        AppConfig.get().getInventoryPageSize(), AppConfig.get().getInventoryPrefetchPages(),
+        err -> setStatus("Failed to load inventory: " + err.getMessage(), true));
+    private final Map<TableColumn<InventoryItem, ?>, InventoryPageQuery.Sort> sortColumns = new HashMap<>();
+    private InventoryPageQuery query = InventoryPageQuery.initial();
+    private boolean columnSorted;
+    private String search = "";
+    private final PauseTransition searchDelay = new PauseTransition(Duration.millis(AppConfig.get().getInventorySearchDebounceMs()));
+    private boolean visibleRowsQueued;
+
     @FXML
     private void initialize() {
         // Categories loaded on-demand in the popup dialog
@@ -89,14 +115,33 @@ public class InventoryController {
         colSupplier.setCellValueFactory(new PropertyValueFactory<>("supplier"));
         colReorder.setCellValueFactory(new PropertyValueFactory<>("reorderLevel"));
 
+        // Sorting runs in the database, on indexed columns only
+        sortColumns.put(colId, InventoryPageQuery.Sort.ID);
+        sortColumns.put(colName, InventoryPageQuery.Sort.NAME);
+        sortColumns.put(colCategory, InventoryPageQuery.Sort.CATEGORY);
+        sortColumns.put(colQty, InventoryPageQuery.Sort.QUANTITY);
+        sortColumns.put(colPrice, InventoryPageQuery.Sort.PRICE);
+        sortColumns.put(colExpiry, InventoryPageQuery.Sort.EXPIRY);
+        sortColumns.put(colSupplier, InventoryPageQuery.Sort.SUPPLIER);
+        colBatch.setSortable(false);
+        colReorder.setSortable(false);
+        table.setSortPolicy(tv -> {
+            applySort();
+            return true;
+        });
+
         // Load data from database
+        table.setItems(pages);
         loadInventoryFromDb();
 
-        // Filtering + sorting
-        filtered = new FilteredList<>(masterData, item -> true);
-        sorted = new SortedList<>(filtered);
-        sorted.comparatorProperty().bind(table.comparatorProperty());
-        table.setItems(sorted);
+        // Tell the pages which rows are on screen
+        table.skinProperty().addListener((obs, oldSkin, skin) -> {
+            if (skin != null && table.lookup(".virtual-flow") instanceof VirtualFlow<?> flow) {
+                flow.positionProperty().addListener((o, a, b) -> queueVisibleRows(flow));
+                flow.heightProperty().addListener((o, a, b) -> queueVisibleRows(flow));
+                pages.addListener((ListChangeListener<InventoryItem>) c -> queueVisibleRows(flow));
+            }
+        });
 
         // Batch table setup
         if (batchTable != null) {
@@ -133,7 +178,8 @@ public class InventoryController {
         table.getSelectionModel().selectedItemProperty().addListener((obs, oldSel, newSel) -> loadBatchesFor(newSel));
 
         // Table UX: placeholder, row highlighting, quantity badge
-        table.setPlaceholder(new Label("No inventory items."));
+        table.placeholderProperty().bind(Bindings.when(tasks.loadingProperty())
+            .then(new Label("Loading inventory...")).otherwise(new Label("No inventory items.")));
         table.setRowFactory(tv -> new TableRow<InventoryItem>() {
             @Override
             protected void updateItem(InventoryItem item, boolean empty) {
@@ -182,22 +228,16 @@ public class InventoryController {
         if (reorderField != null) reorderField.setTextFormatter(integerFormatter());
         if (priceField != null) priceField.setTextFormatter(decimalFormatter());
 
-        // Filter binding
-        filterField.textProperty().addListener((obs, old, val) -> {
-            Predicate<InventoryItem> predicate = item -> {
-                if (val == null || val.isBlank()) return true;
-                String q = val.toLowerCase();
-                return (item.getName() != null && item.getName().toLowerCase().contains(q))
-                    || (item.getCategory() != null && item.getCategory().toLowerCase().contains(q))
-                    || (item.getBatch() != null && item.getBatch().toLowerCase().contains(q))
-                    || (item.getSupplier() != null && item.getSupplier().toLowerCase().contains(q));
-            };
-            filtered.setPredicate(predicate);
-            updateTotals();
+        // Search runs in the database once typing pauses; Enter searches at once
+        searchDelay.setOnFinished(e -> applySearch());
+        filterField.textProperty().addListener((obs, old, val) -> searchDelay.playFromStart());
+        filterField.setOnAction(e -> {
+            searchDelay.stop();
+            applySearch();
         });
 
         // Update totals when list changes
-        totalItems.textProperty().bind(Bindings.size(filtered).asString());
+        totalItems.textProperty().bind(Bindings.size(pages).asString());
 
         updateTotals();
     }
@@ -240,38 +280,38 @@ public class InventoryController {
             String supplierStr = supplier != null ? supplier : "";
             if (selected != null) {
                 // Update existing using DB
-                updateInventoryItem(selected.getId(), name, category, batchStr, qty, price, expiryStr, supplierStr, reorderVal);
-                selected.setName(name);
-                selected.setBatch(batchStr);
-                selected.setCategory(category);
-                selected.setQuantity(qty);
-                selected.setPrice(price);
-                selected.setExpiry(expiryStr);
-                selected.setSupplier(supplierStr);
-                selected.setReorderLevel(reorderVal);
-                table.refresh();
-                setStatus("Item updated.", false);
-                ensureCategoryInBox(category);
+                final int qtyVal = qty;
+                final double priceVal = price;
+                writes.load(() -> {
+                    updateInventoryItem(selected.getId(), name, category, batchStr, qtyVal, priceVal, expiryStr, supplierStr, reorderVal);
+                    return null;
+                }, ignored -> {
+                    selected.setName(name);
+                    selected.setBatch(batchStr);
+                    selected.setCategory(category);
+                    selected.setQuantity(qtyVal);
+                    selected.setPrice(priceVal);
+                    selected.setExpiry(expiryStr);
+                    selected.setSupplier(supplierStr);
+                    selected.setReorderLevel(reorderVal);
+                    table.refresh();
+                    setStatus("Item updated.", false);
+                    ensureCategoryInBox(category);
+                    onReset(); // clear form
+                    updateTotals();
+                }, err -> setStatus("Save failed: " + err.getMessage(), true));
             } else {
-                int newId = insertInventoryItem(name, category, batchStr, qty, price, expiryStr, supplierStr, reorderVal);
-                InventoryItem item = new InventoryItem(
-                    newId,
-                    name,
-                    category,
-                    batchStr,
-                    qty,
-                    price,
-                    expiryStr,
-                    supplierStr,
-                    reorderVal
-                );
-                masterData.add(item);
-                setStatus("Item saved.", false);
-                ensureCategoryInBox(category);
+                final int qtyVal = qty;
+                final double priceVal = price;
+                writes.load(() -> insertInventoryItem(name, category, batchStr, qtyVal, priceVal, expiryStr, supplierStr, reorderVal),
+                    newId -> {
+                        loadInventoryFromDb();
+                        setStatus("Item saved.", false);
+                        ensureCategoryInBox(category);
+                        onReset(); // clear form
+                        updateTotals();
+                    }, err -> setStatus("Save failed: " + err.getMessage(), true));
             }
-
-            onReset(); // clear form
-            updateTotals();
         } catch (Exception ex) {
             setStatus("Save failed: " + ex.getMessage(), true);
         }
@@ -293,11 +333,18 @@ public class InventoryController {
     }
 
     private void openItemDialog(InventoryItem existing) {
+        // Categories come from the DB; fetch them first, then show the dialog on the FX thread
+        tasks.load("categories", this::loadCategoriesFromDb,
+            categories -> showItemDialog(existing, categories),
+            err -> setStatus("Operation failed: " + err.getMessage(), true));
+    }
+
+    private void showItemDialog(InventoryItem existing, List<String> categories) {
         try {
             FXMLLoader loader = new FXMLLoader(App.class.getResource("inventory-item-dialog.fxml"));
             DialogPane pane = loader.load();
             InventoryItemDialogController dc = loader.getController();
-            dc.setCategories(loadCategoriesFromDb());
+            dc.setCategories(FXCollections.observableArrayList(categories));
             if (existing != null) {
                 dc.setItem(existing);
                 pane.setHeaderText("Edit Item");
@@ -332,23 +379,30 @@ public class InventoryController {
                 String batchStr = batch != null ? batch : "";
                 String supplierStr = supplier != null ? supplier : "";
 
+                final int qtyVal = qty;
+                final double priceVal = price;
                 if (existing != null) {
-                    updateInventoryItem(existing.getId(), name, category, batchStr, qty, price, expiryStr, supplierStr, reorderVal);
-                    existing.setName(name);
-                    existing.setBatch(batchStr);
-                    existing.setCategory(category);
-                    existing.setQuantity(qty);
-                    existing.setPrice(price);
-                    existing.setExpiry(expiryStr);
-                    existing.setSupplier(supplierStr);
-                    existing.setReorderLevel(reorderVal);
-                    table.refresh();
-                    setStatus("Item updated.", false);
+                    writes.load(() -> {
+                        updateInventoryItem(existing.getId(), name, category, batchStr, qtyVal, priceVal, expiryStr, supplierStr, reorderVal);
+                        return null;
+                    }, ignored -> {
+                        existing.setName(name);
+                        existing.setBatch(batchStr);
+                        existing.setCategory(category);
+                        existing.setQuantity(qtyVal);
+                        existing.setPrice(priceVal);
+                        existing.setExpiry(expiryStr);
+                        existing.setSupplier(supplierStr);
+                        existing.setReorderLevel(reorderVal);
+                        table.refresh();
+                        setStatus("Item updated.", false);
+                    }, err -> setStatus("Operation failed: " + err.getMessage(), true));
                 } else {
-                    int newId = insertInventoryItem(name, category, batchStr, qty, price, expiryStr, supplierStr, reorderVal);
-                    InventoryItem item = new InventoryItem(newId, name, category, batchStr, qty, price, expiryStr, supplierStr, reorderVal);
-                    masterData.add(0, item);
-                    setStatus("Item saved.", false);
+                    writes.load(() -> insertInventoryItem(name, category, batchStr, qtyVal, priceVal, expiryStr, supplierStr, reorderVal),
+                        newId -> {
+                            loadInventoryFromDb();
+                            setStatus("Item saved.", false);
+                        }, err -> setStatus("Operation failed: " + err.getMessage(), true));
                 }
             }
         } catch (Exception ex) {
@@ -363,10 +417,32 @@ public class InventoryController {
             setStatus("Select an item to delete.", true);
             return;
         }
-        deleteInventoryItem(sel.getId());
-        masterData.remove(sel);
-        setStatus("Item deleted.", false);
-        updateTotals();
+        writes.load(() -> {
+            deleteInventoryItem(sel.getId());
+            return null;
+        }, ignored -> {
+            loadInventoryFromDb();
+            setStatus("Item deleted.", false);
+            updateTotals();
+        }, err -> setStatus("Delete failed: " + err.getMessage(), true));
+    }
+
+    @Override
+    public void onViewHidden() {
+        // A search still waiting for typing to pause runs when the view is shown again
+        boolean typing = searchDelay.getStatus() == Animation.Status.RUNNING;
+        searchDelay.stop();
+        staleOnShow = tasks.isLoading() || typing;
+        tasks.cancelAll();
+    }
+
+    @Override
+    public void onViewShown() {
+        if (staleOnShow) {
+            staleOnShow = false;
+            search = searchText();
+            loadInventoryFromDb();
+        }
     }
 
     @FXML
@@ -384,7 +460,7 @@ public class InventoryController {
     @FXML
     private void onExport() {
         // Stub for demo: integrate CSV/Excel later
-        setStatus("Exported " + masterData.size() + " items (demo).", false);
+        setStatus("Exported " + pages.size() + " items (demo).", false);
     }
 
     @FXML
@@ -394,7 +470,7 @@ public class InventoryController {
     }
 
     private void updateTotals() {
-        // totalItems is already bound to filtered size; nothing else needed here for now.
+        // totalItems is already bound to the row count; nothing else needed here for now.
     }
 
     private void setStatus(String msg, boolean error) {
@@ -426,27 +502,58 @@ public class InventoryController {
 
     // Database operations
     private void loadInventoryFromDb() {
-        masterData.clear();
-        String sql = "SELECT id, name, category, batch, quantity, price, expiry, supplier, reorder_level FROM inventory_items ORDER BY id DESC";
-        try (Connection c = Database.getConnection();
-             PreparedStatement ps = c.prepareStatement(sql);
-             ResultSet rs = ps.executeQuery()) {
-            while (rs.next()) {
-                int id = rs.getInt("id");
-                String name = rs.getString("name");
-                String category = rs.getString("category");
-                String batch = rs.getString("batch");
-                int qty = rs.getInt("quantity");
-                double price = rs.getDouble("price");
-                Date exp = rs.getDate("expiry");
-                String expiry = exp != null ? exp.toString() : "";
-                String supplier = rs.getString("supplier");
-                int reorder = rs.getInt("reorder_level");
-                masterData.add(new InventoryItem(id, name, category, batch != null ? batch : "", qty, price, expiry, supplier != null ? supplier : "", reorder));
+        // A reload replaces every row, so nothing selected would survive it
+        table.getSelectionModel().clearSelection();
+        if (search.isEmpty()) {
+            pages.reload(query);
+        } else {
+            // Best matches first, unless a column to sort them by has been picked
+            pages.reload(new InventorySearch(search, columnSorted ? query : null, AppConfig.get().getInventorySearchMaxResults()));
+        }
+    }
+
+    private void applySearch() {
+        String text = searchText();
+        if (text.equals(search)) return;
+        search = text;
+        loadInventoryFromDb();
+        updateTotals();
+    }
+
+    private String searchText() {
+        return filterField.getText() == null ? "" : filterField.getText().trim();
+    }
+
+    // Primary sort column only; an unchanged order keeps the rows already loaded
+    private void applySort() {
+        InventoryPageQuery sorted = InventoryPageQuery.initial();
+        boolean chosen = false;
+        if (!table.getSortOrder().isEmpty()) {
+            TableColumn<InventoryItem, ?> col = table.getSortOrder().get(0);
+            InventoryPageQuery.Sort s = sortColumns.get(col);
+            if (s != null) {
+                sorted = new InventoryPageQuery(s, col.getSortType() == TableColumn.SortType.ASCENDING);
+                chosen = true;
             }
-        } catch (Exception ex) {
-            setStatus("Failed to load inventory: " + ex.getMessage(), true);
         }
+        if (sorted.equals(query) && chosen == columnSorted) return;
+        query = sorted;
+        columnSorted = chosen;
+        loadInventoryFromDb();
+    }
+
+    // Once per pulse: scrolling moves the flow many times before the next layout
+    private void queueVisibleRows(VirtualFlow<?> flow) {
+        if (visibleRowsQueued) return;
+        visibleRowsQueued = true;
+        Platform.runLater(() -> {
+            visibleRowsQueued = false;
+            IndexedCell<?> first = flow.getFirstVisibleCell();
+            IndexedCell<?> last = flow.getLastVisibleCell();
+            if (first != null && last != null && first.getIndex() >= 0 && pages.size() > 0) {
+                pages.showing(first.getIndex(), Math.min(last.getIndex(), pages.size() - 1));
+            }
+        });
     }
 
     private int insertInventoryItem(String name, String category, String batch, int qty, double price, String expiry, String supplier, int reorder) throws SQLException {
@@ -467,7 +574,12 @@ public class InventoryController {
             ps.setInt(8, reorder);
             ps.executeUpdate();
             try (ResultSet keys = ps.getGeneratedKeys()) {
-                if (keys.next()) return keys.getInt(1);
+                if (keys.next()) {
+                    int id = keys.getInt(1);
+                    Database.syncLegacyItem(c, id);
+                    catalogChanged(c, List.of(name));
+                    return id;
+                }
             }
         }
         throw new SQLException("Failed to obtain generated key for inventory item");
@@ -477,6 +589,7 @@ public class InventoryController {
         String sql = "UPDATE inventory_items SET name=?, category=?, batch=?, quantity=?, price=?, expiry=?, supplier=?, reorder_level=? WHERE id=?";
         try (Connection c = Database.getConnection();
              PreparedStatement ps = c.prepareStatement(sql)) {
+            String oldName = inventoryName(c, id);
             ps.setString(1, name);
             ps.setString(2, category);
             ps.setString(3, batch);
@@ -491,23 +604,41 @@ public class InventoryController {
             ps.setInt(8, reorder);
             ps.setInt(9, id);
             ps.executeUpdate();
+            Database.syncLegacyItem(c, id);
+            catalogChanged(c, oldName == null ? List.of(name) : List.of(name, oldName));
         }
     }
 
-    private void deleteInventoryItem(int id) {
+    private void deleteInventoryItem(int id) throws SQLException {
         String sql = "DELETE FROM inventory_items WHERE id=?";
         try (Connection c = Database.getConnection();
              PreparedStatement ps = c.prepareStatement(sql)) {
+            String name = inventoryName(c, id);
             ps.setInt(1, id);
             ps.executeUpdate();
-        } catch (Exception ex) {
-            setStatus("Delete failed: " + ex.getMessage(), true);
+            if (name != null) catalogChanged(c, List.of(name));
+        }
+    }
+
+    // POS catalog and typeahead pick up the edit; other processes via the catalog version
+    private static void catalogChanged(Connection c, List<String> names) throws SQLException {
+        CatalogCache.shared().itemsChanged(c, names);
+        ItemNameIndex.shared().refresh(c, names);
+    }
+
+    // Name before an edit, so a rename also drops the old catalog entry
+    private static String inventoryName(Connection c, int id) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement("SELECT name FROM inventory_items WHERE id=?")) {
+            ps.setInt(1, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
         }
     }
 
     // Categories from DB
-    private ObservableList<String> loadCategoriesFromDb() {
-        ObservableList<String> items = FXCollections.observableArrayList();
+    private List<String> loadCategoriesFromDb() {
+        List<String> items = new ArrayList<>();
         String sql = "SELECT DISTINCT COALESCE(category,'Uncategorized') AS cat " +
                      "FROM inventory_items ORDER BY cat";
         try (Connection c = Database.getConnection();
@@ -559,13 +690,22 @@ public class InventoryController {
             batchTable.setItems(batchData);
             return;
         }
+        String itemName = item.getName();
+        tasks.load("batches", () -> fetchBatches(itemName), rows -> {
+            batchData.setAll(rows);
+            batchTable.setItems(batchData);
+        }, err -> {});
+    }
+
+    private List<InventoryBatchRow> fetchBatches(String itemName) {
+        List<InventoryBatchRow> rows = new ArrayList<>();
         String sql = "SELECT b.batch_no, b.expiry_date, b.qty_on_hand, b.sell_price, b.location " +
                      "FROM item_batches b JOIN items i ON b.item_id = i.id " +
-                     "WHERE LOWER(i.name) = LOWER(?) " +
+                     "WHERE i.name_norm = ? " +
                      "ORDER BY (CASE WHEN b.expiry_date IS NULL THEN 1 ELSE 0 END), b.expiry_date";
         try (Connection c = Database.getConnection();
              PreparedStatement ps = c.prepareStatement(sql)) {
-            ps.setString(1, item.getName());
+            ps.setString(1, itemName == null ? "" : itemName.trim().toLowerCase(Locale.ROOT));
             try (ResultSet rs = ps.executeQuery()) {
                 while (rs.next()) {
                     String batchNo = rs.getString(1);
@@ -574,11 +714,11 @@ public class InventoryController {
                     int qty = rs.getInt(3);
                     double sell = rs.getDouble(4);
                     String loc = rs.getString(5);
-                    batchData.add(new InventoryBatchRow(batchNo, expiry, qty, sell, loc));
+                    rows.add(new InventoryBatchRow(batchNo, expiry, qty, sell, loc));
                 }
             }
         } catch (Exception ignore) { }
-        batchTable.setItems(batchData);
+        return rows;
     }
 
     // Batch view row
@@ -0,0 +1,175 @@
+package com.example;
+
+import com.example.InventoryController.InventoryItem;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pages of inventory_items for the inventory table, in one sort order (searches are
+ * {@link InventorySearch}).
+ *
+ * Pages are keyset pages: each continues after the (sort value, id) of the last row of the
+ * previous page with a range condition the (column, id) index can seek to, instead of an
+ * OFFSET the database would have to count through. Only {@link Sort} columns can be sorted
+ * on; each has such an index (migration V9). Unique columns (id, name) need no id after them.
+ *
+ * NULLs sort last ascending and first descending on every database: they are read as a
+ * separate run ordered by id, so the order does not depend on how the dialect places NULLs.
+ */
+record InventoryPageQuery(Sort sort, boolean ascending)
+        implements PagedList.Fetcher<InventoryItem, InventoryPageQuery.Key> {
+
+    /** Sortable columns of the inventory table. */
+    enum Sort {
+        ID("id", false, true),
+        NAME("name", false, true),
+        CATEGORY("category", true, false),
+        QUANTITY("quantity", false, false),
+        PRICE("price", false, false),
+        EXPIRY("expiry", true, false),
+        SUPPLIER("supplier", true, false);
+
+        final String column;
+        final boolean nullable;
+        final boolean unique;
+
+        Sort(String column, boolean nullable, boolean unique) {
+            this.column = column;
+            this.nullable = nullable;
+            this.unique = unique;
+        }
+    }
+
+    /** Sort value (null within the run of NULLs) and id of a row. */
+    record Key(Object value, int id) {}
+
+    static final String COLUMNS = "id, name, category, batch, quantity, price, expiry, supplier, reorder_level";
+
+    /** Newest first, as the table opens. */
+    static InventoryPageQuery initial() {
+        return new InventoryPageQuery(Sort.ID, false);
+    }
+
+    @Override
+    public int count() throws SQLException {
+        try (Connection c = Database.getConnection();
+             PreparedStatement ps = c.prepareStatement("SELECT COUNT(*) FROM inventory_items");
+             ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    @Override
+    public PagedList.Page<InventoryItem, Key> fetch(Key after, int skip, int limit) throws SQLException {
+        List<InventoryItem> rows = new ArrayList<>(limit);
+        Key last = null;
+        try (Connection c = Database.getConnection()) {
+            boolean started = after == null;
+            for (boolean nulls : runs()) {
+                Key from = null;
+                if (!started) {
+                    // Start in the run the key is in
+                    if (nulls != (after.value() == null)) continue;
+                    started = true;
+                    from = after;
+                }
+                List<String> conditions = conditions(nulls, from);
+                String order = nulls ? "id" + dir() : sort.column + dir() + (sort.unique ? "" : ", id" + dir());
+                String sql = "SELECT " + COLUMNS + " FROM inventory_items" + where(conditions)
+                    + " ORDER BY " + order + " LIMIT ? OFFSET ?";
+                int before = rows.size();
+                try (PreparedStatement ps = c.prepareStatement(sql)) {
+                    int i = bindKey(ps, 1, nulls, from);
+                    ps.setInt(i++, limit - rows.size());
+                    ps.setInt(i, skip);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            rows.add(read(rs));
+                            last = new Key(nulls ? null : rs.getObject(sort.column), rs.getInt("id"));
+                        }
+                    }
+                }
+                if (rows.size() > before) {
+                    skip = 0;
+                } else if (skip > 0) {
+                    // The whole run was skipped; skip the rest in the next one
+                    skip = Math.max(0, skip - countRun(c, nulls, from));
+                }
+                if (rows.size() >= limit) break;
+            }
+        }
+        return new PagedList.Page<>(rows, last);
+    }
+
+    // ---------- SQL ----------
+
+    // Non-NULL values, then (when the column has them) the NULLs; the other way round descending
+    private List<Boolean> runs() {
+        if (!sort.nullable) return List.of(false);
+        return ascending ? List.of(false, true) : List.of(true, false);
+    }
+
+    private String dir() {
+        return ascending ? " ASC" : " DESC";
+    }
+
+    // The leading col >= ? is what the index seeks to; the rest only sorts out ties on the value
+    private List<String> conditions(boolean nulls, Key from) {
+        List<String> out = new ArrayList<>();
+        String gt = ascending ? " > ?" : " < ?";
+        if (nulls) {
+            out.add(sort.column + " IS NULL");
+            if (from != null) out.add("id" + gt);
+        } else if (sort.unique) {
+            if (from != null) out.add(sort.column + gt);
+        } else if (from != null) {
+            out.add(sort.column + (ascending ? " >= ?" : " <= ?"));
+            out.add("(" + sort.column + gt + " OR id" + gt + ")");
+        } else if (sort.nullable) {
+            out.add(sort.column + " IS NOT NULL");
+        }
+        return out;
+    }
+
+    private int bindKey(PreparedStatement ps, int i, boolean nulls, Key from) throws SQLException {
+        if (from == null) return i;
+        if (nulls) {
+            ps.setInt(i++, from.id());
+        } else if (sort.unique) {
+            ps.setObject(i++, from.value());
+        } else {
+            ps.setObject(i++, from.value());
+            ps.setObject(i++, from.value());
+            ps.setInt(i++, from.id());
+        }
+        return i;
+    }
+
+    private static String where(List<String> conditions) {
+        return conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions);
+    }
+
+    private int countRun(Connection c, boolean nulls, Key from) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement("SELECT COUNT(*) FROM inventory_items" + where(conditions(nulls, from)))) {
+            bindKey(ps, 1, nulls, from);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    static InventoryItem read(ResultSet rs) throws SQLException {
+        Date exp = rs.getDate("expiry");
+        String batch = rs.getString("batch");
+        String supplier = rs.getString("supplier");
+        return new InventoryItem(rs.getInt("id"), rs.getString("name"), rs.getString("category"),
+            batch != null ? batch : "", rs.getInt("quantity"), rs.getDouble("price"),
+            exp != null ? exp.toString() : "", supplier != null ? supplier : "", rs.getInt("reorder_level"));
+    }
+}
@@ -0,0 +1,228 @@
+package com.example;
+
+import com.example.InventoryController.InventoryItem;
+import com.example.db.Schema;
+import com.example.db.SqlDialect;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Inventory search, run in the database so nothing has to be loaded to find an item.
+ *
+ * An inventory row matches when every word of the search is found in its name, category,
+ * batch or supplier, or in the generic name or barcode of its item, or in the number of one
+ * of the item's batches. Each of the three is looked up through its own index: FULLTEXT
+ * indexes on MySQL (boolean mode, words as prefixes), pg_trgm indexes on Postgres, and plain
+ * LIKE on H2 or where those indexes could not be created (migration V10). The matches are
+ * ranked by the database's relevance score, best first, and the best
+ * {@code inventory.search.maxResults} are kept; {@link #count} runs the search and
+ * {@link #fetch} pages through the ranked ids.
+ *
+ * With a column sort chosen, the kept matches are ordered by that column instead.
+ */
+final class InventorySearch implements PagedList.Fetcher<InventoryItem, Integer> {
+
+    // Searched text of each table: FULLTEXT column lists, and pg_trgm index expressions (the
+    // queries below use them unqualified, so they must stay unambiguous across the joins)
+    static final String INVENTORY_FULLTEXT = "name, category, batch, supplier";
+    static final String ITEMS_FULLTEXT = "generic_name, barcode";
+    static final String BATCHES_FULLTEXT = "batch_no";
+    static final String INVENTORY_TRIGRAM =
+        "LOWER(name || ' ' || COALESCE(category, '') || ' ' || COALESCE(batch, '') || ' ' || COALESCE(supplier, ''))";
+    static final String ITEMS_TRIGRAM = "LOWER(COALESCE(generic_name, '') || ' ' || COALESCE(barcode, ''))";
+    static final String BATCHES_TRIGRAM = "LOWER(COALESCE(batch_no, ''))";
+
+    /** The inventory_items text index; present when migration V10 could set up native search. */
+    static final String INVENTORY_INDEX = "ix_inventory_items_search";
+    static final String ITEMS_INDEX = "ix_items_search";
+    static final String BATCHES_INDEX = "ix_item_batches_search";
+
+    private enum Mode { FULLTEXT, TRIGRAM, LIKE }
+
+    private final String text;
+    private final List<String> words;
+    private final InventoryPageQuery order;
+    private final int maxResults;
+    private volatile List<Integer> ids;
+
+    /**
+     * @param order column order for the matches, or null to rank them by relevance
+     */
+    InventorySearch(String text, InventoryPageQuery order, int maxResults) {
+        this.text = text.trim().toLowerCase(Locale.ROOT);
+        this.words = Arrays.stream(this.text.split("[^\\p{L}\\p{N}]+")).filter(w -> !w.isEmpty()).toList();
+        this.order = order;
+        this.maxResults = maxResults;
+    }
+
+    @Override
+    public int count() throws SQLException {
+        return matches().size();
+    }
+
+    @Override
+    public PagedList.Page<InventoryItem, Integer> fetch(Integer after, int skip, int limit) throws SQLException {
+        List<Integer> all = matches();
+        int from = (after == null ? 0 : after + 1) + skip;
+        if (from >= all.size()) return new PagedList.Page<>(List.of(), null);
+        List<Integer> pageIds = all.subList(from, Math.min(all.size(), from + limit));
+        Map<Integer, InventoryItem> byId = new HashMap<>();
+        String sql = "SELECT " + InventoryPageQuery.COLUMNS + " FROM inventory_items WHERE id IN ("
+            + String.join(",", Collections.nCopies(pageIds.size(), "?")) + ")";
+        try (Connection c = Database.getConnection();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            for (int i = 0; i < pageIds.size(); i++) ps.setInt(i + 1, pageIds.get(i));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    InventoryItem item = InventoryPageQuery.read(rs);
+                    byId.put(item.getId(), item);
+                }
+            }
+        }
+        // In ranked order; rows deleted since the search are left out
+        List<InventoryItem> rows = new ArrayList<>(pageIds.size());
+        for (Integer id : pageIds) {
+            InventoryItem item = byId.get(id);
+            if (item != null) rows.add(item);
+        }
+        return new PagedList.Page<>(rows, from + pageIds.size() - 1);
+    }
+
+    // ---------- Search ----------
+
+    // Ranked ids, searched once per instance
+    private List<Integer> matches() throws SQLException {
+        List<Integer> found = ids;
+        if (found != null) return found;
+        if (words.isEmpty()) return ids = List.of();
+        Map<Integer, Double> scores = new HashMap<>();
+        try (Connection c = Database.getConnection()) {
+            switch (mode(c)) {
+                case FULLTEXT -> {
+                    String against = " AGAINST (? IN BOOLEAN MODE)";
+                    String q = booleanQuery();
+                    collect(c, scores, "SELECT id, MATCH(" + INVENTORY_FULLTEXT + ")" + against + " FROM inventory_items"
+                        + " WHERE MATCH(" + INVENTORY_FULLTEXT + ")" + against, q, q);
+                    collect(c, scores, "SELECT ii.id, MATCH(" + ITEMS_FULLTEXT + ")" + against
+                        + " FROM items i JOIN inventory_items ii ON ii.name_norm = i.name_norm"
+                        + " WHERE MATCH(" + ITEMS_FULLTEXT + ")" + against, q, q);
+                    collect(c, scores, "SELECT ii.id, MATCH(" + BATCHES_FULLTEXT + ")" + against
+                        + " FROM item_batches b JOIN items i ON i.id = b.item_id"
+                        + " JOIN inventory_items ii ON ii.name_norm = i.name_norm"
+                        + " WHERE MATCH(" + BATCHES_FULLTEXT + ")" + against, q, q);
+                }
+                case TRIGRAM -> {
+                    collectTrigram(c, scores, "inventory_items ii", INVENTORY_TRIGRAM);
+                    collectTrigram(c, scores, "items i JOIN inventory_items ii ON ii.name_norm = i.name_norm", ITEMS_TRIGRAM);
+                    collectTrigram(c, scores, "item_batches b JOIN items i ON i.id = b.item_id"
+                        + " JOIN inventory_items ii ON ii.name_norm = i.name_norm", BATCHES_TRIGRAM);
+                }
+                case LIKE -> collectLike(c, scores);
+            }
+            List<Integer> ranked = scores.entrySet().stream()
+                .sorted(Map.Entry.<Integer, Double>comparingByValue().reversed()
+                    .thenComparing(Map.Entry.<Integer, Double>comparingByKey().reversed()))
+                .limit(maxResults)
+                .map(Map.Entry::getKey)
+                .toList();
+            if (order != null && !ranked.isEmpty()) ranked = inColumnOrder(c, ranked);
+            ids = ranked;
+            return ranked;
+        }
+    }
+
+    private static Mode mode(Connection c) throws SQLException {
+        SqlDialect dialect = Database.dialect();
+        if (dialect == SqlDialect.H2 || !Schema.indexExists(c, "inventory_items", INVENTORY_INDEX)) return Mode.LIKE;
+        return dialect == SqlDialect.MYSQL ? Mode.FULLTEXT : Mode.TRIGRAM;
+    }
+
+    // Every word required, as a prefix: "+para* +500*"
+    private String booleanQuery() {
+        StringBuilder sb = new StringBuilder();
+        for (String w : words) sb.append(sb.length() == 0 ? "+" : " +").append(w).append('*');
+        return sb.toString();
+    }
+
+    // The trigram index answers LIKE '%word%'; word_similarity ranks how well the search fits
+    private void collectTrigram(Connection c, Map<Integer, Double> scores, String from, String doc) throws SQLException {
+        List<Object> params = new ArrayList<>();
+        params.add(text);
+        StringBuilder where = new StringBuilder();
+        for (String w : words) {
+            where.append(where.length() == 0 ? " WHERE " : " AND ").append(doc).append(" LIKE ?");
+            params.add("%" + w + "%");
+        }
+        collect(c, scores, "SELECT ii.id, word_similarity(?, " + doc + ") FROM " + from + where, params.toArray());
+    }
+
+    // No text index: every word somewhere in the row; a name equal to, starting with or containing the search ranks higher
+    private void collectLike(Connection c, Map<Integer, Double> scores) throws SQLException {
+        String q = text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+        List<Object> params = new ArrayList<>(List.of(text, q + "%", "%" + q + "%"));
+        StringBuilder where = new StringBuilder();
+        for (String w : words) {
+            where.append(where.length() == 0 ? " WHERE " : " AND ")
+                .append("(name_norm LIKE ? OR LOWER(category) LIKE ? OR LOWER(batch) LIKE ? OR LOWER(supplier) LIKE ?)");
+            for (int i = 0; i < 4; i++) params.add("%" + w + "%");
+        }
+        collect(c, scores, "SELECT id, CASE WHEN name_norm = ? THEN 3 WHEN name_norm LIKE ? THEN 2"
+            + " WHEN name_norm LIKE ? THEN 1 ELSE 0 END FROM inventory_items" + where, params.toArray());
+
+        List<Object> itemParams = new ArrayList<>();
+        StringBuilder itemWhere = new StringBuilder();
+        List<Object> batchParams = new ArrayList<>();
+        StringBuilder batchWhere = new StringBuilder();
+        for (String w : words) {
+            itemWhere.append(itemWhere.length() == 0 ? " WHERE " : " AND ")
+                .append("(LOWER(i.generic_name) LIKE ? OR LOWER(i.barcode) LIKE ?)");
+            itemParams.add("%" + w + "%");
+            itemParams.add("%" + w + "%");
+            batchWhere.append(batchWhere.length() == 0 ? " WHERE " : " AND ").append("LOWER(b.batch_no) LIKE ?");
+            batchParams.add("%" + w + "%");
+        }
+        collect(c, scores, "SELECT ii.id, 0 FROM items i JOIN inventory_items ii ON ii.name_norm = i.name_norm" + itemWhere,
+            itemParams.toArray());
+        collect(c, scores, "SELECT ii.id, 0 FROM item_batches b JOIN items i ON i.id = b.item_id"
+            + " JOIN inventory_items ii ON ii.name_norm = i.name_norm" + batchWhere, batchParams.toArray());
+    }
+
+    // Best maxResults of one source (id, score), merged keeping each row's best score
+    private void collect(Connection c, Map<Integer, Double> scores, String sql, Object... params) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(sql + " ORDER BY 2 DESC LIMIT ?")) {
+            int i = 1;
+            for (Object p : params) ps.setObject(i++, p);
+            ps.setInt(i, maxResults);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) scores.merge(rs.getInt(1), rs.getDouble(2), Math::max);
+            }
+        }
+    }
+
+    // The kept matches by the chosen column, NULLs last ascending as when browsing
+    private List<Integer> inColumnOrder(Connection c, List<Integer> matched) throws SQLException {
+        String col = order.sort().column;
+        String dir = order.ascending() ? " ASC" : " DESC";
+        String nullsLast = order.ascending() ? "1 ELSE 0" : "0 ELSE 1";
+        String sql = "SELECT id FROM inventory_items WHERE id IN (" + String.join(",", Collections.nCopies(matched.size(), "?")) + ")"
+            + " ORDER BY CASE WHEN " + col + " IS NULL THEN " + nullsLast + " END, " + col + dir + ", id" + dir;
+        List<Integer> out = new ArrayList<>(matched.size());
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            for (int i = 0; i < matched.size(); i++) ps.setInt(i + 1, matched.get(i));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) out.add(rs.getInt(1));
+            }
+        }
+        return out;
+    }
+}
@@ -2,9 +2,9 @@ package com.example;
 
 import com.example.repository.UserRepository;
 import com.example.util.PasswordUtil;
-import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
+import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.control.PasswordField;
 import javafx.scene.control.TextField;
@@ -14,8 +14,10 @@ public class LoginController {
     @FXML private TextField usernameField;
     @FXML private PasswordField passwordField;
     @FXML private Label statusLabel;
+    @FXML private Button signInButton;
 
     private final UserRepository userRepo = new UserRepository();
+    private final ViewTasks tasks = new ViewTasks();
 
     @FXML
     private void initialize() {
@@ -36,33 +38,45 @@ public class LoginController {
         }
 
         setStatus("Signing in...");
-        Platform.runLater(() -> {
+        setBusy(true);
+        // Lookup and PBKDF2 verification both run off the FX thread
+        tasks.load(() -> {
             UserRepository.UserRecord user = userRepo.findByUsername(username);
-            if (user == null) {
-                setStatus("Invalid credentials");
-                return;
-            }
-            if (!user.active) {
-                setStatus("Account is disabled");
-                return;
-            }
+            if (user == null) return LoginResult.failed("Invalid credentials");
+            if (!user.active) return LoginResult.failed("Account is disabled");
             boolean ok = PasswordUtil.verifyPassword(password.toCharArray(), user.passwordHash);
-            if (!ok) {
-                setStatus("Invalid credentials");
+            return ok ? new LoginResult(user, null) : LoginResult.failed("Invalid credentials");
+        }, result -> {
+            setBusy(false);
+            if (result.user() == null) {
+                setStatus(result.error());
                 return;
             }
 
             // Success
-            Session.setUser(user.username, user.displayName);
+            Session.setUser(result.user().username, result.user().displayName);
             setStatus("");
             try {
                 App.loadMain();
             } catch (Exception ex) {
                 setStatus("Failed to load main UI: " + ex.getMessage());
             }
+        }, err -> {
+            setBusy(false);
+            setStatus("Sign-in failed: " + err.getMessage());
         });
     }
 
+    private record LoginResult(UserRepository.UserRecord user, String error) {
+        static LoginResult failed(String error) {
+            return new LoginResult(null, error);
+        }
+    }
+
+    private void setBusy(boolean busy) {
+        if (signInButton != null) signInButton.setDisable(busy);
+    }
+
     private void setStatus(String msg) {
         if (statusLabel != null) {
             statusLabel.setText(msg == null ? "" : msg);
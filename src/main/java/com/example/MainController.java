@@ -2,10 +2,14 @@ package com.example;
 
 import java.io.IOException;
 import java.net.URL;
+import java.time.Instant;
+import java.time.LocalDate;
 import java.time.LocalTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import javafx.animation.KeyFrame;
 import javafx.animation.FadeTransition;
@@ -15,6 +19,8 @@ import javafx.animation.Timeline;
 import javafx.animation.KeyValue;
 import javafx.animation.Interpolator;
 import javafx.application.Platform;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -43,10 +49,11 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 
+import com.example.db.DbHealthMonitor;
+import com.example.repository.SalesJournal;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
-import java.sql.SQLException;
 
 public class MainController {
 
@@ -84,6 +91,14 @@ public class MainController {
     private final Map<String, Parent> viewCache = new HashMap<>();
     private final Map<String, Object> controllerCache = new HashMap<>();
     private ToggleGroup navGroup;
+    private String currentView;
+
+    // Background DB work for the shell (alerts, status)
+    private final ViewTasks tasks = new ViewTasks();
+    private final Consumer<DbHealthMonitor.Status> dbStatusListener =
+        status -> Platform.runLater(() -> showDbStatus(status));
+    private final Consumer<SalesJournal.Stats> journalListener =
+        stats -> Platform.runLater(() -> showDbStatus(Database.health().status()));
 
     @FXML
     private void initialize() {
@@ -94,6 +109,19 @@ public class MainController {
         btnSales.setToggleGroup(navGroup);
         btnSettings.setToggleGroup(navGroup);
 
+        // The view may be preloaded off the FX thread during startup (see App.loadMain), so the
+        // default view, timers and Scene-dependent setup wait until it is attached to a Scene
+        contentArea.sceneProperty().addListener(new ChangeListener<Scene>() {
+            @Override
+            public void changed(ObservableValue<? extends Scene> obs, Scene oldScene, Scene newScene) {
+                if (newScene == null) return;
+                obs.removeListener(this);
+                Platform.runLater(MainController.this::onAttached);
+            }
+        });
+    }
+
+    private void onAttached() {
         // Default view
         if (btnDashboard.isSelected()) {
             showDashboard(null);
@@ -102,39 +130,54 @@ public class MainController {
             showDashboard(null);
         }
 
-        // Defer UI-dependent setup until the Scene is ready
-        Platform.runLater(() -> {
-            setupClock();
-            updateUserStatus();
-            checkDbStatusAsync();
-            setupShortcuts();
-            syncThemeToggle();
-            setupSearchRouting();
-            setupSidebarUX();
-            updateSidebarUser();
-            setupBackgroundFX();
-            setupAlerts();
-        });
+        setupClock();
+        updateUserStatus();
+        watchDbStatus();
+        setupShortcuts();
+        syncThemeToggle();
+        setupSearchRouting();
+        setupSidebarUX();
+        updateSidebarUser();
+        setupBackgroundFX();
+        setupAlerts();
     }
 
     @FXML
     public void showDashboard(ActionEvent e) {
-        setContent(loadView("dashboard-view.fxml"));
+        navigate("dashboard-view.fxml");
     }
 
     @FXML
     public void showInventory(ActionEvent e) {
-        setContent(loadView("inventory-view.fxml"));
+        navigate("inventory-view.fxml");
     }
 
     @FXML
     public void showSales(ActionEvent e) {
-        setContent(loadView("sales-view.fxml"));
+        navigate("sales-view.fxml");
     }
 
     @FXML
     public void showSettings(ActionEvent e) {
-        setContent(loadView("settings-view.fxml"));
+        navigate("settings-view.fxml");
+    }
+
+    private void navigate(String fxmlName) {
+        if (fxmlName.equals(currentView)) {
+            setContent(loadView(fxmlName));
+            return;
+        }
+        // Let the outgoing view cancel its background loads
+        if (currentView != null && controllerCache.get(currentView) instanceof ViewLifecycle out) {
+            out.onViewHidden();
+        }
+        boolean cached = viewCache.containsKey(fxmlName);
+        Parent view = loadView(fxmlName);
+        currentView = fxmlName;
+        if (cached && controllerCache.get(fxmlName) instanceof ViewLifecycle in) {
+            in.onViewShown();
+        }
+        setContent(view);
     }
 
     private void setContent(Parent view) {
@@ -255,6 +298,13 @@ public class MainController {
 
     @FXML
     private void onLogout(ActionEvent e) {
+        tasks.cancelAll();
+        Database.health().removeListener(dbStatusListener);
+        SalesJournal.shared().removeListener(journalListener);
+        if (alertsTimeline != null) alertsTimeline.stop();
+        if (currentView != null && controllerCache.get(currentView) instanceof ViewLifecycle out) {
+            out.onViewHidden();
+        }
         Session.clear();
         try {
             App.loadLogin();
@@ -285,30 +335,43 @@ public class MainController {
         userStatusLabel.setText("User: " + (user == null || user.isBlank() ? "Guest" : user));
     }
 
-    private void checkDbStatusAsync() {
+    private void watchDbStatus() {
         if (dbStatusLabel == null) return;
-        // Default state while checking
+        DbHealthMonitor health = Database.health();
+        health.addListener(dbStatusListener);
+        SalesJournal.shared().addListener(journalListener);
+        showDbStatus(health.status());
+    }
+
+    private void showDbStatus(DbHealthMonitor.Status status) {
         dbStatusLabel.getStyleClass().removeAll("badge", "status-ok", "status-bad");
-        dbStatusLabel.setText("DB: Checking...");
-        new Thread(() -> {
-            boolean ok;
-            try (Connection c = Database.getConnection()) {
-                ok = (c != null && !c.isClosed());
-            } catch (SQLException ex) {
-                ok = false;
+        switch (status.state()) {
+            case UP -> {
+                dbStatusLabel.getStyleClass().add("status-ok");
+                dbStatusLabel.setText("DB: Connected");
+                dbStatusLabel.setTooltip(null);
             }
-            final boolean connected = ok;
-            Platform.runLater(() -> {
-                dbStatusLabel.getStyleClass().removeAll("badge", "status-ok", "status-bad");
-                if (connected) {
-                    dbStatusLabel.getStyleClass().add("status-ok");
-                    dbStatusLabel.setText("DB: Connected");
-                } else {
-                    dbStatusLabel.getStyleClass().add("status-bad");
-                    dbStatusLabel.setText("DB: Offline");
-                }
-            });
-        }, "db-status-check").start();
+            case DOWN -> {
+                dbStatusLabel.getStyleClass().add("status-bad");
+                dbStatusLabel.setText("DB: Offline, reconnecting...");
+                String next = LocalTime.ofInstant(Instant.ofEpochMilli(status.nextProbeAt()), ZoneId.systemDefault())
+                    .format(DateTimeFormatter.ofPattern("HH:mm:ss"));
+                dbStatusLabel.setTooltip(new Tooltip(status.lastError() + "\nNext attempt at " + next));
+            }
+            default -> {
+                dbStatusLabel.setText("DB: Checking...");
+                dbStatusLabel.setTooltip(null);
+            }
+        }
+        // Sales taken offline and not in the database yet
+        SalesJournal.Stats journal = SalesJournal.shared().stats();
+        if (journal.pending() > 0) {
+            dbStatusLabel.setText(dbStatusLabel.getText() + " | " + journal.pending() + " sale(s) to sync");
+            String lag = "Oldest waiting " + journal.lagMs() / 60_000 + " min";
+            Tooltip tip = dbStatusLabel.getTooltip();
+            String text = journal.lastError() == null ? lag : lag + "\n" + journal.lastError();
+            dbStatusLabel.setTooltip(new Tooltip(tip == null ? text : tip.getText() + "\n" + text));
+        }
     }
 
     private void setupShortcuts() {
@@ -383,9 +446,18 @@ public class MainController {
 
     private void updateNotifications() {
         if (notificationsButton == null) return;
+        tasks.load("alertCount", this::countAlerts, total -> {
+            notificationsButton.setText(total > 0 ? "Notifications (" + total + ")" : "Notifications");
+            if (total > 0) {
+                pulse(notificationsButton);
+            }
+        }, err -> {});
+    }
+
+    private int countAlerts() {
         int low = 0;
         int exp = 0;
-        try (Connection c = Database.getConnection()) {
+        try (Connection c = Database.getReadConnection()) {
             try (PreparedStatement ps = c.prepareStatement(
                     "SELECT COUNT(*) FROM inventory_items WHERE reorder_level > 0 AND quantity <= reorder_level");
                  ResultSet rs = ps.executeQuery()) {
@@ -393,24 +465,24 @@ public class MainController {
             }
             // Prefer batches-based expiry window
             try (PreparedStatement ps = c.prepareStatement(
-                    "SELECT COUNT(*) FROM item_batches WHERE expiry_date IS NOT NULL AND expiry_date BETWEEN CURDATE() AND DATE_ADD(CURDATE(), INTERVAL 30 DAY)");
-                 ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) exp = rs.getInt(1);
+                    "SELECT COUNT(*) FROM item_batches WHERE expiry_date IS NOT NULL AND " + Database.dialect().range("expiry_date"))) {
+                Database.dialect().bindDateRange(ps, 1, LocalDate.now(), LocalDate.now().plusDays(31));
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) exp = rs.getInt(1);
+                }
             }
         } catch (Exception ignore) {
             // fallback to legacy per-item expiry if batches table not present
-            try (Connection c2 = Database.getConnection();
+            try (Connection c2 = Database.getReadConnection();
                  PreparedStatement ps = c2.prepareStatement(
-                     "SELECT COUNT(*) FROM inventory_items WHERE expiry IS NOT NULL AND expiry BETWEEN CURDATE() AND DATE_ADD(CURDATE(), INTERVAL 30 DAY)");
-                 ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) exp = rs.getInt(1);
+                     "SELECT COUNT(*) FROM inventory_items WHERE expiry IS NOT NULL AND " + Database.dialect().range("expiry"))) {
+                Database.dialect().bindDateRange(ps, 1, LocalDate.now(), LocalDate.now().plusDays(31));
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) exp = rs.getInt(1);
+                }
             } catch (Exception ignored) {}
         }
-        int total = low + exp;
-        notificationsButton.setText(total > 0 ? "Notifications (" + total + ")" : "Notifications");
-        if (total > 0) {
-            pulse(notificationsButton);
-        }
+        return low + exp;
     }
 
     private void pulse(Node node) {
@@ -425,14 +497,31 @@ public class MainController {
         st1.play();
     }
 
+    private record AlertsSummary(int low, int exp, String message) {}
+
     @FXML
     private void onNotifications() {
+        if (notificationsButton != null) notificationsButton.setDisable(true);
+        tasks.load("alertDetails", this::fetchAlertsSummary, summary -> {
+            if (notificationsButton != null) notificationsButton.setDisable(false);
+            javafx.scene.control.Alert a = new javafx.scene.control.Alert(javafx.scene.control.Alert.AlertType.INFORMATION);
+            a.setTitle("Notifications");
+            a.setHeaderText("Low stock: " + summary.low() + " | Expiring soon: " + summary.exp());
+            a.setContentText(summary.message());
+            a.getDialogPane().setMinHeight(Region.USE_PREF_SIZE);
+            a.showAndWait();
+        }, err -> {
+            if (notificationsButton != null) notificationsButton.setDisable(false);
+        });
+    }
+
+    private AlertsSummary fetchAlertsSummary() {
         int low = 0;
         int exp = 0;
         StringBuilder msg = new StringBuilder();
         msg.append("Alerts summary:\n\n");
 
-        try (Connection c = Database.getConnection()) {
+        try (Connection c = Database.getReadConnection()) {
             // Low stock list (top 10)
             try (PreparedStatement ps = c.prepareStatement(
                     "SELECT name, quantity, reorder_level FROM inventory_items " +
@@ -457,32 +546,28 @@ public class MainController {
             try (PreparedStatement ps = c.prepareStatement(
                     "SELECT i.name, b.batch_no, b.expiry_date, b.qty_on_hand " +
                     "FROM item_batches b JOIN items i ON b.item_id = i.id " +
-                    "WHERE b.expiry_date IS NOT NULL AND b.expiry_date BETWEEN CURDATE() AND DATE_ADD(CURDATE(), INTERVAL 30 DAY) " +
-                    "ORDER BY b.expiry_date ASC, b.qty_on_hand DESC LIMIT 10");
-                 ResultSet rs = ps.executeQuery()) {
-                StringBuilder expList = new StringBuilder();
-                while (rs.next()) {
-                    exp++;
-                    expList.append("- ")
-                           .append(rs.getString(1)) // item name
-                           .append(" | batch: ").append(rs.getString(2))
-                           .append(" | exp: ").append(rs.getDate(3))
-                           .append(" | qty: ").append(rs.getInt(4))
-                           .append("\n");
+                    "WHERE b.expiry_date IS NOT NULL AND " + Database.dialect().range("b.expiry_date") + " " +
+                    "ORDER BY b.expiry_date ASC, b.qty_on_hand DESC LIMIT 10")) {
+                Database.dialect().bindDateRange(ps, 1, LocalDate.now(), LocalDate.now().plusDays(31));
+                try (ResultSet rs = ps.executeQuery()) {
+                    StringBuilder expList = new StringBuilder();
+                    while (rs.next()) {
+                        exp++;
+                        expList.append("- ")
+                               .append(rs.getString(1)) // item name
+                               .append(" | batch: ").append(rs.getString(2))
+                               .append(" | exp: ").append(rs.getDate(3))
+                               .append(" | qty: ").append(rs.getInt(4))
+                               .append("\n");
+                    }
+                    msg.append("Expiring soon (").append(exp).append(")\n");
+                    msg.append(expList.length() == 0 ? "  None\n" : expList.toString());
                 }
-                msg.append("Expiring soon (").append(exp).append(")\n");
-                msg.append(expList.length() == 0 ? "  None\n" : expList.toString());
             }
         } catch (Exception ex) {
             msg.append("\nError while fetching alerts: ").append(ex.getMessage());
         }
-
-        javafx.scene.control.Alert a = new javafx.scene.control.Alert(javafx.scene.control.Alert.AlertType.INFORMATION);
-        a.setTitle("Notifications");
-        a.setHeaderText("Low stock: " + low + " | Expiring soon: " + exp);
-        a.setContentText(msg.toString());
-        a.getDialogPane().setMinHeight(Region.USE_PREF_SIZE);
-        a.showAndWait();
+        return new AlertsSummary(low, exp, msg.toString());
     }
 
     @FXML
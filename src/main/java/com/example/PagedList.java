@@ -0,0 +1,204 @@
+package com.example;
+
+import javafx.collections.ObservableListBase;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * A read-only list of database rows for a virtualized TableView, loaded one page at a time.
+ *
+ * The row count is queried up front; rows themselves are fetched in pages of
+ * {@code pageSize} on {@link ViewTasks} when the table first asks for them, and
+ * {@link #get} returns null for a row whose page has not arrived yet (the table shows it
+ * empty until it does). The view reports what is on screen through {@link #showing}: pages
+ * within {@code margin} pages of it are prefetched, and all others are dropped, so memory
+ * holds what is visible plus the margin regardless of the size of the table.
+ *
+ * Pages are keyset pages: the fetcher continues after the last key of the page before, so
+ * scrolling down costs an index seek per page however deep it goes. A jump (dragging the
+ * scrollbar) continues from the nearest page seen so far and skips the rows in between.
+ * All methods must be called on the FX thread.
+ *
+ * @param <T> row type
+ */
+public final class PagedList<T> extends ObservableListBase<T> {
+
+    /**
+     * Source of rows; called on a background thread. {@code K} is whatever the fetcher needs to
+     * continue after a row, e.g. the sort value and id of the last row of a page.
+     */
+    public interface Fetcher<T, K> {
+        int count() throws SQLException;
+
+        /**
+         * Up to {@code limit} rows in order, starting after the row keyed {@code after} (or at
+         * the first row when null) and skipping {@code skip} rows first.
+         */
+        Page<T, K> fetch(K after, int skip, int limit) throws SQLException;
+    }
+
+    /** Rows of a page, and the key to continue after them (null when there are none). */
+    public record Page<T, K>(List<T> rows, K last) {}
+
+    private final ViewTasks tasks;
+    private final String name;
+    private final int pageSize;
+    private final int margin;
+    private final Consumer<Throwable> onError;
+
+    private Source<T, ?> source;
+    private int size;
+    private int generation;
+    private final Map<Integer, List<T>> pages = new HashMap<>();
+    private final Set<Integer> pending = new HashSet<>();
+    private int firstShown = -1;
+    private int lastShown = -1;
+
+    public PagedList(ViewTasks tasks, String name, int pageSize, int margin, Consumer<Throwable> onError) {
+        this.tasks = tasks;
+        this.name = name;
+        this.pageSize = pageSize;
+        this.margin = margin;
+        this.onError = onError;
+    }
+
+    /** Switch to another source (sort order, search) and reload. */
+    public <K> void reload(Fetcher<T, K> fetcher) {
+        this.source = new Source<>(fetcher);
+        refresh();
+    }
+
+    /** Drop all rows and count again; the visible pages are fetched as the table asks for them. */
+    public void refresh() {
+        if (source == null) return;
+        generation++;
+        for (Integer page : pending) tasks.cancel(pageKey(page));
+        pages.clear();
+        pending.clear();
+        source.anchors.clear();
+        int gen = generation;
+        tasks.load(name + "-count", source.fetcher::count, n -> {
+            if (gen != generation) return;
+            int old = size;
+            size = n;
+            beginChange();
+            if (old > 0) nextRemove(0, Collections.<T>nCopies(old, null));
+            if (n > 0) nextAdd(0, n);
+            endChange();
+        }, onError);
+    }
+
+    /** Rows {@code first..last} are on screen: prefetch around them and drop the other pages. */
+    public void showing(int first, int last) {
+        firstShown = first;
+        lastShown = last;
+        int lo = Math.max(0, first / pageSize - margin);
+        int hi = Math.min(pageCount() - 1, last / pageSize + margin);
+        pages.keySet().removeIf(p -> p < lo || p > hi);
+        pending.removeIf(p -> {
+            boolean outside = p < lo || p > hi;
+            if (outside) tasks.cancel(pageKey(p));
+            return outside;
+        });
+        for (int p = lo; p <= hi; p++) request(p);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public T get(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+        int page = index / pageSize;
+        List<T> rows = pages.get(page);
+        if (rows == null) {
+            request(page);
+            return null;
+        }
+        int i = index - page * pageSize;
+        return i < rows.size() ? rows.get(i) : null;
+    }
+
+    // Searching would load every page; only the loaded rows are looked at
+    @Override
+    public int indexOf(Object o) {
+        for (Map.Entry<Integer, List<T>> e : pages.entrySet()) {
+            int i = e.getValue().indexOf(o);
+            if (i >= 0) return e.getKey() * pageSize + i;
+        }
+        return -1;
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        return indexOf(o);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    // ---------- Loading ----------
+
+    private int pageCount() {
+        return (size + pageSize - 1) / pageSize;
+    }
+
+    private String pageKey(int page) {
+        return name + "-page-" + page;
+    }
+
+    private void request(int page) {
+        if (source == null || pages.containsKey(page) || !pending.add(page)) return;
+        request(source, page);
+    }
+
+    private <K> void request(Source<T, K> src, int page) {
+        // Continue after the nearest page before this one, skipping the pages in between
+        Map.Entry<Integer, K> anchor = src.anchors.floorEntry(page - 1);
+        K after = anchor == null ? null : anchor.getValue();
+        int skip = (page - (anchor == null ? 0 : anchor.getKey() + 1)) * pageSize;
+        int gen = generation;
+        tasks.load(pageKey(page), () -> src.fetcher.fetch(after, skip, pageSize), result -> {
+            if (gen != generation) return;
+            pending.remove(page);
+            if (result.last() != null) src.anchors.put(page, result.last());
+            if (firstShown >= 0 && (page < firstShown / pageSize - margin || page > lastShown / pageSize + margin)) {
+                // Scrolled away while it was loading; keep only the key
+                return;
+            }
+            pages.put(page, result.rows());
+            int from = page * pageSize;
+            int to = Math.min(size, from + result.rows().size());
+            if (from >= to) return;
+            beginChange();
+            for (int i = from; i < to; i++) nextUpdate(i);
+            endChange();
+        }, err -> {
+            if (gen != generation) return;
+            pending.remove(page);
+            if (onError != null) onError.accept(err);
+        });
+    }
+
+    // A fetcher and the last key of each page it returned since the last reload
+    private static final class Source<T, K> {
+        final Fetcher<T, K> fetcher;
+        final TreeMap<Integer, K> anchors = new TreeMap<>();
+
+        Source(Fetcher<T, K> fetcher) {
+            this.fetcher = fetcher;
+        }
+    }
+}
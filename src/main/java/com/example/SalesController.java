@@ -1,22 +1,34 @@
 package com.example;
 
-import javafx.beans.binding.Bindings;
+import javafx.application.Platform;
+import javafx.beans.value.ChangeListener;
 import javafx.beans.property.*;
 import javafx.collections.FXCollections;
 import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
 import javafx.geometry.Pos;
+import javafx.geometry.Side;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.layout.HBox;
+import com.example.model.Money;
+import com.example.repository.CatalogCache;
+import com.example.repository.CheckoutService;
+import com.example.repository.HeldSaleRepository;
+import com.example.repository.ItemNameIndex;
+import com.example.repository.ReceiptSpooler;
+import com.example.repository.SaleRepository;
+import com.example.repository.StockReservations;
+import com.example.util.AppConfig;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.Locale;
 import java.util.*;
 import java.sql.*;
 
-public class SalesController {
+public class SalesController implements ViewLifecycle {
 
     // Top controls
     @FXML private TextField customerField;
@@ -32,8 +44,8 @@ public class SalesController {
     @FXML private TableView<CartItem> table;
     @FXML private TableColumn<CartItem, String> colItem;
     @FXML private TableColumn<CartItem, Integer> colQty;
-    @FXML private TableColumn<CartItem, Double> colPrice;
-    @FXML private TableColumn<CartItem, Double> colLineTotal;
+    @FXML private TableColumn<CartItem, Money> colPrice;
+    @FXML private TableColumn<CartItem, Money> colLineTotal;
     @FXML private TableColumn<CartItem, Void> colActions;
 
     // Totals and checkout
@@ -42,8 +54,35 @@ public class SalesController {
     @FXML private TextField taxField;      // percentage
     @FXML private Label lblGrandTotal;
     @FXML private Label checkoutStatus;
+    @FXML private Button checkoutButton;
+    @FXML private ProgressIndicator checkoutProgress;
+    @FXML private MenuButton heldMenu;
 
     private final ObservableList<CartItem> cart = FXCollections.observableArrayList();
+    // Running totals in cents/basis points, adjusted per line change instead of re-summing the cart
+    private long subtotalCents;
+    private long discountBps;
+    private long taxBps;
+    private final ChangeListener<Money> lineTotalListener =
+        (o, was, now) -> subtotalCents += now.cents() - was.cents();
+    // True while a checkout or hold is being saved; the cart is frozen until it completes
+    private final BooleanProperty checkingOut = new SimpleBooleanProperty(false);
+    // Lookups are cancelled when navigating away; checkout always runs to completion
+    private final ViewTasks tasks = new ViewTasks();
+    private final ViewTasks writes = new ViewTasks();
+    private final CheckoutService checkoutService = new CheckoutService();
+    private final CatalogCache catalog = CatalogCache.shared();
+    // Stock held for the current cart; a new id after checkout or clearing
+    private final StockReservations reservations = StockReservations.shared();
+    private String cartId = UUID.randomUUID().toString();
+    private final HeldSaleRepository held = HeldSaleRepository.shared();
+    private final ReceiptSpooler receipts = ReceiptSpooler.shared();
+
+    // Typeahead for the item field
+    private static final int MAX_SUGGESTIONS = 10;
+    private final ItemNameIndex itemNames = ItemNameIndex.shared();
+    private final ContextMenu suggestions = new ContextMenu();
+    private boolean choosingSuggestion;
 
     @FXML
     private void initialize() {
@@ -60,16 +99,16 @@ public class SalesController {
         }
 
         // Format numeric columns
-        colPrice.setCellFactory(col -> new TableCell<CartItem, Double>() {
+        colPrice.setCellFactory(col -> new TableCell<CartItem, Money>() {
             @Override
-            protected void updateItem(Double value, boolean empty) {
+            protected void updateItem(Money value, boolean empty) {
                 super.updateItem(value, empty);
                 setText(empty || value == null ? null : money(value));
             }
         });
-        colLineTotal.setCellFactory(col -> new TableCell<CartItem, Double>() {
+        colLineTotal.setCellFactory(col -> new TableCell<CartItem, Money>() {
             @Override
-            protected void updateItem(Double value, boolean empty) {
+            protected void updateItem(Money value, boolean empty) {
                 super.updateItem(value, empty);
                 setText(empty || value == null ? null : money(value));
             }
@@ -82,7 +121,9 @@ public class SalesController {
                 {
                     btnRemove.getStyleClass().add("ghost-button");
                     btnRemove.setOnAction(e -> {
+                        if (cartBusy()) return;
                         CartItem item = getTableView().getItems().get(getIndex());
+                        checkoutService.release(cartId, item.getItem(), item.getQty());
                         cart.remove(item);
                         updateTotals();
                     });
@@ -111,22 +152,67 @@ public class SalesController {
         if (taxField != null) taxField.setTextFormatter(decimalFormatter());
 
         // Totals update on changes
-        cart.addListener((ListChangeListener<CartItem>) c -> updateTotals());
-        discountField.textProperty().addListener((o, a, b) -> updateTotals());
-        taxField.textProperty().addListener((o, a, b) -> updateTotals());
+        cart.addListener((ListChangeListener<CartItem>) c -> {
+            while (c.next()) {
+                for (CartItem ci : c.getRemoved()) {
+                    ci.lineTotalProperty().removeListener(lineTotalListener);
+                    subtotalCents -= ci.getLineTotal().cents();
+                }
+                for (CartItem ci : c.getAddedSubList()) {
+                    ci.lineTotalProperty().addListener(lineTotalListener);
+                    subtotalCents += ci.getLineTotal().cents();
+                }
+            }
+            updateTotals();
+        });
+        discountField.textProperty().addListener((o, a, b) -> {
+            discountBps = Money.bps(b);
+            updateTotals();
+        });
+        taxField.textProperty().addListener((o, a, b) -> {
+            taxBps = Money.bps(b);
+            updateTotals();
+        });
+
+        // Checkout progress; a second click cannot submit the same cart again
+        checkoutButton.disableProperty().bind(checkingOut);
+        checkoutProgress.visibleProperty().bind(checkingOut);
+        checkoutProgress.managedProperty().bind(checkingOut);
+        discountField.disableProperty().bind(checkingOut);
+        taxField.disableProperty().bind(checkingOut);
+        heldMenu.disableProperty().bind(checkingOut);
+        heldMenu.setOnShowing(e -> rebuildHeldMenu());
 
         // Defaults
         discountField.setText("0");
         taxField.setText("0");
         updateTotals();
+
+        // Typeahead: prefix lookups in memory, no query per keystroke
+        itemField.textProperty().addListener((o, a, text) -> showSuggestions(text));
+        itemField.focusedProperty().addListener((o, was, focused) -> {
+            if (!focused) suggestions.hide();
+        });
+
+        // Warm the catalog and name index so the first lookups are answered from memory
+        tasks.load("catalog", () -> {
+            catalog.ensureLoaded();
+            itemNames.ensureLoaded();
+            return null;
+        }, v -> {}, err -> {});
+        tasks.load("held", () -> {
+            held.ensureLoaded();
+            return null;
+        }, v -> updateHeldCount(), err -> {});
     }
 
     // Buttons - Add item card
     @FXML
     private void onAddItem() {
+        if (cartBusy()) return;
         String name = safe(itemField.getText());
         Integer qty = parseInt(qtyField.getText());
-        Double price = parseDouble(priceField.getText());
+        Money price = Money.parse(priceField.getText());
         if (name.isEmpty()) {
             setAddStatus("Item name required.", true);
             return;
@@ -136,32 +222,59 @@ public class SalesController {
             return;
         }
 
-        // If price not provided, try to fetch from inventory
-        InvLookup inv = lookupInventoryByName(name);
-        // Determine available quantity preferring non-expired batch stock
-        int available = availableQtyNonExpired(name);
+        // Answered from the catalog cache; only names not cached yet go to the database
+        final Money enteredPrice = price;
+        CatalogCache.Entry cached = catalog.peek(name);
+        if (cached != null) {
+            addItemChecked(name, qty, enteredPrice, cached);
+            return;
+        }
+        setAddStatus("Checking stock...", false);
+        tasks.load("addItem", () -> checkoutService.lookup(name),
+            entry -> addItemChecked(name, qty, enteredPrice, entry),
+            err -> setAddStatus("Stock lookup failed: " + err.getMessage(), true));
+    }
+
+    private void addItemChecked(String name, int qty, Money price, CatalogCache.Entry inv) {
+        if (cartBusy()) return;
         if (price == null) {
-            if (inv != null) {
-                price = inv.price;
-                priceField.setText(String.format(Locale.US, "%.2f", price));
+            if (inv != null && inv.price() != null) {
+                price = inv.price();
+                priceField.setText(price.toString());
             }
         }
-        if (price == null || price < 0) {
+        if (price == null || price.isNegative()) {
             setAddStatus("Enter a valid non-negative unit price.", true);
             return;
         }
 
-        // Ensure stock sufficiency (non-expired FIFO-aware)
-        if (qty > available) {
-            setAddStatus("Only " + available + " available (non-expired) for " + name + ".", true);
+        // Reserve non-expired stock (FIFO) for this cart; other carts' holds are not available
+        if (inv == null) {
+            setAddStatus("Only 0 available (non-expired) for " + name + ".", true);
+            return;
+        }
+        StockReservations.Outcome held = checkoutService.reserve(cartId, inv, qty);
+        if (held.stale()) {
+            // Read before a sale of the item went through: check its stock again
+            final Money checkedPrice = price;
+            setAddStatus("Checking stock...", false);
+            tasks.load("addItem", () -> checkoutService.lookupFresh(name),
+                entry -> addItemChecked(name, qty, checkedPrice, entry),
+                err -> setAddStatus("Stock lookup failed: " + err.getMessage(), true));
+            return;
+        }
+        if (!held.ok()) {
+            int inCart = reservations.heldBy(cartId, name);
+            setAddStatus("Only " + held.available() + " available (non-expired) for " + name
+                + (inCart > 0 ? " besides the " + inCart + " in this cart." : "."), true);
             return;
         }
 
         // Merge with existing item of same name and price (capture effectively final vars for lambda)
         final String nameKey = name;
-        final double priceKey = price;
+        final Money priceKey = price;
         CartItem existing = cart.stream()
-            .filter(ci -> ci.getItem().equalsIgnoreCase(nameKey) && Double.compare(ci.getPrice(), priceKey) == 0)
+            .filter(ci -> ci.getItem().equalsIgnoreCase(nameKey) && ci.getPrice().equals(priceKey))
             .findFirst().orElse(null);
         if (existing != null) {
             existing.setQty(existing.getQty() + qty);
@@ -173,6 +286,42 @@ public class SalesController {
         updateTotals();
     }
 
+    private void showSuggestions(String text) {
+        if (choosingSuggestion || !itemField.isFocused()) return;
+        List<ItemNameIndex.Suggestion> hits = itemNames.suggest(text, MAX_SUGGESTIONS);
+        // Nothing to offer, or the only match is exactly what was typed
+        if (hits.isEmpty() || (hits.size() == 1 && hits.get(0).generic() == null
+                && hits.get(0).name().equalsIgnoreCase(safe(text)))) {
+            suggestions.hide();
+            return;
+        }
+        List<MenuItem> items = new ArrayList<>(hits.size());
+        for (ItemNameIndex.Suggestion s : hits) {
+            MenuItem mi = new MenuItem(s.generic() == null ? s.name() : s.name() + "  (" + s.generic() + ")");
+            mi.setMnemonicParsing(false);
+            mi.setOnAction(e -> chooseSuggestion(s.name()));
+            items.add(mi);
+        }
+        suggestions.getItems().setAll(items);
+        if (!suggestions.isShowing()) suggestions.show(itemField, Side.BOTTOM, 0, 0);
+    }
+
+    private void chooseSuggestion(String name) {
+        choosingSuggestion = true;
+        try {
+            itemField.setText(name);
+        } finally {
+            choosingSuggestion = false;
+        }
+        itemField.positionCaret(name.length());
+        suggestions.hide();
+        CatalogCache.Entry cached = catalog.peek(name);
+        if (cached != null && cached.price() != null && safe(priceField.getText()).isEmpty()) {
+            priceField.setText(cached.price().toString());
+        }
+        qtyField.requestFocus();
+    }
+
     @FXML
     private void onClearItem() {
         itemField.clear();
@@ -184,8 +333,10 @@ public class SalesController {
     // Top bar actions
     @FXML
     private void onNewSale() {
+        if (cartBusy()) return;
         customerField.clear();
         datePicker.setValue(LocalDate.now());
+        releaseCart();
         cart.clear();
         discountField.setText("0");
         taxField.setText("0");
@@ -196,160 +347,227 @@ public class SalesController {
     // Cart actions
     @FXML
     private void onRemoveSelected() {
+        if (cartBusy()) return;
         CartItem sel = table.getSelectionModel().getSelectedItem();
         if (sel == null) {
             setCheckoutStatus("Select a row to remove.", true);
             return;
         }
+        checkoutService.release(cartId, sel.getItem(), sel.getQty());
         cart.remove(sel);
         updateTotals();
     }
 
     @FXML
     private void onClearCart() {
+        if (cartBusy()) return;
+        releaseCart();
         cart.clear();
         updateTotals();
     }
 
     @FXML
     private void onHold() {
-        // Stub: In a real app, persist hold to DB or cache
-        setCheckoutStatus("Sale put on hold (demo).", false);
-    }
-
-    @FXML
-    private void onCheckout() {
+        if (cartBusy()) return;
         if (cart.isEmpty()) {
             setCheckoutStatus("Cart is empty.", true);
             return;
         }
-
-        // Validate stock against non-expired batches (FIFO), fallback to legacy if no batches exist
+        String customer = safe(customerField.getText());
+        long discount = discountBps;
+        long tax = taxBps;
+        List<HeldSaleRepository.Line> lines = new ArrayList<>(cart.size());
         for (CartItem ci : cart) {
-            int available = availableQtyNonExpired(ci.getItem());
-            if (ci.getQty() > available) {
-                setCheckoutStatus("Insufficient non-expired stock for " + ci.getItem() + " (available: " + available + ")", true);
-                return;
-            }
+            lines.add(new HeldSaleRepository.Line(ci.getItem(), ci.getQty(), ci.getPrice()));
         }
+        String heldBy = Session.isLoggedIn() ? Session.getUsername() : null;
+
+        checkingOut.set(true);
+        setCheckoutStatus("Holding sale...", false);
+        writes.load("hold", () -> held.hold(customer, discount, tax, lines, heldBy), h -> {
+            checkingOut.set(false);
+            // A parked basket does not keep stock: it is revalidated when resumed
+            onNewSale();
+            updateHeldCount();
+            setCheckoutStatus("Sale #" + h.id() + " held for " + h.customer() + ".", false);
+        }, err -> {
+            checkingOut.set(false);
+            setCheckoutStatus("Hold failed: " + err.getMessage(), true);
+        });
+    }
 
-        String customer = safe(customerField.getText());
-        double subtotal = subtotal();
-        double discountPct = pct(discountField.getText());
-        double taxPct = pct(taxField.getText());
-        double grand = grandTotal(subtotal, discountPct, taxPct);
+    private void rebuildHeldMenu() {
+        List<HeldSaleRepository.HeldSale> list = held.list();
+        List<MenuItem> items = new ArrayList<>(list.size());
+        for (HeldSaleRepository.HeldSale h : list) {
+            MenuItem mi = new MenuItem(String.format(Locale.US, "#%d  %s  %s  (%d items, %s)", h.id(),
+                h.heldAt().toLocalTime().withNano(0), h.customer(), h.itemCount(), money(h.subtotal())));
+            mi.setMnemonicParsing(false);
+            mi.setOnAction(e -> resumeHeld(h.id()));
+            items.add(mi);
+        }
+        if (items.isEmpty()) {
+            MenuItem none = new MenuItem("No held sales");
+            none.setDisable(true);
+            items.add(none);
+        }
+        heldMenu.getItems().setAll(items);
+    }
 
-        // Persist sale and sale items in a transaction and update inventory
-        Connection c = null;
-        try {
-            c = Database.getConnection();
-            c.setAutoCommit(false);
-
-            // Insert sale
-            int saleId;
-            try (PreparedStatement ps = c.prepareStatement(
-                    "INSERT INTO sales (customer, sale_date, subtotal, discount_pct, tax_pct, grand_total) VALUES (?,?,?,?,?,?)",
-                    Statement.RETURN_GENERATED_KEYS)) {
-                ps.setString(1, customer.isEmpty() ? "Walk-in" : customer);
-                ps.setTimestamp(2, Timestamp.valueOf(LocalDate.now().atStartOfDay())); // or LocalDateTime.now()
-                ps.setDouble(3, subtotal);
-                ps.setDouble(4, Math.max(0.0, discountPct));
-                ps.setDouble(5, Math.max(0.0, taxPct));
-                ps.setDouble(6, grand);
-                ps.executeUpdate();
-                try (ResultSet keys = ps.getGeneratedKeys()) {
-                    if (!keys.next()) throw new SQLException("No sale id returned");
-                    saleId = keys.getInt(1);
-                }
+    private void resumeHeld(long id) {
+        if (cartBusy()) return;
+        if (!cart.isEmpty()) {
+            setCheckoutStatus("Hold or clear the current sale before resuming another.", true);
+            return;
+        }
+        String resumeCartId = cartId;
+        checkingOut.set(true);
+        writes.load("resume", () -> {
+            HeldSaleRepository.Resumed r = held.resume(id);
+            return r == null ? null : new Restored(r.sale(), reserveHeld(resumeCartId, r));
+        }, r -> {
+            checkingOut.set(false);
+            updateHeldCount();
+            if (r == null) {
+                setCheckoutStatus("That sale is no longer held.", true);
+                return;
             }
+            restoreHeld(r);
+        }, err -> {
+            checkingOut.set(false);
+            setCheckoutStatus("Resume failed: " + err.getMessage(), true);
+        });
+    }
 
-            // Insert sale items and update inventory
-            try (PreparedStatement psItem = c.prepareStatement(
-                     "INSERT INTO sale_items (sale_id, item_name, qty, unit_price, line_total) VALUES (?,?,?,?,?)");
-                 PreparedStatement psUpd = c.prepareStatement(
-                     "UPDATE inventory_items SET quantity = quantity - ? WHERE id = ?")) {
-                for (CartItem ci : cart) {
-                    double line = ci.getLineTotal();
-                    psItem.setInt(1, saleId);
-                    psItem.setString(2, ci.getItem());
-                    psItem.setInt(3, ci.getQty());
-                    psItem.setDouble(4, ci.getPrice());
-                    psItem.setDouble(5, line);
-                    psItem.addBatch();
-
-                    InvLookup inv = lookupInventoryByName(ci.getItem());
-                    if (inv != null) {
-                        psUpd.setInt(1, ci.getQty());
-                        psUpd.setInt(2, inv.id);
-                        psUpd.addBatch();
-                    }
-                }
-                psItem.executeBatch();
-                psUpd.executeBatch();
-
-                // FIFO per-batch deduction and inventory movements (SALE), skipping if no batches tracked
-                try (PreparedStatement psUpdateBatch = c.prepareStatement(
-                         "UPDATE item_batches SET qty_on_hand = qty_on_hand - ? WHERE id = ? AND qty_on_hand >= ?");
-                     PreparedStatement psInsertMov = c.prepareStatement(
-                         "INSERT INTO inventory_movements (item_batch_id, qty, movement_type, ref_type, ref_id, created_at, user_id) VALUES (?, ?, 'SALE', 'SALE', ?, CURRENT_TIMESTAMP, NULL)")) {
-                    for (CartItem ci : cart) {
-                        java.util.List<BatchAllocation> allocs = fifoPlan(c, ci.getItem(), ci.getQty());
-                        for (BatchAllocation al : allocs) {
-                            psUpdateBatch.setInt(1, al.qty);
-                            psUpdateBatch.setInt(2, al.batchId);
-                            psUpdateBatch.setInt(3, al.qty);
-                            int updated = psUpdateBatch.executeUpdate();
-                            if (updated == 0) throw new SQLException("Insufficient or modified stock for batch " + al.batchId);
-                            psInsertMov.setInt(1, al.batchId);
-                            psInsertMov.setInt(2, -al.qty);
-                            psInsertMov.setInt(3, saleId);
-                            psInsertMov.addBatch();
-                        }
+    // A resumed basket and how much of each line could be reserved again
+    private record Restored(HeldSaleRepository.HeldSale sale, List<Integer> reserved) {}
+
+    // Re-reserve each line against current stock (on the DB worker); short lines keep what is
+    // available, retrying while other carts take it first. The basket is already off hold, so a
+    // line that cannot be read again is restored as unavailable rather than failing the resume.
+    private List<Integer> reserveHeld(String cart, HeldSaleRepository.Resumed r) {
+        List<Integer> reserved = new ArrayList<>();
+        for (HeldSaleRepository.Line l : r.sale().lines()) {
+            CatalogCache.Entry inv = r.stock().get(l.item().toLowerCase(Locale.ROOT));
+            int qty = inv == null ? 0 : l.qty();
+            while (qty > 0) {
+                StockReservations.Outcome res = checkoutService.reserve(cart, inv, qty);
+                if (res.stale()) {
+                    try {
+                        inv = checkoutService.lookupFresh(l.item());
+                    } catch (SQLException ex) {
+                        inv = null;
                     }
-                    psInsertMov.executeBatch();
+                    if (inv == null) qty = 0;
+                } else if (res.ok()) {
+                    break;
+                } else {
+                    qty = Math.min(res.available(), qty - 1);
                 }
             }
+            reserved.add(qty);
+        }
+        return reserved;
+    }
+
+    private void restoreHeld(Restored r) {
+        HeldSaleRepository.HeldSale h = r.sale();
+        customerField.setText("Walk-in".equals(h.customer()) ? "" : h.customer());
+        discountField.setText(plain(h.discountBps()));
+        taxField.setText(plain(h.taxBps()));
+        List<String> shortages = new ArrayList<>();
+        for (int i = 0; i < h.lines().size(); i++) {
+            HeldSaleRepository.Line l = h.lines().get(i);
+            int qty = r.reserved().get(i);
+            if (qty < l.qty()) shortages.add(l.item() + " (only " + qty + " of " + l.qty() + ")");
+            if (qty > 0) cart.add(new CartItem(l.item(), qty, l.unitPrice()));
+        }
+        updateTotals();
+        if (shortages.isEmpty()) {
+            setCheckoutStatus("Resumed sale #" + h.id() + ".", false);
+        } else {
+            setCheckoutStatus("Resumed sale #" + h.id() + "; stock changed: " + String.join(", ", shortages) + ".", true);
+        }
+    }
 
-            c.commit();
+    private void updateHeldCount() {
+        int n = held.count();
+        heldMenu.setText(n == 0 ? "Held" : "Held (" + n + ")");
+    }
 
+    @FXML
+    private void onCheckout() {
+        if (checkingOut.get()) return;
+        if (cart.isEmpty()) {
+            setCheckoutStatus("Cart is empty.", true);
+            return;
+        }
+
+        String customer = safe(customerField.getText());
+        long discount = discountBps;
+        long tax = taxBps;
+        Money subtotal = Money.ofCents(subtotalCents);
+        Money grand = Money.ofCents(grandTotalCents());
+        List<SaleRepository.Line> lines = new ArrayList<>(cart.size());
+        for (CartItem ci : cart) {
+            lines.add(new SaleRepository.Line(ci.getItem(), ci.getQty(), ci.getPrice()));
+        }
+        String saleCartId = cartId;
+
+        checkingOut.set(true);
+        setCheckoutStatus("Saving sale...", false);
+        // On a DB worker: deadlocks and lock timeouts are retried, and while the database is
+        // unreachable the sale goes to the local sales journal
+        writes.load("checkout", () -> checkoutService.checkout(saleCartId, customer, lines, discount, tax,
+            attempt -> Platform.runLater(() -> setCheckoutStatus("Database busy, retrying (attempt " + attempt + ")...", false))), result -> {
+            checkingOut.set(false);
+            if (!result.ok()) {
+                setCheckoutStatus(result.stockError(), true);
+                return;
+            }
+            // The repository turned this cart's holds into deductions; the next sale is a new cart
+            cartId = UUID.randomUUID().toString();
             cart.clear();
             updateTotals();
-            setCheckoutStatus(String.format(Locale.US,
-                "Checked out for %s | Total: %s (Sale saved)", customer.isEmpty() ? "Walk-in" : customer, money(grand)), false);
-        } catch (Exception ex) {
-            try { if (c != null) c.rollback(); } catch (Exception ignore) {}
-            setCheckoutStatus("Checkout failed: " + ex.getMessage(), true);
-        } finally {
-            try { if (c != null) c.close(); } catch (Exception ignore) {}
-        }
+            // Printed in the background; the till does not wait for the printer
+            boolean printing = receipts.submit(new ReceiptSpooler.Receipt(result.saleId(), saleCartId,
+                AppConfig.get().getTerminalId(), Session.getUsername(), LocalDateTime.now(), customer, lines,
+                discount, tax, subtotal, grand, result.journaled()));
+            setCheckoutStatus(String.format(Locale.US, "Checked out for %s | Total: %s (%s)%s",
+                customer.isEmpty() ? "Walk-in" : customer, money(grand),
+                result.journaled() ? "Database offline: saved locally, will sync when it is back" : "Sale saved",
+                printing || !receipts.isEnabled() ? "" : " | Receipt printer is behind, receipt not printed"), false);
+        }, err -> {
+            checkingOut.set(false);
+            setCheckoutStatus("Checkout failed: " + err.getMessage(), true);
+        });
     }
 
-    // Totals
-    private void updateTotals() {
-        double sub = subtotal();
-        lblSubtotal.setText(money(sub));
-        double discountPct = pct(discountField.getText());
-        double taxPct = pct(taxField.getText());
-        lblGrandTotal.setText(money(grandTotal(sub, discountPct, taxPct)));
+    private void releaseCart() {
+        checkoutService.releaseCart(cartId);
+        cartId = UUID.randomUUID().toString();
     }
 
-    private double subtotal() {
-        return cart.stream().mapToDouble(CartItem::getLineTotal).sum();
+    // The cart being checked out must not change under it
+    private boolean cartBusy() {
+        if (!checkingOut.get()) return false;
+        setCheckoutStatus("Checkout in progress...", false);
+        return true;
     }
 
-    private static double pct(String s) {
-        try {
-            if (s == null || s.isBlank()) return 0.0;
-            return Math.max(0.0, Double.parseDouble(s.trim()));
-        } catch (Exception e) {
-            return 0.0;
-        }
+    @Override
+    public void onViewHidden() {
+        tasks.cancelAll();
     }
 
-    private double grandTotal(double subtotal, double discountPct, double taxPct) {
-        double afterDiscount = subtotal * (1.0 - (Math.max(0.0, discountPct) / 100.0));
-        double afterTax = afterDiscount * (1.0 + (Math.max(0.0, taxPct) / 100.0));
-        return Math.max(0.0, afterTax);
+    // Totals
+    private void updateTotals() {
+        lblSubtotal.setText(money(subtotalCents));
+        lblGrandTotal.setText(money(grandTotalCents()));
+    }
+
+    private long grandTotalCents() {
+        return CheckoutService.grandTotalCents(subtotalCents, discountBps, taxBps);
     }
 
     // Helpers
@@ -360,14 +578,15 @@ public class SalesController {
             return Integer.parseInt(s.trim());
         } catch (Exception e) { return null; }
     }
-    private static Double parseDouble(String s) {
-        try {
-            if (s == null || s.isBlank()) return null;
-            return Double.parseDouble(s.trim());
-        } catch (Exception e) { return null; }
+    // Basis points as the percentage typed: 750 is "7.5", 1000 is "10"
+    private static String plain(long bps) {
+        return Money.pct(bps).stripTrailingZeros().toPlainString();
+    }
+    private static String money(Money v) {
+        return money(v.cents());
     }
-    private static String money(double v) {
-        return String.format(Locale.US, "$%.2f", v);
+    private static String money(long cents) {
+        return (cents < 0 ? "-$" : "$") + Money.ofCents(Math.abs(cents));
     }
     private void setAddStatus(String msg, boolean error) {
         addStatus.setText(msg);
@@ -390,103 +609,6 @@ public class SalesController {
         );
     }
 
-    // Database helpers
-    private InvLookup lookupInventoryByName(String name) {
-        if (name == null || name.isBlank()) return null;
-        String sql = "SELECT id, quantity, price FROM inventory_items WHERE LOWER(name)=LOWER(?) ORDER BY id LIMIT 1";
-        try (Connection c = Database.getConnection();
-             PreparedStatement ps = c.prepareStatement(sql)) {
-            ps.setString(1, name.trim());
-            try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    InvLookup i = new InvLookup();
-                    i.id = rs.getInt("id");
-                    i.quantity = rs.getInt("quantity");
-                    i.price = rs.getDouble("price");
-                    return i;
-                }
-            }
-        } catch (Exception ignore) { }
-        return null;
-    }
-
-    private static class InvLookup {
-        int id;
-        int quantity;
-        double price;
-    }
-
-    // Allocation for FIFO
-    private static class BatchAllocation {
-        final int batchId;
-        final int qty;
-        BatchAllocation(int batchId, int qty) { this.batchId = batchId; this.qty = qty; }
-    }
-
-    // Available quantity preferring non-expired batches; falls back to legacy flat inventory if no batches tracked
-    private int availableQtyNonExpired(String name) {
-        if (name == null || name.isBlank()) return 0;
-        String sqlCount = "SELECT COUNT(*) FROM item_batches b JOIN items i ON b.item_id = i.id WHERE LOWER(i.name) = LOWER(?)";
-        String sqlAvail = "SELECT COALESCE(SUM(b.qty_on_hand),0) FROM item_batches b JOIN items i ON b.item_id = i.id " +
-                          "WHERE LOWER(i.name) = LOWER(?) AND (b.expiry_date IS NULL OR b.expiry_date >= CURDATE())";
-        try (Connection c = Database.getConnection()) {
-            boolean hasBatches = false;
-            try (PreparedStatement ps = c.prepareStatement(sqlCount)) {
-                ps.setString(1, name.trim());
-                try (ResultSet rs = ps.executeQuery()) {
-                    if (rs.next()) hasBatches = rs.getInt(1) > 0;
-                }
-            }
-            if (hasBatches) {
-                try (PreparedStatement ps = c.prepareStatement(sqlAvail)) {
-                    ps.setString(1, name.trim());
-                    try (ResultSet rs = ps.executeQuery()) {
-                        if (rs.next()) return rs.getInt(1);
-                    }
-                }
-                return 0;
-            } else {
-                try (PreparedStatement ps = c.prepareStatement("SELECT COALESCE(SUM(quantity),0) FROM inventory_items WHERE LOWER(name)=LOWER(?)")) {
-                    ps.setString(1, name.trim());
-                    try (ResultSet rs = ps.executeQuery()) {
-                        if (rs.next()) return rs.getInt(1);
-                    }
-                }
-            }
-        } catch (Exception ignore) { }
-        return 0;
-    }
-
-    // Build FIFO allocation plan from non-expired batches within an existing transaction
-    private java.util.List<BatchAllocation> fifoPlan(Connection c, String name, int needed) throws SQLException {
-        java.util.List<BatchAllocation> plan = new java.util.ArrayList<>();
-        if (name == null || name.isBlank() || needed <= 0) return plan;
-        String sql = "SELECT b.id, b.qty_on_hand, b.expiry_date " +
-                     "FROM item_batches b JOIN items i ON b.item_id = i.id " +
-                     "WHERE LOWER(i.name) = LOWER(?) AND (b.expiry_date IS NULL OR b.expiry_date >= CURDATE()) AND b.qty_on_hand > 0 " +
-                     "ORDER BY (CASE WHEN b.expiry_date IS NULL THEN 1 ELSE 0 END), b.expiry_date, b.id";
-        try (PreparedStatement ps = c.prepareStatement(sql)) {
-            ps.setString(1, name.trim());
-            try (ResultSet rs = ps.executeQuery()) {
-                int remain = needed;
-                while (rs.next() && remain > 0) {
-                    int batchId = rs.getInt(1);
-                    int onHand = rs.getInt(2);
-                    int take = Math.min(remain, onHand);
-                    if (take > 0) {
-                        plan.add(new BatchAllocation(batchId, take));
-                        remain -= take;
-                    }
-                }
-                if (remain > 0) {
-                    // Not enough non-expired batches; return empty to signal fallback/no-op
-                    plan.clear();
-                }
-            }
-        }
-        return plan;
-    }
-
     // Focus helpers for global search routing
     public void focusItemWith(String q) {
         if (itemField == null) return;
@@ -499,31 +621,36 @@ public class SalesController {
     public static class CartItem {
         private final StringProperty item = new SimpleStringProperty();
         private final IntegerProperty qty = new SimpleIntegerProperty();
-        private final DoubleProperty price = new SimpleDoubleProperty();
+        private final ObjectProperty<Money> price = new SimpleObjectProperty<>(Money.ZERO);
+        // Kept current on qty/price changes, so the table and totals never recompute it
+        private final ReadOnlyObjectWrapper<Money> lineTotal = new ReadOnlyObjectWrapper<>(Money.ZERO);
 
-        public CartItem(String item, int qty, double price) {
+        public CartItem(String item, int qty, Money price) {
             this.item.set(item);
             this.qty.set(qty);
             this.price.set(price);
+            updateLineTotal();
+            this.qty.addListener((o, a, b) -> updateLineTotal());
+            this.price.addListener((o, a, b) -> updateLineTotal());
+        }
+
+        private void updateLineTotal() {
+            lineTotal.set(getPrice().times(getQty()));
         }
 
         public String getItem() { return item.get(); }
         public void setItem(String v) { item.set(v); }
         public int getQty() { return qty.get(); }
         public void setQty(int v) { qty.set(v); }
-        public double getPrice() { return price.get(); }
-        public void setPrice(double v) { price.set(v); }
+        public Money getPrice() { return price.get(); }
+        public void setPrice(Money v) { price.set(v); }
 
-        public double getLineTotal() { return getQty() * getPrice(); }
+        public Money getLineTotal() { return lineTotal.get(); }
 
         // JavaFX properties (optional if ever needed)
         public StringProperty itemProperty() { return item; }
         public IntegerProperty qtyProperty() { return qty; }
-        public DoubleProperty priceProperty() { return price; }
-        public ReadOnlyDoubleWrapper lineTotalProperty() {
-            ReadOnlyDoubleWrapper w = new ReadOnlyDoubleWrapper();
-            w.bind(Bindings.multiply(qty, price));
-            return w;
-        }
+        public ObjectProperty<Money> priceProperty() { return price; }
+        public ReadOnlyObjectProperty<Money> lineTotalProperty() { return lineTotal.getReadOnlyProperty(); }
     }
 }
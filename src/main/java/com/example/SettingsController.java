@@ -1,5 +1,7 @@
 package com.example;
 
+import javafx.beans.property.SimpleLongProperty;
+import javafx.beans.property.SimpleStringProperty;
 import javafx.fxml.FXML;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
@@ -7,8 +9,16 @@ import javafx.scene.layout.Region;
 import javafx.stage.Stage;
 import com.example.util.AppConfig;
 import com.example.Database;
+import com.example.db.ConnectionPool;
+import com.example.db.QueryTracer;
+import com.example.db.ReplicaRouter;
+import com.example.repository.GroupCommitCoordinator;
+import com.example.repository.ReceiptSpooler;
+import com.example.repository.SalesJournal;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.Locale;
 import java.util.HashMap;
@@ -41,10 +51,23 @@ public class SettingsController {
     @FXML private TextField dbUrlField;
     @FXML private Label configStatus;
 
+    // Diagnostics
+    @FXML private Label diagSummary;
+    @FXML private TableView<QueryTracer.QueryStats> queryStatsTable;
+    @FXML private TableColumn<QueryTracer.QueryStats, String> colQuerySql;
+    @FXML private TableColumn<QueryTracer.QueryStats, Number> colQueryCount;
+    @FXML private TableColumn<QueryTracer.QueryStats, String> colQueryAvg;
+    @FXML private TableColumn<QueryTracer.QueryStats, String> colQueryP95;
+    @FXML private TableColumn<QueryTracer.QueryStats, String> colQueryMax;
+    @FXML private TableColumn<QueryTracer.QueryStats, Number> colQueryRows;
+    @FXML private TableColumn<QueryTracer.QueryStats, Number> colQueryErrors;
+
     // Backup
     @FXML private Label lastBackupLabel;
     @FXML private Label backupStatus;
 
+    private final ViewTasks tasks = new ViewTasks();
+
     @FXML
     private void initialize() {
         // Seed roles
@@ -53,6 +76,8 @@ public class SettingsController {
         }
         initConfigUi();
         loadFromConfig();
+        initDiagnostics();
+        refreshDiagnostics();
     }
 
     // Appearance handlers
@@ -126,12 +151,12 @@ public class SettingsController {
     // Configuration helpers and handlers
     private void initConfigUi() {
         if (profileBox != null) {
-            profileBox.getItems().setAll("base", "dev", "test", "prod");
+            profileBox.getItems().setAll("base", "dev", "test", "prod", "embedded");
             String p = AppConfig.get().getActiveProfile();
             profileBox.setValue(p == null ? "base" : p);
         }
         if (dbTypeBox != null) {
-            dbTypeBox.getItems().setAll("mysql", "postgres", "sqlite");
+            dbTypeBox.getItems().setAll("mysql", "postgres", "h2");
         }
     }
 
@@ -184,6 +209,7 @@ public class SettingsController {
     @FXML
     private void onLoadConfig() {
         AppConfig.get().reload();
+        Database.reconfigure();
         loadFromConfig();
         updateStageTitleFromConfig();
     }
@@ -193,17 +219,20 @@ public class SettingsController {
         AppConfig cfg = AppConfig.get();
         cfg.update(gatherFromFields());
         boolean ok = cfg.saveToUserConfig();
+        Database.reconfigure();
         setConfigStatus(ok ? "Configuration saved to ~/.pharmapro" : "Failed to save configuration", !ok);
         updateStageTitleFromConfig();
     }
 
     @FXML
     private void onTestDb() {
-        try (var c = Database.getConnection()) {
-            setConfigStatus("DB connection OK (" + c.getMetaData().getURL() + ")", false);
-        } catch (Exception ex) {
-            setConfigStatus("DB connection failed: " + ex.getMessage(), true);
-        }
+        setConfigStatus("Testing DB connection...", false);
+        tasks.load("testDb", () -> {
+            try (var c = Database.getConnection()) {
+                return c.getMetaData().getURL();
+            }
+        }, url -> setConfigStatus("DB connection OK (" + url + ")", false),
+            err -> setConfigStatus("DB connection failed: " + err.getMessage(), true));
     }
 
     @FXML
@@ -211,6 +240,7 @@ public class SettingsController {
         String sel = profileBox != null ? profileBox.getValue() : "base";
         String profile = (sel == null || sel.equalsIgnoreCase("base")) ? null : sel.trim().toLowerCase(Locale.ROOT);
         AppConfig.get().setActiveProfile(profile);
+        Database.reconfigure();
         // refresh UI from new profile
         if (profileBox != null) profileBox.setValue(AppConfig.get().getActiveProfile() == null ? "base" : AppConfig.get().getActiveProfile());
         loadFromConfig();
@@ -220,10 +250,93 @@ public class SettingsController {
     @FXML
     private void onReloadConfig() {
         AppConfig.get().reload();
+        Database.reconfigure();
         loadFromConfig();
         updateStageTitleFromConfig();
     }
 
+    // Diagnostics
+    private void initDiagnostics() {
+        if (queryStatsTable == null) return;
+        colQuerySql.setCellValueFactory(c -> new SimpleStringProperty(c.getValue().sql()));
+        colQueryCount.setCellValueFactory(c -> new SimpleLongProperty(c.getValue().count()));
+        colQueryAvg.setCellValueFactory(c -> new SimpleStringProperty(ms(c.getValue().avgMs())));
+        colQueryP95.setCellValueFactory(c -> new SimpleStringProperty(ms(c.getValue().p95Ms())));
+        colQueryMax.setCellValueFactory(c -> new SimpleStringProperty(ms(c.getValue().maxMs())));
+        colQueryRows.setCellValueFactory(c -> new SimpleLongProperty(c.getValue().rows()));
+        colQueryErrors.setCellValueFactory(c -> new SimpleLongProperty(c.getValue().errors()));
+    }
+
+    private void refreshDiagnostics() {
+        QueryTracer tracer = Database.queryTracer();
+        if (queryStatsTable != null) queryStatsTable.getItems().setAll(tracer.snapshot());
+        if (diagSummary == null) return;
+        StringBuilder sb = new StringBuilder();
+        ConnectionPool.Stats pool = Database.poolStats();
+        if (pool != null) {
+            sb.append("Pool: ").append(pool.active()).append(" active / ").append(pool.maxSize())
+              .append(" max, ").append(pool.idle()).append(" idle, ").append(pool.waiting()).append(" waiting, ")
+              .append(pool.timeouts()).append(" timeouts; statement cache hit ratio ")
+              .append(String.format(Locale.US, "%.0f%%", pool.stmtCacheHitRatio() * 100)).append(".\n");
+        }
+        ReplicaRouter.Status replica = Database.replicaStatus();
+        if (replica != null) {
+            sb.append("Replica: ").append(replica.routing() ? "in use" : "not in use")
+              .append(replica.lagMs() >= 0 ? ", lag " + replica.lagMs() + " ms" : "")
+              .append(replica.lastError() != null ? " (" + replica.lastError() + ")" : "").append(".\n");
+        }
+        SalesJournal.Stats journal = SalesJournal.shared().stats();
+        if (journal.pending() > 0 || journal.replayed() > 0) {
+            sb.append("Sales journal: ").append(journal.pending()).append(" pending")
+              .append(journal.pending() > 0 ? ", oldest " + journal.lagMs() / 1000 + " s" : "")
+              .append(", ").append(journal.replayed()).append(" replayed")
+              .append(String.format(Locale.US, " (%.1f/s last pass)", journal.replayPerSec()))
+              .append(journal.shortSales() > 0 ? ", " + journal.shortSales() + " saved short of stock (see stock_shortfalls)" : "")
+              .append(journal.lastError() != null ? " (" + journal.lastError() + ")" : "").append(".\n");
+        }
+        ReceiptSpooler.Stats receipts = ReceiptSpooler.shared().stats();
+        if (ReceiptSpooler.shared().isEnabled()) {
+            sb.append("Receipts: ").append(receipts.depth()).append(" / ").append(receipts.capacity()).append(" queued, ")
+              .append(receipts.printed()).append(" printed, render ").append(ms(receipts.avgRenderMs()))
+              .append(" ms avg (max ").append(ms(receipts.maxRenderMs())).append("), output ")
+              .append(ms(receipts.avgPrintMs())).append(" ms avg")
+              .append(receipts.retries() > 0 ? ", " + receipts.retries() + " retries" : "")
+              .append(receipts.failed() > 0 ? ", " + receipts.failed() + " failed" : "")
+              .append(receipts.rejected() > 0 ? ", " + receipts.rejected() + " refused (queue full)" : "")
+              .append(receipts.lastError() != null && receipts.failed() + receipts.retries() > 0 ? " (" + receipts.lastError() + ")" : "")
+              .append(".\n");
+        }
+        GroupCommitCoordinator group = GroupCommitCoordinator.shared();
+        if (group.isEnabled()) {
+            GroupCommitCoordinator.Stats g = group.stats();
+            sb.append("Group commit: ").append(g.sales()).append(" sales in ").append(g.groups()).append(" transactions")
+              .append(String.format(Locale.US, " (avg %.1f, max %d)", g.averageGroup(), g.maxGroup()))
+              .append(", ").append(g.fallbacks()).append(" saved individually.\n");
+        }
+        String since = LocalDateTime.ofInstant(Instant.ofEpochMilli(tracer.since()), ZoneId.systemDefault())
+            .format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm", Locale.US));
+        sb.append("Slow queries since ").append(since).append(": ").append(tracer.slowCount());
+        if (tracer.getSlowLog() != null) sb.append(" (logged to ").append(tracer.getSlowLog()).append(")");
+        sb.append('.');
+        if (!AppConfig.get().isQueryTraceEnabled()) sb.append(" Query statistics are off (db.trace.enabled=false).");
+        diagSummary.setText(sb.toString());
+    }
+
+    private static String ms(double v) {
+        return String.format(Locale.US, v < 10 ? "%.2f" : "%.0f", v);
+    }
+
+    @FXML
+    private void onRefreshDiagnostics() {
+        refreshDiagnostics();
+    }
+
+    @FXML
+    private void onResetDiagnostics() {
+        Database.queryTracer().reset();
+        refreshDiagnostics();
+    }
+
     // Backup handlers
     @FXML
     private void onBackup() {
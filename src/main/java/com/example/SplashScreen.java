@@ -0,0 +1,88 @@
+package com.example;
+
+import javafx.application.Platform;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+import javafx.stage.Stage;
+import javafx.stage.StageStyle;
+
+/**
+ * Lightweight startup splash: built in code with inline styles so it can be shown before
+ * any FXML or stylesheet has been loaded. Shows progress, and on failure an error with
+ * Retry / Continue / Exit actions.
+ */
+final class SplashScreen {
+    private final Stage stage = new Stage(StageStyle.UNDECORATED);
+    private final Label status = new Label("Starting...");
+    private final ProgressBar progress = new ProgressBar(ProgressBar.INDETERMINATE_PROGRESS);
+    private final Button retryButton = new Button("Retry");
+    private final Button continueButton = new Button("Continue");
+    private final Button exitButton = new Button("Exit");
+    private final HBox actions = new HBox(8, retryButton, continueButton, exitButton);
+
+    SplashScreen(String title) {
+        Label heading = new Label(title);
+        heading.setStyle("-fx-font-size: 18px; -fx-font-weight: bold; -fx-text-fill: #111827;");
+        status.setStyle("-fx-text-fill: #4b5563;");
+        status.setWrapText(true);
+        progress.setPrefWidth(360);
+        actions.setAlignment(Pos.CENTER_RIGHT);
+        actions.setVisible(false);
+        actions.setManaged(false);
+        exitButton.setOnAction(e -> Platform.exit());
+
+        VBox box = new VBox(14, heading, progress, status, actions);
+        box.setPadding(new Insets(28));
+        box.setAlignment(Pos.CENTER_LEFT);
+        box.setStyle("-fx-background-color: #ffffff; -fx-border-color: #e5e7eb; -fx-border-width: 1;");
+        stage.setScene(new Scene(box, 420, 200));
+        stage.setTitle(title);
+    }
+
+    /** Show the splash; {@code onFirstPaint} runs once, on the first pulse that lays it out. */
+    void show(Runnable onFirstPaint) {
+        Scene scene = stage.getScene();
+        Runnable[] listener = new Runnable[1];
+        listener[0] = () -> {
+            scene.removePostLayoutPulseListener(listener[0]);
+            onFirstPaint.run();
+        };
+        scene.addPostLayoutPulseListener(listener[0]);
+        stage.centerOnScreen();
+        stage.show();
+    }
+
+    void setStatus(String msg, double fraction) {
+        status.setStyle("-fx-text-fill: #4b5563;");
+        status.setText(msg);
+        progress.setProgress(fraction);
+        actions.setVisible(false);
+        actions.setManaged(false);
+    }
+
+    /** Show an error; pass null for an action that should not be offered. */
+    void showError(String msg, Runnable onRetry, Runnable onContinue) {
+        status.setStyle("-fx-text-fill: #ef4444;");
+        status.setText(msg);
+        progress.setProgress(0);
+        retryButton.setVisible(onRetry != null);
+        retryButton.setManaged(onRetry != null);
+        retryButton.setOnAction(e -> onRetry.run());
+        continueButton.setVisible(onContinue != null);
+        continueButton.setManaged(onContinue != null);
+        continueButton.setOnAction(e -> onContinue.run());
+        actions.setVisible(true);
+        actions.setManaged(true);
+        stage.sizeToScene();
+    }
+
+    void close() {
+        stage.close();
+    }
+}
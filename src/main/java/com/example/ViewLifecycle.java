@@ -0,0 +1,14 @@
+package com.example;
+
+/**
+ * Optional callbacks for controllers of views hosted in the main content area.
+ * MainController calls these when the user navigates between cached views.
+ */
+public interface ViewLifecycle {
+
+    /** The view became the visible content again (not called for the first display). */
+    default void onViewShown() {}
+
+    /** The user navigated away; cancel outstanding background work. */
+    void onViewHidden();
+}
@@ -0,0 +1,76 @@
+package com.example;
+
+import com.example.db.DbExecutor;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanWrapper;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Per-view tracker for background DB work.
+ *
+ * Runs calls on {@link DbExecutor}, delivers results on the FX thread, exposes a loading flag
+ * for the view, and cancels outstanding work when the view is hidden. Keyed loads replace any
+ * previous load with the same key (e.g. a refresh while the last refresh is still running).
+ * All methods must be called on the FX thread.
+ */
+public final class ViewTasks {
+    private final Set<CompletableFuture<?>> inFlight = new HashSet<>();
+    private final Map<String, CompletableFuture<?>> keyed = new HashMap<>();
+    private final ReadOnlyBooleanWrapper loading = new ReadOnlyBooleanWrapper(false);
+
+    public <T> CompletableFuture<T> load(DbExecutor.DbCall<T> call, Consumer<T> onSuccess, Consumer<Throwable> onError) {
+        return load(null, call, onSuccess, onError);
+    }
+
+    public <T> CompletableFuture<T> load(String key, DbExecutor.DbCall<T> call,
+                                         Consumer<T> onSuccess, Consumer<Throwable> onError) {
+        if (key != null) {
+            CompletableFuture<?> previous = keyed.remove(key);
+            if (previous != null) previous.cancel(true);
+        }
+        CompletableFuture<T> cf = DbExecutor.supply(call);
+        inFlight.add(cf);
+        if (key != null) keyed.put(key, cf);
+        loading.set(true);
+        cf.whenComplete((value, err) -> Platform.runLater(() -> {
+            inFlight.remove(cf);
+            if (key != null) keyed.remove(key, cf);
+            loading.set(!inFlight.isEmpty());
+            if (cf.isCancelled()) return;
+            if (err != null) {
+                if (onError != null) onError.accept(DbExecutor.rootCause(err));
+            } else if (onSuccess != null) {
+                onSuccess.accept(value);
+            }
+        }));
+        return cf;
+    }
+
+    /** Cancel the keyed load {@code key} if it is still running; its callbacks are not called. */
+    public void cancel(String key) {
+        CompletableFuture<?> cf = keyed.remove(key);
+        if (cf != null) cf.cancel(true);
+    }
+
+    public void cancelAll() {
+        for (CompletableFuture<?> cf : new HashSet<>(inFlight)) {
+            cf.cancel(true);
+        }
+        keyed.clear();
+    }
+
+    public boolean isLoading() {
+        return loading.get();
+    }
+
+    public ReadOnlyBooleanProperty loadingProperty() {
+        return loading.getReadOnlyProperty();
+    }
+}
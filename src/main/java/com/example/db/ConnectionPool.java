@@ -0,0 +1,400 @@
+package com.example.db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Small JDBC connection pool used behind {@code Database.getConnection()}.
+ *
+ * Connections are handed out as proxies; calling {@code close()} returns the physical
+ * connection to the pool after resetting auto-commit/read-only state. Idle connections
+ * are kept LIFO so the hottest ones are reused first.
+ *
+ * Features:
+ *  - min idle / max size
+ *  - idle eviction and max lifetime (housekeeping thread)
+ *  - validation on borrow (skipped for connections used in the last 500 ms)
+ *  - leak detection (logs the borrowing stack when a connection is held too long)
+ *  - per-connection prepared statement cache (LRU by SQL text, see {@link StatementCache})
+ *  - optional per-query statistics and slow-query log (see {@link QueryTracer})
+ */
+public final class ConnectionPool implements AutoCloseable {
+    private static final System.Logger LOG = System.getLogger(ConnectionPool.class.getName());
+    private static final long ALIVE_BYPASS_MS = 500;
+
+    /** Pool configuration; built from {@code db.pool.*} keys in AppConfig. */
+    public static final class Settings {
+        public String url;
+        public String user;
+        public String password;
+        public final Properties driverProperties = new Properties();
+        public int minIdle = 2;
+        public int maxSize = 10;
+        public long idleTimeoutMs = 600_000;
+        public long maxLifetimeMs = 1_800_000;
+        public long connectionTimeoutMs = 10_000;
+        public int validationTimeoutSec = 3;
+        public long leakDetectionMs = 60_000;
+        public long housekeepingMs = 30_000;
+        /** Max cached prepared statements per connection; 0 disables the cache. */
+        public int statementCacheSize = 64;
+        public String name = "primary";
+        /** Records statement latency/rows/errors when set; may be shared between pools. */
+        public QueryTracer tracer;
+    }
+
+    /** Point-in-time pool counters. */
+    public record Stats(String name, int total, int active, int idle, int waiting, int maxSize,
+                        long created, long borrowed, long timeouts, long leaks,
+                        long stmtCacheHits, long stmtCacheMisses, long stmtCacheEvictions) {
+
+        public double stmtCacheHitRatio() {
+            long lookups = stmtCacheHits + stmtCacheMisses;
+            return lookups == 0 ? 0.0 : (double) stmtCacheHits / lookups;
+        }
+    }
+
+    private final Settings settings;
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Set<PooledConnection> all = ConcurrentHashMap.newKeySet();
+    private final Semaphore permits;
+    private final ScheduledExecutorService housekeeper;
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong borrowed = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong leaks = new AtomicLong();
+    private final StatementCache.Counters stmtCounters = new StatementCache.Counters();
+    private volatile boolean closed;
+
+    public ConnectionPool(Settings settings) {
+        this.settings = settings;
+        settings.maxSize = Math.max(1, settings.maxSize);
+        this.permits = new Semaphore(settings.maxSize, true);
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-pool-" + settings.name + "-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1_000, settings.housekeepingMs);
+        housekeeper.scheduleWithFixedDelay(this::housekeep, period, period, TimeUnit.MILLISECONDS);
+        housekeeper.execute(this::fillToMinIdle);
+    }
+
+    public Connection getConnection() throws SQLException {
+        if (closed) throw new SQLException("Connection pool '" + settings.name + "' is closed");
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(settings.connectionTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            // HY008/HYT00 rather than class 08: the database itself is fine (see DbHealthMonitor)
+            throw new SQLTransientConnectionException("Interrupted while waiting for a connection", "HY008", ie);
+        }
+        if (!acquired) {
+            timeouts.incrementAndGet();
+            throw new SQLTransientConnectionException("Timed out after " + settings.connectionTimeoutMs
+                + " ms waiting for a connection (" + describe() + ")", "HYT00");
+        }
+        try {
+            PooledConnection pc;
+            while ((pc = idle.pollFirst()) != null) {
+                if (isUsable(pc)) break;
+                discard(pc);
+            }
+            if (pc == null) pc = createPhysical();
+            pc.lastBorrowedAt = System.currentTimeMillis();
+            pc.borrowTrace = settings.leakDetectionMs > 0 ? new Exception("Connection borrowed here") : null;
+            pc.leakReported = false;
+            borrowed.incrementAndGet();
+            return pc.newHandle();
+        } catch (SQLException | RuntimeException ex) {
+            permits.release();
+            throw ex;
+        }
+    }
+
+    public Stats stats() {
+        int active = Math.max(0, settings.maxSize - permits.availablePermits());
+        return new Stats(settings.name, all.size(), active, idle.size(), permits.getQueueLength(),
+            settings.maxSize, created.get(), borrowed.get(), timeouts.get(), leaks.get(),
+            stmtCounters.hits.get(), stmtCounters.misses.get(), stmtCounters.evictions.get());
+    }
+
+    public String getUrl() {
+        return settings.url;
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledConnection pc;
+        while ((pc = idle.pollFirst()) != null) {
+            discard(pc);
+        }
+        // Borrowed connections are closed physically when they are returned
+    }
+
+    // ---------- Internals ----------
+
+    private String describe() {
+        Stats s = stats();
+        return "pool=" + s.name() + ", active=" + s.active() + ", idle=" + s.idle() + ", max=" + s.maxSize()
+            + ", waiting=" + s.waiting();
+    }
+
+    private PooledConnection createPhysical() throws SQLException {
+        Properties props = new Properties();
+        props.putAll(settings.driverProperties);
+        if (settings.user != null && !settings.user.isBlank()) props.setProperty("user", settings.user);
+        if (settings.password != null) props.setProperty("password", settings.password);
+        Connection raw = DriverManager.getConnection(settings.url, props);
+        PooledConnection pc = new PooledConnection(raw);
+        all.add(pc);
+        created.incrementAndGet();
+        return pc;
+    }
+
+    private boolean isUsable(PooledConnection pc) {
+        long now = System.currentTimeMillis();
+        if (pc.broken) return false;
+        if (settings.maxLifetimeMs > 0 && now - pc.createdAt > settings.maxLifetimeMs) return false;
+        if (now - pc.lastReturnedAt < ALIVE_BYPASS_MS) return true;
+        try {
+            return pc.raw.isValid(settings.validationTimeoutSec);
+        } catch (SQLException ex) {
+            return false;
+        }
+    }
+
+    private void discard(PooledConnection pc) {
+        all.remove(pc);
+        try { pc.raw.close(); } catch (Exception ignore) { }
+    }
+
+    private void release(PooledConnection pc) {
+        try {
+            pc.borrowTrace = null;
+            if (closed || pc.broken) {
+                discard(pc);
+                return;
+            }
+            try {
+                pc.resetState();
+            } catch (SQLException ex) {
+                discard(pc);
+                return;
+            }
+            pc.lastReturnedAt = System.currentTimeMillis();
+            idle.offerFirst(pc);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void housekeep() {
+        try {
+            long now = System.currentTimeMillis();
+            // Evict idle connections beyond the idle timeout / max lifetime, keeping minIdle alive
+            for (PooledConnection pc : idle.toArray(new PooledConnection[0])) {
+                boolean tooOld = settings.maxLifetimeMs > 0 && now - pc.createdAt > settings.maxLifetimeMs;
+                boolean tooIdle = settings.idleTimeoutMs > 0 && now - pc.lastReturnedAt > settings.idleTimeoutMs
+                    && all.size() > settings.minIdle;
+                if ((tooOld || tooIdle) && idle.remove(pc)) {
+                    discard(pc);
+                }
+            }
+            // Leak detection
+            if (settings.leakDetectionMs > 0) {
+                for (PooledConnection pc : all) {
+                    Exception trace = pc.borrowTrace;
+                    if (trace != null && !pc.leakReported && now - pc.lastBorrowedAt > settings.leakDetectionMs) {
+                        pc.leakReported = true;
+                        leaks.incrementAndGet();
+                        LOG.log(System.Logger.Level.WARNING, "Possible connection leak in pool '" + settings.name
+                            + "': held for " + (now - pc.lastBorrowedAt) + " ms", trace);
+                    }
+                }
+            }
+            fillToMinIdle();
+        } catch (Throwable t) {
+            LOG.log(System.Logger.Level.DEBUG, "Pool housekeeping failed", t);
+        }
+    }
+
+    private void fillToMinIdle() {
+        while (!closed && all.size() < Math.min(settings.minIdle, settings.maxSize) && idle.size() < settings.minIdle) {
+            try {
+                PooledConnection pc = createPhysical();
+                if (all.size() > settings.maxSize) {
+                    // Lost a race with borrowers creating connections; stay within maxSize
+                    discard(pc);
+                    return;
+                }
+                pc.lastReturnedAt = System.currentTimeMillis();
+                idle.offerLast(pc);
+            } catch (SQLException ex) {
+                // Database not reachable yet; try again on the next housekeeping run
+                return;
+            }
+        }
+    }
+
+    /** A physical connection plus its pool bookkeeping. */
+    private final class PooledConnection {
+        final Connection raw;
+        final long createdAt = System.currentTimeMillis();
+        volatile long lastBorrowedAt;
+        volatile long lastReturnedAt = createdAt;
+        volatile Exception borrowTrace;
+        volatile boolean leakReported;
+        volatile boolean broken;
+        boolean dirtyAutoCommit;
+        boolean dirtyReadOnly;
+        boolean dirtyIsolation;
+        final int defaultIsolation;
+        final StatementCache statements;
+
+        PooledConnection(Connection raw) throws SQLException {
+            this.raw = raw;
+            this.defaultIsolation = raw.getTransactionIsolation();
+            this.statements = settings.statementCacheSize > 0
+                ? new StatementCache(raw, settings.statementCacheSize, stmtCounters)
+                : null;
+        }
+
+        Connection newHandle() {
+            return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, new Handle(this));
+        }
+
+        void resetState() throws SQLException {
+            if (dirtyAutoCommit) {
+                if (!raw.getAutoCommit()) {
+                    raw.rollback();
+                    raw.setAutoCommit(true);
+                }
+                dirtyAutoCommit = false;
+            }
+            if (dirtyReadOnly) {
+                raw.setReadOnly(false);
+                dirtyReadOnly = false;
+            }
+            if (dirtyIsolation) {
+                raw.setTransactionIsolation(defaultIsolation);
+                dirtyIsolation = false;
+            }
+            raw.clearWarnings();
+        }
+    }
+
+    /** Logical connection handed to callers; close() returns the physical connection to the pool. */
+    private final class Handle implements InvocationHandler {
+        private final PooledConnection pc;
+        private boolean handleClosed;
+
+        Handle(PooledConnection pc) {
+            this.pc = pc;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "close":
+                    if (!handleClosed) {
+                        handleClosed = true;
+                        release(pc);
+                    }
+                    return null;
+                case "isClosed":
+                    return handleClosed || pc.raw.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + settings.name + "]@" + Integer.toHexString(System.identityHashCode(proxy));
+                case "unwrap":
+                    if (((Class<?>) args[0]).isInstance(proxy)) return proxy;
+                    break;
+                case "isWrapperFor":
+                    if (((Class<?>) args[0]).isInstance(proxy)) return true;
+                    break;
+                case "setAutoCommit":
+                    pc.dirtyAutoCommit = true;
+                    break;
+                case "setReadOnly":
+                    pc.dirtyReadOnly = true;
+                    break;
+                case "setTransactionIsolation":
+                    pc.dirtyIsolation = true;
+                    break;
+                case "prepareStatement":
+                    if (pc.statements != null && !handleClosed && args.length <= 2
+                            && (args.length == 1 || args[1] instanceof Integer)) {
+                        int keys = args.length == 1 ? -1 : (Integer) args[1];
+                        try {
+                            PreparedStatement ps = pc.statements.prepare((Connection) proxy, (String) args[0], keys);
+                            return settings.tracer == null ? ps
+                                : settings.tracer.wrap(PreparedStatement.class, ps, (Connection) proxy, (String) args[0]);
+                        } catch (SQLException ex) {
+                            if (isFatal(ex)) pc.broken = true;
+                            throw ex;
+                        }
+                    }
+                    break;
+                default:
+                    break;
+            }
+            if (handleClosed) throw new SQLException("Connection is closed");
+            try {
+                Object result = method.invoke(pc.raw, args);
+                if (settings.tracer != null && result instanceof Statement st) {
+                    return trace(st, (Connection) proxy, name, args);
+                }
+                return result;
+            } catch (InvocationTargetException ite) {
+                Throwable cause = ite.getCause();
+                if (cause instanceof SQLException sql && isFatal(sql)) {
+                    pc.broken = true;
+                }
+                throw cause;
+            }
+        }
+    }
+
+    private Statement trace(Statement st, Connection owner, String method, Object[] args) {
+        QueryTracer tracer = settings.tracer;
+        if (st instanceof CallableStatement cs) {
+            return tracer.wrap(CallableStatement.class, cs, owner, (String) args[0]);
+        }
+        if (st instanceof PreparedStatement ps && method.startsWith("prepare")) {
+            return tracer.wrap(PreparedStatement.class, ps, owner, (String) args[0]);
+        }
+        return tracer.wrap(Statement.class, st, owner, null);
+    }
+
+    private static boolean isFatal(SQLException ex) {
+        return DbHealthMonitor.isConnectivityFailure(ex);
+    }
+}
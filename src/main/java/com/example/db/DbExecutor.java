@@ -0,0 +1,86 @@
+package com.example.db;
+
+import com.example.util.AppConfig;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared executor for data access, so JDBC never runs on the JavaFX Application Thread.
+ *
+ * Work is submitted as a {@link DbCall} and returned as a {@link CompletableFuture}. Cancelling
+ * the future interrupts the worker if the call is still running. UI code should use
+ * {@code ViewTasks} to get results marshalled back with {@code Platform.runLater}.
+ *
+ * Runs on daemon platform threads (the build targets Java 17, so virtual threads are not
+ * available); the thread count defaults to the connection pool size since every task holds
+ * at most one connection.
+ */
+public final class DbExecutor {
+    private static final AtomicInteger THREAD_SEQ = new AtomicInteger();
+    private static final ExecutorService EXEC = createExecutor();
+
+    private DbExecutor() {}
+
+    @FunctionalInterface
+    public interface DbCall<T> {
+        T call() throws Exception;
+    }
+
+    @FunctionalInterface
+    public interface DbRunnable {
+        void run() throws Exception;
+    }
+
+    public static <T> CompletableFuture<T> supply(DbCall<T> call) {
+        CompletableFuture<T> cf = new CompletableFuture<>();
+        FutureTask<Void> task = new FutureTask<>(() -> {
+            if (cf.isDone()) return null;
+            try {
+                cf.complete(call.call());
+            } catch (Throwable t) {
+                cf.completeExceptionally(t);
+            }
+            return null;
+        });
+        cf.whenComplete((v, err) -> {
+            if (cf.isCancelled()) task.cancel(true);
+        });
+        EXEC.execute(task);
+        return cf;
+    }
+
+    public static CompletableFuture<Void> run(DbRunnable r) {
+        return supply(() -> {
+            r.run();
+            return null;
+        });
+    }
+
+    /** Unwrap CompletionException layers to the original failure. */
+    public static Throwable rootCause(Throwable t) {
+        Throwable cur = t;
+        while (cur instanceof CompletionException && cur.getCause() != null) {
+            cur = cur.getCause();
+        }
+        return cur;
+    }
+
+    private static ExecutorService createExecutor() {
+        int threads = Math.max(2, AppConfig.get().getPoolMaxSize());
+        ThreadPoolExecutor tpe = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), r -> {
+                Thread t = new Thread(r, "db-worker-" + THREAD_SEQ.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        tpe.allowCoreThreadTimeOut(true);
+        return tpe;
+    }
+}
@@ -0,0 +1,234 @@
+package com.example.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Continuous database health check with a circuit breaker in front of {@code Database.getConnection()}.
+ *
+ * While {@link State#UP} a heartbeat runs every {@code intervalMs}. After {@code failureThreshold}
+ * consecutive connectivity failures (heartbeat or real borrows; SQLState class 08 or a connection
+ * exception) the circuit opens: {@link #ensureAvailable()} then throws immediately instead of
+ * letting every caller wait for the driver's connect timeout. Recovery is probed in the background
+ * with exponential backoff (with jitter) between {@code probeInitialMs} and {@code probeMaxMs};
+ * the first successful probe closes the circuit. Other errors (bad SQL, wrong password, pool
+ * exhausted) do not count as an outage.
+ *
+ * Listeners are told about every state change, on the monitor thread.
+ */
+public final class DbHealthMonitor implements AutoCloseable {
+    private static final System.Logger LOG = System.getLogger(DbHealthMonitor.class.getName());
+
+    public enum State { UNKNOWN, UP, DOWN }
+
+    /** Snapshot passed to listeners; {@code nextProbeAt} (epoch ms) is 0 unless DOWN. */
+    public record Status(State state, String lastError, long since, long nextProbeAt) {}
+
+    /** Opens a connection for the heartbeat/probe, bypassing the breaker. */
+    @FunctionalInterface
+    public interface Probe {
+        Connection open() throws SQLException;
+    }
+
+    public static final class Settings {
+        public long intervalMs = 15_000;
+        public int failureThreshold = 1;
+        public long probeInitialMs = 1_000;
+        public long probeMaxMs = 30_000;
+        public int validationTimeoutSec = 3;
+    }
+
+    private final Probe probe;
+    private volatile Settings settings;
+    private final ScheduledExecutorService timer;
+    private final CopyOnWriteArrayList<Consumer<Status>> listeners = new CopyOnWriteArrayList<>();
+    private final Object lock = new Object();
+    private volatile Status status = new Status(State.UNKNOWN, null, System.currentTimeMillis(), 0);
+    private volatile int consecutiveFailures;
+    private long backoffMs;
+    private ScheduledFuture<?> next;
+    private volatile boolean closed;
+
+    public DbHealthMonitor(Probe probe, Settings settings) {
+        this.probe = probe;
+        this.settings = settings;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-health");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Start heartbeating (first check right away); no-op if already running. */
+    public void start() {
+        synchronized (lock) {
+            if (next == null) schedule(0);
+        }
+    }
+
+    /** Forget the current state (e.g. after the connection settings changed) and check again now. */
+    public void reset(Settings newSettings) {
+        synchronized (lock) {
+            settings = newSettings;
+            consecutiveFailures = 0;
+            backoffMs = 0;
+            transition(State.UNKNOWN, null, 0);
+            schedule(0);
+        }
+    }
+
+    public Status status() {
+        return status;
+    }
+
+    public boolean isOpen() {
+        return status.state() == State.DOWN;
+    }
+
+    /** Fail fast while the circuit is open. */
+    public void ensureAvailable() throws SQLException {
+        Status s = status;
+        if (s.state() != State.DOWN) return;
+        long wait = Math.max(0, s.nextProbeAt() - System.currentTimeMillis());
+        throw new SQLTransientConnectionException("Database unavailable (" + s.lastError()
+            + "); next reconnect attempt in " + Math.max(1, (wait + 999) / 1000) + " s", "08001");
+    }
+
+    /** Report a successful borrow: closes the circuit if it was open. */
+    public void recordSuccess() {
+        if (status.state() == State.UP && consecutiveFailures == 0) return;
+        synchronized (lock) {
+            consecutiveFailures = 0;
+            if (status.state() != State.UP) {
+                backoffMs = 0;
+                transition(State.UP, null, 0);
+                schedule(settings.intervalMs);
+            }
+        }
+    }
+
+    /** Report a failed borrow; only connectivity failures count towards opening the circuit. */
+    public void recordFailure(SQLException ex) {
+        if (!isConnectivityFailure(ex)) return;
+        synchronized (lock) {
+            consecutiveFailures++;
+            if (status.state() != State.DOWN && consecutiveFailures >= settings.failureThreshold) {
+                open(describe(ex));
+            }
+        }
+    }
+
+    public void addListener(Consumer<Status> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Consumer<Status> listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        timer.shutdownNow();
+    }
+
+    /** Connection-level failure (SQLState class 08 or a JDBC connection exception type). */
+    public static boolean isConnectivityFailure(SQLException ex) {
+        for (Throwable t = ex; t != null; t = t.getCause()) {
+            if (t instanceof SQLNonTransientConnectionException) return true;
+            if (t instanceof SQLException sql) {
+                String state = sql.getSQLState();
+                if (state != null && state.startsWith("08")) return true;
+            }
+        }
+        return false;
+    }
+
+    // ---------- Internals ----------
+
+    private void check() {
+        if (closed) return;
+        SQLException failure = null;
+        try (Connection c = probe.open()) {
+            if (!c.isValid(settings.validationTimeoutSec)) {
+                failure = new SQLTransientConnectionException("connection is not valid", "08006");
+            }
+        } catch (SQLException ex) {
+            failure = ex;
+        } catch (RuntimeException ex) {
+            failure = new SQLTransientConnectionException(ex.getMessage(), "08006", ex);
+        }
+        synchronized (lock) {
+            if (failure == null) {
+                consecutiveFailures = 0;
+                backoffMs = 0;
+                if (status.state() != State.UP) transition(State.UP, null, 0);
+                schedule(settings.intervalMs);
+            } else if (status.state() == State.DOWN) {
+                // Still down: back off further
+                reopen(describe(failure));
+            } else if (isConnectivityFailure(failure) && ++consecutiveFailures >= settings.failureThreshold) {
+                open(describe(failure));
+            } else {
+                if (!isConnectivityFailure(failure)) {
+                    LOG.log(System.Logger.Level.DEBUG, "Health check error (not an outage): " + failure.getMessage());
+                }
+                schedule(settings.intervalMs);
+            }
+        }
+    }
+
+    // Callers hold lock
+    private void open(String reason) {
+        backoffMs = 0;
+        reopen(reason);
+        LOG.log(System.Logger.Level.WARNING, "Database unavailable, failing fast until it recovers: " + reason);
+    }
+
+    private void reopen(String reason) {
+        backoffMs = backoffMs == 0 ? settings.probeInitialMs : Math.min(settings.probeMaxMs, backoffMs * 2);
+        // +/-20% jitter so several clients do not reconnect in lockstep
+        long delay = Math.max(100, (long) (backoffMs * ThreadLocalRandom.current().nextDouble(0.8, 1.2)));
+        transition(State.DOWN, reason, System.currentTimeMillis() + delay);
+        schedule(delay);
+    }
+
+    private void transition(State state, String error, long nextProbeAt) {
+        Status old = status;
+        long since = old.state() == state ? old.since() : System.currentTimeMillis();
+        Status s = new Status(state, error, since, nextProbeAt);
+        status = s;
+        if (old.state() == State.DOWN && state == State.UP) {
+            LOG.log(System.Logger.Level.INFO, "Database reachable again after " + (System.currentTimeMillis() - old.since()) + " ms");
+        }
+        for (Consumer<Status> l : listeners) {
+            try {
+                l.accept(s);
+            } catch (RuntimeException ex) {
+                LOG.log(System.Logger.Level.DEBUG, "Health listener failed", ex);
+            }
+        }
+    }
+
+    private void schedule(long delayMs) {
+        if (closed) return;
+        if (next != null) next.cancel(false);
+        next = timer.schedule(this::check, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private static String describe(SQLException ex) {
+        String msg = ex.getMessage();
+        if (msg == null || msg.isBlank()) msg = ex.getClass().getSimpleName();
+        int nl = msg.indexOf('\n');
+        return nl > 0 ? msg.substring(0, nl) : msg;
+    }
+}
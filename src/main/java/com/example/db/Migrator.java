@@ -0,0 +1,159 @@
+package com.example.db;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Versioned, checksummed schema migrations recorded in a {@code schema_version} table.
+ *
+ * On a database that is up to date, {@link #migrate} costs a single query: the applied versions
+ * and their checksums are read once and every registered migration is skipped by map lookup.
+ * Pending migrations run in version order, each in its own transaction together with its
+ * {@code schema_version} row (DDL may still auto-commit on MySQL). A changed checksum for an
+ * applied version fails the startup rather than silently diverging.
+ *
+ * Migrations are tracked individually, so a conditional one (e.g. demo data behind a flag)
+ * can be applied later than higher versions. By convention, versions from 1000 up are optional
+ * data seeds that run after all schema versions.
+ */
+public final class Migrator {
+    private static final System.Logger LOG = System.getLogger(Migrator.class.getName());
+
+    private static final String VERSION_TABLE = """
+        CREATE TABLE IF NOT EXISTS schema_version (
+          version INT NOT NULL PRIMARY KEY,
+          description VARCHAR(200) NOT NULL,
+          checksum BIGINT NOT NULL,
+          installed_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+          execution_ms BIGINT NOT NULL DEFAULT 0
+        )
+        """;
+
+    @FunctionalInterface
+    public interface Step {
+        void apply(Connection c, SqlDialect dialect) throws SQLException;
+    }
+
+    public record Migration(int version, String description, long checksum, Step step) {
+
+        /** Plain SQL statements (may use the {@link SqlDialect} placeholders); checksummed by their text. */
+        public static Migration sql(int version, String description, String... statements) {
+            return new Migration(version, description, crc32(String.join("\n;\n", statements)), (c, dialect) -> {
+                try (Statement st = c.createStatement()) {
+                    for (String s : statements) {
+                        st.execute(dialect.ddl(s));
+                    }
+                }
+            });
+        }
+
+        /**
+         * Java step; {@code checksumSource} identifies its behaviour and must change (with a new
+         * version) whenever the step itself changes meaning.
+         */
+        public static Migration code(int version, String description, String checksumSource, Step step) {
+            return new Migration(version, description, crc32(checksumSource), step);
+        }
+    }
+
+    /** Outcome of a run: versions applied now and the total number known to the database. */
+    public record Result(List<Integer> applied, int total) {}
+
+    private final List<Migration> migrations = new ArrayList<>();
+
+    public Migrator add(Migration m) {
+        for (Migration existing : migrations) {
+            if (existing.version() == m.version()) {
+                throw new IllegalArgumentException("Duplicate migration version " + m.version());
+            }
+        }
+        migrations.add(m);
+        return this;
+    }
+
+    /** Like {@link #add} but only registers the migration when {@code enabled}. */
+    public Migrator addIf(boolean enabled, Migration m) {
+        return enabled ? add(m) : this;
+    }
+
+    public Result migrate(Connection c, SqlDialect dialect) throws SQLException {
+        Map<Integer, Long> applied = readApplied(c);
+        List<Migration> ordered = new ArrayList<>(migrations);
+        ordered.sort(Comparator.comparingInt(Migration::version));
+
+        List<Integer> ran = new ArrayList<>();
+        for (Migration m : ordered) {
+            Long recorded = applied.get(m.version());
+            if (recorded != null) {
+                if (recorded != m.checksum()) {
+                    throw new SQLException("Migration V" + m.version() + " (" + m.description()
+                        + ") was changed after it was applied: checksum " + recorded + " != " + m.checksum());
+                }
+                continue;
+            }
+            apply(c, dialect, m);
+            applied.put(m.version(), m.checksum());
+            ran.add(m.version());
+        }
+        return new Result(ran, applied.size());
+    }
+
+    private Map<Integer, Long> readApplied(Connection c) throws SQLException {
+        Map<Integer, Long> applied = new HashMap<>();
+        try (Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery("SELECT version, checksum FROM schema_version")) {
+            while (rs.next()) {
+                applied.put(rs.getInt(1), rs.getLong(2));
+            }
+            return applied;
+        } catch (SQLException missing) {
+            // First run against this database
+        }
+        try (Statement st = c.createStatement()) {
+            st.execute(VERSION_TABLE);
+        }
+        return applied;
+    }
+
+    private void apply(Connection c, SqlDialect dialect, Migration m) throws SQLException {
+        long t0 = System.nanoTime();
+        boolean auto = c.getAutoCommit();
+        c.setAutoCommit(false);
+        try {
+            m.step().apply(c, dialect);
+            long ms = (System.nanoTime() - t0) / 1_000_000;
+            try (PreparedStatement ps = c.prepareStatement(
+                    "INSERT INTO schema_version (version, description, checksum, execution_ms) VALUES (?,?,?,?)")) {
+                ps.setInt(1, m.version());
+                ps.setString(2, m.description());
+                ps.setLong(3, m.checksum());
+                ps.setLong(4, ms);
+                ps.executeUpdate();
+            }
+            c.commit();
+            LOG.log(System.Logger.Level.INFO, "Applied migration V" + m.version() + " (" + m.description() + ") in " + ms + " ms");
+        } catch (SQLException ex) {
+            try { c.rollback(); } catch (Exception ignore) { }
+            throw new SQLException("Migration V" + m.version() + " (" + m.description() + ") failed: " + ex.getMessage(),
+                ex.getSQLState(), ex.getErrorCode(), ex);
+        } finally {
+            c.setAutoCommit(auto);
+        }
+    }
+
+    static long crc32(String text) {
+        CRC32 crc = new CRC32();
+        crc.update(text.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+}
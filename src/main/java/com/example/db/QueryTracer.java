@@ -0,0 +1,388 @@
+package com.example.db;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Per-query latency, row and error statistics for statements created through pooled connections.
+ *
+ * Statements are wrapped in a proxy that times every {@code execute*} call and records it under
+ * the normalized SQL (literals replaced by {@code ?}, whitespace collapsed, {@code IN (?, ?, ?)}
+ * lists, multi-row {@code VALUES} and {@code WHEN ? THEN ?} lists folded), so the same query
+ * with different values or list lengths lands in one entry. Latency is the time spent in the
+ * execute call itself; rows are update counts, or the rows read from a result set once it is
+ * exhausted or closed.
+ *
+ * Executions over the slow-query threshold are logged (WARNING) and appended to a slow-query file.
+ * Only the SQL text is written, never bound parameter values.
+ */
+public final class QueryTracer {
+    private static final System.Logger LOG = System.getLogger(QueryTracer.class.getName());
+
+    /** Histogram bucket upper bounds in microseconds; the last bucket is open-ended. */
+    private static final long[] BOUNDS_US = {
+        250, 500, 1_000, 2_500, 5_000, 10_000, 25_000, 50_000, 100_000,
+        250_000, 500_000, 1_000_000, 2_500_000, 5_000_000, 10_000_000
+    };
+    private static final String OTHER = "(other statements)";
+    private static final int MAX_SQL_LENGTH = 1000;
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern IN_LIST = Pattern.compile("(?i)\\bIN \\((\\?|\\w+\\(\\?\\))(?: ?, ?\\1)+\\)");
+    private static final Pattern CASE_LIST = Pattern.compile("(?i)(?: WHEN \\? THEN \\?){2,}");
+    private static final Pattern ROW_LIST = Pattern.compile("(\\([?, ]+\\))(?: ?, ?\\([?, ]+\\))+");
+
+    /** Aggregated figures for one normalized statement; times in milliseconds. */
+    public record QueryStats(String sql, long count, long errors, long rows, double totalMs,
+                             double avgMs, double p50Ms, double p95Ms, double p99Ms, double maxMs) {}
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, String> normalized = new ConcurrentHashMap<>();
+    private final LongAdder slowCount = new LongAdder();
+    private final Object slowLogLock = new Object();
+    private volatile long slowThresholdNanos;
+    private volatile Path slowLog;
+    private volatile int maxStatements;
+    private volatile long since = System.currentTimeMillis();
+    private boolean slowLogFailed;
+
+    public QueryTracer(long slowThresholdMs, Path slowLog, int maxStatements) {
+        configure(slowThresholdMs, slowLog, maxStatements);
+    }
+
+    /** Change the threshold (ms, 0 disables), slow-query file (null disables) and entry limit. */
+    public void configure(long slowThresholdMs, Path slowLog, int maxStatements) {
+        this.slowThresholdNanos = slowThresholdMs <= 0 ? Long.MAX_VALUE : slowThresholdMs * 1_000_000L;
+        this.slowLog = slowLog;
+        this.maxStatements = Math.max(1, maxStatements);
+    }
+
+    public Path getSlowLog() {
+        return slowLog;
+    }
+
+    public long slowCount() {
+        return slowCount.sum();
+    }
+
+    /** Start of the current measurement window (epoch ms). */
+    public long since() {
+        return since;
+    }
+
+    /** All statements seen since the last reset, most total time first. */
+    public List<QueryStats> snapshot() {
+        List<QueryStats> out = new ArrayList<>(entries.size());
+        entries.forEach((sql, e) -> out.add(e.toStats(sql)));
+        out.sort(Comparator.comparingDouble(QueryStats::totalMs).reversed());
+        return out;
+    }
+
+    public void reset() {
+        entries.clear();
+        slowCount.reset();
+        since = System.currentTimeMillis();
+    }
+
+    /**
+     * Wrap a statement so its executions are recorded. {@code sql} is the prepared SQL, or null
+     * for a plain {@link Statement} (the SQL is then taken from each execute call).
+     */
+    <T extends Statement> T wrap(Class<T> type, T statement, Connection owner, String sql) {
+        String key = sql == null ? null : normalize(sql);
+        Object proxy = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+            new TracingStatement(statement, owner, sql, key));
+        return type.cast(proxy);
+    }
+
+    /** Normalized form of a SQL string, used as the statistics key. */
+    public String normalize(String sql) {
+        String cached = normalized.get(sql);
+        if (cached != null) return cached;
+        String key = normalizeUncached(sql);
+        if (normalized.size() > 4 * maxStatements) normalized.clear();
+        normalized.put(sql, key);
+        return key;
+    }
+
+    static String normalizeUncached(String sql) {
+        StringBuilder sb = new StringBuilder(sql.length());
+        int n = sql.length();
+        for (int i = 0; i < n; i++) {
+            char ch = sql.charAt(i);
+            if (ch == '\'') {
+                // String literal ('' is an escaped quote)
+                i++;
+                while (i < n) {
+                    if (sql.charAt(i) == '\'') {
+                        if (i + 1 < n && sql.charAt(i + 1) == '\'') { i += 2; continue; }
+                        break;
+                    }
+                    i++;
+                }
+                sb.append('?');
+            } else if (Character.isDigit(ch) && (sb.length() == 0 || !isIdentifierPart(sb.charAt(sb.length() - 1)))) {
+                while (i + 1 < n && (Character.isDigit(sql.charAt(i + 1)) || sql.charAt(i + 1) == '.')) i++;
+                sb.append('?');
+            } else {
+                sb.append(ch);
+            }
+        }
+        String s = WHITESPACE.matcher(sb).replaceAll(" ").trim();
+        s = IN_LIST.matcher(s).replaceAll("IN ($1, ...)");
+        s = ROW_LIST.matcher(s).replaceAll("$1, ...");
+        s = CASE_LIST.matcher(s).replaceAll(" WHEN ? THEN ? ...");
+        return s.length() > MAX_SQL_LENGTH ? s.substring(0, MAX_SQL_LENGTH) + "..." : s;
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '.';
+    }
+
+    private Entry entry(String key) {
+        Entry e = entries.get(key);
+        if (e != null) return e;
+        if (entries.size() >= maxStatements) key = OTHER;
+        return entries.computeIfAbsent(key, k -> new Entry());
+    }
+
+    private void record(String key, String sql, long nanos, long rows, boolean failed) {
+        Entry e = entry(key);
+        e.record(nanos, rows, failed);
+        if (nanos >= slowThresholdNanos) {
+            slowCount.increment();
+            logSlow(sql, nanos, failed);
+        }
+    }
+
+    private void logSlow(String sql, long nanos, boolean failed) {
+        String oneLine = WHITESPACE.matcher(sql).replaceAll(" ").trim();
+        String line = LocalDateTime.now() + " " + (nanos / 1_000_000) + " ms" + (failed ? " FAILED" : "")
+            + " [" + Thread.currentThread().getName() + "] " + oneLine;
+        LOG.log(System.Logger.Level.WARNING, "Slow query: " + line);
+        Path file = slowLog;
+        if (file == null) return;
+        synchronized (slowLogLock) {
+            try {
+                if (file.getParent() != null) Files.createDirectories(file.getParent());
+                Files.writeString(file, line + System.lineSeparator(), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                slowLogFailed = false;
+            } catch (IOException ex) {
+                if (!slowLogFailed) {
+                    slowLogFailed = true;
+                    LOG.log(System.Logger.Level.WARNING, "Cannot write slow-query log " + file + ": " + ex.getMessage());
+                }
+            }
+        }
+    }
+
+    private static final class Entry {
+        final LongAdder count = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder rows = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final AtomicLong maxNanos = new AtomicLong();
+        final AtomicLongArray buckets = new AtomicLongArray(BOUNDS_US.length + 1);
+
+        void record(long nanos, long rowCount, boolean failed) {
+            count.increment();
+            if (failed) errors.increment();
+            if (rowCount > 0) rows.add(rowCount);
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+            buckets.incrementAndGet(bucket(nanos / 1_000));
+        }
+
+        void addRows(long rowCount) {
+            if (rowCount > 0) rows.add(rowCount);
+        }
+
+        QueryStats toStats(String sql) {
+            long n = count.sum();
+            double total = totalNanos.sum() / 1e6;
+            double max = maxNanos.get() / 1e6;
+            return new QueryStats(sql, n, errors.sum(), rows.sum(), total, n == 0 ? 0 : total / n,
+                percentile(0.50, max), percentile(0.95, max), percentile(0.99, max), max);
+        }
+
+        /** Upper bound of the bucket holding the given quantile (capped at the observed max). */
+        private double percentile(double q, double maxMs) {
+            long[] counts = new long[buckets.length()];
+            long n = 0;
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = buckets.get(i);
+                n += counts[i];
+            }
+            if (n == 0) return 0;
+            long rank = (long) Math.ceil(q * n);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return i < BOUNDS_US.length ? Math.min(BOUNDS_US[i] / 1000.0, maxMs) : maxMs;
+                }
+            }
+            return maxMs;
+        }
+
+        private static int bucket(long micros) {
+            for (int i = 0; i < BOUNDS_US.length; i++) {
+                if (micros <= BOUNDS_US[i]) return i;
+            }
+            return BOUNDS_US.length;
+        }
+    }
+
+    private final class TracingStatement implements InvocationHandler {
+        private final Statement target;
+        private final Connection owner;
+        private final String sql;
+        private final String key;
+        private String batchSql;
+
+        TracingStatement(Statement target, Connection owner, String sql, String key) {
+            this.target = target;
+            this.owner = owner;
+            this.sql = sql;
+            this.key = key;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "getConnection":
+                    return owner;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "addBatch":
+                    if (args != null && args.length == 1 && batchSql == null) batchSql = (String) args[0];
+                    return call(method, args);
+                case "getResultSet":
+                    return wrapResultSet((ResultSet) call(method, args), proxy, keyFor(null));
+                default:
+                    break;
+            }
+            if (!name.startsWith("execute")) return call(method, args);
+
+            String text = sql != null ? sql
+                : (args != null && args.length > 0 && args[0] instanceof String s) ? s
+                : batchSql != null ? batchSql : "(batch)";
+            String statKey = key != null ? key : normalize(text);
+            if ("executeBatch".equals(name) || "executeLargeBatch".equals(name)) batchSql = null;
+            long t0 = System.nanoTime();
+            Object result;
+            try {
+                result = call(method, args);
+            } catch (SQLException | RuntimeException ex) {
+                record(statKey, text, System.nanoTime() - t0, 0, true);
+                throw ex;
+            }
+            long nanos = System.nanoTime() - t0;
+            if (result instanceof ResultSet rs) {
+                record(statKey, text, nanos, 0, false);
+                return wrapResultSet(rs, proxy, statKey);
+            }
+            record(statKey, text, nanos, rowsOf(result), false);
+            return result;
+        }
+
+        private String keyFor(String text) {
+            return key != null ? key : text == null ? null : normalize(text);
+        }
+
+        private long rowsOf(Object result) {
+            if (result instanceof Integer i) return i;
+            if (result instanceof Long l) return l;
+            if (result instanceof int[] counts) {
+                long sum = 0;
+                for (int c : counts) if (c > 0) sum += c;
+                return sum;
+            }
+            if (result instanceof long[] counts) {
+                long sum = 0;
+                for (long c : counts) if (c > 0) sum += c;
+                return sum;
+            }
+            return 0;
+        }
+
+        private Object call(Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException ite) {
+                throw ite.getCause();
+            }
+        }
+    }
+
+    private ResultSet wrapResultSet(ResultSet rs, Object statement, String statKey) {
+        if (rs == null || statKey == null) return rs;
+        Entry entry = entry(statKey);
+        InvocationHandler h = new InvocationHandler() {
+            private long rows;
+            private boolean counted;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "getStatement":
+                        return statement;
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        break;
+                }
+                Object result;
+                try {
+                    result = method.invoke(rs, args);
+                } catch (InvocationTargetException ite) {
+                    throw ite.getCause();
+                }
+                switch (method.getName()) {
+                    case "next":
+                        if (Boolean.TRUE.equals(result)) rows++;
+                        else flush();
+                        break;
+                    case "close":
+                        flush();
+                        break;
+                    default:
+                        break;
+                }
+                return result;
+            }
+
+            private void flush() {
+                if (counted) return;
+                counted = true;
+                entry.addRows(rows);
+            }
+        };
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class}, h);
+    }
+}
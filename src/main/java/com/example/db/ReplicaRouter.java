@@ -0,0 +1,169 @@
+package com.example.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Routes read-only queries to a replica while it is reachable and fresh enough, otherwise to
+ * the primary.
+ *
+ * Staleness is measured with a heartbeat row rather than a vendor-specific lag view: every
+ * check writes the current time to this process's own {@code replica_heartbeat} row (a random
+ * id picked at start) on the primary and reads that row back from the replica. The difference
+ * is how far behind the replica is. Both timestamps come from this process's clock, and no
+ * other terminal writes the row, so clock skew between machines does not matter. The row is
+ * deleted on close; rows of processes that died are cleared after a day. A replica that does not
+ * replicate from the primary (or lacks the table) never catches up and is simply not used.
+ * With {@code maxStalenessMs <= 0} the heartbeat is skipped and any reachable replica is used.
+ *
+ * Until the first check completes, and whenever borrowing from the replica fails, reads go to
+ * the primary.
+ */
+public final class ReplicaRouter implements AutoCloseable {
+    private static final System.Logger LOG = System.getLogger(ReplicaRouter.class.getName());
+
+    /** Where reads fall back to (and where the heartbeat is written). */
+    @FunctionalInterface
+    public interface ConnectionSource {
+        Connection getConnection() throws SQLException;
+    }
+
+    /** Current routing state; {@code lagMs} is -1 when unknown. */
+    public record Status(String url, boolean routing, long lagMs, long checkedAt, String lastError) {}
+
+    private final ConnectionPool replica;
+    private final ConnectionSource primary;
+    private final long maxStalenessMs;
+    private final ScheduledExecutorService checker;
+    // This process's heartbeat row
+    private final int beatId = ThreadLocalRandom.current().nextInt(1, Integer.MAX_VALUE);
+    private boolean pruned;
+    private volatile boolean routing;
+    private volatile long lagMs = -1;
+    private volatile long checkedAt;
+    private volatile String lastError;
+
+    public ReplicaRouter(ConnectionPool.Settings replicaSettings, ConnectionSource primary,
+                         long maxStalenessMs, long checkIntervalMs) {
+        replicaSettings.name = "replica";
+        this.replica = new ConnectionPool(replicaSettings);
+        this.primary = primary;
+        this.maxStalenessMs = maxStalenessMs;
+        this.checker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-replica-check");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(500, checkIntervalMs);
+        checker.scheduleWithFixedDelay(this::check, 0, period, TimeUnit.MILLISECONDS);
+    }
+
+    /** A connection for read-only work: the replica when usable, otherwise the primary. */
+    public Connection getConnection() throws SQLException {
+        if (routing) {
+            try {
+                return replica.getConnection();
+            } catch (SQLException ex) {
+                markDown("Replica unavailable: " + ex.getMessage());
+            }
+        }
+        return primary.getConnection();
+    }
+
+    public Status status() {
+        return new Status(replica.getUrl(), routing, lagMs, checkedAt, lastError);
+    }
+
+    public ConnectionPool.Stats stats() {
+        return replica.stats();
+    }
+
+    @Override
+    public void close() {
+        checker.shutdownNow();
+        replica.close();
+        if (maxStalenessMs <= 0) return;
+        try (Connection c = primary.getConnection();
+             PreparedStatement ps = c.prepareStatement("DELETE FROM replica_heartbeat WHERE id = ?")) {
+            ps.setInt(1, beatId);
+            ps.executeUpdate();
+        } catch (SQLException ex) {
+            LOG.log(System.Logger.Level.DEBUG, "Heartbeat row not removed: " + ex.getMessage());
+        }
+    }
+
+    private void check() {
+        try {
+            long lag = maxStalenessMs > 0 ? measureLag() : ping();
+            lagMs = lag;
+            checkedAt = System.currentTimeMillis();
+            if (maxStalenessMs > 0 && lag > maxStalenessMs) {
+                markDown("Replica is " + lag + " ms behind (max " + maxStalenessMs + " ms)");
+                return;
+            }
+            if (!routing) LOG.log(System.Logger.Level.INFO, "Routing reads to replica " + replica.getUrl());
+            lastError = null;
+            routing = true;
+        } catch (SQLException | RuntimeException ex) {
+            lagMs = -1;
+            checkedAt = System.currentTimeMillis();
+            markDown("Replica check failed: " + ex.getMessage());
+        }
+    }
+
+    private long measureLag() throws SQLException {
+        long now = System.currentTimeMillis();
+        try (Connection c = primary.getConnection();
+             PreparedStatement ps = c.prepareStatement("UPDATE replica_heartbeat SET beat_ms = ? WHERE id = ?")) {
+            ps.setLong(1, now);
+            ps.setInt(2, beatId);
+            if (ps.executeUpdate() == 0) {
+                try (PreparedStatement ins = c.prepareStatement("INSERT INTO replica_heartbeat (id, beat_ms) VALUES (?, ?)")) {
+                    ins.setInt(1, beatId);
+                    ins.setLong(2, now);
+                    ins.executeUpdate();
+                }
+            }
+            if (!pruned) {
+                // Rows of processes that died without closing; a day is far beyond any clock skew
+                try (PreparedStatement del = c.prepareStatement("DELETE FROM replica_heartbeat WHERE beat_ms < ?")) {
+                    del.setLong(1, now - TimeUnit.DAYS.toMillis(1));
+                    del.executeUpdate();
+                }
+                pruned = true;
+            }
+        }
+        // Read back our own row after the write: a replica within the bound shows a recent beat
+        try (Connection c = replica.getConnection();
+             PreparedStatement ps = c.prepareStatement("SELECT beat_ms FROM replica_heartbeat WHERE id = ?")) {
+            ps.setInt(1, beatId);
+            try (ResultSet rs = ps.executeQuery()) {
+                // A new row may not have reached the replica yet; a later check finds it
+                if (!rs.next()) throw new SQLException("no heartbeat row on the replica yet");
+                return Math.max(0L, System.currentTimeMillis() - rs.getLong(1));
+            }
+        }
+    }
+
+    private long ping() throws SQLException {
+        try (Connection c = replica.getConnection();
+             PreparedStatement ps = c.prepareStatement("SELECT 1")) {
+            ps.execute();
+        }
+        return -1;
+    }
+
+    private void markDown(String reason) {
+        if (routing || lastError == null) {
+            LOG.log(System.Logger.Level.WARNING, reason + "; reading from the primary");
+        }
+        lastError = reason;
+        routing = false;
+    }
+}
@@ -0,0 +1,305 @@
+package com.example.db;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Baseline application schema (migration V1), written once and rendered per {@link SqlDialect}.
+ * Applied migrations are checksummed, so later schema changes go into new migrations
+ * (see {@code Database.migrate()}) rather than into this class.
+ *
+ * Secondary indexes are declared separately from the tables: MySQL is the only target that
+ * accepts inline {@code INDEX} clauses, and the only one lacking {@code CREATE INDEX IF NOT EXISTS},
+ * so {@link #create} checks the catalog there instead.
+ */
+public final class Schema {
+
+    public record Index(String name, String table, String columns) {}
+
+    private static final List<String> TABLES = List.of(
+        // Inventory items table (legacy flat items for current UI)
+        """
+        CREATE TABLE IF NOT EXISTS inventory_items (
+          id ${pk},
+          name VARCHAR(255) NOT NULL UNIQUE,
+          category VARCHAR(100),
+          batch VARCHAR(100),
+          quantity INT NOT NULL DEFAULT 0,
+          price DECIMAL(10,2) NOT NULL DEFAULT 0.00,
+          expiry DATE NULL,
+          supplier VARCHAR(255),
+          reorder_level INT NOT NULL DEFAULT 0,
+          created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+        )
+        """,
+
+        // Suppliers
+        """
+        CREATE TABLE IF NOT EXISTS suppliers (
+          id ${pk},
+          name VARCHAR(255) NOT NULL,
+          phone VARCHAR(50),
+          email VARCHAR(255),
+          address VARCHAR(500),
+          created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+        )
+        """,
+
+        // Items master (normalized), derived from inventory_items by the legacy seed
+        """
+        CREATE TABLE IF NOT EXISTS items (
+          id ${pk},
+          name VARCHAR(255) NOT NULL,
+          generic_name VARCHAR(255),
+          category_id INT NULL,
+          barcode VARCHAR(100),
+          dosage_form VARCHAR(100),
+          strength VARCHAR(100),
+          tax_rate_id INT NULL,
+          reorder_level INT NOT NULL DEFAULT 0,
+          created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+        )
+        """,
+
+        // Item batches
+        """
+        CREATE TABLE IF NOT EXISTS item_batches (
+          id ${pk},
+          item_id INT NOT NULL,
+          batch_no VARCHAR(100),
+          expiry_date DATE NULL,
+          qty_on_hand INT NOT NULL DEFAULT 0,
+          purchase_price DECIMAL(10,2) NOT NULL DEFAULT 0.00,
+          sell_price DECIMAL(10,2) NOT NULL DEFAULT 0.00,
+          location VARCHAR(100),
+          created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+          CONSTRAINT fk_item_batches_item FOREIGN KEY (item_id) REFERENCES items(id) ON DELETE CASCADE
+        )
+        """,
+
+        // Purchase orders
+        """
+        CREATE TABLE IF NOT EXISTS purchase_orders (
+          id ${pk},
+          supplier_id INT NOT NULL,
+          status VARCHAR(30) NOT NULL DEFAULT 'DRAFT',
+          ordered_at ${datetime} NULL,
+          expected_at ${datetime} NULL,
+          created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+          CONSTRAINT fk_po_supplier FOREIGN KEY (supplier_id) REFERENCES suppliers(id)
+        )
+        """,
+
+        """
+        CREATE TABLE IF NOT EXISTS purchase_order_items (
+          id ${pk},
+          po_id INT NOT NULL,
+          item_id INT NOT NULL,
+          qty INT NOT NULL,
+          price DECIMAL(10,2) NOT NULL DEFAULT 0.00,
+          CONSTRAINT fk_poi_po FOREIGN KEY (po_id) REFERENCES purchase_orders(id) ON DELETE CASCADE,
+          CONSTRAINT fk_poi_item FOREIGN KEY (item_id) REFERENCES items(id) ON DELETE RESTRICT
+        )
+        """,
+
+        // Goods receipts
+        """
+        CREATE TABLE IF NOT EXISTS goods_receipts (
+          id ${pk},
+          po_id INT NOT NULL,
+          received_at ${datetime} NOT NULL DEFAULT CURRENT_TIMESTAMP,
+          user_id INT NULL,
+          CONSTRAINT fk_grn_po FOREIGN KEY (po_id) REFERENCES purchase_orders(id) ON DELETE CASCADE
+        )
+        """,
+
+        // Inventory movements (audit-friendly); movement_type: SALE, GRN, ADJUST, RETURN
+        """
+        CREATE TABLE IF NOT EXISTS inventory_movements (
+          id ${pk},
+          item_batch_id INT NOT NULL,
+          qty INT NOT NULL,
+          movement_type VARCHAR(20) NOT NULL,
+          ref_type VARCHAR(50),
+          ref_id INT NULL,
+          created_at ${datetime} NOT NULL DEFAULT CURRENT_TIMESTAMP,
+          user_id INT NULL,
+          CONSTRAINT fk_inv_mov_batch FOREIGN KEY (item_batch_id) REFERENCES item_batches(id) ON DELETE RESTRICT
+        )
+        """,
+
+        // RBAC, Customers, Settings
+        """
+        CREATE TABLE IF NOT EXISTS users (
+          id ${pk},
+          username VARCHAR(100) NOT NULL UNIQUE,
+          password_hash VARCHAR(255) NOT NULL,
+          display_name VARCHAR(255),
+          active ${bool} NOT NULL DEFAULT 1,
+          created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+        )
+        """,
+        """
+        CREATE TABLE IF NOT EXISTS roles (
+          id ${pk},
+          name VARCHAR(100) NOT NULL UNIQUE
+        )
+        """,
+        """
+        CREATE TABLE IF NOT EXISTS user_roles (
+          user_id INT NOT NULL,
+          role_id INT NOT NULL,
+          PRIMARY KEY (user_id, role_id),
+          CONSTRAINT fk_user_roles_user FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE,
+          CONSTRAINT fk_user_roles_role FOREIGN KEY (role_id) REFERENCES roles(id) ON DELETE CASCADE
+        )
+        """,
+        """
+        CREATE TABLE IF NOT EXISTS permissions (
+          id ${pk},
+          name VARCHAR(150) NOT NULL UNIQUE
+        )
+        """,
+        """
+        CREATE TABLE IF NOT EXISTS audit_logs (
+          id ${pk},
+          user_id INT NULL,
+          action VARCHAR(50) NOT NULL,
+          entity VARCHAR(100) NOT NULL,
+          entity_id VARCHAR(100) NULL,
+          details TEXT,
+          created_at ${datetime} NOT NULL DEFAULT CURRENT_TIMESTAMP,
+          CONSTRAINT fk_audit_user FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE SET NULL
+        )
+        """,
+        """
+        CREATE TABLE IF NOT EXISTS customers (
+          id ${pk},
+          name VARCHAR(255) NOT NULL,
+          phone VARCHAR(50),
+          dob DATE NULL,
+          address VARCHAR(500),
+          created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+        )
+        """,
+        """
+        CREATE TABLE IF NOT EXISTS settings (
+          id ${pk},
+          k VARCHAR(100) NOT NULL UNIQUE,
+          v VARCHAR(1000)
+        )
+        """,
+
+        // Sales (existing minimal POS schema)
+        """
+        CREATE TABLE IF NOT EXISTS sales (
+          id ${pk},
+          customer VARCHAR(255),
+          sale_date ${datetime} NOT NULL DEFAULT CURRENT_TIMESTAMP,
+          subtotal DECIMAL(10,2) NOT NULL DEFAULT 0.00,
+          discount_pct DECIMAL(5,2) NOT NULL DEFAULT 0.00,
+          tax_pct DECIMAL(5,2) NOT NULL DEFAULT 0.00,
+          grand_total DECIMAL(10,2) NOT NULL DEFAULT 0.00
+        )
+        """,
+        """
+        CREATE TABLE IF NOT EXISTS sale_items (
+          id ${pk},
+          sale_id INT NOT NULL,
+          item_name VARCHAR(255) NOT NULL,
+          qty INT NOT NULL DEFAULT 1,
+          unit_price DECIMAL(10,2) NOT NULL DEFAULT 0.00,
+          line_total DECIMAL(10,2) NOT NULL DEFAULT 0.00,
+          CONSTRAINT fk_sale_items_sales FOREIGN KEY (sale_id) REFERENCES sales(id) ON DELETE CASCADE
+        )
+        """
+    );
+
+    private static final List<Index> INDEXES = List.of(
+        new Index("idx_item_batches_item_exp", "item_batches", "item_id, expiry_date"),
+        new Index("idx_item_batches_batch", "item_batches", "batch_no"),
+        new Index("idx_inv_mov_batch", "inventory_movements", "item_batch_id"),
+        new Index("idx_inv_mov_type", "inventory_movements", "movement_type, created_at")
+    );
+
+    private Schema() {}
+
+    public static List<String> tables(SqlDialect dialect) {
+        return TABLES.stream().map(dialect::ddl).toList();
+    }
+
+    public static List<Index> indexes() {
+        return INDEXES;
+    }
+
+    /** Dialect-independent text of the baseline, used for the V1 migration checksum. */
+    public static String baselineChecksumSource() {
+        StringBuilder sb = new StringBuilder();
+        for (String t : TABLES) sb.append(t).append('\n');
+        for (Index i : INDEXES) sb.append(i).append('\n');
+        return sb.toString();
+    }
+
+    /** Create all tables and indexes that do not exist yet. */
+    public static void create(Connection c, SqlDialect dialect) throws SQLException {
+        try (Statement st = c.createStatement()) {
+            for (String ddl : tables(dialect)) {
+                st.execute(ddl);
+            }
+        }
+        for (Index idx : INDEXES) {
+            createIndex(c, dialect, idx);
+        }
+    }
+
+    public static void createIndex(Connection c, SqlDialect dialect, Index idx) throws SQLException {
+        if (!dialect.supportsCreateIndexIfNotExists() && indexExists(c, idx)) return;
+        String ifNotExists = dialect.supportsCreateIndexIfNotExists() ? "IF NOT EXISTS " : "";
+        try (Statement st = c.createStatement()) {
+            st.execute("CREATE INDEX " + ifNotExists + idx.name() + " ON " + idx.table() + " (" + idx.columns() + ")");
+        }
+    }
+
+    /** Whether {@code table} has {@code column} (for migrations that must be safe to re-run). */
+    public static boolean columnExists(Connection c, String table, String column) throws SQLException {
+        DatabaseMetaData md = c.getMetaData();
+        try (ResultSet rs = md.getColumns(c.getCatalog(), null, table, null)) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("COLUMN_NAME"))) return true;
+            }
+        }
+        return false;
+    }
+
+    /** Whether {@code table} has a foreign key named {@code name}. */
+    public static boolean foreignKeyExists(Connection c, String table, String name) throws SQLException {
+        DatabaseMetaData md = c.getMetaData();
+        try (ResultSet rs = md.getImportedKeys(c.getCatalog(), null, table)) {
+            while (rs.next()) {
+                if (name.equalsIgnoreCase(rs.getString("FK_NAME"))) return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean indexExists(Connection c, Index idx) throws SQLException {
+        return indexExists(c, idx.table(), idx.name());
+    }
+
+    /** Whether {@code table} has an index named {@code name} (lower case). */
+    public static boolean indexExists(Connection c, String table, String name) throws SQLException {
+        DatabaseMetaData md = c.getMetaData();
+        try (ResultSet rs = md.getIndexInfo(c.getCatalog(), null, table, false, true)) {
+            while (rs.next()) {
+                String index = rs.getString("INDEX_NAME");
+                if (index != null && index.toLowerCase(Locale.ROOT).equals(name)) return true;
+            }
+        }
+        return false;
+    }
+}
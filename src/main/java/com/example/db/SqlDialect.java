@@ -0,0 +1,110 @@
+package com.example.db;
+
+import com.example.util.AppConfig;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+
+/**
+ * Per-database SQL differences. Schema DDL is written with placeholders ({@code ${pk}},
+ * {@code ${datetime}}, {@code ${bool}}, {@code ${stored}}) that each dialect expands to its own
+ * types and keywords.
+ *
+ * Date filters are written as half-open ranges on the bare column ({@link #range}) with bound
+ * parameters, never as {@code DATE(col) = CURDATE()}: that form is MySQL-only and wraps the
+ * column in a function, so no index on it can be used.
+ */
+public enum SqlDialect {
+    MYSQL {
+        @Override public String autoIncrementPk() { return "INT AUTO_INCREMENT PRIMARY KEY"; }
+        @Override public String dateTimeType() { return "DATETIME"; }
+        @Override public String booleanType() { return "TINYINT(1)"; }
+        @Override public boolean supportsCreateIndexIfNotExists() { return false; }
+        @Override public String dateOf(String expr) { return "DATE(" + expr + ")"; }
+    },
+    POSTGRES {
+        @Override public String autoIncrementPk() { return "SERIAL PRIMARY KEY"; }
+        @Override public String dateTimeType() { return "TIMESTAMP"; }
+        @Override public String booleanType() { return "SMALLINT"; }
+        @Override public boolean supportsCreateIndexIfNotExists() { return true; }
+    },
+    H2 {
+        @Override public String autoIncrementPk() { return "INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY"; }
+        @Override public String dateTimeType() { return "TIMESTAMP"; }
+        @Override public String booleanType() { return "TINYINT"; }
+        @Override public boolean supportsCreateIndexIfNotExists() { return true; }
+        @Override public String storedGenerated() { return ""; }
+        @Override public boolean scansIndexBackward() { return false; }
+    };
+
+    public abstract String autoIncrementPk();
+
+    public abstract String dateTimeType();
+
+    /** Integer-like flag column (the code writes and compares 0/1). */
+    public abstract String booleanType();
+
+    public abstract boolean supportsCreateIndexIfNotExists();
+
+    /**
+     * Keyword after {@code GENERATED ALWAYS AS (expr)} for a generated column that is stored,
+     * and so can be indexed; H2 stores generated columns and takes no keyword.
+     */
+    public String storedGenerated() {
+        return " STORED";
+    }
+
+    /**
+     * Whether {@code ORDER BY ... DESC} can read an ascending index backwards. H2 cannot: it
+     * reads the range and sorts it, so descending keyset pages there need indexes of their own.
+     */
+    public boolean scansIndexBackward() {
+        return true;
+    }
+
+    /** Calendar date of a timestamp expression, for grouping/selecting (not for filtering). */
+    public String dateOf(String expr) {
+        return "CAST(" + expr + " AS DATE)";
+    }
+
+    /** Sargable half-open range {@code column >= ? AND column < ?}; bind with one of the bind*Range methods. */
+    public String range(String column) {
+        return column + " >= ? AND " + column + " < ?";
+    }
+
+    /**
+     * Bind [from, toExclusive) for a DATETIME/TIMESTAMP column as start-of-day timestamps.
+     * Returns the next parameter index.
+     */
+    public int bindTimestampRange(PreparedStatement ps, int index, LocalDate from, LocalDate toExclusive) throws SQLException {
+        ps.setTimestamp(index, Timestamp.valueOf(from.atStartOfDay()));
+        ps.setTimestamp(index + 1, Timestamp.valueOf(toExclusive.atStartOfDay()));
+        return index + 2;
+    }
+
+    /** Bind [from, toExclusive) for a DATE column (for an inclusive end date pass end + 1 day). Returns the next parameter index. */
+    public int bindDateRange(PreparedStatement ps, int index, LocalDate from, LocalDate toExclusive) throws SQLException {
+        ps.setDate(index, Date.valueOf(from));
+        ps.setDate(index + 1, Date.valueOf(toExclusive));
+        return index + 2;
+    }
+
+    /** Expand the schema placeholders in a DDL statement. */
+    public String ddl(String template) {
+        return template
+            .replace("${pk}", autoIncrementPk())
+            .replace("${datetime}", dateTimeType())
+            .replace("${bool}", booleanType())
+            .replace("${stored}", storedGenerated());
+    }
+
+    public static SqlDialect forConfig(AppConfig cfg) {
+        if (cfg.isH2()) return H2;
+        if (cfg.isPostgres()) return POSTGRES;
+        if (cfg.isMySql()) return MYSQL;
+        throw cfg.unsupportedDbType();
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-connection LRU cache of prepared statements keyed by SQL text.
+ *
+ * A cached statement is handed out as a proxy whose {@code close()} clears parameters/batch and
+ * keeps the underlying statement open for the next caller preparing the same SQL. If the same SQL
+ * is prepared again while the cached one is still open (nested use), an uncached statement is
+ * returned instead. Only used from the thread that currently holds the owning connection.
+ */
+final class StatementCache {
+    private final Connection raw;
+    private final int maxSize;
+    private final Counters counters;
+    private final LinkedHashMap<String, Entry> entries;
+
+    /** Hit/miss/eviction counters shared by all connections of a pool. */
+    static final class Counters {
+        final AtomicLong hits = new AtomicLong();
+        final AtomicLong misses = new AtomicLong();
+        final AtomicLong evictions = new AtomicLong();
+    }
+
+    private static final class Entry {
+        final PreparedStatement stmt;
+        boolean inUse;
+        boolean evicted;
+
+        Entry(PreparedStatement stmt) {
+            this.stmt = stmt;
+        }
+    }
+
+    StatementCache(Connection raw, int maxSize, Counters counters) {
+        this.raw = raw;
+        this.maxSize = maxSize;
+        this.counters = counters;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Prepare (or reuse) a statement. {@code generatedKeys} is the autoGeneratedKeys flag,
+     * or -1 for the plain prepareStatement(String) variant.
+     */
+    PreparedStatement prepare(Connection owner, String sql, int generatedKeys) throws SQLException {
+        String key = generatedKeys < 0 ? sql : generatedKeys + "|" + sql;
+        Entry e = entries.get(key);
+        if (e != null && !e.inUse && !e.stmt.isClosed()) {
+            counters.hits.incrementAndGet();
+            e.inUse = true;
+            return wrap(owner, e);
+        }
+        counters.misses.incrementAndGet();
+        PreparedStatement ps = generatedKeys < 0 ? raw.prepareStatement(sql) : raw.prepareStatement(sql, generatedKeys);
+        if (e != null) {
+            // Same SQL already checked out on this connection: hand out an uncached statement
+            return ps;
+        }
+        Entry created = new Entry(ps);
+        created.inUse = true;
+        entries.put(key, created);
+        evictOverflow();
+        return wrap(owner, created);
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    void closeAll() {
+        for (Entry e : entries.values()) {
+            try { e.stmt.close(); } catch (Exception ignore) { }
+        }
+        entries.clear();
+    }
+
+    private void evictOverflow() {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (entries.size() > maxSize && it.hasNext()) {
+            Entry eldest = it.next().getValue();
+            it.remove();
+            counters.evictions.incrementAndGet();
+            if (eldest.inUse) {
+                eldest.evicted = true; // closed for real when the borrower closes it
+            } else {
+                try { eldest.stmt.close(); } catch (Exception ignore) { }
+            }
+        }
+    }
+
+    private PreparedStatement wrap(Connection owner, Entry entry) {
+        InvocationHandler h = new InvocationHandler() {
+            private boolean logicalClosed;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "close":
+                        if (!logicalClosed) {
+                            logicalClosed = true;
+                            giveBack(entry);
+                        }
+                        return null;
+                    case "isClosed":
+                        return logicalClosed || entry.stmt.isClosed();
+                    case "getConnection":
+                        return owner;
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        break;
+                }
+                if (logicalClosed) throw new SQLException("Statement is closed");
+                try {
+                    return method.invoke(entry.stmt, args);
+                } catch (InvocationTargetException ite) {
+                    throw ite.getCause();
+                }
+            }
+        };
+        return (PreparedStatement) Proxy.newProxyInstance(
+            PreparedStatement.class.getClassLoader(), new Class<?>[]{PreparedStatement.class}, h);
+    }
+
+    private void giveBack(Entry entry) {
+        entry.inUse = false;
+        if (entry.evicted) {
+            try { entry.stmt.close(); } catch (Exception ignore) { }
+            return;
+        }
+        try {
+            entry.stmt.clearParameters();
+            entry.stmt.clearBatch();
+            entry.stmt.clearWarnings();
+        } catch (SQLException ex) {
+            // Statement unusable; drop it from the cache
+            entries.values().remove(entry);
+            try { entry.stmt.close(); } catch (Exception ignore) { }
+        }
+    }
+}
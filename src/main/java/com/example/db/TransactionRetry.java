@@ -0,0 +1,81 @@
+package com.example.db;
+
+import java.sql.SQLException;
+import java.sql.SQLTransactionRollbackException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntConsumer;
+
+/**
+ * Re-runs a whole transaction when the database aborted it because of contention: deadlocks,
+ * serialization failures and lock wait timeouts. The database has already rolled the victim
+ * back (or the caller's rollback does), so running the same work again is safe as long as the
+ * call starts its own transaction and has no side effects outside it.
+ *
+ * Attempts are bounded and spaced with exponential backoff and jitter, so two tills that
+ * deadlocked on the same batches do not collide again in lockstep.
+ */
+public final class TransactionRetry {
+    private static final System.Logger LOG = System.getLogger(TransactionRetry.class.getName());
+
+    // Vendor codes: MySQL lock wait timeout / deadlock, H2 lock timeout
+    private static final int MYSQL_LOCK_WAIT_TIMEOUT = 1205;
+    private static final int MYSQL_DEADLOCK = 1213;
+    private static final int H2_LOCK_TIMEOUT = 50200;
+
+    @FunctionalInterface
+    public interface TxCall<T> {
+        T call() throws SQLException;
+    }
+
+    public static final class Settings {
+        /** Retries after the first attempt. */
+        public int maxRetries = 3;
+        public long initialBackoffMs = 50;
+        public long maxBackoffMs = 1_000;
+    }
+
+    private TransactionRetry() {}
+
+    /**
+     * Run {@code tx}, retrying retryable failures up to {@code maxRetries} times. {@code onRetry}
+     * (may be null) is told the number of the attempt about to start (2, 3, ...) before it waits.
+     */
+    public static <T> T run(Settings s, TxCall<T> tx, IntConsumer onRetry) throws SQLException {
+        long backoff = s.initialBackoffMs;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return tx.call();
+            } catch (SQLException ex) {
+                if (attempt > s.maxRetries || !isRetryable(ex)) throw ex;
+                LOG.log(System.Logger.Level.INFO, "Transaction aborted (" + ex.getSQLState() + "/" + ex.getErrorCode()
+                    + "), retry " + attempt + " of " + s.maxRetries + ": " + ex.getMessage());
+                if (onRetry != null) onRetry.accept(attempt + 1);
+                // Half fixed, half random: never immediate, never in lockstep
+                long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    ex.addSuppressed(ie);
+                    throw ex;
+                }
+                backoff = Math.min(s.maxBackoffMs, backoff * 2);
+            }
+        }
+    }
+
+    /** Deadlock, serialization failure or lock wait timeout anywhere in the cause chain. */
+    public static boolean isRetryable(SQLException ex) {
+        for (Throwable t = ex; t != null; t = t.getCause()) {
+            if (t instanceof SQLTransactionRollbackException) return true;
+            if (t instanceof SQLException sql) {
+                String state = sql.getSQLState();
+                // 40001 serialization failure / deadlock (MySQL, H2), 40P01 deadlock (PostgreSQL)
+                if ("40001".equals(state) || "40P01".equals(state)) return true;
+                int code = sql.getErrorCode();
+                if (code == MYSQL_LOCK_WAIT_TIMEOUT || code == MYSQL_DEADLOCK || code == H2_LOCK_TIMEOUT) return true;
+            }
+        }
+        return false;
+    }
+}
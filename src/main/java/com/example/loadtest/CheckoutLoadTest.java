@@ -0,0 +1,400 @@
+package com.example.loadtest;
+
+import com.example.Database;
+import com.example.db.ConnectionPool;
+import com.example.model.Money;
+import com.example.repository.CatalogCache;
+import com.example.repository.CheckoutService;
+import com.example.repository.GroupCommitCoordinator;
+import com.example.repository.SaleRepository;
+import com.example.repository.StockReservations;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Headless checkout load generator: N simulated terminals run the POS cart-to-sale path
+ * ({@link CheckoutService}: catalog lookup, stock reservation, checkout with retries) against
+ * the configured database, with no UI.
+ *
+ * A dedicated catalog of {@code skus} items ("LT-00001"...) with several batches each is created
+ * on first run and restocked on every run. Baskets follow a retail-like distribution: mostly one
+ * or two lines, a long tail up to 25; mostly single units; item popularity is Zipf-distributed,
+ * so a few hot items see most of the contention.
+ *
+ * Reports throughput, checkout latency percentiles, retries and failures, and checks afterwards
+ * that no batch went negative and that the stock taken from the database matches what the
+ * terminals sold, both in item_batches and in inventory_movements (oversell check). A checkout
+ * refused although every line of it was still reserved is counted apart from baskets that lost
+ * a reservation (it means the reservation promised stock the sale could not take). Exits with
+ * status 1 when the check fails or any reserved basket was refused.
+ *
+ * Usage (embedded H2 by default; any profile or db.* system property works as for the app):
+ * <pre>
+ *   mvn -Ploadtest javafx:run -Dloadtest.args="--terminals=16 --seconds=60"
+ *   java -cp target/classes:&lt;h2 jar&gt; -Dprofile=embedded com.example.loadtest.CheckoutLoadTest --terminals=8
+ * </pre>
+ * Options: --terminals (8), --seconds (30), --skus (200), --batches (3), --stock per batch (1000),
+ * --zipf exponent (1.1), --thinkMs between baskets (0), --seed (42), --groupCommit (save concurrent
+ * checkouts in shared transactions, as db.groupCommit.enabled=true; the report then shows the
+ * group sizes reached).
+ */
+public final class CheckoutLoadTest {
+    private static final String PREFIX = "LT-";
+
+    private final int terminals;
+    private final int seconds;
+    private final int skus;
+    private final int batches;
+    private final int stock;
+    private final double zipf;
+    private final long thinkMs;
+    private final long seed;
+
+    private final CheckoutService checkout = new CheckoutService();
+    private final AtomicLong ok = new AtomicLong();
+    private final AtomicLong journaled = new AtomicLong();
+    private final AtomicLong stockRejected = new AtomicLong();
+    private final AtomicLong reserveRejected = new AtomicLong();
+    private final AtomicLong reservedRefused = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong lines = new AtomicLong();
+    private AtomicLongArray sold;
+    private String[] names;
+    private double[] zipfCdf;
+
+    private CheckoutLoadTest(Map<String, String> opts) {
+        this.terminals = Integer.parseInt(opts.getOrDefault("terminals", "8"));
+        this.seconds = Integer.parseInt(opts.getOrDefault("seconds", "30"));
+        this.skus = Integer.parseInt(opts.getOrDefault("skus", "200"));
+        this.batches = Integer.parseInt(opts.getOrDefault("batches", "3"));
+        this.stock = Integer.parseInt(opts.getOrDefault("stock", "1000"));
+        this.zipf = Double.parseDouble(opts.getOrDefault("zipf", "1.1"));
+        this.thinkMs = Long.parseLong(opts.getOrDefault("thinkMs", "0"));
+        this.seed = Long.parseLong(opts.getOrDefault("seed", "42"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = new HashMap<>();
+        for (String a : args) {
+            if (!a.startsWith("--")) continue;
+            int eq = a.indexOf('=');
+            if (eq < 0) opts.put(a.substring(2), "true");
+            else opts.put(a.substring(2, eq), a.substring(eq + 1));
+        }
+        if (opts.containsKey("groupCommit")) System.setProperty("db.groupCommit.enabled", opts.get("groupCommit"));
+        boolean passed;
+        try {
+            Database.bootstrap();
+            passed = new CheckoutLoadTest(opts).run();
+        } finally {
+            Database.shutdown();
+        }
+        System.exit(passed ? 0 : 1);
+    }
+
+    private boolean run() throws Exception {
+        names = new String[skus];
+        for (int i = 0; i < skus; i++) names[i] = String.format(Locale.ROOT, "%s%05d", PREFIX, i + 1);
+        sold = new AtomicLongArray(skus);
+        zipfCdf = zipfCdf(skus, zipf);
+
+        System.out.printf(Locale.US, "Preparing %d items x %d batches x %d units...%n", skus, batches, stock);
+        prepareCatalog();
+        long[] stockBefore = stockPerItem();
+        long movementsBefore = movementTotal();
+        CatalogCache.shared().clear();
+
+        System.out.printf(Locale.US, "Running %d terminals for %d s...%n", terminals, seconds);
+        long[][] latencies = new long[terminals][];
+        CountDownLatch done = new CountDownLatch(terminals);
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        long start = System.nanoTime();
+        for (int t = 0; t < terminals; t++) {
+            int id = t;
+            Thread th = new Thread(() -> {
+                try {
+                    latencies[id] = terminal(new SplittableRandom(seed + id), deadline);
+                } finally {
+                    done.countDown();
+                }
+            }, "terminal-" + t);
+            th.setDaemon(true);
+            th.start();
+        }
+        done.await();
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        report(all, elapsed);
+        boolean stockOk = checkStock(stockBefore, movementsBefore);
+        System.out.printf(Locale.US, "Reservation check: %s (%d fully reserved baskets refused at checkout)%n",
+            reservedRefused.get() == 0 ? "PASSED" : "FAILED", reservedRefused.get());
+        return stockOk && reservedRefused.get() == 0;
+    }
+
+    // One till: build a basket, reserve as items are scanned, check out; until the deadline
+    private long[] terminal(SplittableRandom rnd, long deadline) {
+        long[] lat = new long[1024];
+        int n = 0;
+        while (System.nanoTime() < deadline) {
+            String cartId = UUID.randomUUID().toString();
+            Map<Integer, Integer> basket = new HashMap<>();
+            int size = basketSize(rnd);
+            for (int i = 0; i < size; i++) basket.merge(pickItem(rnd), lineQty(rnd), Integer::sum);
+            List<SaleRepository.Line> cart = new ArrayList<>(basket.size());
+            int[] items = new int[basket.size()];
+            try {
+                for (Map.Entry<Integer, Integer> e : basket.entrySet()) {
+                    StockReservations.Outcome held = checkout.lookupAndReserve(cartId, names[e.getKey()], e.getValue());
+                    if (held == null || !held.ok()) {
+                        reserveRejected.incrementAndGet();
+                        continue;
+                    }
+                    items[cart.size()] = e.getKey();
+                    cart.add(new SaleRepository.Line(names[e.getKey()], e.getValue(), price(e.getKey())));
+                }
+                if (cart.isEmpty()) {
+                    checkout.releaseCart(cartId);
+                    continue;
+                }
+                boolean reserved = true;
+                for (SaleRepository.Line l : cart) {
+                    if (StockReservations.shared().heldBy(cartId, l.item()) != l.qty()) reserved = false;
+                }
+                long t0 = System.nanoTime();
+                SaleRepository.Result r = checkout.checkout(cartId, "Load test", cart, 0, 0, attempt -> retries.incrementAndGet());
+                long took = System.nanoTime() - t0;
+                if (n == lat.length) lat = Arrays.copyOf(lat, n * 2);
+                lat[n++] = took;
+                if (!r.ok() && reserved) {
+                    reservedRefused.incrementAndGet();
+                    if (reservedRefused.get() <= 5) System.err.println("Reserved basket refused: " + r.stockError());
+                    checkout.releaseCart(cartId);
+                } else if (!r.ok()) {
+                    stockRejected.incrementAndGet();
+                    checkout.releaseCart(cartId);
+                } else if (r.journaled()) {
+                    journaled.incrementAndGet();
+                } else {
+                    ok.incrementAndGet();
+                    lines.addAndGet(cart.size());
+                    for (int i = 0; i < cart.size(); i++) sold.addAndGet(items[i], cart.get(i).qty());
+                }
+            } catch (SQLException | RuntimeException ex) {
+                errors.incrementAndGet();
+                checkout.releaseCart(cartId);
+                if (errors.get() <= 5) System.err.println("Checkout error: " + ex);
+            }
+            if (thinkMs > 0) {
+                try {
+                    Thread.sleep(thinkMs);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        return Arrays.copyOf(lat, n);
+    }
+
+    // ---------- Distributions ----------
+
+    // Lines per basket: 1 in ~45%, 2 in ~25%, geometric tail capped at 25
+    private static int basketSize(SplittableRandom rnd) {
+        int size = 1;
+        while (size < 25 && rnd.nextDouble() < 0.55) size++;
+        return size;
+    }
+
+    // Units per line: 1 (70%), 2 (20%), 3-5 (10%)
+    private static int lineQty(SplittableRandom rnd) {
+        double u = rnd.nextDouble();
+        return u < 0.7 ? 1 : u < 0.9 ? 2 : 3 + rnd.nextInt(3);
+    }
+
+    private int pickItem(SplittableRandom rnd) {
+        int i = Arrays.binarySearch(zipfCdf, rnd.nextDouble());
+        return Math.min(skus - 1, i >= 0 ? i : -i - 1);
+    }
+
+    private static double[] zipfCdf(int n, double s) {
+        double[] cdf = new double[n];
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += 1.0 / Math.pow(i + 1, s);
+            cdf[i] = sum;
+        }
+        for (int i = 0; i < n; i++) cdf[i] /= sum;
+        return cdf;
+    }
+
+    private static Money price(int item) {
+        return Money.ofCents(199 + (item * 37L) % 4800);
+    }
+
+    // ---------- Setup and checks ----------
+
+    private void prepareCatalog() throws SQLException {
+        try (Connection c = Database.getConnection()) {
+            c.setAutoCommit(false);
+            Map<String, Integer> existing = new HashMap<>();
+            try (PreparedStatement ps = c.prepareStatement("SELECT name, id FROM items WHERE name LIKE ?")) {
+                ps.setString(1, PREFIX + "%");
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) existing.put(rs.getString(1), rs.getInt(2));
+                }
+            }
+            try (PreparedStatement ps = c.prepareStatement("INSERT INTO items (name, reorder_level) VALUES (?, 0)", Statement.RETURN_GENERATED_KEYS);
+                 PreparedStatement pb = c.prepareStatement(
+                     "INSERT INTO item_batches (item_id, batch_no, expiry_date, qty_on_hand, sell_price) VALUES (?,?,?,?,?)")) {
+                LocalDate today = LocalDate.now();
+                for (int i = 0; i < skus; i++) {
+                    if (existing.containsKey(names[i])) continue;
+                    ps.setString(1, names[i]);
+                    ps.executeUpdate();
+                    int itemId;
+                    try (ResultSet keys = ps.getGeneratedKeys()) {
+                        keys.next();
+                        itemId = keys.getInt(1);
+                    }
+                    for (int b = 0; b < batches; b++) {
+                        pb.setInt(1, itemId);
+                        pb.setString(2, "LT" + b);
+                        pb.setDate(3, Date.valueOf(today.plusMonths(6L * (b + 1))));
+                        pb.setInt(4, stock);
+                        pb.setBigDecimal(5, price(i).toBigDecimal());
+                        pb.addBatch();
+                    }
+                    pb.executeBatch();
+                }
+            }
+            // Restock every run
+            try (PreparedStatement ps = c.prepareStatement(
+                    "UPDATE item_batches SET qty_on_hand = ? WHERE item_id IN (SELECT id FROM items WHERE name LIKE ?)")) {
+                ps.setInt(1, stock);
+                ps.setString(2, PREFIX + "%");
+                ps.executeUpdate();
+            }
+            c.commit();
+        }
+    }
+
+    private long[] stockPerItem() throws SQLException {
+        long[] out = new long[skus];
+        Map<String, Integer> index = new HashMap<>();
+        for (int i = 0; i < skus; i++) index.put(names[i], i);
+        try (Connection c = Database.getConnection();
+             PreparedStatement ps = c.prepareStatement(
+                 "SELECT i.name, SUM(b.qty_on_hand) FROM items i JOIN item_batches b ON b.item_id = i.id "
+                     + "WHERE i.name LIKE ? GROUP BY i.name")) {
+            ps.setString(1, PREFIX + "%");
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Integer i = index.get(rs.getString(1));
+                    if (i == null) continue;
+                    out[i] = rs.getLong(2);
+                }
+            }
+        }
+        return out;
+    }
+
+    private int negativeBatches() throws SQLException {
+        try (Connection c = Database.getConnection();
+             PreparedStatement ps = c.prepareStatement(
+                 "SELECT COUNT(*) FROM item_batches b JOIN items i ON i.id = b.item_id WHERE i.name LIKE ? AND b.qty_on_hand < 0")) {
+            ps.setString(1, PREFIX + "%");
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    private long movementTotal() throws SQLException {
+        try (Connection c = Database.getConnection();
+             PreparedStatement ps = c.prepareStatement(
+                 "SELECT COALESCE(SUM(m.qty), 0) FROM inventory_movements m JOIN item_batches b ON b.id = m.item_batch_id "
+                     + "JOIN items i ON i.id = b.item_id WHERE i.name LIKE ? AND m.movement_type = 'SALE'")) {
+            ps.setString(1, PREFIX + "%");
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getLong(1);
+            }
+        }
+    }
+
+    private boolean checkStock(long[] before, long movementsBefore) throws SQLException {
+        long[] after = stockPerItem();
+        int negative = negativeBatches();
+        int mismatched = 0;
+        long soldTotal = 0;
+        for (int i = 0; i < skus; i++) {
+            soldTotal += sold.get(i);
+            if (before[i] - after[i] != sold.get(i)) {
+                mismatched++;
+                if (mismatched <= 5) {
+                    System.out.printf(Locale.US, "  %s: stock %d -> %d but sold %d%n", names[i], before[i], after[i], sold.get(i));
+                }
+            }
+        }
+        long movements = movementsBefore - movementTotal();
+        boolean passed = negative == 0 && mismatched == 0 && movements == soldTotal;
+        System.out.printf(Locale.US, "Oversell check: %s (units sold %d, movements %d, negative batches %d, mismatched items %d)%n",
+            passed ? "PASSED" : "FAILED", soldTotal, movements, negative, mismatched);
+        return passed;
+    }
+
+    private void report(long[] lat, double elapsed) {
+        long checkouts = lat.length;
+        System.out.println();
+        System.out.printf(Locale.US, "Terminals            %d%n", terminals);
+        System.out.printf(Locale.US, "Duration             %.1f s%n", elapsed);
+        System.out.printf(Locale.US, "Checkouts            %d (%d saved, %d journaled, %d short of stock, %d reserved but refused)%n",
+            checkouts, ok.get(), journaled.get(), stockRejected.get(), reservedRefused.get());
+        System.out.printf(Locale.US, "Throughput           %.1f checkouts/s, %.1f lines/s%n", ok.get() / elapsed, lines.get() / elapsed);
+        if (checkouts > 0) {
+            System.out.printf(Locale.US, "Latency ms           p50 %.2f  p99 %.2f  p99.9 %.2f  max %.2f  mean %.2f%n",
+                ms(pct(lat, 0.50)), ms(pct(lat, 0.99)), ms(pct(lat, 0.999)), ms(lat[lat.length - 1]),
+                ms((long) Arrays.stream(lat).average().orElse(0)));
+        }
+        System.out.printf(Locale.US, "Retries              %d%n", retries.get());
+        System.out.printf(Locale.US, "Failures             %d errors, %d lines refused at reservation%n", errors.get(), reserveRejected.get());
+        ConnectionPool.Stats pool = Database.poolStats();
+        if (pool != null) {
+            System.out.printf(Locale.US, "Pool                 max %d, %d timeouts%n", pool.maxSize(), pool.timeouts());
+        }
+        if (GroupCommitCoordinator.shared().isEnabled()) {
+            GroupCommitCoordinator.Stats g = GroupCommitCoordinator.shared().stats();
+            System.out.printf(Locale.US, "Group commit         %d groups, avg %.1f / max %d sales, %d fallbacks%n",
+                g.groups(), g.averageGroup(), g.maxGroup(), g.fallbacks());
+        }
+    }
+
+    private static long pct(long[] sorted, double p) {
+        int i = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, i))];
+    }
+
+    private static double ms(long nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -0,0 +1,352 @@
+package com.example.loadtest;
+
+import com.example.Database;
+import com.example.model.Money;
+import com.example.repository.CatalogCache;
+import com.example.repository.CheckoutService;
+import com.example.repository.GroupCommitCoordinator;
+import com.example.repository.SaleRepository;
+import com.example.repository.StockReservations;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Stress test for stock reservations: many simulated carts in this process reserve, give back,
+ * abandon and check out the same few items, whose stock is small enough to run out in every
+ * round, so carts keep competing for the last units.
+ *
+ * The catalog has {@code skus} batch-tracked items ("RS-B001"...) with several batches and
+ * {@code legacy} items that only have a legacy inventory row ("RS-L001"...); all of them are
+ * restocked at the start of every round. The run fails when:
+ *
+ *  - a batch is held beyond its stock (sampled during the rounds, and after each one)
+ *  - a cart whose every line was reserved is refused at checkout, or loses a reservation
+ *    before it checks out
+ *  - holds are left over once every cart is done
+ *  - stock was oversold: a batch or legacy row went negative, or the stock taken from the
+ *    database differs from what the carts sold
+ *
+ * Usage (embedded H2 by default; any profile or db.* system property works as for the app):
+ * <pre>
+ *   mvn -Ploadtest javafx:run -Dloadtest.main=com.example.loadtest.ReservationStressTest -Dloadtest.args="--carts=64"
+ *   java -cp target/classes:&lt;h2 jar&gt; -Dprofile=embedded com.example.loadtest.ReservationStressTest --groupCommit
+ * </pre>
+ * Options: --carts (32), --rounds (10), --roundMs (2000), --skus (4), --legacy (2), --batches (3),
+ * --stock per batch (40; legacy items get stock x batches), --seed (42), --groupCommit.
+ */
+public final class ReservationStressTest {
+    private static final String PREFIX = "RS-";
+
+    private final int carts;
+    private final int rounds;
+    private final long roundMs;
+    private final int skus;
+    private final int legacy;
+    private final int batches;
+    private final int stock;
+    private final long seed;
+
+    private final CheckoutService checkout = new CheckoutService();
+    private final StockReservations reservations = StockReservations.shared();
+    private final AtomicLong saved = new AtomicLong();
+    private final AtomicLong abandoned = new AtomicLong();
+    private final AtomicLong reserveRefused = new AtomicLong();
+    private final AtomicLong reservedRefused = new AtomicLong();
+    private final AtomicLong lostReservations = new AtomicLong();
+    private final AtomicLong heldBeyondStock = new AtomicLong();
+    private final AtomicLong samples = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private String[] names;
+    private AtomicLongArray sold;
+
+    private ReservationStressTest(Map<String, String> opts) {
+        this.carts = Integer.parseInt(opts.getOrDefault("carts", "32"));
+        this.rounds = Integer.parseInt(opts.getOrDefault("rounds", "10"));
+        this.roundMs = Long.parseLong(opts.getOrDefault("roundMs", "2000"));
+        this.skus = Integer.parseInt(opts.getOrDefault("skus", "4"));
+        this.legacy = Integer.parseInt(opts.getOrDefault("legacy", "2"));
+        this.batches = Integer.parseInt(opts.getOrDefault("batches", "3"));
+        this.stock = Integer.parseInt(opts.getOrDefault("stock", "40"));
+        this.seed = Long.parseLong(opts.getOrDefault("seed", "42"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = new HashMap<>();
+        for (String a : args) {
+            if (!a.startsWith("--")) continue;
+            int eq = a.indexOf('=');
+            if (eq < 0) opts.put(a.substring(2), "true");
+            else opts.put(a.substring(2, eq), a.substring(eq + 1));
+        }
+        if (opts.containsKey("groupCommit")) System.setProperty("db.groupCommit.enabled", opts.get("groupCommit"));
+        boolean passed;
+        try {
+            Database.bootstrap();
+            passed = new ReservationStressTest(opts).run();
+        } finally {
+            Database.shutdown();
+        }
+        System.exit(passed ? 0 : 1);
+    }
+
+    private boolean run() throws Exception {
+        names = new String[skus + legacy];
+        for (int i = 0; i < skus; i++) names[i] = String.format(Locale.ROOT, "%sB%03d", PREFIX, i + 1);
+        for (int i = 0; i < legacy; i++) names[skus + i] = String.format(Locale.ROOT, "%sL%03d", PREFIX, i + 1);
+        prepareCatalog();
+
+        System.out.printf(Locale.US, "Running %d carts on %d items (%d units each), %d rounds of %d ms...%n",
+            carts, names.length, batches * stock, rounds, roundMs);
+        boolean oversold = false;
+        for (int round = 0; round < rounds; round++) {
+            restock();
+            CatalogCache.shared().clear();
+            sold = new AtomicLongArray(names.length);
+            Map<String, Map<Integer, Integer>> before = stockPerBatch();
+            runRound(round);
+            checkHolds();
+            oversold |= !checkStock(before);
+        }
+
+        int leftover = 0;
+        for (String n : names) leftover += reservations.totalHeld(n).values().stream().mapToInt(Integer::intValue).sum();
+        boolean passed = !oversold && leftover == 0 && reservedRefused.get() == 0 && lostReservations.get() == 0
+            && heldBeyondStock.get() == 0 && errors.get() == 0;
+        System.out.println();
+        System.out.printf(Locale.US, "Carts                %d saved, %d abandoned, %d lines refused at reservation%n",
+            saved.get(), abandoned.get(), reserveRefused.get());
+        if (GroupCommitCoordinator.shared().isEnabled()) {
+            GroupCommitCoordinator.Stats g = GroupCommitCoordinator.shared().stats();
+            System.out.printf(Locale.US, "Group commit         %d groups, avg %.1f / max %d sales, %d fallbacks%n",
+                g.groups(), g.averageGroup(), g.maxGroup(), g.fallbacks());
+        }
+        System.out.printf(Locale.US, "Reserved carts       %d refused at checkout, %d lost a reservation%n",
+            reservedRefused.get(), lostReservations.get());
+        System.out.printf(Locale.US, "Holds                %d batches held beyond stock in %d samples, %d units left over%n",
+            heldBeyondStock.get(), samples.get(), leftover);
+        System.out.printf(Locale.US, "Errors               %d%n", errors.get());
+        System.out.printf(Locale.US, "Reservation check: %s%n", passed ? "PASSED" : "FAILED");
+        return passed;
+    }
+
+    private void runRound(int round) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(carts);
+        long deadline = System.nanoTime() + roundMs * 1_000_000L;
+        for (int t = 0; t < carts; t++) {
+            SplittableRandom rnd = new SplittableRandom(seed + (long) round * carts + t);
+            Thread th = new Thread(() -> {
+                try {
+                    shop(rnd, deadline);
+                } finally {
+                    done.countDown();
+                }
+            }, "cart-" + t);
+            th.setDaemon(true);
+            th.start();
+        }
+        // Sample while the carts run
+        while (!done.await(20, TimeUnit.MILLISECONDS)) {
+            try {
+                checkHolds();
+            } catch (SQLException ex) {
+                errors.incrementAndGet();
+                System.err.println("Check error: " + ex);
+            }
+        }
+    }
+
+    // One simulated cart after another: reserve a few lines, maybe give some back or walk away, check out
+    private void shop(SplittableRandom rnd, long deadline) {
+        while (System.nanoTime() < deadline) {
+            String cartId = UUID.randomUUID().toString();
+            Map<Integer, Integer> cart = new HashMap<>();
+            try {
+                int lines = 1 + rnd.nextInt(3);
+                for (int i = 0; i < lines; i++) {
+                    int item = rnd.nextInt(names.length);
+                    int qty = 1 + rnd.nextInt(4);
+                    StockReservations.Outcome held = checkout.lookupAndReserve(cartId, names[item], qty);
+                    if (held == null || !held.ok()) {
+                        reserveRefused.incrementAndGet();
+                        continue;
+                    }
+                    cart.merge(item, qty, Integer::sum);
+                }
+                double u = rnd.nextDouble();
+                if (!cart.isEmpty() && u < 0.15) {
+                    // Give one unit of a line back
+                    int item = cart.keySet().iterator().next();
+                    checkout.release(cartId, names[item], 1);
+                    if (cart.merge(item, -1, Integer::sum) == 0) cart.remove(item);
+                }
+                if (cart.isEmpty() || u > 0.9) {
+                    abandoned.incrementAndGet();
+                    checkout.releaseCart(cartId);
+                    // Sold out: let the carts that still hold stock get on with it
+                    if (cart.isEmpty()) Thread.sleep(1);
+                    continue;
+                }
+                List<SaleRepository.Line> order = new ArrayList<>(cart.size());
+                for (Map.Entry<Integer, Integer> e : cart.entrySet()) {
+                    if (reservations.heldBy(cartId, names[e.getKey()]) != e.getValue()) lostReservations.incrementAndGet();
+                    order.add(new SaleRepository.Line(names[e.getKey()], e.getValue(), Money.ofCents(100)));
+                }
+                SaleRepository.Result r = checkout.checkout(cartId, "Stress test", order, 0, 0, null);
+                if (!r.ok() || r.journaled()) {
+                    reservedRefused.incrementAndGet();
+                    checkout.releaseCart(cartId);
+                    if (reservedRefused.get() <= 5) System.out.println("  reserved cart refused: " + (r.ok() ? "journaled" : r.stockError()));
+                } else {
+                    saved.incrementAndGet();
+                    cart.forEach((item, qty) -> sold.addAndGet(item, qty));
+                }
+            } catch (SQLException | RuntimeException ex) {
+                errors.incrementAndGet();
+                checkout.releaseCart(cartId);
+                if (errors.get() <= 5) System.err.println("Cart error: " + ex);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // ---------- Setup and checks ----------
+
+    private void prepareCatalog() throws SQLException {
+        try (Connection c = Database.getConnection()) {
+            c.setAutoCommit(false);
+            Map<String, Integer> items = new HashMap<>();
+            try (PreparedStatement ps = c.prepareStatement("SELECT name, id FROM items WHERE name LIKE ?")) {
+                ps.setString(1, PREFIX + "B%");
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) items.put(rs.getString(1), rs.getInt(2));
+                }
+            }
+            try (PreparedStatement ps = c.prepareStatement("INSERT INTO items (name, reorder_level) VALUES (?, 0)", Statement.RETURN_GENERATED_KEYS);
+                 PreparedStatement pb = c.prepareStatement(
+                     "INSERT INTO item_batches (item_id, batch_no, expiry_date, qty_on_hand, sell_price) VALUES (?,?,?,?,?)")) {
+                for (int i = 0; i < skus; i++) {
+                    if (items.containsKey(names[i])) continue;
+                    ps.setString(1, names[i]);
+                    ps.executeUpdate();
+                    int itemId;
+                    try (ResultSet keys = ps.getGeneratedKeys()) {
+                        keys.next();
+                        itemId = keys.getInt(1);
+                    }
+                    for (int b = 0; b < batches; b++) {
+                        pb.setInt(1, itemId);
+                        pb.setString(2, "RS" + b);
+                        pb.setDate(3, Date.valueOf(LocalDate.now().plusMonths(3L * (b + 1))));
+                        pb.setInt(4, stock);
+                        pb.setBigDecimal(5, Money.ofCents(100).toBigDecimal());
+                        pb.addBatch();
+                    }
+                    pb.executeBatch();
+                }
+            }
+            // Legacy-only items: an inventory row and nothing in items
+            try (PreparedStatement exists = c.prepareStatement("SELECT COUNT(*) FROM inventory_items WHERE name = ?");
+                 PreparedStatement ins = c.prepareStatement("INSERT INTO inventory_items (name, quantity, price) VALUES (?, 0, 1.00)")) {
+                for (int i = skus; i < names.length; i++) {
+                    exists.setString(1, names[i]);
+                    try (ResultSet rs = exists.executeQuery()) {
+                        rs.next();
+                        if (rs.getInt(1) > 0) continue;
+                    }
+                    ins.setString(1, names[i]);
+                    ins.executeUpdate();
+                }
+            }
+            c.commit();
+        }
+    }
+
+    private void restock() throws SQLException {
+        try (Connection c = Database.getConnection()) {
+            c.setAutoCommit(false);
+            try (PreparedStatement ps = c.prepareStatement(
+                    "UPDATE item_batches SET qty_on_hand = ? WHERE item_id IN (SELECT id FROM items WHERE name LIKE ?)")) {
+                ps.setInt(1, stock);
+                ps.setString(2, PREFIX + "B%");
+                ps.executeUpdate();
+            }
+            try (PreparedStatement ps = c.prepareStatement("UPDATE inventory_items SET quantity = ? WHERE name LIKE ?")) {
+                ps.setInt(1, stock * batches);
+                ps.setString(2, PREFIX + "L%");
+                ps.executeUpdate();
+            }
+            c.commit();
+        }
+    }
+
+    // Per item: stock per batch id, legacy-only items under batch 0 as in StockReservations
+    private Map<String, Map<Integer, Integer>> stockPerBatch() throws SQLException {
+        Map<String, Map<Integer, Integer>> out = new HashMap<>();
+        try (Connection c = Database.getConnection();
+             PreparedStatement ps = c.prepareStatement(
+                 "SELECT i.name, b.id, b.qty_on_hand FROM items i JOIN item_batches b ON b.item_id = i.id WHERE i.name LIKE ? "
+                     + "UNION ALL SELECT name, 0, quantity FROM inventory_items WHERE name LIKE ?")) {
+            ps.setString(1, PREFIX + "B%");
+            ps.setString(2, PREFIX + "L%");
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    out.computeIfAbsent(rs.getString(1).toLowerCase(Locale.ROOT), k -> new HashMap<>()).put(rs.getInt(2), rs.getInt(3));
+                }
+            }
+        }
+        return out;
+    }
+
+    // Stock is read first: holds made after it are bounded by stock that can only have gone down
+    private void checkHolds() throws SQLException {
+        Map<String, Map<Integer, Integer>> now = stockPerBatch();
+        samples.incrementAndGet();
+        for (String n : names) {
+            Map<Integer, Integer> batchStock = now.getOrDefault(n.toLowerCase(Locale.ROOT), Map.of());
+            for (Map.Entry<Integer, Integer> e : reservations.heldByOthers(null, n).entrySet()) {
+                int onHand = batchStock.getOrDefault(e.getKey(), 0);
+                if (e.getValue() > onHand) {
+                    if (heldBeyondStock.incrementAndGet() <= 5) {
+                        System.out.printf(Locale.US, "  %s batch %d: %d held, %d in stock%n", n, e.getKey(), e.getValue(), onHand);
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean checkStock(Map<String, Map<Integer, Integer>> before) throws SQLException {
+        Map<String, Map<Integer, Integer>> after = stockPerBatch();
+        boolean ok = true;
+        for (int i = 0; i < names.length; i++) {
+            String k = names[i].toLowerCase(Locale.ROOT);
+            Map<Integer, Integer> b = before.getOrDefault(k, Map.of());
+            Map<Integer, Integer> a = after.getOrDefault(k, Map.of());
+            long taken = b.values().stream().mapToLong(Integer::longValue).sum() - a.values().stream().mapToLong(Integer::longValue).sum();
+            boolean negative = a.values().stream().anyMatch(q -> q < 0);
+            if (negative || taken != sold.get(i)) {
+                ok = false;
+                System.out.printf(Locale.US, "  %s: stock %s -> %s but sold %d%n", names[i], b, a, sold.get(i));
+            }
+        }
+        return ok;
+    }
+}
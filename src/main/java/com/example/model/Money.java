@@ -0,0 +1,113 @@
+package com.example.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * An amount of money in whole cents. Arithmetic is exact; the only rounding (half up, to the
+ * cent) happens when a percentage is applied or a decimal is converted. Amounts are stored as
+ * DECIMAL(10,2), which maps to cents one to one.
+ *
+ * The {@code long} helpers ({@link #lineCents}, {@link #applyPct}) let hot paths such as cart
+ * totals work on raw cents without creating objects.
+ */
+public record Money(long cents) implements Comparable<Money> {
+    public static final Money ZERO = new Money(0);
+
+    public static Money ofCents(long cents) {
+        return cents == 0 ? ZERO : new Money(cents);
+    }
+
+    /** From a decimal amount (database column, cached price); rounded half up to the cent. */
+    public static Money of(BigDecimal amount) {
+        return amount == null ? ZERO : ofCents(amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact());
+    }
+
+    /** From a double (legacy callers); its shortest decimal form is rounded half up to the cent. */
+    public static Money of(double amount) {
+        return of(BigDecimal.valueOf(amount));
+    }
+
+    /** Parse "12", "12.5" or "12.50"; null when blank or not a number. */
+    public static Money parse(String s) {
+        if (s == null || s.isBlank()) return null;
+        try {
+            return of(new BigDecimal(s.trim()));
+        } catch (NumberFormatException | ArithmeticException e) {
+            return null;
+        }
+    }
+
+    public Money plus(Money other) {
+        return ofCents(Math.addExact(cents, other.cents));
+    }
+
+    public Money minus(Money other) {
+        return ofCents(Math.subtractExact(cents, other.cents));
+    }
+
+    public Money times(int qty) {
+        return ofCents(lineCents(cents, qty));
+    }
+
+    public boolean isNegative() {
+        return cents < 0;
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(cents, 2);
+    }
+
+    /** For display formatting only; never compute with it. */
+    public double toDouble() {
+        return cents / 100.0;
+    }
+
+    @Override
+    public int compareTo(Money o) {
+        return Long.compare(cents, o.cents);
+    }
+
+    /** "12.34" (no currency symbol). */
+    @Override
+    public String toString() {
+        return toBigDecimal().toPlainString();
+    }
+
+    // ---------- Raw cents ----------
+
+    public static long lineCents(long unitCents, int qty) {
+        return Math.multiplyExact(unitCents, (long) qty);
+    }
+
+    /**
+     * {@code cents * (1 + bps / 10000)}, rounded half up; {@code bps} is a percentage in basis
+     * points (7.5% = 750), negative for a discount.
+     */
+    public static long applyPct(long cents, long bps) {
+        long num = Math.multiplyExact(cents, 10_000L + bps);
+        long half = num >= 0 ? 5_000L : -5_000L;
+        return (num + half) / 10_000L;
+    }
+
+    /** A percentage such as "7.5" in basis points (750); 0 when blank or invalid, never negative. */
+    public static long bps(String pct) {
+        if (pct == null || pct.isBlank()) return 0;
+        try {
+            return bps(new BigDecimal(pct.trim()));
+        } catch (NumberFormatException | ArithmeticException e) {
+            return 0;
+        }
+    }
+
+    /** A percentage column (DECIMAL(5,2)) in basis points, rounded half up; 0 when null, never negative. */
+    public static long bps(BigDecimal pct) {
+        if (pct == null) return 0;
+        return Math.max(0L, pct.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact());
+    }
+
+    /** Basis points as the percentage to bind or show: 750 is 7.50. */
+    public static BigDecimal pct(long bps) {
+        return BigDecimal.valueOf(bps, 2);
+    }
+}
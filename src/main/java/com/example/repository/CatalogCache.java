@@ -0,0 +1,482 @@
+package com.example.repository;
+
+import com.example.Database;
+import com.example.model.Money;
+import com.example.util.AppConfig;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process-wide cache of the sellable catalog for the POS: per item its legacy inventory row
+ * (price, quantity) and its batches, keyed by normalized name and by {@code items.id}. The
+ * add-item path reads it without touching the database; available quantity is worked out from
+ * the cached batches at lookup time, so batches expire out of it at midnight by themselves.
+ *
+ * The cache is filled with one query on first use and kept current in the background:
+ *
+ *  - stock: every {@code catalog.cache.refreshMs} the movements written since the last check
+ *    ({@code inventory_movements.id} above a watermark) name the batches that changed, and only
+ *    their items are reloaded. The watermark is re-read with a small overlap because ids of
+ *    concurrent transactions can commit out of order. Items without batches have no
+ *    movements: a sale of one records the name in {@code stock_changes} ({@link #stockChanged}),
+ *    followed the same way with its own watermark.
+ *  - item edits: {@link #itemsChanged} writes a new catalog version token to {@code settings}.
+ *    Other processes see a token they did not write and reload; this process just drops the
+ *    edited names.
+ *  - local sales: {@link #evict} right after commit, so the next lookup reloads the item.
+ *
+ * At most {@code catalog.cache.maxEntries} items are held (least recently used are dropped).
+ * A (re)load reads that many items at most; names not in the cache are looked up in the
+ * database and then cached.
+ */
+public final class CatalogCache {
+    private static final System.Logger LOG = System.getLogger(CatalogCache.class.getName());
+    private static final String VERSION_KEY = "catalog.version";
+    // Re-read this many movement (and stock change) ids below the watermark (out-of-order commits)
+    private static final int MOVEMENT_OVERLAP = 100;
+    // Names of the first items, up to a limit (derived table: MySQL has no LIMIT in IN subqueries)
+    private static final String FIRST_ITEMS = "(SELECT n FROM (SELECT name_norm AS n FROM items ORDER BY id LIMIT ?) t)";
+    // More changed batches than this in one tick: reload everything instead
+    private static final int MAX_INCREMENTAL = 500;
+    // Own version tokens remembered (one per in-flight write is enough)
+    private static final int OWN_VERSIONS = 64;
+
+    private static final CatalogCache SHARED = new CatalogCache(AppConfig.get());
+
+    /** A batch of an item as of the last refresh. */
+    public record BatchQty(int id, int qtyOnHand, LocalDate expiry) {}
+
+    /**
+     * One catalog item. {@code price} is the legacy inventory price (null when the item only
+     * exists in {@code items}); {@code itemId} is 0 for legacy rows without an items entry.
+     * {@code asOf} is the {@link StockReservations#settled} sequence read before the stock was.
+     */
+    public record Entry(String name, int itemId, Integer inventoryId, Money price, int legacyQty,
+                        List<BatchQty> batches, long asOf) {
+        public boolean hasBatches() {
+            return !batches.isEmpty();
+        }
+
+        /** Non-expired batch stock when the item has batches, otherwise the legacy quantity. */
+        public int available(LocalDate today) {
+            if (!hasBatches()) return legacyQty;
+            int sum = 0;
+            for (BatchQty b : batches) {
+                if (b.qtyOnHand() > 0 && (b.expiry() == null || !b.expiry().isBefore(today))) sum += b.qtyOnHand();
+            }
+            return sum;
+        }
+    }
+
+    private final boolean enabled;
+    private final int maxEntries;
+    private final long refreshMs;
+    private final Object lock = new Object();
+    // Access-ordered: the eldest entry is the least recently used
+    private final LinkedHashMap<String, Entry> byName;
+    private final Map<Integer, String> nameByItemId = new HashMap<>();
+    private boolean loaded;
+    private long watermark;
+    private long changeMark;
+    private String version;
+    // Tokens this process wrote lately: concurrent sales may commit theirs in any order
+    private final Set<String> ownVersions = Collections.newSetFromMap(new LinkedHashMap<>(16, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > OWN_VERSIONS;
+        }
+    });
+    private ScheduledExecutorService refresher;
+    private final List<Runnable> reloadListeners = new CopyOnWriteArrayList<>();
+
+    private CatalogCache(AppConfig cfg) {
+        this.enabled = cfg.isCatalogCacheEnabled();
+        this.maxEntries = cfg.getCatalogCacheMaxEntries();
+        this.refreshMs = cfg.getCatalogCacheRefreshMs();
+        this.byName = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() <= maxEntries) return false;
+                nameByItemId.remove(eldest.getValue().itemId());
+                return true;
+            }
+        };
+    }
+
+    public static CatalogCache shared() {
+        return SHARED;
+    }
+
+    /** Cached entry for a name, or null if it is not cached (does not query). */
+    public Entry peek(String name) {
+        if (!enabled) return null;
+        synchronized (lock) {
+            return byName.get(key(name));
+        }
+    }
+
+    public Entry peek(int itemId) {
+        if (!enabled) return null;
+        synchronized (lock) {
+            String n = nameByItemId.get(itemId);
+            return n == null ? null : byName.get(n);
+        }
+    }
+
+    /**
+     * Entry for a name, from memory when cached, otherwise loaded from the database (and cached).
+     * Null when there is no such item. May block on the database: call it off the FX thread.
+     */
+    public Entry lookup(String name) throws SQLException {
+        String k = key(name);
+        if (k.isEmpty()) return null;
+        if (enabled) {
+            ensureLoaded();
+            Entry e = peek(k);
+            if (e != null) return e;
+        }
+        Map<String, Entry> found;
+        try (Connection c = Database.getConnection()) {
+            found = load(c, " WHERE name_norm = ?", " WHERE i.name_norm = ?", List.of(k));
+        }
+        if (enabled) put(found.values());
+        return found.get(k);
+    }
+
+    /**
+     * Current entries for several names read from the database in one query (bypassing what is
+     * cached, which is updated with the result), keyed by lower-cased name; unknown names are absent.
+     */
+    public Map<String, Entry> lookupAll(Collection<String> names) throws SQLException {
+        List<String> keys = names.stream().map(CatalogCache::key).filter(k -> !k.isEmpty()).distinct().toList();
+        if (keys.isEmpty()) return Map.of();
+        String in = "(" + String.join(", ", Collections.nCopies(keys.size(), "?")) + ")";
+        Map<String, Entry> found;
+        try (Connection c = Database.getConnection()) {
+            found = load(c, " WHERE name_norm IN " + in, " WHERE i.name_norm IN " + in, keys);
+        }
+        if (enabled) put(found.values());
+        return found;
+    }
+
+    /** Drop names (e.g. after selling them) so the next lookup reads them again. */
+    public void evict(Collection<String> names) {
+        synchronized (lock) {
+            for (String n : names) {
+                Entry e = byName.remove(key(n));
+                if (e != null) nameByItemId.remove(e.itemId());
+            }
+        }
+    }
+
+    /**
+     * Record an item edit (inventory add/update/delete) on the caller's connection: other
+     * processes reload their catalog, this one drops the given names.
+     */
+    public void itemsChanged(Connection c, Collection<String> names) throws SQLException {
+        String token = UUID.randomUUID().toString();
+        try (PreparedStatement ps = c.prepareStatement("UPDATE settings SET v = ? WHERE k = ?")) {
+            ps.setString(1, token);
+            ps.setString(2, VERSION_KEY);
+            if (ps.executeUpdate() == 0) {
+                try (PreparedStatement ins = c.prepareStatement("INSERT INTO settings (k, v) VALUES (?, ?)")) {
+                    ins.setString(1, VERSION_KEY);
+                    ins.setString(2, token);
+                    ins.executeUpdate();
+                }
+            }
+        }
+        synchronized (lock) {
+            ownVersions.add(token);
+        }
+        evict(names);
+    }
+
+    /**
+     * Record on the caller's connection that the stock of these items changed without a
+     * movement (items without batches), for every process's next incremental refresh.
+     */
+    public static void stockChanged(Connection c, Collection<String> names) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement("INSERT INTO stock_changes (name_norm) VALUES (?)")) {
+            for (String n : names) {
+                ps.setString(1, key(n));
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /** Add the version row if missing (migration V11), so writers only ever update it. */
+    public static void createVersionRow(Connection c) throws SQLException {
+        if (readVersion(c) != null) return;
+        try (PreparedStatement ps = c.prepareStatement("INSERT INTO settings (k, v) VALUES (?, ?)")) {
+            ps.setString(1, VERSION_KEY);
+            ps.setString(2, UUID.randomUUID().toString());
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Run after the background refresh reloaded the whole catalog (an item edit in another
+     * process, or too many changes for an incremental refresh); called on the refresh thread.
+     */
+    public void addReloadListener(Runnable listener) {
+        reloadListeners.add(listener);
+    }
+
+    /** Forget everything; the next lookup reloads (e.g. after switching databases). */
+    public void clear() {
+        synchronized (lock) {
+            byName.clear();
+            nameByItemId.clear();
+            loaded = false;
+            version = null;
+            watermark = 0;
+            changeMark = 0;
+        }
+    }
+
+    public int size() {
+        synchronized (lock) {
+            return byName.size();
+        }
+    }
+
+    /** Load the catalog and start the background refresh (runs on the caller's thread). */
+    public void ensureLoaded() throws SQLException {
+        if (!enabled) return;
+        synchronized (lock) {
+            if (loaded) return;
+        }
+        reloadAll();
+        synchronized (lock) {
+            if (refresher == null) {
+                refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread t = new Thread(r, "catalog-refresh");
+                    t.setDaemon(true);
+                    return t;
+                });
+                refresher.scheduleWithFixedDelay(this::refresh, refreshMs, refreshMs, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    // ---------- Refresh ----------
+
+    // Drops the cache and reads back at most maxEntries items; the rest load on first lookup
+    private void reloadAll() throws SQLException {
+        try (Connection c = Database.getConnection()) {
+            // Watermarks and version first: changes racing with the load are picked up next tick
+            String v = readVersion(c);
+            long mark = maxId(c, "inventory_movements");
+            long changes = maxId(c, "stock_changes");
+            Map<String, Entry> all = load(c, " WHERE name_norm IN " + FIRST_ITEMS, " WHERE i.name_norm IN " + FIRST_ITEMS,
+                List.of(maxEntries));
+            synchronized (lock) {
+                byName.clear();
+                nameByItemId.clear();
+                putLocked(all.values());
+                version = v;
+                watermark = mark;
+                changeMark = changes;
+                loaded = true;
+            }
+            LOG.log(System.Logger.Level.DEBUG, "Catalog loaded: " + all.size() + " items");
+        }
+    }
+
+    private void refresh() {
+        synchronized (lock) {
+            if (!loaded) return;
+        }
+        try {
+            if (!refreshIncremental()) {
+                reloadAll();
+                for (Runnable l : reloadListeners) l.run();
+            }
+        } catch (SQLException | RuntimeException ex) {
+            LOG.log(System.Logger.Level.DEBUG, "Catalog refresh failed: " + ex.getMessage());
+        }
+    }
+
+    /** Reload the items touched since the last tick; false when a full reload is needed instead. */
+    private boolean refreshIncremental() throws SQLException {
+        try (Connection c = Database.getConnection()) {
+            String v = readVersion(c);
+            String known;
+            long from;
+            long changesFrom;
+            synchronized (lock) {
+                known = version;
+                from = Math.max(0, watermark - MOVEMENT_OVERLAP);
+                changesFrom = Math.max(0, changeMark - MOVEMENT_OVERLAP);
+            }
+            if (v != null && !v.equals(known)) {
+                // Our own edit: the affected names were already dropped
+                synchronized (lock) {
+                    if (!ownVersions.contains(v)) return false;
+                    version = v;
+                }
+            }
+
+            Set<Integer> itemIds = new HashSet<>();
+            long mark = from;
+            try (PreparedStatement ps = c.prepareStatement(
+                    "SELECT m.id, b.item_id FROM inventory_movements m JOIN item_batches b ON b.id = m.item_batch_id WHERE m.id > ?")) {
+                ps.setLong(1, from);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        mark = Math.max(mark, rs.getLong(1));
+                        itemIds.add(rs.getInt(2));
+                    }
+                }
+            }
+            Set<String> names = new HashSet<>();
+            long changes = changesFrom;
+            try (PreparedStatement ps = c.prepareStatement("SELECT id, name_norm FROM stock_changes WHERE id > ?")) {
+                ps.setLong(1, changesFrom);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        changes = Math.max(changes, rs.getLong(1));
+                        names.add(rs.getString(2));
+                    }
+                }
+            }
+            if (itemIds.size() + names.size() > MAX_INCREMENTAL) return false;
+            if (!names.isEmpty()) {
+                String in = "(" + String.join(", ", Collections.nCopies(names.size(), "?")) + ")";
+                put(load(c, " WHERE name_norm IN " + in, " WHERE i.name_norm IN " + in, new ArrayList<>(names)).values());
+            }
+            if (!itemIds.isEmpty()) {
+                String in = "(" + String.join(", ", Collections.nCopies(itemIds.size(), "?")) + ")";
+                // Item ids resolve to names on both sides of the union
+                Map<String, Entry> changed = load(c,
+                    " WHERE name_norm IN (SELECT name_norm FROM items WHERE id IN " + in + ")",
+                    " WHERE i.id IN " + in, new ArrayList<>(itemIds));
+                put(changed.values());
+            }
+            synchronized (lock) {
+                watermark = Math.max(watermark, mark);
+                changeMark = Math.max(changeMark, changes);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Legacy inventory rows and batches in one query, grouped by normalized name (the indexed
+     * {@code name_norm} column). The filters are appended to the inventory_items and the
+     * items/item_batches halves and share params.
+     */
+    private static Map<String, Entry> load(Connection c, String legacyFilter, String batchFilter,
+                                           List<?> params) throws SQLException {
+        String sql = "SELECT 'I' AS kind, name_norm AS n, name, id, quantity AS qty, price, NULL AS expiry, 0 AS item_id "
+            + "FROM inventory_items" + legacyFilter + " "
+            + "UNION ALL "
+            + "SELECT 'B', i.name_norm, i.name, b.id, b.qty_on_hand, NULL, b.expiry_date, i.id "
+            + "FROM item_batches b JOIN items i ON b.item_id = i.id" + batchFilter;
+        Map<String, Builder> rows = new LinkedHashMap<>();
+        long asOf = StockReservations.shared().settled();
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            int idx = 1;
+            for (int pass = 0; pass < 2; pass++) {
+                for (Object p : params) ps.setObject(idx++, p);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Builder b = rows.computeIfAbsent(rs.getString(2), k -> new Builder());
+                    int id = rs.getInt(4);
+                    int qty = rs.getInt(5);
+                    if ("I".equals(rs.getString(1))) {
+                        // Lowest id wins, as in the old per-name lookup
+                        if (b.inventoryId == null || id < b.inventoryId) {
+                            b.inventoryId = id;
+                            BigDecimal price = rs.getBigDecimal(6);
+                            b.price = price == null ? null : Money.of(price);
+                            b.name = rs.getString(3);
+                        }
+                        b.legacyQty += qty;
+                    } else {
+                        Date d = rs.getDate(7);
+                        b.batches.add(new BatchQty(id, qty, d == null ? null : d.toLocalDate()));
+                        b.itemId = rs.getInt(8);
+                        if (b.name == null) b.name = rs.getString(3);
+                    }
+                }
+            }
+        }
+        Map<String, Entry> out = new LinkedHashMap<>();
+        rows.forEach((k, b) -> out.put(k, b.build(asOf)));
+        return out;
+    }
+
+    private static String readVersion(Connection c) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement("SELECT v FROM settings WHERE k = ?")) {
+            ps.setString(1, VERSION_KEY);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+
+    private static long maxId(Connection c, String table) throws SQLException {
+        try (Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COALESCE(MAX(id), 0) FROM " + table)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private void put(Collection<Entry> entries) {
+        synchronized (lock) {
+            putLocked(entries);
+        }
+    }
+
+    private void putLocked(Collection<Entry> entries) {
+        for (Entry e : entries) {
+            String k = key(e.name());
+            Entry old = byName.put(k, e);
+            if (old != null && old.itemId() != e.itemId()) nameByItemId.remove(old.itemId());
+            if (e.itemId() != 0) nameByItemId.put(e.itemId(), k);
+        }
+    }
+
+    private static String key(String name) {
+        return name == null ? "" : name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static final class Builder {
+        String name;
+        int itemId;
+        Integer inventoryId;
+        Money price;
+        int legacyQty;
+        final List<BatchQty> batches = new ArrayList<>();
+
+        Entry build(long asOf) {
+            return new Entry(name, itemId, inventoryId, price, legacyQty, List.copyOf(batches), asOf);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.repository;
+
+import com.example.model.Money;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.IntConsumer;
+
+/**
+ * The POS cart-to-sale path without any UI: stock lookup and reservation when a line is added,
+ * totals, and checkout (with retries and the offline journal). {@code SalesController} drives it
+ * from the till, the load-test harness from simulated terminals.
+ */
+public final class CheckoutService {
+    private final SaleRepository sales = new SaleRepository();
+    private final CatalogCache catalog = CatalogCache.shared();
+    private final StockReservations reservations = StockReservations.shared();
+
+    /** Current stock of an item: from the catalog cache, or the database on a miss. Null if unknown. */
+    public CatalogCache.Entry lookup(String name) throws SQLException {
+        CatalogCache.Entry cached = catalog.peek(name);
+        return cached != null ? cached : catalog.lookup(name);
+    }
+
+    /** Current stock of an item read from the database, e.g. when a reservation found the cached entry stale. */
+    public CatalogCache.Entry lookupFresh(String name) throws SQLException {
+        return catalog.lookupAll(List.of(name)).get(name.trim().toLowerCase(Locale.ROOT));
+    }
+
+    /** Hold {@code qty} of an item for the cart (see {@link StockReservations#reserve}). */
+    public StockReservations.Outcome reserve(String cartId, CatalogCache.Entry item, int qty) {
+        return reservations.reserve(cartId, item, qty);
+    }
+
+    /**
+     * Look an item up and hold {@code qty} of it for the cart, reading it again while the entry
+     * is stale. Null when there is no such item. Blocks on the database: not on the FX thread.
+     */
+    public StockReservations.Outcome lookupAndReserve(String cartId, String name, int qty) throws SQLException {
+        CatalogCache.Entry item = lookup(name);
+        while (item != null) {
+            StockReservations.Outcome held = reservations.reserve(cartId, item, qty);
+            if (!held.stale()) return held;
+            item = lookupFresh(name);
+        }
+        return null;
+    }
+
+    public void release(String cartId, String name, int qty) {
+        reservations.release(cartId, name, qty);
+    }
+
+    public void releaseCart(String cartId) {
+        reservations.releaseCart(cartId);
+    }
+
+    /**
+     * Save the cart as a sale. Totals are derived from the lines; percentages are in basis
+     * points. Runs on the caller's thread and blocks on the database.
+     */
+    public SaleRepository.Result checkout(String cartId, String customer, List<SaleRepository.Line> lines,
+                                          long discountBps, long taxBps, IntConsumer onRetry) throws SQLException {
+        long subtotal = 0;
+        for (SaleRepository.Line l : lines) subtotal += Money.lineCents(l.unitPrice().cents(), l.qty());
+        SaleRepository.Sale sale = new SaleRepository.Sale(cartId, customer, Money.ofCents(subtotal),
+            discountBps, taxBps, Money.ofCents(grandTotalCents(subtotal, discountBps, taxBps)), lines);
+        return sales.checkoutOrJournal(sale, onRetry);
+    }
+
+    /** Discount, then tax on the discounted amount; each step rounded to the cent; never below zero. */
+    public static long grandTotalCents(long subtotalCents, long discountBps, long taxBps) {
+        long afterDiscount = Money.applyPct(subtotalCents, -discountBps);
+        long afterTax = Money.applyPct(afterDiscount, taxBps);
+        return Math.max(0L, afterTax);
+    }
+}
@@ -0,0 +1,207 @@
+package com.example.repository;
+
+import com.example.Database;
+import com.example.db.DbHealthMonitor;
+import com.example.db.TransactionRetry;
+import com.example.util.AppConfig;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Optional group commit for checkouts (db.groupCommit.*): checkouts submitted within
+ * {@code windowMs} of each other are saved in one database transaction, up to {@code maxSize}
+ * per group, so a burst pays for one commit instead of one per sale.
+ *
+ * Each sale runs the normal checkout pipeline under its own savepoint; a sale that is short of
+ * stock is rolled back to its savepoint and reported on its own without affecting the others.
+ * Later sales of the group see the decrements of earlier ones, so the holds of a sale turn
+ * converting as soon as it is applied (see {@link StockReservations#beginCommit}), not at the
+ * commit; otherwise its units would count twice and reserved carts after it would be refused.
+ * Each caller gets its own result. When the group cannot be saved as a whole (deadlock, lock
+ * timeout, failed commit) or a sale lost a race for a batch, the affected sales fall back to
+ * an individual checkout with the usual retries, run by their own callers. A connection
+ * failure is passed to every caller of the group, so the sales go to the journal as usual.
+ *
+ * Groups are formed by one "group-commit" thread. It only merges checkouts made by this
+ * process (e.g. the load test, or a till server); separate tills still commit separately.
+ */
+public final class GroupCommitCoordinator {
+    private static final System.Logger LOG = System.getLogger(GroupCommitCoordinator.class.getName());
+
+    private static final GroupCommitCoordinator SHARED = new GroupCommitCoordinator(AppConfig.get());
+
+    /**
+     * Batching achieved: groups committed, sales saved in them (so the average group size),
+     * the largest group, and sales that had to fall back to an individual checkout.
+     */
+    public record Stats(long groups, long sales, int maxGroup, long fallbacks, long stockRefusals) {
+        public double averageGroup() {
+            return groups == 0 ? 0 : (double) sales / groups;
+        }
+    }
+
+    private static final class Request {
+        final SaleRepository.Sale sale;
+        final SaleRepository.Ids ids;
+        // Null result: the caller must check out on its own
+        final CompletableFuture<SaleRepository.Result> result = new CompletableFuture<>();
+
+        Request(SaleRepository.Sale sale, SaleRepository.Ids ids) {
+            this.sale = sale;
+            this.ids = ids;
+        }
+    }
+
+    private final boolean enabled;
+    private final long windowNanos;
+    private final int maxSize;
+    private final LinkedBlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final SaleRepository sales = new SaleRepository();
+    private final StockReservations reservations = StockReservations.shared();
+    private final AtomicLong groups = new AtomicLong();
+    private final AtomicLong grouped = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+    private final AtomicLong stockRefusals = new AtomicLong();
+    private volatile int maxGroup;
+    private Thread worker;
+
+    private GroupCommitCoordinator(AppConfig cfg) {
+        this.enabled = cfg.isGroupCommitEnabled();
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(cfg.getGroupCommitWindowMs());
+        this.maxSize = cfg.getGroupCommitMaxSize();
+    }
+
+    public static GroupCommitCoordinator shared() {
+        return SHARED;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Save the sale as part of the next group; blocks until that group is committed. Returns
+     * null when the sale has to be checked out individually instead.
+     */
+    public SaleRepository.Result submit(SaleRepository.Sale sale) throws SQLException {
+        ensureStarted();
+        // Ids are reserved here, not on the group's connection
+        Request r = new Request(sale, SaleRepository.allocate(sale));
+        queue.add(r);
+        try {
+            return r.result.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for group commit", ie);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof SQLException sql) throw sql;
+            throw new SQLException("Group commit failed", ex.getCause());
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(groups.get(), grouped.get(), maxGroup, fallbacks.get(), stockRefusals.get());
+    }
+
+    // ---------- Internals ----------
+
+    private synchronized void ensureStarted() {
+        if (worker != null) return;
+        worker = new Thread(this::loop, "group-commit");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private void loop() {
+        List<Request> group = new ArrayList<>(maxSize);
+        while (true) {
+            try {
+                group.add(queue.take());
+                long deadline = System.nanoTime() + windowNanos;
+                while (group.size() < maxSize) {
+                    long wait = deadline - System.nanoTime();
+                    Request next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) break;
+                    group.add(next);
+                }
+                commit(group);
+            } catch (InterruptedException ie) {
+                for (Request r : group) r.result.complete(null);
+                return;
+            } catch (RuntimeException ex) {
+                LOG.log(System.Logger.Level.WARNING, "Group commit failed", ex);
+                for (Request r : group) r.result.complete(null);
+            }
+            group.clear();
+        }
+    }
+
+    private void commit(List<Request> group) {
+        List<Request> saved = new ArrayList<>(group.size());
+        List<SaleRepository.Result> results = new ArrayList<>(group.size());
+        try (Connection c = Database.getConnection()) {
+            c.setAutoCommit(false);
+            try {
+                for (Request r : group) {
+                    Savepoint sp = c.setSavepoint();
+                    SaleRepository.Result res = sales.checkout(c, r.sale, r.ids);
+                    if (res.ok()) {
+                        c.releaseSavepoint(sp);
+                        reservations.beginCommit(r.sale.cartId());
+                        saved.add(r);
+                        results.add(res);
+                        continue;
+                    }
+                    c.rollback(sp);
+                    if (SaleRepository.isStockChanged(res)) {
+                        // Lost a race for a batch: the individual path re-plans and retries
+                        fallback(r);
+                    } else {
+                        stockRefusals.incrementAndGet();
+                        r.result.complete(res);
+                    }
+                }
+                c.commit();
+            } catch (SQLException | RuntimeException ex) {
+                try { c.rollback(); } catch (Exception ignore) { }
+                for (Request r : saved) reservations.rollback(r.sale.cartId());
+                throw ex;
+            }
+        } catch (SQLException ex) {
+            if (DbHealthMonitor.isConnectivityFailure(ex)) {
+                // Every caller journals its sale
+                for (Request r : group) r.result.completeExceptionally(ex);
+                return;
+            }
+            if (!TransactionRetry.isRetryable(ex)) {
+                LOG.log(System.Logger.Level.INFO, "Group of " + group.size() + " rolled back, saving individually: " + ex.getMessage());
+            }
+            for (Request r : group) {
+                if (!r.result.isDone()) fallback(r);
+            }
+            return;
+        }
+        groups.incrementAndGet();
+        grouped.addAndGet(saved.size());
+        if (saved.size() > maxGroup) maxGroup = saved.size();
+        for (int i = 0; i < saved.size(); i++) {
+            Request r = saved.get(i);
+            sales.committed(r.sale);
+            r.result.complete(results.get(i));
+        }
+    }
+
+    private void fallback(Request r) {
+        fallbacks.incrementAndGet();
+        r.result.complete(null);
+    }
+}
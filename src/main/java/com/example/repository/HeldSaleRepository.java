@@ -0,0 +1,212 @@
+package com.example.repository;
+
+import com.example.Database;
+import com.example.model.Money;
+import com.example.util.AppConfig;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Parked POS carts ("Hold") for this terminal, so a basket survives while a prescription is
+ * checked, a view switch or a restart.
+ *
+ * Each basket is one {@code held_sales} row; its lines are packed into {@code lines_data}, one
+ * {@code qty TAB unit price TAB item} per line, since they are only ever read back whole. The
+ * terminal's baskets are also kept in memory (newest first), so listing is free and resuming
+ * only costs deleting the row plus one query that revalidates the stock of all its items.
+ * Baskets older than {@code pos.hold.ttlMinutes} expire: listing drops them from memory, and
+ * their rows are deleted on load and whenever a basket is held or resumed. At most
+ * {@code pos.hold.maxPerTerminal} are kept per terminal.
+ */
+public final class HeldSaleRepository {
+    private static final HeldSaleRepository SHARED = new HeldSaleRepository(AppConfig.get());
+
+    public record Line(String item, int qty, Money unitPrice) {}
+
+    /** A parked basket; discount and tax in basis points (7.5% = 750). */
+    public record HeldSale(long id, String customer, long discountBps, long taxBps, List<Line> lines,
+                           String heldBy, LocalDateTime heldAt, LocalDateTime expiresAt) {
+        public int itemCount() {
+            return lines.stream().mapToInt(Line::qty).sum();
+        }
+
+        public Money subtotal() {
+            long cents = 0;
+            for (Line l : lines) cents += Money.lineCents(l.unitPrice().cents(), l.qty());
+            return Money.ofCents(cents);
+        }
+    }
+
+    /** A basket taken off hold, with the current catalog entries of its items (lower-cased name). */
+    public record Resumed(HeldSale sale, Map<String, CatalogCache.Entry> stock) {}
+
+    private final String terminal;
+    private final long ttlMinutes;
+    private final int maxHeld;
+    private final NavigableMap<Long, HeldSale> held = new ConcurrentSkipListMap<>(Collections.reverseOrder());
+    private volatile boolean loaded;
+
+    private HeldSaleRepository(AppConfig cfg) {
+        this.terminal = cfg.getTerminalId();
+        this.ttlMinutes = cfg.getHoldTtlMinutes();
+        this.maxHeld = cfg.getHoldMaxPerTerminal();
+    }
+
+    public static HeldSaleRepository shared() {
+        return SHARED;
+    }
+
+    /** This terminal's parked baskets, newest first (from memory); expired ones are dropped. */
+    public List<HeldSale> list() {
+        LocalDateTime now = LocalDateTime.now();
+        held.values().removeIf(h -> !h.expiresAt().isAfter(now));
+        return new ArrayList<>(held.values());
+    }
+
+    public int count() {
+        return list().size();
+    }
+
+    /** Discard expired baskets and load the rest; blocks on the database. */
+    public void ensureLoaded() throws SQLException {
+        if (loaded) return;
+        try (Connection c = Database.getConnection()) {
+            purgeExpired(c);
+            try (PreparedStatement ps = c.prepareStatement(
+                    "SELECT id, customer, discount_pct, tax_pct, lines_data, held_by, held_at, expires_at "
+                        + "FROM held_sales WHERE terminal = ? ORDER BY id")) {
+                ps.setString(1, terminal);
+                try (ResultSet rs = ps.executeQuery()) {
+                    held.clear();
+                    while (rs.next()) {
+                        HeldSale h = new HeldSale(rs.getLong(1), rs.getString(2), Money.bps(rs.getBigDecimal(3)), Money.bps(rs.getBigDecimal(4)),
+                            decode(rs.getString(5)), rs.getString(6),
+                            rs.getTimestamp(7).toLocalDateTime(), rs.getTimestamp(8).toLocalDateTime());
+                        held.put(h.id(), h);
+                    }
+                }
+            }
+        }
+        loaded = true;
+    }
+
+    /** Park a basket. Fails when this terminal already holds the maximum number of baskets. */
+    public HeldSale hold(String customer, long discountBps, long taxBps, List<Line> lines, String heldBy) throws SQLException {
+        ensureLoaded();
+        if (count() >= maxHeld) {
+            throw new SQLException("Too many held sales on this terminal (" + maxHeld + "); resume or clear one first");
+        }
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime expires = now.plusMinutes(ttlMinutes);
+        String name = customer == null || customer.isBlank() ? "Walk-in" : customer.trim();
+        HeldSale h;
+        try (Connection c = Database.getConnection()) {
+            purgeExpired(c);
+            try (PreparedStatement ps = c.prepareStatement(
+                    "INSERT INTO held_sales (terminal, customer, discount_pct, tax_pct, item_count, subtotal, lines_data, held_by, held_at, expires_at) "
+                        + "VALUES (?,?,?,?,?,?,?,?,?,?)", Statement.RETURN_GENERATED_KEYS)) {
+                // Keep what a reload would read back
+                HeldSale draft = new HeldSale(0, name, discountBps, taxBps, decode(encode(lines)), heldBy, now, expires);
+                ps.setString(1, terminal);
+                ps.setString(2, name);
+                ps.setBigDecimal(3, Money.pct(Math.max(0L, discountBps)));
+                ps.setBigDecimal(4, Money.pct(Math.max(0L, taxBps)));
+                ps.setInt(5, draft.itemCount());
+                ps.setBigDecimal(6, draft.subtotal().toBigDecimal());
+                ps.setString(7, encode(draft.lines()));
+                ps.setString(8, heldBy);
+                ps.setTimestamp(9, Timestamp.valueOf(now));
+                ps.setTimestamp(10, Timestamp.valueOf(expires));
+                ps.executeUpdate();
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    if (!keys.next()) throw new SQLException("No held sale id returned");
+                    h = new HeldSale(keys.getLong(1), name, discountBps, taxBps, draft.lines(), heldBy, now, expires);
+                }
+            }
+        }
+        held.put(h.id(), h);
+        return h;
+    }
+
+    /**
+     * Take a basket off hold: the current stock of all its items is read in one query, then
+     * the row is deleted. Returns null if the basket is gone (expired, or resumed elsewhere).
+     */
+    public Resumed resume(long id) throws SQLException {
+        HeldSale h = held.get(id);
+        if (h == null) return null;
+        if (!h.expiresAt().isAfter(LocalDateTime.now())) {
+            try (Connection c = Database.getConnection()) {
+                purgeExpired(c);
+            }
+            return null;
+        }
+        Map<String, CatalogCache.Entry> stock = CatalogCache.shared().lookupAll(h.lines().stream().map(Line::item).toList());
+        try (Connection c = Database.getConnection();
+             PreparedStatement ps = c.prepareStatement("DELETE FROM held_sales WHERE id = ?")) {
+            ps.setLong(1, id);
+            if (ps.executeUpdate() == 0) {
+                held.remove(id);
+                return null;
+            }
+        }
+        held.remove(id);
+        return new Resumed(h, stock);
+    }
+
+    // Delete this terminal's expired rows and their in-memory copies
+    private void purgeExpired(Connection c) throws SQLException {
+        LocalDateTime now = LocalDateTime.now();
+        try (PreparedStatement ps = c.prepareStatement("DELETE FROM held_sales WHERE terminal = ? AND expires_at <= ?")) {
+            ps.setString(1, terminal);
+            ps.setTimestamp(2, Timestamp.valueOf(now));
+            ps.executeUpdate();
+        }
+        held.values().removeIf(h -> !h.expiresAt().isAfter(now));
+    }
+
+    /** Forget the in-memory copy (e.g. after switching databases). */
+    public void clear() {
+        held.clear();
+        loaded = false;
+    }
+
+    // ---------- Line encoding ----------
+
+    static String encode(List<Line> lines) {
+        StringBuilder sb = new StringBuilder();
+        for (Line l : lines) {
+            if (sb.length() > 0) sb.append('\n');
+            // Item names are single-line user input; tabs/newlines would break the format
+            String item = l.item() == null ? "" : l.item().replaceAll("[\\t\\r\\n]", " ").trim();
+            sb.append(l.qty()).append('\t').append(l.unitPrice()).append('\t').append(item);
+        }
+        return sb.toString();
+    }
+
+    static List<Line> decode(String data) {
+        List<Line> out = new ArrayList<>();
+        if (data == null || data.isEmpty()) return out;
+        for (String row : data.split("\n")) {
+            String[] f = row.split("\t", 3);
+            if (f.length < 3) continue;
+            Money price = Money.parse(f[1]);
+            try {
+                if (price != null) out.add(new Line(f[2], Integer.parseInt(f[0]), price));
+            } catch (NumberFormatException ignore) { }
+        }
+        return List.copyOf(out);
+    }
+}
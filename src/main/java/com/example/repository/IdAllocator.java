@@ -0,0 +1,157 @@
+package com.example.repository;
+
+import com.example.Database;
+import com.example.util.AppConfig;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Hi/lo ids for rows the POS writes in bulk ({@code sales}, {@code sale_items}): each process
+ * reserves a block of {@code db.ids.blockSize} ids at a time from the {@code id_sequences} table
+ * and hands them out from memory, so a sale and its lines are inserted with known ids in
+ * batches, without reading generated keys back.
+ *
+ * A block is reserved in its own short transaction, so ids are never handed out twice even when
+ * the sale that used them is rolled back; unused ids of a block (rollback, restart) are simply
+ * skipped. The next block is fetched in the background once half of the current one is used,
+ * so a checkout rarely waits for the database here. Since a reservation needs a connection of
+ * its own, take ids before acquiring the connection they are written with: threads waiting
+ * here while holding pooled connections could otherwise starve the pool.
+ *
+ * {@code inventory_movements} keeps database-generated ids: the catalog cache reads them as a
+ * change feed and relies on them growing roughly in commit order.
+ */
+public final class IdAllocator {
+    private static final System.Logger LOG = System.getLogger(IdAllocator.class.getName());
+
+    public static final String SALES = "sales";
+    public static final String SALE_ITEMS = "sale_items";
+
+    private static final IdAllocator SHARED = new IdAllocator(AppConfig.get());
+
+    // Ids [next, end) of the current block, then [nextStart, nextEnd) once prefetched
+    private static final class Block {
+        long next;
+        long end;
+        long nextStart;
+        long nextEnd;
+        boolean prefetching;
+        int generation;
+    }
+
+    private final int blockSize;
+    private final Map<String, Block> blocks = new ConcurrentHashMap<>();
+    private final ExecutorService prefetcher = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "id-allocator");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private IdAllocator(AppConfig cfg) {
+        this.blockSize = cfg.getIdBlockSize();
+    }
+
+    public static IdAllocator shared() {
+        return SHARED;
+    }
+
+    /**
+     * {@code count} consecutive ids of {@code sequence}; returns the first. The rest of the
+     * current block is skipped if it is too short, and a new block is reserved when needed.
+     */
+    public long take(String sequence, int count) throws SQLException {
+        if (count < 1) throw new IllegalArgumentException("count must be positive: " + count);
+        Block b = blocks.computeIfAbsent(sequence, s -> new Block());
+        synchronized (b) {
+            if (b.end - b.next < count) {
+                if (b.nextEnd - b.nextStart >= count) {
+                    b.next = b.nextStart;
+                    b.end = b.nextEnd;
+                    b.nextStart = b.nextEnd = 0;
+                } else {
+                    int size = Math.max(blockSize, count);
+                    long start = reserve(sequence, size);
+                    b.next = start;
+                    b.end = start + size;
+                }
+            }
+            long id = b.next;
+            b.next += count;
+            if (!b.prefetching && b.nextEnd == 0 && b.end - b.next < blockSize / 2) prefetch(sequence, b);
+            return id;
+        }
+    }
+
+    /** Forget reserved blocks (e.g. after switching databases); their unused ids are skipped. */
+    public void clear() {
+        for (Block b : blocks.values()) {
+            synchronized (b) {
+                b.next = b.end = b.nextStart = b.nextEnd = 0;
+                b.generation++;
+            }
+        }
+    }
+
+    /**
+     * Reserve {@code count} ids of {@code sequence} on the caller's connection and transaction;
+     * returns the first. For writers that run inside a migration or other long transaction.
+     */
+    public static long reserve(Connection c, String sequence, int count) throws SQLException {
+        try (PreparedStatement up = c.prepareStatement("UPDATE id_sequences SET next_id = next_id + ? WHERE name = ?")) {
+            up.setInt(1, count);
+            up.setString(2, sequence);
+            if (up.executeUpdate() != 1) throw new SQLException("Unknown id sequence: " + sequence);
+        }
+        try (PreparedStatement ps = c.prepareStatement("SELECT next_id FROM id_sequences WHERE name = ?")) {
+            ps.setString(1, sequence);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) throw new SQLException("Unknown id sequence: " + sequence);
+                return rs.getLong(1) - count;
+            }
+        }
+    }
+
+    // ---------- Internals ----------
+
+    private long reserve(String sequence, int count) throws SQLException {
+        try (Connection c = Database.getConnection()) {
+            c.setAutoCommit(false);
+            try {
+                long start = reserve(c, sequence, count);
+                c.commit();
+                return start;
+            } catch (SQLException | RuntimeException ex) {
+                try { c.rollback(); } catch (Exception ignore) { }
+                throw ex;
+            }
+        }
+    }
+
+    // Called holding b's lock
+    private void prefetch(String sequence, Block b) {
+        b.prefetching = true;
+        int generation = b.generation;
+        prefetcher.execute(() -> {
+            long start = 0;
+            try {
+                start = reserve(sequence, blockSize);
+            } catch (SQLException ex) {
+                LOG.log(System.Logger.Level.DEBUG, "Id block prefetch failed for " + sequence + ": " + ex.getMessage());
+            }
+            synchronized (b) {
+                b.prefetching = false;
+                if (start > 0 && b.generation == generation) {
+                    b.nextStart = start;
+                    b.nextEnd = start + blockSize;
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,210 @@
+package com.example.repository;
+
+import com.example.Database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory prefix index over sellable item names for POS typeahead: {@code inventory_items.name},
+ * {@code items.name} and {@code items.generic_name}, so typing a generic name suggests the
+ * products sold under it.
+ *
+ * Terms are normalized (case, accents, whitespace) and kept in a sorted skip list; a prefix
+ * query is a {@code subMap} range scan that stops after {@code limit} hits, so it costs
+ * O(log n + limit) with no database access and is safe to run on the FX thread per keystroke.
+ * Reads are lock-free; updates replace all terms of the affected names.
+ *
+ * Loaded with one query ({@link #ensureLoaded()}), kept current by {@link #refresh} when items
+ * are edited here, and reloaded when {@link CatalogCache} sees an edit from another process.
+ */
+public final class ItemNameIndex {
+    private static final ItemNameIndex SHARED = new ItemNameIndex();
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    // Separates the term from the item in a key: sorts below every character a term can contain
+    private static final char SEP = '\u0000';
+
+    /** A suggestion: the name to sell, and the generic name it matched on (null if the name matched). */
+    public record Suggestion(String name, String generic) {}
+
+    // normalized term + SEP + normalized item name -> suggestion
+    private final ConcurrentSkipListMap<String, Suggestion> terms = new ConcurrentSkipListMap<>();
+    // normalized item name -> its keys in terms, for removal on rename/delete
+    private final Map<String, Set<String>> keysByName = new ConcurrentHashMap<>();
+    private final Object writeLock = new Object();
+    private volatile boolean loaded;
+
+    private ItemNameIndex() {
+        CatalogCache.shared().addReloadListener(() -> {
+            try {
+                reload();
+            } catch (SQLException ignore) { }
+        });
+    }
+
+    public static ItemNameIndex shared() {
+        return SHARED;
+    }
+
+    /**
+     * Up to {@code limit} items whose name or generic name starts with {@code prefix}, in
+     * alphabetical order of the matched term; each item appears once. Empty until loaded.
+     */
+    public List<Suggestion> suggest(String prefix, int limit) {
+        String p = normalize(prefix);
+        if (p.isEmpty() || limit <= 0) return List.of();
+        Map<String, Suggestion> out = new LinkedHashMap<>();
+        for (Suggestion s : terms.subMap(p, true, p + Character.MAX_VALUE, true).values()) {
+            out.putIfAbsent(normalize(s.name()), s);
+            if (out.size() >= limit) break;
+        }
+        return new ArrayList<>(out.values());
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public int size() {
+        return keysByName.size();
+    }
+
+    /** Load the index if it is not loaded yet; blocks on the database, so call it off the FX thread. */
+    public void ensureLoaded() throws SQLException {
+        if (!loaded) reload();
+    }
+
+    /** Rebuild from the database. Queries keep seeing the old contents until the swap. */
+    public void reload() throws SQLException {
+        Map<String, List<Suggestion>> rows;
+        try (Connection c = Database.getConnection();
+             Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery(
+                 "SELECT name, NULL FROM inventory_items UNION ALL SELECT name, generic_name FROM items")) {
+            rows = collect(rs);
+        }
+        synchronized (writeLock) {
+            Set<String> stale = new HashSet<>(keysByName.keySet());
+            stale.removeAll(rows.keySet());
+            for (String n : stale) removeLocked(n);
+            rows.forEach(this::replaceLocked);
+            loaded = true;
+        }
+    }
+
+    /**
+     * Re-read the given names (e.g. the old and new name after an inventory edit) on the
+     * caller's connection and replace their terms; names no longer in either table disappear.
+     */
+    public void refresh(Connection c, Collection<String> names) throws SQLException {
+        List<String> lowered = names.stream().filter(n -> n != null && !n.isBlank())
+            .map(n -> n.trim().toLowerCase(Locale.ROOT)).distinct().toList();
+        if (lowered.isEmpty() || !loaded) return;
+        String in = "(" + String.join(", ", Collections.nCopies(lowered.size(), "?")) + ")";
+        Map<String, List<Suggestion>> rows;
+        try (PreparedStatement ps = c.prepareStatement(
+                "SELECT name, NULL FROM inventory_items WHERE name_norm IN " + in
+                    + " UNION ALL SELECT name, generic_name FROM items WHERE name_norm IN " + in)) {
+            int idx = 1;
+            for (int pass = 0; pass < 2; pass++) {
+                for (String n : lowered) ps.setString(idx++, n);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                rows = collect(rs);
+            }
+        }
+        synchronized (writeLock) {
+            for (String n : lowered) {
+                String k = normalize(n);
+                if (!rows.containsKey(k)) removeLocked(k);
+            }
+            rows.forEach(this::replaceLocked);
+        }
+    }
+
+    public void clear() {
+        synchronized (writeLock) {
+            terms.clear();
+            keysByName.clear();
+            loaded = false;
+        }
+    }
+
+    /** Lower case, accents removed, whitespace collapsed. */
+    static String normalize(String s) {
+        if (s == null) return "";
+        // Decomposing is the slow part; plain ASCII names (nearly all of them) skip it
+        if (!s.chars().allMatch(ch -> ch < 0x80)) {
+            s = MARKS.matcher(Normalizer.normalize(s, Normalizer.Form.NFD)).replaceAll("");
+        }
+        StringBuilder sb = new StringBuilder(s.length());
+        boolean space = false;
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            if (Character.isWhitespace(ch)) {
+                space = sb.length() > 0;
+            } else {
+                if (space) sb.append(' ');
+                space = false;
+                sb.append(Character.toLowerCase(ch));
+            }
+        }
+        return sb.toString();
+    }
+
+    // ---------- Internals ----------
+
+    // Rows of (name, generic name), grouped by normalized name
+    private static Map<String, List<Suggestion>> collect(ResultSet rs) throws SQLException {
+        Map<String, List<Suggestion>> rows = new LinkedHashMap<>();
+        while (rs.next()) {
+            String name = rs.getString(1);
+            String n = normalize(name);
+            if (n.isEmpty()) continue;
+            String generic = rs.getString(2);
+            List<Suggestion> list = rows.computeIfAbsent(n, k -> new ArrayList<>());
+            if (list.isEmpty()) list.add(new Suggestion(name.trim(), null));
+            if (generic != null && !normalize(generic).isEmpty()) list.add(new Suggestion(name.trim(), generic.trim()));
+        }
+        return rows;
+    }
+
+    // Callers hold writeLock
+    private void replaceLocked(String name, List<Suggestion> suggestions) {
+        Set<String> keys = new HashSet<>();
+        for (Suggestion s : suggestions) {
+            String key = normalize(s.generic() == null ? s.name() : s.generic()) + SEP + name;
+            terms.put(key, s);
+            keys.add(key);
+        }
+        Set<String> old = keysByName.put(name, keys);
+        if (old != null) {
+            for (String k : old) {
+                if (!keys.contains(k)) terms.remove(k);
+            }
+        }
+    }
+
+    private void removeLocked(String name) {
+        Set<String> old = keysByName.remove(name);
+        if (old != null) {
+            for (String k : old) terms.remove(k);
+        }
+    }
+}
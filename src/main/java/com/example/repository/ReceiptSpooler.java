@@ -0,0 +1,293 @@
+package com.example.repository;
+
+import com.example.model.Money;
+import com.example.util.AppConfig;
+
+import javax.print.Doc;
+import javax.print.DocFlavor;
+import javax.print.DocPrintJob;
+import javax.print.PrintException;
+import javax.print.PrintService;
+import javax.print.PrintServiceLookup;
+import javax.print.SimpleDoc;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Receipts for completed sales, rendered and printed off the checkout path. Checkout hands over
+ * a {@link Receipt} snapshot and returns at once; a "receipt-spooler" thread renders it as
+ * fixed-width text and sends it to the configured output (receipts.*): a printer through the
+ * system print queue, or a text file per receipt in {@code receipts.dir}.
+ *
+ * The queue is bounded ({@code receipts.queueCapacity}): when the printer falls that far behind,
+ * {@link #submit} refuses the receipt instead of holding up the till, and the cashier is told.
+ * A failed print is retried with backoff ({@code receipts.maxRetries}); after that the receipt
+ * is written to a file so it can be reprinted, and the next one is tried.
+ */
+public final class ReceiptSpooler {
+    private static final System.Logger LOG = System.getLogger(ReceiptSpooler.class.getName());
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm", Locale.US);
+
+    private static final ReceiptSpooler SHARED = new ReceiptSpooler(AppConfig.get());
+
+    /** What a receipt shows: a copy of the sale taken when checkout completed. */
+    public record Receipt(int saleId, String ref, String terminal, String cashier, LocalDateTime time,
+                          String customer, List<SaleRepository.Line> lines, long discountBps, long taxBps,
+                          Money subtotal, Money grandTotal, boolean offline) {
+        public Receipt {
+            lines = List.copyOf(lines);
+        }
+    }
+
+    /**
+     * Spooler figures: receipts waiting ({@code depth} of {@code capacity}), printed since start,
+     * print retries, receipts that went to a file after failing to print, receipts refused
+     * because the queue was full; time to render a receipt and to hand it to the output (per
+     * attempt, not counting the waits between retries).
+     */
+    public record Stats(int depth, int capacity, long printed, long retries, long failed, long rejected,
+                        double avgRenderMs, double maxRenderMs, double avgPrintMs, String lastError) {}
+
+    private enum Output { FILE, PRINTER }
+
+    private final boolean enabled;
+    private final Output output;
+    private final String printerName;
+    private final Path dir;
+    private final int width;
+    private final int maxRetries;
+    private final long backoffMs;
+    private final String title;
+    private final BlockingQueue<Receipt> queue;
+    private final AtomicLong rejected = new AtomicLong();
+    private Thread worker;
+    private volatile boolean closing;
+    // Written by the worker only
+    private volatile long printed;
+    private volatile long retries;
+    private volatile long failed;
+    private volatile long rendered;
+    private volatile long renderNanos;
+    private volatile long maxRenderNanos;
+    private volatile long attempts;
+    private volatile long printNanos;
+    private volatile String lastError;
+
+    private ReceiptSpooler(AppConfig cfg) {
+        this.enabled = cfg.isReceiptsEnabled();
+        this.output = "printer".equalsIgnoreCase(cfg.getReceiptsOutput()) ? Output.PRINTER : Output.FILE;
+        this.printerName = cfg.getReceiptsPrinter();
+        this.dir = cfg.getReceiptsDir();
+        this.width = cfg.getReceiptsWidth();
+        this.maxRetries = cfg.getReceiptsMaxRetries();
+        this.backoffMs = cfg.getReceiptsRetryBackoffMs();
+        this.title = cfg.getAppTitle();
+        this.queue = new ArrayBlockingQueue<>(cfg.getReceiptsQueueCapacity());
+    }
+
+    public static ReceiptSpooler shared() {
+        return SHARED;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queue a receipt; never blocks. Returns false when receipts are off, the spooler is
+     * closing, or the queue is full (the printer is that far behind).
+     */
+    public boolean submit(Receipt receipt) {
+        if (!enabled || closing) return false;
+        ensureStarted();
+        if (queue.offer(receipt)) return true;
+        rejected.incrementAndGet();
+        LOG.log(System.Logger.Level.WARNING, "Receipt queue full, receipt " + label(receipt) + " not printed");
+        return false;
+    }
+
+    public Stats stats() {
+        long n = rendered;
+        long a = attempts;
+        return new Stats(queue.size(), queue.size() + queue.remainingCapacity(), printed, retries, failed, rejected.get(),
+            n == 0 ? 0 : renderNanos / 1e6 / n, maxRenderNanos / 1e6, a == 0 ? 0 : printNanos / 1e6 / a, lastError);
+    }
+
+    /** Print what is queued, waiting up to {@code waitMs}, then stop the worker. */
+    public void close(long waitMs) {
+        closing = true;
+        Thread w;
+        synchronized (this) {
+            w = worker;
+        }
+        if (w == null) return;
+        long deadline = System.currentTimeMillis() + waitMs;
+        while (!queue.isEmpty() && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        w.interrupt();
+        if (!queue.isEmpty()) LOG.log(System.Logger.Level.WARNING, queue.size() + " receipt(s) not printed at shutdown");
+    }
+
+    // ---------- Worker ----------
+
+    private synchronized void ensureStarted() {
+        if (worker != null) return;
+        worker = new Thread(this::loop, "receipt-spooler");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private void loop() {
+        try {
+            while (true) {
+                Receipt r = queue.take();
+                if (spool(r)) printed++;
+                else failed++;
+            }
+        } catch (InterruptedException ie) {
+            // closed
+        }
+    }
+
+    // Render and print, retrying with backoff; falls back to a file when printing keeps failing
+    private boolean spool(Receipt r) throws InterruptedException {
+        long t0 = System.nanoTime();
+        String text = render(r);
+        long took = System.nanoTime() - t0;
+        renderNanos += took;
+        if (took > maxRenderNanos) maxRenderNanos = took;
+        rendered++;
+        long wait = backoffMs;
+        for (int attempt = 0; ; attempt++) {
+            long t1 = System.nanoTime();
+            Exception error = null;
+            try {
+                if (output == Output.PRINTER) print(text);
+                else writeFile(r, text);
+            } catch (IOException | PrintException ex) {
+                error = ex;
+            }
+            printNanos += System.nanoTime() - t1;
+            attempts++;
+            if (error == null) return true;
+            lastError = error.getMessage();
+            if (attempt >= maxRetries || closing) break;
+            retries++;
+            LOG.log(System.Logger.Level.INFO, "Receipt " + label(r) + " failed (" + error.getMessage() + "), retrying in " + wait + " ms");
+            TimeUnit.MILLISECONDS.sleep(wait);
+            wait = Math.min(wait * 2, 30_000L);
+        }
+        LOG.log(System.Logger.Level.WARNING, "Receipt " + label(r) + " could not be printed: " + lastError);
+        if (output == Output.PRINTER) {
+            try {
+                Path f = writeFile(r, text);
+                LOG.log(System.Logger.Level.INFO, "Receipt " + label(r) + " saved to " + f + " for reprinting");
+            } catch (IOException io) {
+                LOG.log(System.Logger.Level.WARNING, "Receipt " + label(r) + " lost: " + io.getMessage());
+            }
+        }
+        return false;
+    }
+
+    private void print(String text) throws PrintException {
+        PrintService service = null;
+        if (!printerName.isEmpty()) {
+            for (PrintService s : PrintServiceLookup.lookupPrintServices(null, null)) {
+                if (s.getName().equalsIgnoreCase(printerName)) service = s;
+            }
+        } else {
+            service = PrintServiceLookup.lookupDefaultPrintService();
+        }
+        if (service == null) {
+            throw new PrintException(printerName.isEmpty() ? "No default printer" : "Printer not found: " + printerName);
+        }
+        DocPrintJob job = service.createPrintJob();
+        Doc doc = new SimpleDoc(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)),
+            DocFlavor.INPUT_STREAM.AUTOSENSE, null);
+        job.print(doc, null);
+    }
+
+    // Written to a temporary name and moved into place, so a half-written receipt is never seen
+    private Path writeFile(Receipt r, String text) throws IOException {
+        Files.createDirectories(dir);
+        String name = "receipt-" + (r.saleId() > 0 ? String.valueOf(r.saleId()) : r.ref()) + ".txt";
+        Path tmp = dir.resolve(name + ".tmp");
+        Path out = dir.resolve(name);
+        Files.writeString(tmp, text, StandardCharsets.UTF_8);
+        Files.move(tmp, out, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return out;
+    }
+
+    // ---------- Rendering ----------
+
+    /** The receipt as fixed-width text ({@code receipts.width} columns). */
+    String render(Receipt r) {
+        StringBuilder sb = new StringBuilder(512);
+        String rule = "-".repeat(width) + "\n";
+        center(sb, title);
+        pair(sb, r.saleId() > 0 ? "Sale #" + r.saleId() : "Sale (offline)", r.time().format(TIME));
+        pair(sb, "Till " + r.terminal(), r.cashier() == null ? "" : "Cashier " + r.cashier());
+        line(sb, "Customer: " + (r.customer() == null || r.customer().isBlank() ? "Walk-in" : r.customer()));
+        sb.append(rule);
+        for (SaleRepository.Line l : r.lines()) {
+            line(sb, l.item());
+            pair(sb, "  " + l.qty() + " x " + l.unitPrice(), l.lineTotal().toString());
+        }
+        sb.append(rule);
+        long sub = r.subtotal().cents();
+        long afterDiscount = Money.applyPct(sub, -r.discountBps());
+        pair(sb, "Subtotal", r.subtotal().toString());
+        if (r.discountBps() > 0) pair(sb, "Discount " + pct(r.discountBps()), Money.ofCents(afterDiscount - sub).toString());
+        if (r.taxBps() > 0) {
+            pair(sb, "Tax " + pct(r.taxBps()), Money.ofCents(Money.applyPct(afterDiscount, r.taxBps()) - afterDiscount).toString());
+        }
+        pair(sb, "TOTAL", r.grandTotal().toString());
+        if (r.offline()) {
+            sb.append(rule);
+            line(sb, "Saved offline, ref " + r.ref());
+        }
+        return sb.toString();
+    }
+
+    private void line(StringBuilder sb, String s) {
+        sb.append(s.length() > width ? s.substring(0, width).stripTrailing() : s).append('\n');
+    }
+
+    private void center(StringBuilder sb, String s) {
+        line(sb, " ".repeat(Math.max(0, (width - s.length()) / 2)) + s);
+    }
+
+    // Left text, right-aligned value; the left side is cut when both do not fit
+    private void pair(StringBuilder sb, String left, String right) {
+        int room = width - right.length() - 1;
+        if (left.length() > room) left = left.substring(0, Math.max(0, room));
+        sb.append(left).append(" ".repeat(Math.max(1, width - left.length() - right.length()))).append(right).append('\n');
+    }
+
+    private static String pct(long bps) {
+        return BigDecimal.valueOf(bps, 2).stripTrailingZeros().toPlainString() + "%";
+    }
+
+    private static String label(Receipt r) {
+        return r.saleId() > 0 ? "#" + r.saleId() : r.ref();
+    }
+}
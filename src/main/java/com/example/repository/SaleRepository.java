@@ -0,0 +1,617 @@
+package com.example.repository;
+
+import com.example.Database;
+import com.example.db.DbHealthMonitor;
+import com.example.db.TransactionRetry;
+import com.example.model.Money;
+import com.example.util.AppConfig;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransactionRollbackException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.IntConsumer;
+
+/**
+ * Persists a sale with stock validation and FIFO batch deduction in a fixed number of statements,
+ * whatever the basket size:
+ *
+ *  1. one query resolves every cart item: legacy inventory rows and all of its batches
+ *  2. availability and FIFO allocations (earliest expiry first) are computed in memory
+ *  3. sale row, sale_items (batch), one set-based conditional batch decrement, one legacy
+ *     inventory decrement (conditional for items without batches) and the movements (batch),
+ *     then commit
+ *
+ * Everything runs on the transaction's connection. A cart's own reservations are taken from
+ * the batches they hold; the rest of the stock others hold is left alone. The decrements only
+ * apply where {@code qty_on_hand} (for items without batches, the legacy quantity) still covers
+ * the allocation; if another checkout got there first the update count comes up short and the
+ * sale is rolled back. {@link #checkout(Sale, IntConsumer)} then re-plans against current
+ * stock, as it does after a deadlock or lock timeout, and only reports a stock error once its
+ * retries are used up.
+ *
+ * A journaled sale ({@link #replay}) already happened at the till, so it is never refused:
+ * it takes what stock there is, ignoring other carts' holds, and every unit it could not take
+ * is recorded in {@code stock_shortfalls} for the stock to be corrected.
+ */
+public class SaleRepository {
+
+    public record Line(String item, int qty, Money unitPrice) {
+        public Money lineTotal() {
+            return unitPrice.times(qty);
+        }
+    }
+
+    /**
+     * A sale to save. {@code cartId} identifies the cart's stock reservations (see
+     * {@link StockReservations}) and is stored as {@code sales.client_ref}, so the same sale is
+     * never saved twice; null when the sale was not built from a reserving cart.
+     * {@code saleDate} is the day of the sale, null for today (journaled sales keep theirs).
+     * Discount and tax are percentages in basis points (7.5% = 750).
+     */
+    public record Sale(String cartId, String customer, Money subtotal, long discountBps, long taxBps,
+                       Money grandTotal, List<Line> lines, LocalDate saleDate) {
+        public Sale(String cartId, String customer, Money subtotal, long discountBps, long taxBps,
+                    Money grandTotal, List<Line> lines) {
+            this(cartId, customer, subtotal, discountBps, taxBps, grandTotal, lines, null);
+        }
+    }
+
+    /**
+     * Outcome of a checkout: the new sale id, or a stock message (nothing was saved). A sale taken
+     * while the database was unreachable is {@code journaled}: saved locally, with no id yet.
+     * {@code shortLines} counts the lines a replayed sale was saved short of stock.
+     */
+    public record Result(int saleId, String stockError, boolean journaled, int shortLines) {
+        public boolean ok() {
+            return stockError == null;
+        }
+
+        static Result saved(int saleId) {
+            return new Result(saleId, null, false, 0);
+        }
+
+        static Result stock(String message) {
+            return new Result(0, message, false, 0);
+        }
+    }
+
+    /** Batch picked for a line; {@code qty} is taken from {@code batchId}. */
+    record Allocation(int batchId, int qty) {}
+
+    private static final class Resolved {
+        Integer legacyId;
+        int legacyQty;
+        Integer itemId;
+        boolean hasBatches;
+        final List<BatchRow> batches = new ArrayList<>();
+    }
+
+    private record BatchRow(int id, int qtyOnHand, LocalDate expiry) {}
+
+    /** Ids for a sale and its lines (lines numbered from {@code firstLine}), see {@link #allocate}. */
+    record Ids(int sale, int firstLine) {}
+
+    private static final String STOCK_CHANGED = "Stock changed while checking out; please review the cart and try again";
+
+    // Earliest expiry first, undated batches last
+    private static final Comparator<BatchRow> FIFO = Comparator
+        .comparing(BatchRow::expiry, Comparator.nullsLast(Comparator.<LocalDate>naturalOrder()))
+        .thenComparingInt(BatchRow::id);
+
+    /** Check stock and save the sale in its own transaction. */
+    public Result checkout(Sale sale) throws SQLException {
+        return checkout(sale, null);
+    }
+
+    /**
+     * Check stock and save the sale in its own transaction, re-running the transaction when the
+     * database aborts it for a deadlock or lock timeout (db.tx.* settings). {@code onRetry}
+     * (may be null) is called on this thread with the attempt number before each retry. With
+     * group commit on, the sale is saved with other concurrent checkouts where possible (see
+     * {@link GroupCommitCoordinator}).
+     */
+    public Result checkout(Sale sale, IntConsumer onRetry) throws SQLException {
+        GroupCommitCoordinator group = GroupCommitCoordinator.shared();
+        if (group.isEnabled()) {
+            Result grouped = group.submit(sale);
+            if (grouped != null) return grouped;
+        }
+        // A retry re-uses the ids: the attempt that held them was rolled back
+        Ids ids = allocate(sale);
+        Result r;
+        try {
+            r = TransactionRetry.run(retrySettings(), () -> {
+                Result once = checkoutOnce(sale, ids);
+                // Lost the race for a batch: re-planning against current stock may still succeed
+                if (STOCK_CHANGED.equals(once.stockError())) throw new SQLTransactionRollbackException(STOCK_CHANGED, "40001");
+                return once;
+            }, onRetry);
+        } catch (SQLTransactionRollbackException ex) {
+            if (!STOCK_CHANGED.equals(ex.getMessage())) throw ex;
+            r = Result.stock(STOCK_CHANGED);
+        }
+        if (r.ok()) committed(sale);
+        return r;
+    }
+
+    /** After the sale's transaction committed. */
+    void committed(Sale sale) {
+        // Stock of these items changed: the POS catalog re-reads them on next use, and the
+        // cart's holds are now deductions
+        CatalogCache.shared().evict(sale.lines().stream().map(Line::item).toList());
+        if (sale.cartId() != null) StockReservations.shared().commit(sale.cartId());
+    }
+
+    /** A concurrent sale drained a batch mid-checkout; a fresh attempt may still succeed. */
+    static boolean isStockChanged(Result r) {
+        return STOCK_CHANGED.equals(r.stockError());
+    }
+
+    /**
+     * Like {@link #checkout(Sale, IntConsumer)}, but when the database cannot be reached (or the
+     * circuit is open) the sale is written to the local {@link SalesJournal} instead, to be saved
+     * once the database is back. Falls back to a plain checkout when the journal is disabled.
+     */
+    public Result checkoutOrJournal(Sale sale, IntConsumer onRetry) throws SQLException {
+        SalesJournal journal = SalesJournal.shared();
+        if (!journal.isEnabled()) return checkout(sale, onRetry);
+        // The journal needs a reference to recognise the sale if it did reach the database, and
+        // keeps the day it was made
+        Sale s = new Sale(sale.cartId() != null ? sale.cartId() : UUID.randomUUID().toString(), sale.customer(),
+            sale.subtotal(), sale.discountBps(), sale.taxBps(), sale.grandTotal(), sale.lines(),
+            sale.saleDate() != null ? sale.saleDate() : LocalDate.now());
+        try {
+            return checkout(s, onRetry);
+        } catch (SQLException ex) {
+            if (!DbHealthMonitor.isConnectivityFailure(ex)) throw ex;
+            try {
+                journal.append(s);
+            } catch (IOException io) {
+                ex.addSuppressed(io);
+                throw ex;
+            }
+            StockReservations.shared().commit(s.cartId());
+            return new Result(0, null, true, 0);
+        }
+    }
+
+    /**
+     * Save a journaled sale, once: if a sale with its reference is already in the database
+     * (saved before the connection dropped, or replayed earlier) nothing is written. Retried
+     * like a checkout. Stock that no longer covers it does not refuse it: the missing units are
+     * recorded as shortfalls (see {@link Result#shortLines}).
+     */
+    public Result replay(Sale sale) throws SQLException {
+        Ids ids = allocate(sale);
+        Result r;
+        try {
+            r = TransactionRetry.run(retrySettings(), () -> {
+                try (Connection c = Database.getConnection()) {
+                    c.setAutoCommit(false);
+                    try {
+                        Integer existing = findByClientRef(c, sale.cartId());
+                        if (existing != null) {
+                            c.rollback();
+                            return Result.saved(existing);
+                        }
+                        Result once = checkout(c, sale, ids, true);
+                        if (once.ok()) {
+                            commit(c, List.of(sale));
+                        } else {
+                            c.rollback();
+                            if (STOCK_CHANGED.equals(once.stockError())) throw new SQLTransactionRollbackException(STOCK_CHANGED, "40001");
+                        }
+                        return once;
+                    } catch (SQLException | RuntimeException ex) {
+                        try { c.rollback(); } catch (Exception ignore) { }
+                        throw ex;
+                    }
+                }
+            }, null);
+        } catch (SQLTransactionRollbackException ex) {
+            if (!STOCK_CHANGED.equals(ex.getMessage())) throw ex;
+            r = Result.stock(STOCK_CHANGED);
+        }
+        if (r.ok()) CatalogCache.shared().evict(sale.lines().stream().map(Line::item).toList());
+        return r;
+    }
+
+    private Result checkoutOnce(Sale sale, Ids ids) throws SQLException {
+        try (Connection c = Database.getConnection()) {
+            c.setAutoCommit(false);
+            try {
+                Result r = checkout(c, sale, ids);
+                if (r.ok()) {
+                    commit(c, List.of(sale));
+                } else {
+                    c.rollback();
+                }
+                return r;
+            } catch (SQLException | RuntimeException ex) {
+                try { c.rollback(); } catch (Exception ignore) { }
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * Commit {@code c}, whose transaction holds the decrements of {@code sales}. The carts'
+     * reservations stop counting against other checkouts just before: the decremented rows stay
+     * locked until the commit, so nobody can take those units meanwhile. If the commit fails
+     * they count again.
+     */
+    static void commit(Connection c, List<Sale> sales) throws SQLException {
+        StockReservations reservations = StockReservations.shared();
+        for (Sale s : sales) reservations.beginCommit(s.cartId());
+        try {
+            c.commit();
+        } catch (SQLException | RuntimeException ex) {
+            for (Sale s : sales) reservations.rollback(s.cartId());
+            throw ex;
+        }
+    }
+
+    /**
+     * The checkout pipeline on a connection the caller manages (auto-commit off). On a stock
+     * error nothing has been written yet, except when a concurrent sale drained a batch between
+     * the read and the decrement; the caller must roll back whenever the result is not ok.
+     * Ids may have to be reserved on a second connection; callers on a busy pool should
+     * {@link #allocate} them before taking {@code c}.
+     */
+    public Result checkout(Connection c, Sale sale) throws SQLException {
+        return checkout(c, sale, allocate(sale));
+    }
+
+    /** Ids for the sale and its lines, reserved without holding a connection (see {@link IdAllocator}). */
+    static Ids allocate(Sale sale) throws SQLException {
+        IdAllocator ids = IdAllocator.shared();
+        int saleId = Math.toIntExact(ids.take(IdAllocator.SALES, 1));
+        int firstLine = sale.lines().isEmpty() ? 0 : Math.toIntExact(ids.take(IdAllocator.SALE_ITEMS, sale.lines().size()));
+        return new Ids(saleId, firstLine);
+    }
+
+    Result checkout(Connection c, Sale sale, Ids ids) throws SQLException {
+        return checkout(c, sale, ids, false);
+    }
+
+    // journaled: a replayed sale, planned against all stock and never refused for it
+    private Result checkout(Connection c, Sale sale, Ids ids, boolean journaled) throws SQLException {
+        // Quantities per item; the cart may hold the same item at two prices
+        Map<String, Integer> needed = new LinkedHashMap<>();
+        Map<String, String> displayName = new HashMap<>();
+        for (Line l : sale.lines()) {
+            String key = key(l.item());
+            needed.merge(key, l.qty(), Integer::sum);
+            displayName.putIfAbsent(key, l.item().trim());
+        }
+
+        Map<String, Resolved> resolved = resolve(c, needed.keySet());
+
+        // Validate and plan FIFO allocations in memory, leaving stock other carts hold alone
+        Map<Integer, Integer> legacyDecrements = new LinkedHashMap<>();
+        Map<Integer, Integer> legacyStock = new HashMap<>();
+        List<String> legacyOnly = new ArrayList<>();
+        List<Allocation> allocations = new ArrayList<>();
+        Map<String, List<Allocation>> byItem = new HashMap<>();
+        Map<String, Integer> shortfalls = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> e : needed.entrySet()) {
+            Resolved r = resolved.get(e.getKey());
+            int qty = e.getValue();
+            Map<Integer, Integer> held = journaled ? Map.of()
+                : StockReservations.shared().heldByOthers(sale.cartId(), e.getKey());
+            List<StockReservations.Hold> mine = journaled || sale.cartId() == null ? List.of()
+                : StockReservations.shared().holds(sale.cartId(), e.getKey());
+            List<BatchRow> batches = r == null ? List.of() : unheld(r.batches, held);
+            int available = r == null ? 0 : r.hasBatches ? batches.stream().mapToInt(BatchRow::qtyOnHand).sum()
+                : r.legacyQty - held.getOrDefault(StockReservations.LEGACY_BATCH, 0);
+            if (qty > available) {
+                if (!journaled) {
+                    return Result.stock("Insufficient non-expired stock for " + displayName.get(e.getKey())
+                        + " (available: " + Math.max(0, available) + ")");
+                }
+                // The goods are gone already: take what is left and record the rest
+                shortfalls.put(displayName.get(e.getKey()), qty - Math.max(0, available));
+                qty = Math.max(0, available);
+                if (qty == 0) continue;
+            }
+            if (r.legacyId != null) legacyDecrements.merge(r.legacyId, qty, Integer::sum);
+            // Without batches the legacy row is the stock, guarded like a batch
+            if (r.legacyId != null && !r.hasBatches) {
+                legacyStock.merge(r.legacyId, qty, Integer::sum);
+                legacyOnly.add(e.getKey());
+            }
+            if (r.hasBatches) {
+                List<Allocation> p = plan(batches, mine, qty);
+                byItem.put(e.getKey(), p);
+                allocations.addAll(p);
+            }
+        }
+
+        insertSale(c, ids.sale(), sale);
+        insertLines(c, ids.sale(), ids.firstLine(), sale.lines(), resolved, byItem);
+        if (!decrementBatches(c, allocations) || !decrementLegacy(c, legacyDecrements, legacyStock)) {
+            return Result.stock(STOCK_CHANGED);
+        }
+        insertMovements(c, ids.sale(), allocations);
+        insertShortfalls(c, ids.sale(), shortfalls);
+        // Legacy stock writes no movements for other processes' catalogs to follow
+        if (!legacyOnly.isEmpty()) CatalogCache.stockChanged(c, legacyOnly);
+        return new Result(ids.sale(), null, false, shortfalls.size());
+    }
+
+    // ---------- Steps ----------
+
+    /**
+     * Legacy inventory rows, items and all their batches for the given normalized names, in one
+     * query: an index lookup on {@code name_norm}, then integer-keyed joins.
+     */
+    private Map<String, Resolved> resolve(Connection c, Collection<String> names) throws SQLException {
+        String in = "(" + String.join(", ", Collections.nCopies(names.size(), "?")) + ")";
+        String sql = "SELECT 'I' AS kind, name_norm AS n, id, quantity AS qty, NULL AS expiry, NULL AS item_id "
+            + "FROM inventory_items WHERE name_norm IN " + in + " "
+            + "UNION ALL "
+            + "SELECT 'B', i.name_norm, b.id, b.qty_on_hand, b.expiry_date, i.id "
+            + "FROM items i LEFT JOIN item_batches b ON b.item_id = i.id WHERE i.name_norm IN " + in;
+        Map<String, Resolved> out = new HashMap<>();
+        LocalDate today = LocalDate.now();
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            int idx = 1;
+            for (int pass = 0; pass < 2; pass++) {
+                for (String n : names) ps.setString(idx++, n);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Resolved r = out.computeIfAbsent(rs.getString(2), k -> new Resolved());
+                    int id = rs.getInt(3);
+                    int qty = rs.getInt(4);
+                    if ("I".equals(rs.getString(1))) {
+                        // Same choice as the old per-name lookup: lowest id
+                        if (r.legacyId == null || id < r.legacyId) r.legacyId = id;
+                        r.legacyQty += qty;
+                    } else {
+                        int itemId = rs.getInt(6);
+                        if (r.itemId == null || itemId < r.itemId) r.itemId = itemId;
+                        // An item without batches
+                        if (rs.getObject(3) == null) continue;
+                        r.hasBatches = true;
+                        Date d = rs.getDate(5);
+                        LocalDate expiry = d == null ? null : d.toLocalDate();
+                        if (qty > 0 && (expiry == null || !expiry.isBefore(today))) {
+                            r.batches.add(new BatchRow(id, qty, expiry));
+                        }
+                    }
+                }
+            }
+        }
+        return out;
+    }
+
+    // Batches with what other carts hold taken off
+    private static List<BatchRow> unheld(List<BatchRow> batches, Map<Integer, Integer> held) {
+        if (held.isEmpty()) return batches;
+        List<BatchRow> out = new ArrayList<>(batches.size());
+        for (BatchRow b : batches) {
+            int q = b.qtyOnHand() - held.getOrDefault(b.id(), 0);
+            if (q > 0) out.add(new BatchRow(b.id(), q, b.expiry()));
+        }
+        return out;
+    }
+
+    /**
+     * {@code needed} units from the batches: first what the cart holds, batch by batch (so a
+     * reservation becomes exactly the deduction it promised), then FIFO. Allocations come in
+     * FIFO order of their batches.
+     */
+    static List<Allocation> plan(List<BatchRow> batches, List<StockReservations.Hold> mine, int needed) {
+        List<BatchRow> sorted = new ArrayList<>(batches);
+        sorted.sort(FIFO);
+        Map<Integer, Integer> left = new HashMap<>();
+        for (BatchRow b : sorted) left.put(b.id(), b.qtyOnHand());
+        Map<Integer, Integer> take = new HashMap<>();
+        int remain = needed;
+        for (StockReservations.Hold h : mine) {
+            // A held batch may have expired or gone since it was reserved
+            int t = Math.min(remain, Math.min(h.qty(), left.getOrDefault(h.batchId(), 0)));
+            if (t <= 0) continue;
+            take.merge(h.batchId(), t, Integer::sum);
+            left.merge(h.batchId(), -t, Integer::sum);
+            remain -= t;
+        }
+        for (BatchRow b : sorted) {
+            if (remain <= 0) break;
+            int t = Math.min(remain, left.get(b.id()));
+            if (t <= 0) continue;
+            take.merge(b.id(), t, Integer::sum);
+            remain -= t;
+        }
+        List<Allocation> plan = new ArrayList<>(take.size());
+        for (BatchRow b : sorted) {
+            Integer t = take.get(b.id());
+            if (t != null) plan.add(new Allocation(b.id(), t));
+        }
+        return plan;
+    }
+
+    // Ids come from IdAllocator, so nothing is read back before the lines can be written
+    private void insertSale(Connection c, int saleId, Sale sale) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(
+                "INSERT INTO sales (id, customer, sale_date, subtotal, discount_pct, tax_pct, grand_total, client_ref) VALUES (?,?,?,?,?,?,?,?)")) {
+            String customer = sale.customer() == null ? "" : sale.customer().trim();
+            ps.setInt(1, saleId);
+            ps.setString(2, customer.isEmpty() ? "Walk-in" : customer);
+            ps.setTimestamp(3, Timestamp.valueOf((sale.saleDate() == null ? LocalDate.now() : sale.saleDate()).atStartOfDay()));
+            ps.setBigDecimal(4, sale.subtotal().toBigDecimal());
+            ps.setBigDecimal(5, Money.pct(Math.max(0L, sale.discountBps())));
+            ps.setBigDecimal(6, Money.pct(Math.max(0L, sale.taxBps())));
+            ps.setBigDecimal(7, sale.grandTotal().toBigDecimal());
+            ps.setString(8, sale.cartId());
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Lines with their item, and the batch a line was taken from when it came from a single one
+     * (a line split across batches has none here; inventory_movements has the split). Lines of
+     * the same item take its FIFO allocations in cart order.
+     */
+    private void insertLines(Connection c, int saleId, int firstLine, List<Line> lines,
+                             Map<String, Resolved> resolved, Map<String, List<Allocation>> byItem) throws SQLException {
+        int lineId = firstLine;
+        Map<String, Integer> used = new HashMap<>();
+        try (PreparedStatement ps = c.prepareStatement(
+                "INSERT INTO sale_items (id, sale_id, item_name, qty, unit_price, line_total, item_id, item_batch_id) VALUES (?,?,?,?,?,?,?,?)")) {
+            for (Line l : lines) {
+                String key = key(l.item());
+                Resolved r = resolved.get(key);
+                Integer batchId = null;
+                List<Allocation> plan = byItem.get(key);
+                if (plan != null) {
+                    // Skip what earlier lines of this item took, then see whether this one fits a single batch
+                    int skip = used.getOrDefault(key, 0);
+                    used.put(key, skip + l.qty());
+                    for (Allocation a : plan) {
+                        if (skip >= a.qty()) {
+                            skip -= a.qty();
+                            continue;
+                        }
+                        if (a.qty() - skip >= l.qty()) batchId = a.batchId();
+                        break;
+                    }
+                }
+                ps.setInt(1, lineId++);
+                ps.setInt(2, saleId);
+                ps.setString(3, l.item());
+                ps.setInt(4, l.qty());
+                ps.setBigDecimal(5, l.unitPrice().toBigDecimal());
+                ps.setBigDecimal(6, l.lineTotal().toBigDecimal());
+                ps.setObject(7, r == null ? null : r.itemId, Types.INTEGER);
+                ps.setObject(8, batchId, Types.INTEGER);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /**
+     * {@code qty_on_hand -= qty} for every allocation in one statement, only where the batch
+     * still holds enough. Returns false if any batch fell short.
+     */
+    private boolean decrementBatches(Connection c, List<Allocation> allocations) throws SQLException {
+        if (allocations.isEmpty()) return true;
+        Map<Integer, Integer> byBatch = new LinkedHashMap<>();
+        for (Allocation a : allocations) byBatch.merge(a.batchId(), a.qty(), Integer::sum);
+        String caseExpr = caseById(byBatch.size());
+        String sql = "UPDATE item_batches SET qty_on_hand = qty_on_hand - " + caseExpr
+            + " WHERE id IN (" + String.join(", ", Collections.nCopies(byBatch.size(), "?")) + ")"
+            + " AND qty_on_hand >= " + caseExpr;
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            int idx = bindCase(ps, 1, byBatch);
+            for (Integer id : byBatch.keySet()) ps.setInt(idx++, id);
+            bindCase(ps, idx, byBatch);
+            return ps.executeUpdate() == byBatch.size();
+        }
+    }
+
+    /**
+     * {@code quantity -= qty} on the legacy rows in one statement. Rows in {@code guarded} (items
+     * without batches, whose stock this is) only where the quantity still covers it; the others
+     * just follow their batches. Returns false if a guarded row fell short.
+     */
+    private boolean decrementLegacy(Connection c, Map<Integer, Integer> byItem, Map<Integer, Integer> guarded) throws SQLException {
+        if (byItem.isEmpty()) return true;
+        String sql = "UPDATE inventory_items SET quantity = quantity - " + caseById(byItem.size())
+            + " WHERE id IN (" + String.join(", ", Collections.nCopies(byItem.size(), "?")) + ")";
+        if (!guarded.isEmpty()) {
+            sql += " AND quantity >= CASE id" + " WHEN ? THEN ?".repeat(guarded.size()) + " ELSE quantity END";
+        }
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            int idx = bindCase(ps, 1, byItem);
+            for (Integer id : byItem.keySet()) ps.setInt(idx++, id);
+            bindCase(ps, idx, guarded);
+            return ps.executeUpdate() == byItem.size();
+        }
+    }
+
+    private void insertMovements(Connection c, int saleId, List<Allocation> allocations) throws SQLException {
+        if (allocations.isEmpty()) return;
+        try (PreparedStatement ps = c.prepareStatement(
+                "INSERT INTO inventory_movements (item_batch_id, qty, movement_type, ref_type, ref_id, created_at, user_id) "
+                    + "VALUES (?, ?, 'SALE', 'SALE', ?, CURRENT_TIMESTAMP, NULL)")) {
+            for (Allocation a : allocations) {
+                ps.setInt(1, a.batchId());
+                ps.setInt(2, -a.qty());
+                ps.setInt(3, saleId);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    private void insertShortfalls(Connection c, int saleId, Map<String, Integer> shortfalls) throws SQLException {
+        if (shortfalls.isEmpty()) return;
+        try (PreparedStatement ps = c.prepareStatement(
+                "INSERT INTO stock_shortfalls (sale_id, item_name, qty, created_at) VALUES (?, ?, ?, CURRENT_TIMESTAMP)")) {
+            for (Map.Entry<String, Integer> e : shortfalls.entrySet()) {
+                ps.setInt(1, saleId);
+                ps.setString(2, e.getKey());
+                ps.setInt(3, e.getValue());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    private static Integer findByClientRef(Connection c, String ref) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement("SELECT id FROM sales WHERE client_ref = ?")) {
+            ps.setString(1, ref);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : null;
+            }
+        }
+    }
+
+    // ---------- Helpers ----------
+
+    private static TransactionRetry.Settings retrySettings() {
+        AppConfig cfg = AppConfig.get();
+        TransactionRetry.Settings s = new TransactionRetry.Settings();
+        s.maxRetries = cfg.getTxMaxRetries();
+        s.initialBackoffMs = cfg.getTxRetryBackoffMs();
+        s.maxBackoffMs = cfg.getTxRetryMaxBackoffMs();
+        return s;
+    }
+
+    private static String key(String item) {
+        return item == null ? "" : item.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /** {@code CASE id WHEN ? THEN ? ... END} for n ids. */
+    private static String caseById(int n) {
+        return "CASE id" + " WHEN ? THEN ?".repeat(n) + " END";
+    }
+
+    private static int bindCase(PreparedStatement ps, int idx, Map<Integer, Integer> values) throws SQLException {
+        for (Map.Entry<Integer, Integer> e : values.entrySet()) {
+            ps.setInt(idx++, e.getKey());
+            ps.setInt(idx++, e.getValue());
+        }
+        return idx;
+    }
+}
@@ -0,0 +1,377 @@
+package com.example.repository;
+
+import com.example.Database;
+import com.example.db.DbHealthMonitor;
+import com.example.model.Money;
+import com.example.util.AppConfig;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Local write-ahead journal of sales taken while the database is unreachable, replayed into
+ * the database once it is back.
+ *
+ * The journal is one append-only file ({@code sales.journal.dir}/sales.journal). Every record is
+ * {@code length, CRC32, payload}; a sale record is forced to disk before checkout reports
+ * success, so a sale the cashier saw go through survives a crash or power cut. When the journal
+ * is opened, a torn or corrupt tail (crash during a write) is cut off at the last intact record.
+ * Sale records carry discount and tax in basis points; records written before that (type 'S',
+ * percentages as doubles) are still read.
+ *
+ * A background replayer ("sales-journal") saves pending sales through
+ * {@link SaleRepository#replay}, which is idempotent: each sale carries its cart id, stored as
+ * {@code sales.client_ref} (unique), so a sale that already reached the database is not saved
+ * twice. A replayed sale gets an acknowledgement record; acknowledgements are not forced, since
+ * losing one only means the sale is looked up again. Once nothing is pending the file is
+ * truncated. A journaled sale already happened at the till, so stock that ran out meanwhile
+ * does not refuse it: it is saved with the units it could not take recorded as shortfalls (and
+ * counted here), so it cannot stay pending and hold up the sales behind it.
+ */
+public final class SalesJournal {
+    private static final System.Logger LOG = System.getLogger(SalesJournal.class.getName());
+    private static final byte SALE = 'T';
+    // Earlier sale records: percentages as doubles
+    private static final byte SALE_PCT = 'S';
+    private static final byte ACK = 'A';
+    private static final int HEADER = 8;
+    private static final int MAX_RECORD = 1 << 20;
+
+    private static final SalesJournal SHARED = new SalesJournal(AppConfig.get());
+
+    /**
+     * Journal figures: sales waiting for the database, age of the oldest one ({@code lagMs}, 0
+     * when none), sales replayed since start and the rate of the last replay pass, and how many
+     * of those were saved short of stock.
+     */
+    public record Stats(int pending, long lagMs, long replayed, double replayPerSec, long shortSales,
+                        long fileBytes, String lastError) {}
+
+    private record Pending(SaleRepository.Sale sale, long journaledAt) {}
+
+    private final boolean enabled;
+    private final Path file;
+    private final long intervalMs;
+    private final int batchSize;
+    private final Object lock = new Object();
+    private final Map<String, Pending> pending = new LinkedHashMap<>();
+    private final CopyOnWriteArrayList<Consumer<Stats>> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean replaying = new AtomicBoolean();
+    private ScheduledExecutorService replayer;
+    private FileChannel channel;
+    private volatile long replayed;
+    private volatile double replayPerSec;
+    private volatile long shortSales;
+    private volatile String lastError;
+
+    private SalesJournal(AppConfig cfg) {
+        this.enabled = cfg.isSalesJournalEnabled();
+        this.file = cfg.getSalesJournalDir().resolve("sales.journal");
+        this.intervalMs = cfg.getSalesJournalReplayMs();
+        this.batchSize = cfg.getSalesJournalReplayBatch();
+    }
+
+    public static SalesJournal shared() {
+        return SHARED;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Open the journal and start replaying; sales left from an earlier run are saved as soon
+     * as the database is reachable. No-op when disabled or already started.
+     */
+    public void start() {
+        if (!enabled) return;
+        synchronized (lock) {
+            if (replayer != null) return;
+            replayer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "sales-journal");
+                t.setDaemon(true);
+                return t;
+            });
+            replayer.scheduleWithFixedDelay(this::replayPending, 0, intervalMs, TimeUnit.MILLISECONDS);
+        }
+        // Drain right away when the database comes back
+        Database.health().addListener(s -> {
+            if (s.state() == DbHealthMonitor.State.UP) trigger();
+        });
+    }
+
+    /** Durably record a sale the database could not take. Returns once it is on disk. */
+    public void append(SaleRepository.Sale sale) throws IOException {
+        if (sale.cartId() == null) throw new IllegalArgumentException("Journaled sales need a client reference");
+        long now = System.currentTimeMillis();
+        byte[] payload = encode(sale, now);
+        synchronized (lock) {
+            open();
+            write(SALE, payload, true);
+            pending.put(sale.cartId(), new Pending(sale, now));
+        }
+        LOG.log(System.Logger.Level.INFO, "Sale " + sale.cartId() + " saved to the local journal (database unavailable)");
+        notifyListeners();
+    }
+
+    /** Run a replay pass now (on the replayer thread). */
+    public void trigger() {
+        ScheduledExecutorService r = replayer;
+        if (r != null && !r.isShutdown()) r.execute(this::replayPending);
+    }
+
+    public int pendingCount() {
+        synchronized (lock) {
+            return pending.size();
+        }
+    }
+
+    public Stats stats() {
+        synchronized (lock) {
+            long oldest = pending.values().stream().mapToLong(Pending::journaledAt).min().orElse(0L);
+            long size = 0;
+            try {
+                if (channel != null) size = channel.size();
+            } catch (IOException ignore) { }
+            return new Stats(pending.size(), oldest == 0 ? 0 : System.currentTimeMillis() - oldest,
+                replayed, replayPerSec, shortSales, size, lastError);
+        }
+    }
+
+    /** Told about every append and replay pass, on the calling thread. */
+    public void addListener(Consumer<Stats> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Consumer<Stats> listener) {
+        listeners.remove(listener);
+    }
+
+    public void close() {
+        synchronized (lock) {
+            if (replayer != null) replayer.shutdownNow();
+            try {
+                if (channel != null) channel.close();
+            } catch (IOException ignore) { }
+            channel = null;
+        }
+    }
+
+    // ---------- Replay ----------
+
+    private void replayPending() {
+        if (!replaying.compareAndSet(false, true)) return;
+        try {
+            synchronized (lock) {
+                open();
+            }
+            List<SaleRepository.Sale> batch = nextBatch();
+            if (batch.isEmpty() || Database.health().isOpen()) return;
+            long start = System.nanoTime();
+            int done = 0;
+            int stuck = 0;
+            SaleRepository sales = new SaleRepository();
+            for (SaleRepository.Sale sale : batch) {
+                SaleRepository.Result r;
+                try {
+                    r = sales.replay(sale);
+                } catch (SQLException ex) {
+                    lastError = ex.getMessage();
+                    LOG.log(System.Logger.Level.WARNING, "Journal replay stopped: " + ex.getMessage());
+                    break;
+                }
+                if (!r.ok()) {
+                    // Only a batch drained by concurrent checkouts through every retry; next pass
+                    stuck++;
+                    lastError = "Sale " + sale.cartId() + ": " + r.stockError();
+                    LOG.log(System.Logger.Level.WARNING, "Journaled sale " + sale.cartId() + " not replayed: " + r.stockError());
+                    continue;
+                }
+                if (r.shortLines() > 0) {
+                    shortSales++;
+                    LOG.log(System.Logger.Level.WARNING, "Journaled sale " + sale.cartId() + " saved as sale #" + r.saleId()
+                        + " with " + r.shortLines() + " line(s) short of stock; see stock_shortfalls");
+                }
+                synchronized (lock) {
+                    write(ACK, sale.cartId().getBytes(StandardCharsets.UTF_8), false);
+                    pending.remove(sale.cartId());
+                }
+                done++;
+            }
+            double secs = (System.nanoTime() - start) / 1e9;
+            if (done > 0) {
+                replayed += done;
+                replayPerSec = done / Math.max(secs, 1e-3);
+                LOG.log(System.Logger.Level.INFO, String.format(Locale.US,
+                    "Replayed %d journaled sale(s) at %.1f/s, %d pending", done, replayPerSec, pendingCount()));
+            }
+            if (done > 0 && stuck == 0 && pendingCount() == 0) lastError = null;
+            synchronized (lock) {
+                if (pending.isEmpty() && channel != null && channel.size() > 0) {
+                    channel.truncate(0);
+                    channel.force(true);
+                }
+            }
+            notifyListeners();
+        } catch (IOException | RuntimeException ex) {
+            lastError = ex.getMessage();
+            LOG.log(System.Logger.Level.WARNING, "Journal replay failed", ex);
+        } finally {
+            replaying.set(false);
+        }
+    }
+
+    private List<SaleRepository.Sale> nextBatch() {
+        synchronized (lock) {
+            List<SaleRepository.Sale> out = new ArrayList<>(Math.min(batchSize, pending.size()));
+            for (Pending p : pending.values()) {
+                if (out.size() >= batchSize) break;
+                out.add(p.sale());
+            }
+            return out;
+        }
+    }
+
+    private void notifyListeners() {
+        if (listeners.isEmpty()) return;
+        Stats s = stats();
+        for (Consumer<Stats> l : listeners) {
+            try {
+                l.accept(s);
+            } catch (RuntimeException ex) {
+                LOG.log(System.Logger.Level.DEBUG, "Journal listener failed", ex);
+            }
+        }
+    }
+
+    // ---------- File ----------
+
+    // Caller holds lock. Reads the existing records on first use.
+    private void open() throws IOException {
+        if (channel != null) return;
+        Files.createDirectories(file.getParent());
+        FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long good = 0;
+        long size = ch.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        while (good + HEADER <= size) {
+            header.clear();
+            ch.read(header, good);
+            header.flip();
+            int len = header.getInt();
+            int crc = header.getInt();
+            if (len <= 0 || len > MAX_RECORD || good + HEADER + len > size) break;
+            ByteBuffer body = ByteBuffer.allocate(len);
+            ch.read(body, good + HEADER);
+            byte[] payload = body.array();
+            if (crc(payload) != crc) break;
+            apply(payload, good);
+            good += HEADER + len;
+        }
+        if (good < size) {
+            LOG.log(System.Logger.Level.WARNING, "Sales journal: discarding " + (size - good) + " bytes of incomplete record at offset " + good);
+            ch.truncate(good);
+            ch.force(true);
+        }
+        ch.position(good);
+        channel = ch;
+        if (!pending.isEmpty()) {
+            LOG.log(System.Logger.Level.INFO, "Sales journal: " + pending.size() + " sale(s) waiting to be saved to the database");
+        }
+    }
+
+    private void apply(byte[] payload, long offset) throws IOException {
+        if (payload[0] == SALE || payload[0] == SALE_PCT) {
+            Pending p = decode(payload);
+            pending.put(p.sale().cartId(), p);
+        } else if (payload[0] == ACK) {
+            pending.remove(new String(payload, 1, payload.length - 1, StandardCharsets.UTF_8));
+        } else {
+            LOG.log(System.Logger.Level.WARNING, "Sales journal: unknown record type at offset " + offset);
+        }
+    }
+
+    // Caller holds lock
+    private void write(byte type, byte[] body, boolean force) throws IOException {
+        byte[] payload = new byte[body.length + 1];
+        payload[0] = type;
+        System.arraycopy(body, 0, payload, 1, body.length);
+        ByteBuffer buf = ByteBuffer.allocate(HEADER + payload.length);
+        buf.putInt(payload.length).putInt(crc(payload)).put(payload).flip();
+        while (buf.hasRemaining()) channel.write(buf);
+        if (force) channel.force(false);
+    }
+
+    private static int crc(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    // ---------- Encoding ----------
+
+    private static byte[] encode(SaleRepository.Sale sale, long journaledAt) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(sale.cartId());
+            out.writeLong(journaledAt);
+            out.writeLong((sale.saleDate() == null ? LocalDate.now() : sale.saleDate()).toEpochDay());
+            out.writeUTF(sale.customer() == null ? "" : sale.customer());
+            out.writeLong(sale.subtotal().cents());
+            out.writeLong(sale.discountBps());
+            out.writeLong(sale.taxBps());
+            out.writeLong(sale.grandTotal().cents());
+            out.writeInt(sale.lines().size());
+            for (SaleRepository.Line l : sale.lines()) {
+                out.writeUTF(l.item());
+                out.writeInt(l.qty());
+                out.writeLong(l.unitPrice().cents());
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Pending decode(byte[] payload) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload, 1, payload.length - 1))) {
+            String ref = in.readUTF();
+            long journaledAt = in.readLong();
+            LocalDate date = LocalDate.ofEpochDay(in.readLong());
+            String customer = in.readUTF();
+            Money subtotal = Money.ofCents(in.readLong());
+            boolean pct = payload[0] == SALE_PCT;
+            long discountBps = pct ? Money.bps(BigDecimal.valueOf(in.readDouble())) : in.readLong();
+            long taxBps = pct ? Money.bps(BigDecimal.valueOf(in.readDouble())) : in.readLong();
+            Money grand = Money.ofCents(in.readLong());
+            int n = in.readInt();
+            List<SaleRepository.Line> lines = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                lines.add(new SaleRepository.Line(in.readUTF(), in.readInt(), Money.ofCents(in.readLong())));
+            }
+            return new Pending(new SaleRepository.Sale(ref, customer, subtotal, discountBps, taxBps, grand, lines, date), journaledAt);
+        }
+    }
+}
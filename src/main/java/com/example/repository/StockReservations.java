@@ -0,0 +1,441 @@
+package com.example.repository;
+
+import com.example.util.AppConfig;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Soft reservations of batch stock for open carts, so two carts cannot both be promised the
+ * last units of an item.
+ *
+ * Adding to a cart reserves the quantity against the item's batches (FIFO, earliest expiry
+ * first) from the {@link CatalogCache} snapshot, minus what other carts already hold. Checkout
+ * takes the cart's own holds batch by batch and plans anything else around other carts' holds.
+ *
+ * A hold turns into a deduction without a moment where it counts twice or not at all:
+ * once the sale's decrements are in its transaction (the rows stay locked until it ends),
+ * {@link #beginCommit} marks the cart's holds as converting, and other checkouts stop
+ * subtracting them from stock; {@link #rollback} counts them again if the transaction does not
+ * commit, and {@link #commit} drops them once it did. New reservations keep counting converting
+ * holds until then, since the catalog still shows the stock before the sale. Dropping them
+ * stamps the items with a new {@link #settled} sequence, and a reservation against a catalog
+ * entry read before that is refused as stale, as the entry still has the sold units. Holds of a cart
+ * that is not touched for {@code pos.reservation.ttlMs} expire (abandoned till, crashed view).
+ *
+ * State is per item and guarded by one of a fixed set of lock stripes chosen by the item's
+ * name, so carts working on different items never contend. Reservations live in this process:
+ * across terminals the conditional decrements in {@link SaleRepository} remain the guard.
+ */
+public final class StockReservations {
+    private static final int STRIPES = 64;
+    // Pseudo batch for items tracked only in legacy inventory_items
+    static final int LEGACY_BATCH = 0;
+
+    private static final StockReservations SHARED = new StockReservations(AppConfig.get().getReservationTtlMs());
+
+    /** Units of one batch held by a cart. */
+    public record Hold(int batchId, int qty) {}
+
+    /**
+     * Result of {@link #reserve}: on failure nothing was held and {@code available} says how many
+     * could be; {@code stale} when the catalog entry predates a sale of the item and has to be
+     * read again.
+     */
+    public record Outcome(boolean ok, int available, boolean stale) {
+        public Outcome(boolean ok, int available) {
+            this(ok, available, false);
+        }
+    }
+
+    private static final class CartHolds {
+        // batch id -> units, in FIFO order of allocation
+        final LinkedHashMap<Integer, Integer> byBatch = new LinkedHashMap<>();
+        // The cart's sale is committing with these units already decremented
+        boolean converting;
+    }
+
+    private static final class ItemHolds {
+        final Map<String, CartHolds> byCart = new HashMap<>();
+        final Map<Integer, Integer> totalByBatch = new HashMap<>();
+    }
+
+    private static final class Cart {
+        final Set<String> items = ConcurrentHashMap.newKeySet();
+        volatile long expiresAt;
+    }
+
+    private final long ttlMs;
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+    private final Map<String, ItemHolds> items = new ConcurrentHashMap<>();
+    private final Map<String, Cart> carts = new ConcurrentHashMap<>();
+    // Sequence of the last committed holds dropped per item
+    private final AtomicLong settled = new AtomicLong();
+    private final Map<String, Long> settledAt = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService sweeper;
+
+    StockReservations(long ttlMs) {
+        this.ttlMs = ttlMs;
+        for (int i = 0; i < STRIPES; i++) locks[i] = new ReentrantLock();
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "stock-reservations");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1_000L, ttlMs / 4);
+        sweeper.scheduleWithFixedDelay(this::expire, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public static StockReservations shared() {
+        return SHARED;
+    }
+
+    /**
+     * Hold {@code qty} more units of {@code item} for the cart. Fails (holding nothing) when the
+     * non-expired stock not held by any cart is less than {@code qty}, or when {@code item} was
+     * read before the last sale of it settled ({@link Outcome#stale}).
+     */
+    public Outcome reserve(String cartId, CatalogCache.Entry item, int qty) {
+        String key = key(item.name());
+        Cart cart = touchCart(cartId);
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            Long sold = settledAt.get(key);
+            if (sold != null && sold > item.asOf()) return new Outcome(false, 0, true);
+            ItemHolds h = items.computeIfAbsent(key, k -> new ItemHolds());
+            dropExpired(h);
+            List<Hold> free = free(item, h);
+            int available = free.stream().mapToInt(Hold::qty).sum();
+            if (qty > available) return new Outcome(false, available);
+            CartHolds mine = h.byCart.computeIfAbsent(cartId, k -> new CartHolds());
+            int remain = qty;
+            for (Hold f : free) {
+                if (remain <= 0) break;
+                int take = Math.min(remain, f.qty());
+                mine.byBatch.merge(f.batchId(), take, Integer::sum);
+                h.totalByBatch.merge(f.batchId(), take, Integer::sum);
+                remain -= take;
+            }
+            cart.items.add(key);
+            return new Outcome(true, available - qty);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Give back {@code qty} units of an item held by the cart (latest-expiring batches first). */
+    public void release(String cartId, String itemName, int qty) {
+        String key = key(itemName);
+        touchCart(cartId);
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            ItemHolds h = items.get(key);
+            CartHolds mine = h == null ? null : h.byCart.get(cartId);
+            if (mine == null) return;
+            List<Integer> batches = new ArrayList<>(mine.byBatch.keySet());
+            int remain = qty;
+            for (int i = batches.size() - 1; i >= 0 && remain > 0; i--) {
+                int batch = batches.get(i);
+                int held = mine.byBatch.get(batch);
+                int give = Math.min(remain, held);
+                if (give == held) mine.byBatch.remove(batch); else mine.byBatch.put(batch, held - give);
+                subtract(h, batch, give);
+                remain -= give;
+            }
+            if (mine.byBatch.isEmpty()) removeCart(h, key, cartId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Drop all holds of a cart (cleared, abandoned). */
+    public void releaseCart(String cartId) {
+        Cart cart = carts.remove(cartId);
+        if (cart != null) releaseHolds(cartId, cart, false);
+    }
+
+    private void releaseHolds(String cartId, Cart cart, boolean sold) {
+        for (String key : cart.items) {
+            ReentrantLock lock = lockFor(key);
+            lock.lock();
+            try {
+                // Stock read before this still has the sold units
+                if (sold) settledAt.put(key, settled.incrementAndGet());
+                ItemHolds h = items.get(key);
+                if (h == null) continue;
+                CartHolds mine = h.byCart.get(cartId);
+                if (mine == null) continue;
+                mine.byBatch.forEach((batch, qty) -> subtract(h, batch, qty));
+                removeCart(h, key, cartId);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * The cart's sale has taken its units off stock in a transaction that is about to commit:
+     * its holds stop counting against other checkouts. Call before the commit, and
+     * {@link #commit} or {@link #rollback} after it.
+     */
+    public void beginCommit(String cartId) {
+        setConverting(cartId, true);
+    }
+
+    /** The sale's transaction did not commit: the cart's holds count against other checkouts again. */
+    public void rollback(String cartId) {
+        setConverting(cartId, false);
+    }
+
+    /**
+     * The cart's sale was committed: its holds are now real deductions in the database (and
+     * the sold items were evicted from the catalog), so the holds are dropped.
+     */
+    public void commit(String cartId) {
+        Cart cart = carts.remove(cartId);
+        if (cart != null) releaseHolds(cartId, cart, true);
+    }
+
+    /**
+     * Current settle sequence. Read it before reading stock: an entry stamped with it is stale
+     * for an item whose sold holds were dropped after it.
+     */
+    public long settled() {
+        return settled.get();
+    }
+
+    /**
+     * Units of {@code itemName} per batch held by carts other than {@code cartId} (legacy stock
+     * under batch 0), leaving out converting holds; all carts' when {@code cartId} is null.
+     */
+    public Map<Integer, Integer> heldByOthers(String cartId, String itemName) {
+        String key = key(itemName);
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            ItemHolds h = items.get(key);
+            if (h == null) return Map.of();
+            dropExpired(h);
+            Map<Integer, Integer> out = new HashMap<>();
+            h.byCart.forEach((cart, holds) -> {
+                if (holds.converting || cart.equals(cartId)) return;
+                holds.byBatch.forEach((batch, qty) -> out.merge(batch, qty, Integer::sum));
+            });
+            return out;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** The cart's holds of {@code itemName}, per batch in FIFO order. */
+    public List<Hold> holds(String cartId, String itemName) {
+        String key = key(itemName);
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            ItemHolds h = items.get(key);
+            CartHolds mine = h == null ? null : h.byCart.get(cartId);
+            if (mine == null) return List.of();
+            List<Hold> out = new ArrayList<>(mine.byBatch.size());
+            mine.byBatch.forEach((batch, qty) -> out.add(new Hold(batch, qty)));
+            return out;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Units of {@code itemName} held by the cart. */
+    public int heldBy(String cartId, String itemName) {
+        String key = key(itemName);
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            ItemHolds h = items.get(key);
+            CartHolds mine = h == null ? null : h.byCart.get(cartId);
+            return mine == null ? 0 : mine.byBatch.values().stream().mapToInt(Integer::intValue).sum();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** The cart's holds, per item name (lower-cased). */
+    public Map<String, List<Hold>> holds(String cartId) {
+        Cart cart = carts.get(cartId);
+        Map<String, List<Hold>> out = new LinkedHashMap<>();
+        if (cart == null) return out;
+        for (String key : cart.items) {
+            ReentrantLock lock = lockFor(key);
+            lock.lock();
+            try {
+                ItemHolds h = items.get(key);
+                CartHolds mine = h == null ? null : h.byCart.get(cartId);
+                if (mine == null) continue;
+                List<Hold> list = new ArrayList<>();
+                mine.byBatch.forEach((batch, qty) -> list.add(new Hold(batch, qty)));
+                out.put(key, list);
+            } finally {
+                lock.unlock();
+            }
+        }
+        return out;
+    }
+
+    /** Total units held per batch of an item, across all carts. */
+    public Map<Integer, Integer> totalHeld(String itemName) {
+        String key = key(itemName);
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            ItemHolds h = items.get(key);
+            return h == null ? Map.of() : new HashMap<>(h.totalByBatch);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Keep the cart's holds alive for another TTL. */
+    public void touch(String cartId) {
+        touchCart(cartId);
+    }
+
+    // Atomic with the expiry check in expire(): a cart being touched is never taken for idle
+    private Cart touchCart(String cartId) {
+        long expires = System.currentTimeMillis() + ttlMs;
+        return carts.compute(cartId, (k, c) -> {
+            Cart cart = c != null ? c : new Cart();
+            cart.expiresAt = expires;
+            return cart;
+        });
+    }
+
+    public void close() {
+        sweeper.shutdownNow();
+    }
+
+    // ---------- Internals ----------
+
+    private void setConverting(String cartId, boolean converting) {
+        if (cartId == null) return;
+        Cart cart = carts.get(cartId);
+        if (cart == null) return;
+        for (String key : cart.items) {
+            ReentrantLock lock = lockFor(key);
+            lock.lock();
+            try {
+                ItemHolds h = items.get(key);
+                CartHolds mine = h == null ? null : h.byCart.get(cartId);
+                if (mine != null) mine.converting = converting;
+            } finally {
+                lock.unlock();
+            }
+        }
+        // A slow commit must not let the holds expire under it
+        touchCart(cartId);
+    }
+
+    // Stock per batch not held by anyone, FIFO (earliest expiry first, undated last)
+    private static List<Hold> free(CatalogCache.Entry item, ItemHolds h) {
+        List<Hold> out = new ArrayList<>();
+        if (!item.hasBatches()) {
+            int f = item.legacyQty() - h.totalByBatch.getOrDefault(LEGACY_BATCH, 0);
+            if (f > 0) out.add(new Hold(LEGACY_BATCH, f));
+            return out;
+        }
+        LocalDate today = LocalDate.now();
+        List<CatalogCache.BatchQty> batches = new ArrayList<>(item.batches());
+        batches.sort(Comparator.comparing(CatalogCache.BatchQty::expiry, Comparator.nullsLast(Comparator.<LocalDate>naturalOrder()))
+            .thenComparingInt(CatalogCache.BatchQty::id));
+        for (CatalogCache.BatchQty b : batches) {
+            if (b.qtyOnHand() <= 0 || (b.expiry() != null && b.expiry().isBefore(today))) continue;
+            int f = b.qtyOnHand() - h.totalByBatch.getOrDefault(b.id(), 0);
+            if (f > 0) out.add(new Hold(b.id(), f));
+        }
+        return out;
+    }
+
+    // Caller holds the item's stripe lock
+    private void dropExpired(ItemHolds h) {
+        long now = System.currentTimeMillis();
+        for (Iterator<Map.Entry<String, CartHolds>> it = h.byCart.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, CartHolds> e = it.next();
+            Cart cart = carts.get(e.getKey());
+            if (e.getValue().converting) continue;
+            if (cart == null || cart.expiresAt < now) {
+                e.getValue().byBatch.forEach((batch, qty) -> subtract(h, batch, qty));
+                it.remove();
+            }
+        }
+    }
+
+    private void expire() {
+        long now = System.currentTimeMillis();
+        for (String cartId : carts.keySet()) {
+            // The expiry is checked again where the cart is removed, atomically with touchCart
+            Cart[] idle = new Cart[1];
+            carts.computeIfPresent(cartId, (k, c) -> {
+                if (c.expiresAt >= now) return c;
+                idle[0] = c;
+                return null;
+            });
+            if (idle[0] != null) releaseExpired(cartId, idle[0]);
+        }
+    }
+
+    // Like releaseHolds, but a till that came back meanwhile (a new Cart for the id) keeps them
+    private void releaseExpired(String cartId, Cart cart) {
+        for (String key : cart.items) {
+            ReentrantLock lock = lockFor(key);
+            lock.lock();
+            try {
+                ItemHolds h = items.get(key);
+                CartHolds mine = h == null ? null : h.byCart.get(cartId);
+                if (mine == null) continue;
+                Cart back = carts.get(cartId);
+                if (back != null) {
+                    back.items.add(key);
+                    continue;
+                }
+                mine.byBatch.forEach((batch, qty) -> subtract(h, batch, qty));
+                removeCart(h, key, cartId);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static void subtract(ItemHolds h, int batch, int qty) {
+        h.totalByBatch.merge(batch, -qty, Integer::sum);
+        if (h.totalByBatch.getOrDefault(batch, 0) <= 0) h.totalByBatch.remove(batch);
+    }
+
+    private void removeCart(ItemHolds h, String key, String cartId) {
+        h.byCart.remove(cartId);
+        Cart cart = carts.get(cartId);
+        if (cart != null) cart.items.remove(key);
+        if (h.byCart.isEmpty()) items.remove(key);
+    }
+
+    private ReentrantLock lockFor(String key) {
+        return locks[(key.hashCode() & 0x7fffffff) % STRIPES];
+    }
+
+    private static String key(String name) {
+        return name == null ? "" : name.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -61,6 +61,74 @@ public final class AppConfig {
         setDefault("db.pass", "");
         setDefault("db.params", "useSSL=false&serverTimezone=UTC");
         setDefault("ui.theme", "light");
+        setDefault("app.seed.demo", "false");
+
+        // Connection pool
+        setDefault("db.pool.minIdle", "2");
+        setDefault("db.pool.maxSize", "10");
+        setDefault("db.pool.idleTimeoutMs", "600000");
+        setDefault("db.pool.maxLifetimeMs", "1800000");
+        setDefault("db.pool.connectionTimeoutMs", "10000");
+        setDefault("db.pool.validationTimeoutSec", "3");
+        setDefault("db.pool.leakDetectionMs", "60000");
+        setDefault("db.stmtCache.size", "64");
+        setDefault("db.stmtCache.serverPrepare", "true");
+
+        // Health monitor / circuit breaker
+        setDefault("db.health.intervalMs", "15000");
+        setDefault("db.health.failureThreshold", "1");
+        setDefault("db.health.probeInitialMs", "1000");
+        setDefault("db.health.probeMaxMs", "30000");
+
+        // Query statistics and slow-query log
+        setDefault("db.trace.enabled", "true");
+        setDefault("db.trace.slowQueryMs", "500");
+        setDefault("db.trace.maxStatements", "500");
+
+        // Optional read replica (disabled unless db.replica.url or db.replica.host is set)
+        setDefault("db.replica.maxStalenessMs", "30000");
+        setDefault("db.replica.checkIntervalMs", "5000");
+        setDefault("db.replica.pool.maxSize", "4");
+
+        // Retries of transactions aborted by deadlocks / lock timeouts
+        setDefault("db.tx.maxRetries", "3");
+        setDefault("db.tx.retryBackoffMs", "50");
+        setDefault("db.tx.retryMaxBackoffMs", "1000");
+
+        // Group commit of concurrent checkouts (off unless db.groupCommit.enabled=true)
+        setDefault("db.groupCommit.enabled", "false");
+        setDefault("db.groupCommit.windowMs", "2");
+        setDefault("db.groupCommit.maxSize", "32");
+
+        // Client-side (hi/lo) ids for sales and sale lines
+        setDefault("db.ids.blockSize", "100");
+
+        // POS catalog cache
+        setDefault("catalog.cache.enabled", "true");
+        setDefault("catalog.cache.maxEntries", "20000");
+        setDefault("catalog.cache.refreshMs", "2000");
+        setDefault("pos.reservation.ttlMs", "900000");
+        setDefault("pos.hold.ttlMinutes", "480");
+        setDefault("pos.hold.maxPerTerminal", "50");
+
+        // Inventory table paging
+        setDefault("inventory.pageSize", "200");
+        setDefault("inventory.prefetchPages", "2");
+        setDefault("inventory.search.maxResults", "500");
+        setDefault("inventory.search.debounceMs", "250");
+
+        // Offline sales journal
+        setDefault("sales.journal.enabled", "true");
+        setDefault("sales.journal.replayMs", "5000");
+        setDefault("sales.journal.replayBatch", "200");
+
+        // Receipts
+        setDefault("receipts.enabled", "true");
+        setDefault("receipts.output", "file");
+        setDefault("receipts.width", "40");
+        setDefault("receipts.queueCapacity", "50");
+        setDefault("receipts.maxRetries", "3");
+        setDefault("receipts.retryBackoffMs", "1000");
 
         // Determine profile
         this.activeProfile = resolveProfile();
@@ -86,6 +154,14 @@ public final class AppConfig {
         overrideFromSystem("db.pass", "DB_PASS");
         overrideFromSystem("db.params", "DB_PARAMS");
         overrideFromSystem("db.url", "DB_URL");
+        overrideFromSystem("db.replica.url", "DB_REPLICA_URL");
+        overrideFromSystem("db.replica.host", "DB_REPLICA_HOST");
+        overrideFromSystem("db.replica.port", "DB_REPLICA_PORT");
+        overrideFromSystem("db.replica.user", "DB_REPLICA_USER");
+        overrideFromSystem("db.replica.pass", "DB_REPLICA_PASS");
+        overrideFromSystem("db.replica.maxStalenessMs", "DB_REPLICA_MAX_STALENESS_MS");
+        overrideFromSystem("pos.terminal", "POS_TERMINAL");
+        overrideFromSystem("db.groupCommit.enabled", "DB_GROUP_COMMIT");
     }
 
     public synchronized boolean saveToUserConfig() {
@@ -146,6 +222,11 @@ public final class AppConfig {
         props.setProperty("ui.theme", m);
     }
 
+    /** Seed demo inventory and a sample sale into an empty database (dev/embedded profiles). */
+    public boolean isDemoSeedEnabled() {
+        return getBoolProp("app.seed.demo", false);
+    }
+
     public String getDbType() {
         return getProp("db.type").toLowerCase(Locale.ROOT);
     }
@@ -158,8 +239,22 @@ public final class AppConfig {
         return "postgres".equalsIgnoreCase(getDbType()) || "postgresql".equalsIgnoreCase(getDbType());
     }
 
-    public boolean isSqlite() {
-        return "sqlite".equalsIgnoreCase(getDbType());
+    /** Embedded, in-process H2 database (no server needed). */
+    public boolean isH2() {
+        return "h2".equalsIgnoreCase(getDbType());
+    }
+
+    /**
+     * Database file for H2 (without the .mv.db suffix). A bare db.name is placed under
+     * ~/.pharmapro/data; a name containing a path separator is used as given.
+     * Returns null for in-memory databases (db.name=mem:...).
+     */
+    public Path getH2File() {
+        String name = getDbName().trim();
+        if (name.startsWith("mem:")) return null;
+        if (name.isEmpty()) name = "pharmapro";
+        if (name.contains("/") || name.contains("\\")) return Paths.get(name).toAbsolutePath();
+        return userConfigDir.resolve("data").resolve(name);
     }
 
     public String getDbHost() {
@@ -190,6 +285,318 @@ public final class AppConfig {
         return getProp("db.params");
     }
 
+    // Connection pool (db.pool.*)
+
+    public int getPoolMinIdle() {
+        return Math.max(0, getIntProp("db.pool.minIdle", 2));
+    }
+
+    public int getPoolMaxSize() {
+        return Math.max(1, getIntProp("db.pool.maxSize", 10));
+    }
+
+    public long getPoolIdleTimeoutMs() {
+        return getLongProp("db.pool.idleTimeoutMs", 600_000L);
+    }
+
+    public long getPoolMaxLifetimeMs() {
+        return getLongProp("db.pool.maxLifetimeMs", 1_800_000L);
+    }
+
+    public long getPoolConnectionTimeoutMs() {
+        return Math.max(250L, getLongProp("db.pool.connectionTimeoutMs", 10_000L));
+    }
+
+    public int getPoolValidationTimeoutSec() {
+        return Math.max(1, getIntProp("db.pool.validationTimeoutSec", 3));
+    }
+
+    /** Milliseconds a connection may stay borrowed before a leak warning is logged; 0 disables. */
+    public long getPoolLeakDetectionMs() {
+        return Math.max(0L, getLongProp("db.pool.leakDetectionMs", 60_000L));
+    }
+
+    /** Prepared statements cached per pooled connection (LRU); 0 disables the cache. */
+    public int getStatementCacheSize() {
+        return Math.max(0, getIntProp("db.stmtCache.size", 64));
+    }
+
+    /** Ask the driver to prepare statements on the server (MySQL useServerPrepStmts, Postgres prepareThreshold). */
+    public boolean isServerPrepareEnabled() {
+        return getBoolProp("db.stmtCache.serverPrepare", true);
+    }
+
+    // Health monitor (db.health.*)
+
+    /** Heartbeat period while the database is reachable. */
+    public long getHealthIntervalMs() {
+        return Math.max(1_000L, getLongProp("db.health.intervalMs", 15_000L));
+    }
+
+    /** Consecutive connection failures before calls start failing fast. */
+    public int getHealthFailureThreshold() {
+        return Math.max(1, getIntProp("db.health.failureThreshold", 1));
+    }
+
+    /** First reconnect probe delay after an outage; doubles up to db.health.probeMaxMs. */
+    public long getHealthProbeInitialMs() {
+        return Math.max(100L, getLongProp("db.health.probeInitialMs", 1_000L));
+    }
+
+    public long getHealthProbeMaxMs() {
+        return Math.max(getHealthProbeInitialMs(), getLongProp("db.health.probeMaxMs", 30_000L));
+    }
+
+    // Query tracing (db.trace.*)
+
+    /** Record per-query latency/row/error statistics for the Settings diagnostics view. */
+    public boolean isQueryTraceEnabled() {
+        return getBoolProp("db.trace.enabled", true);
+    }
+
+    /** Executions slower than this are written to the slow-query log; 0 disables it. */
+    public long getSlowQueryMs() {
+        return Math.max(0L, getLongProp("db.trace.slowQueryMs", 500L));
+    }
+
+    /**
+     * Slow-query log file: db.trace.slowQueryLog, defaulting to ~/.pharmapro/logs/slow-queries.log.
+     * Returns null when set to "off" (slow queries are then only sent to the application log).
+     */
+    public Path getSlowQueryLog() {
+        String v = getProp("db.trace.slowQueryLog").trim();
+        if (v.equalsIgnoreCase("off")) return null;
+        return v.isEmpty() ? userConfigDir.resolve("logs").resolve("slow-queries.log") : Paths.get(v);
+    }
+
+    /** Distinct normalized statements tracked; further ones are counted together. */
+    public int getTraceMaxStatements() {
+        return Math.max(1, getIntProp("db.trace.maxStatements", 500));
+    }
+
+    // Read replica (db.replica.*)
+
+    /** True when a read replica is configured (db.replica.url, or db.replica.host for MySQL/Postgres). */
+    public boolean isReplicaConfigured() {
+        return getReplicaJdbcUrl() != null;
+    }
+
+    /**
+     * JDBC URL of the read replica, or null when none is configured. db.replica.url is used
+     * as-is; otherwise db.replica.host/db.replica.port with the primary's db.name and db.params.
+     */
+    public String getReplicaJdbcUrl() {
+        String url = getProp("db.replica.url").trim();
+        if (!url.isEmpty()) return url;
+        String host = getProp("db.replica.host").trim();
+        if (host.isEmpty() || !(isMySql() || isPostgres())) return null;
+        int port;
+        try {
+            port = Integer.parseInt(getProp("db.replica.port").trim());
+        } catch (NumberFormatException e) {
+            port = getDbPort();
+        }
+        String params = getDbParams();
+        String paramsPrefix = (params == null || params.isBlank()) ? "" : (params.startsWith("?") ? params : "?" + params);
+        String scheme = isPostgres() ? "jdbc:postgresql://" : "jdbc:mysql://";
+        return scheme + host + ":" + port + "/" + getDbName() + paramsPrefix;
+    }
+
+    /** Replica user; defaults to db.user. */
+    public String getReplicaUser() {
+        String u = getProp("db.replica.user");
+        return u.isBlank() ? getDbUser() : u;
+    }
+
+    /** Replica password; defaults to db.pass when db.replica.user is not set either. */
+    public String getReplicaPass() {
+        return props.containsKey("db.replica.pass") || !getProp("db.replica.user").isBlank()
+            ? getProp("db.replica.pass") : getDbPass();
+    }
+
+    /**
+     * How far behind the primary the replica may be before reads fall back to the primary.
+     * Should be well above db.replica.checkIntervalMs; 0 disables the lag check.
+     */
+    public long getReplicaMaxStalenessMs() {
+        return Math.max(0L, getLongProp("db.replica.maxStalenessMs", 30_000L));
+    }
+
+    public long getReplicaCheckIntervalMs() {
+        return Math.max(500L, getLongProp("db.replica.checkIntervalMs", 5_000L));
+    }
+
+    public int getReplicaPoolMaxSize() {
+        return Math.max(1, getIntProp("db.replica.pool.maxSize", 4));
+    }
+
+    // Transaction retries (db.tx.*)
+
+    /** Times a transaction aborted by a deadlock, serialization failure or lock timeout is re-run. */
+    public int getTxMaxRetries() {
+        return Math.max(0, getIntProp("db.tx.maxRetries", 3));
+    }
+
+    /** First wait before a retry (randomized); doubles up to db.tx.retryMaxBackoffMs. */
+    public long getTxRetryBackoffMs() {
+        return Math.max(1L, getLongProp("db.tx.retryBackoffMs", 50L));
+    }
+
+    public long getTxRetryMaxBackoffMs() {
+        return Math.max(getTxRetryBackoffMs(), getLongProp("db.tx.retryMaxBackoffMs", 1_000L));
+    }
+
+    // Group commit (db.groupCommit.*)
+
+    /** Save checkouts that arrive together in one transaction (see GroupCommitCoordinator). */
+    public boolean isGroupCommitEnabled() {
+        return getBoolProp("db.groupCommit.enabled", false);
+    }
+
+    /** How long the first checkout of a group waits for others to join it. */
+    public long getGroupCommitWindowMs() {
+        return Math.max(0L, getLongProp("db.groupCommit.windowMs", 2L));
+    }
+
+    /** Most checkouts saved in one transaction; a full group is committed without waiting. */
+    public int getGroupCommitMaxSize() {
+        return Math.max(1, getIntProp("db.groupCommit.maxSize", 32));
+    }
+
+    /** Sale and sale-line ids reserved per round trip to id_sequences (see IdAllocator). */
+    public int getIdBlockSize() {
+        return Math.max(2, getIntProp("db.ids.blockSize", 100));
+    }
+
+    // Inventory table (inventory.*)
+
+    /** Rows fetched per query while scrolling the inventory table. */
+    public int getInventoryPageSize() {
+        return Math.max(20, getIntProp("inventory.pageSize", 200));
+    }
+
+    /** Pages kept loaded above and below the visible rows of the inventory table. */
+    public int getInventoryPrefetchPages() {
+        return Math.max(0, getIntProp("inventory.prefetchPages", 2));
+    }
+
+    /** Most matches an inventory search shows, best first. */
+    public int getInventorySearchMaxResults() {
+        return Math.max(1, getIntProp("inventory.search.maxResults", 500));
+    }
+
+    /** Quiet time after the last keystroke before the inventory search runs. */
+    public long getInventorySearchDebounceMs() {
+        return Math.max(0L, getLongProp("inventory.search.debounceMs", 250L));
+    }
+
+    // POS catalog cache (catalog.cache.*)
+
+    /** Answer add-item lookups from an in-memory catalog instead of querying per item. */
+    public boolean isCatalogCacheEnabled() {
+        return getBoolProp("catalog.cache.enabled", true);
+    }
+
+    /** Items held in memory; least recently used ones are dropped (and re-read when needed). */
+    public int getCatalogCacheMaxEntries() {
+        return Math.max(100, getIntProp("catalog.cache.maxEntries", 20_000));
+    }
+
+    /** How often stock changes from other terminals are pulled in. */
+    public long getCatalogCacheRefreshMs() {
+        return Math.max(250L, getLongProp("catalog.cache.refreshMs", 2_000L));
+    }
+
+    /** Stock held for an open cart is released after this long without activity on the cart. */
+    public long getReservationTtlMs() {
+        return Math.max(10_000L, getLongProp("pos.reservation.ttlMs", 900_000L));
+    }
+
+    /**
+     * Name of this till, used to keep parked sales apart: pos.terminal, else the host name
+     * (COMPUTERNAME / HOSTNAME), else "default".
+     */
+    public String getTerminalId() {
+        String v = getProp("pos.terminal").trim();
+        if (v.isEmpty()) v = Objects.toString(System.getenv("COMPUTERNAME"), "").trim();
+        if (v.isEmpty()) v = Objects.toString(System.getenv("HOSTNAME"), "").trim();
+        return v.isEmpty() ? "default" : v;
+    }
+
+    /** Parked (held) sales are discarded after this long. */
+    public long getHoldTtlMinutes() {
+        return Math.max(1L, getLongProp("pos.hold.ttlMinutes", 480L));
+    }
+
+    public int getHoldMaxPerTerminal() {
+        return Math.max(1, getIntProp("pos.hold.maxPerTerminal", 50));
+    }
+
+    // Offline sales journal (sales.journal.*)
+
+    /** Take sales into a local journal while the database is unreachable, and replay them later. */
+    public boolean isSalesJournalEnabled() {
+        return getBoolProp("sales.journal.enabled", true);
+    }
+
+    /** Journal directory: sales.journal.dir, defaulting to ~/.pharmapro/journal. */
+    public Path getSalesJournalDir() {
+        String v = getProp("sales.journal.dir").trim();
+        return v.isEmpty() ? userConfigDir.resolve("journal") : Paths.get(v);
+    }
+
+    /** How often pending journaled sales are replayed (also right after the database comes back). */
+    public long getSalesJournalReplayMs() {
+        return Math.max(500L, getLongProp("sales.journal.replayMs", 5_000L));
+    }
+
+    /** Sales replayed per pass. */
+    public int getSalesJournalReplayBatch() {
+        return Math.max(1, getIntProp("sales.journal.replayBatch", 200));
+    }
+
+    // Receipts (receipts.*)
+
+    /** Print a receipt for every completed sale (see ReceiptSpooler). */
+    public boolean isReceiptsEnabled() {
+        return getBoolProp("receipts.enabled", true);
+    }
+
+    /** "printer" (system print queue) or "file" (one text file per receipt in receipts.dir). */
+    public String getReceiptsOutput() {
+        return getProp("receipts.output").trim();
+    }
+
+    /** Print queue name; blank for the default printer. */
+    public String getReceiptsPrinter() {
+        return getProp("receipts.printer").trim();
+    }
+
+    /** Receipt files (and receipts that failed to print): receipts.dir, defaulting to ~/.pharmapro/receipts. */
+    public Path getReceiptsDir() {
+        String v = getProp("receipts.dir").trim();
+        return v.isEmpty() ? userConfigDir.resolve("receipts") : Paths.get(v);
+    }
+
+    /** Characters per receipt line. */
+    public int getReceiptsWidth() {
+        return Math.max(24, getIntProp("receipts.width", 40));
+    }
+
+    /** Receipts waiting to print before further ones are refused. */
+    public int getReceiptsQueueCapacity() {
+        return Math.max(1, getIntProp("receipts.queueCapacity", 50));
+    }
+
+    public int getReceiptsMaxRetries() {
+        return Math.max(0, getIntProp("receipts.maxRetries", 3));
+    }
+
+    /** Wait before the first reprint attempt; doubles per attempt, up to 30 s. */
+    public long getReceiptsRetryBackoffMs() {
+        return Math.max(10L, getLongProp("receipts.retryBackoffMs", 1_000L));
+    }
+
     public String getExplicitJdbcUrl() {
         String url = props.getProperty("db.url");
         return (url == null || url.isBlank()) ? null : url;
@@ -210,12 +617,14 @@ public final class AppConfig {
             return "jdbc:mysql://" + getDbHost() + ":" + getDbPort() + "/" + getDbName() + paramsPrefix;
         } else if (isPostgres()) {
             return "jdbc:postgresql://" + getDbHost() + ":" + getDbPort() + "/" + getDbName() + paramsPrefix;
-        } else if (isSqlite()) {
-            // db.name acts as filename/path for sqlite
-            return "jdbc:sqlite:" + getDbName();
+        } else if (isH2()) {
+            // MySQL compatibility mode keeps the existing queries working; db.params (JDBC URL
+            // query parameters) do not apply to H2, use db.url for custom settings
+            Path file = getH2File();
+            String target = file == null ? getDbName().trim() + ";DB_CLOSE_DELAY=-1" : "file:" + file;
+            return "jdbc:h2:" + target + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE";
         }
-        // Fallback to MySQL format
-        return "jdbc:mysql://" + getDbHost() + ":" + getDbPort() + "/" + getDbName() + paramsPrefix;
+        throw unsupportedDbType();
     }
 
     /**
@@ -233,12 +642,18 @@ public final class AppConfig {
         if (isMySql()) {
             return "jdbc:mysql://" + getDbHost() + ":" + getDbPort() + "/" + paramsPrefix;
         } else if (isPostgres()) {
-            return "jdbc:postgresql://" + getDbHost() + ":" + getDbPort() + "/" + paramsPrefix;
+            // Postgres always connects to a database; use the maintenance DB
+            return "jdbc:postgresql://" + getDbHost() + ":" + getDbPort() + "/postgres" + paramsPrefix;
         }
-        // Not applicable for sqlite
+        // Not applicable for h2
         return null;
     }
 
+    /** The error for a db.type other than mysql, postgres or h2. */
+    public IllegalStateException unsupportedDbType() {
+        return new IllegalStateException("Unsupported db.type '" + getDbType() + "' (expected mysql, postgres or h2)");
+    }
+
     // ---------- Internals ----------
 
     private String resolveProfile() {
@@ -295,4 +710,25 @@ public final class AppConfig {
     private String getProp(String key) {
         return Objects.toString(props.getProperty(key), "");
     }
+
+    private int getIntProp(String key, int def) {
+        try {
+            return Integer.parseInt(getProp(key).trim());
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+
+    private boolean getBoolProp(String key, boolean def) {
+        String v = getProp(key).trim();
+        return v.isEmpty() ? def : Boolean.parseBoolean(v);
+    }
+
+    private long getLongProp(String key, long def) {
+        try {
+            return Long.parseLong(getProp(key).trim());
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
 }
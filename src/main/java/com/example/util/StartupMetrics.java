@@ -0,0 +1,62 @@
+package com.example.util;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Startup timeline, measured from process start (falls back to class load when the OS
+ * does not report it).
+ *
+ * Milestones are recorded once; {@link #FIRST_PIXEL} (splash rendered) and
+ * {@link #LOGIN_READY} (login view shown and interactive) are the figures reported in the log.
+ */
+public final class StartupMetrics {
+    private static final System.Logger LOG = System.getLogger(StartupMetrics.class.getName());
+
+    public static final String FIRST_PIXEL = "firstPixel";
+    public static final String BOOTSTRAP_DONE = "bootstrapDone";
+    public static final String VIEWS_LOADED = "viewsLoaded";
+    public static final String LOGIN_READY = "loginReady";
+
+    private static final long ORIGIN_NANOS = System.nanoTime();
+    private static final long PROCESS_OFFSET_MS = processAgeMs();
+    private static final Map<String, Long> MARKS = new LinkedHashMap<>();
+
+    private StartupMetrics() {}
+
+    /** Record a milestone (first call wins); returns milliseconds since process start. */
+    public static synchronized long mark(String name) {
+        Long existing = MARKS.get(name);
+        if (existing != null) return existing;
+        long ms = PROCESS_OFFSET_MS + (System.nanoTime() - ORIGIN_NANOS) / 1_000_000;
+        MARKS.put(name, ms);
+        if (FIRST_PIXEL.equals(name) || LOGIN_READY.equals(name)) {
+            LOG.log(System.Logger.Level.INFO, "Startup: " + name + " at " + ms + " ms");
+        }
+        return ms;
+    }
+
+    /** Milliseconds since process start for a recorded milestone, or -1. */
+    public static synchronized long get(String name) {
+        Long v = MARKS.get(name);
+        return v == null ? -1 : v;
+    }
+
+    public static synchronized Map<String, Long> snapshot() {
+        return new LinkedHashMap<>(MARKS);
+    }
+
+    public static synchronized String summary() {
+        StringBuilder sb = new StringBuilder();
+        MARKS.forEach((k, v) -> sb.append(sb.length() == 0 ? "" : ", ").append(k).append('=').append(v).append("ms"));
+        return sb.toString();
+    }
+
+    private static long processAgeMs() {
+        return ProcessHandle.current().info().startInstant()
+            .map(start -> Math.max(0L, Duration.between(start, Instant.now()).toMillis()))
+            .orElse(0L);
+    }
+}
@@ -2,6 +2,7 @@ module com.example.javafxapp {
     requires javafx.controls;
     requires javafx.fxml;
     requires java.sql;
+    requires java.desktop;
 
     opens com.example to javafx.fxml;
     exports com.example;